@@ -0,0 +1,221 @@
+/* JmhDictBenchmarks.java */
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import dict.*;
+
+/**
+ * JmhDictBenchmarks measures insert(), find() and remove() of the Dictionary
+ * implementations across table sizes, load factors and key distributions,
+ * and a read-heavy mix across thread counts for the thread-safe ones.  JMH
+ * forks a fresh JVM per trial and sinks results into a Blackhole.  Build and
+ * run them with
+ *
+ *   mvn -B -Pjmh package
+ *   java -jar target/benchmarks.jar JmhDictBenchmarks -prof gc
+ *
+ * Each benchmark reports throughput, and latency percentiles (p50 up to
+ * p99.99) from Mode.SampleTime; -prof gc adds the allocation rate and the
+ * bytes allocated per operation (gc.alloc.rate.norm).  insert() replaces the
+ * table with an empty one after every size insertions, so the table stays
+ * near its intended size.  remove() puts each removed entry back, so it
+ * measures a remove() and an insert().
+ *
+ * The multi-threaded mix is the nested Mixed class; pass the thread count
+ * with -t, e.g. "java -jar target/benchmarks.jar Mixed -t 8".
+ */
+
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class JmhDictBenchmarks {
+
+  /**
+   * OPS is the length of each key sequence; a benchmark that reaches its
+   * end starts over.
+   */
+  static final int OPS = 100000;
+
+  /**
+   * Impl names the benchmarked implementations and creates them.
+   * LOCKED_CHAINED is a HashTableChained behind one global lock, the usual
+   * way of sharing it between threads today.
+   */
+  enum Impl {
+    CHAINED {
+      Dictionary<Object, Object> create(int size, double loadFactor) {
+        return new HashTableChained<Object, Object>(size, loadFactor, 0);
+      }
+    },
+    OPEN {
+      Dictionary<Object, Object> create(int size, double loadFactor) {
+        return new HashTableOpen<Object, Object>(size, loadFactor);
+      }
+    },
+    CONCURRENT {
+      Dictionary<Object, Object> create(int size, double loadFactor) {
+        return new ConcurrentHashTable<Object, Object>(size);
+      }
+    },
+    LOCKED_CHAINED {
+      Dictionary<Object, Object> create(int size, double loadFactor) {
+        return new LockedDictionary<Object, Object>(
+          new HashTableChained<Object, Object>(size, loadFactor, 0));
+      }
+    };
+
+    abstract Dictionary<Object, Object> create(int size, double loadFactor);
+  }
+
+  /**
+   * Returns a dictionary holding every key of universe.
+   */
+  static Dictionary<Object, Object> filled(Impl impl, Object[] universe,
+                                           double loadFactor) {
+    Dictionary<Object, Object> d = impl.create(universe.length, loadFactor);
+    for (Object key : universe) {
+      d.insert(key, key);
+    }
+    return d;
+  }
+
+  @Param({ "CHAINED", "OPEN" })
+  public String impl;
+
+  @Param({ "1000", "100000", "1000000" })
+  public int size;
+
+  @Param({ "0.5", "0.75" })
+  public double loadFactor;
+
+  @Param({ "UNIFORM", "ZIPFIAN", "COLLIDING" })
+  public String keys;
+
+  /**
+   * @param  implementation the table implementation named by impl
+   * @param  sequence the keys looked up, inserted and removed, in order
+   * @param  filled a table holding every key of the universe
+   * @param  growing the table insert() fills
+   * @param  next the index in sequence of the next key
+   * @param  inserted number of insertions into growing
+   */
+  private Impl implementation;
+  private Object[] sequence;
+  private Dictionary<Object, Object> filled;
+  private Dictionary<Object, Object> growing;
+  private int next;
+  private int inserted;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    implementation = Impl.valueOf(impl);
+    Keys.Distribution d = Keys.Distribution.valueOf(keys);
+    Object[] universe = Keys.universe(d, size);
+    sequence = Keys.sequence(d, universe, OPS, 42);
+    filled = filled(implementation, universe, loadFactor);
+    growing = implementation.create(size, loadFactor);
+  }
+
+  /**
+   * Returns the next key of the sequence.
+   */
+  private Object nextKey() {
+    Object key = sequence[next];
+    next = next + 1 == sequence.length ? 0 : next + 1;
+    return key;
+  }
+
+  @Benchmark
+  public Entry<Object, Object> insert() {
+    if (inserted == size) {
+      growing = implementation.create(size, loadFactor);
+      inserted = 0;
+    }
+    inserted++;
+    Object key = nextKey();
+    return growing.insert(key, key);
+  }
+
+  @Benchmark
+  public Entry<Object, Object> find() {
+    return filled.find(nextKey());
+  }
+
+  @Benchmark
+  public void remove(Blackhole bh) {
+    Entry<Object, Object> entry = filled.remove(nextKey());
+    bh.consume(entry);
+    if (entry != null) {
+      filled.insert(entry.key(), entry.value());
+    }
+  }
+
+  /**
+   * Mixed runs a read-heavy mix (90% find(), 10% insert() then remove())
+   * on a table shared by every benchmark thread.
+   */
+  @BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Fork(2)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  @State(Scope.Benchmark)
+  public static class Mixed {
+
+    @Param({ "CONCURRENT", "LOCKED_CHAINED" })
+    public String impl;
+
+    @Param({ "UNIFORM", "ZIPFIAN", "COLLIDING" })
+    public String keys;
+
+    static final int SIZE = 100000;
+
+    private Object[] universe;
+    private Dictionary<Object, Object> table;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      Keys.Distribution d = Keys.Distribution.valueOf(keys);
+      universe = Keys.universe(d, SIZE);
+      table = filled(Impl.valueOf(impl), universe, 0.75);
+    }
+
+    /**
+     * Cursor holds one benchmark thread's own key sequence.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+      Object[] sequence;
+      int next;
+
+      @Setup(Level.Trial)
+      public void setUp(Mixed mixed, ThreadParams threads) {
+        sequence = Keys.sequence(Keys.Distribution.valueOf(mixed.keys),
+                                 mixed.universe, OPS,
+                                 threads.getThreadIndex());
+      }
+    }
+
+    @Benchmark
+    public Entry<Object, Object> mixed(Cursor cursor) {
+      Object key = cursor.sequence[cursor.next];
+      int i = cursor.next;
+      cursor.next = i + 1 == cursor.sequence.length ? 0 : i + 1;
+      if (i % 10 == 0) {
+        table.insert(key, key);
+        return table.remove(key);
+      }
+      return table.find(key);
+    }
+  }
+
+}
@@ -0,0 +1,153 @@
+/* JmhListBenchmarks.java */
+
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import list.*;
+
+/**
+ * JmhListBenchmarks measures insertFront(), insertBack(), full traversal
+ * and ListNode remove() across list lengths, for DList, PooledDList and
+ * ArrayDList, under JMH; see JmhDictBenchmarks for how to build and run
+ * them and read their percentiles and allocation.
+ *
+ * insertFront() and insertBack() replace the list with an empty one after
+ * every length insertions.  traverse() walks the whole list.  remove()
+ * removes a node chosen at random and inserts a new one at the back, and
+ * churn() removes the front node and inserts at the back, so both keep the
+ * length fixed; churn is where node pooling pays off.
+ */
+
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class JmhListBenchmarks {
+
+  /**
+   * Impl names the benchmarked implementations and creates them.
+   */
+  enum Impl {
+    DLIST {
+      List<Integer> create() {
+        return new DList<Integer>();
+      }
+    },
+    POOLED {
+      List<Integer> create() {
+        return new PooledDList<Integer>();
+      }
+    },
+    ARRAY {
+      List<Integer> create() {
+        return new ArrayDList<Integer>();
+      }
+    };
+
+    abstract List<Integer> create();
+  }
+
+  /**
+   * Returns a list holding the integers 0...n - 1.
+   */
+  static List<Integer> build(Impl impl, int n) {
+    List<Integer> list = impl.create();
+    for (int i = 0; i < n; i++) {
+      list.insertBack(Integer.valueOf(i));
+    }
+    return list;
+  }
+
+  @Param({ "DLIST", "POOLED", "ARRAY" })
+  public String impl;
+
+  @Param({ "1000", "100000", "1000000" })
+  public int length;
+
+  /**
+   * @param  implementation the list implementation named by impl
+   * @param  list a list of length items
+   * @param  nodes the nodes of list
+   * @param  growing the list insertFront() and insertBack() fill
+   * @param  inserted number of insertions into growing
+   * @param  random picks the nodes remove() removes
+   */
+  private Impl implementation;
+  private List<Integer> list;
+  private ListNode<Integer>[] nodes;
+  private List<Integer> growing;
+  private int inserted;
+  private Random random;
+  private final Integer item = Integer.valueOf(1);
+
+  @Setup(Level.Trial)
+  public void setUp() throws InvalidNodeException, ListEmptyException {
+    implementation = Impl.valueOf(impl);
+    list = build(implementation, length);
+    @SuppressWarnings("unchecked")
+    ListNode<Integer>[] array =
+      (ListNode<Integer>[]) new ListNode<?>[length];
+    ListNode<Integer> node = list.front();
+    for (int i = 0; i < length; i++) {
+      array[i] = node;
+      node = node.next();
+    }
+    nodes = array;
+    growing = implementation.create();
+    random = new Random(42);
+  }
+
+  /**
+   * Inserts an item into growing, replacing it first if it is full.
+   */
+  private List<Integer> grow() {
+    if (inserted == length) {
+      growing = implementation.create();
+      inserted = 0;
+    }
+    inserted++;
+    return growing;
+  }
+
+  @Benchmark
+  public void insertFront() {
+    grow().insertFront(item);
+  }
+
+  @Benchmark
+  public void insertBack() {
+    grow().insertBack(item);
+  }
+
+  @Benchmark
+  public long traverse() throws InvalidNodeException, ListEmptyException {
+    long sum = 0;
+    ListNode<Integer> node = list.front();
+    while (node.isValidNode()) {
+      sum += node.getItem();
+      node = node.next();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public void remove() throws InvalidNodeException, ListEmptyException {
+    int i = random.nextInt(length);
+    nodes[i].remove();
+    list.insertBack(item);
+    nodes[i] = list.back();
+  }
+
+  @Benchmark
+  public void churn() throws InvalidNodeException, ListEmptyException {
+    list.front().remove();
+    list.insertBack(item);
+  }
+
+}
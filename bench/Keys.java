@@ -0,0 +1,120 @@
+/* Keys.java */
+
+package bench;
+
+import java.util.Random;
+
+/**
+ * Keys generates the key sequences the benchmarks draw from.  Each sequence
+ * is built before timing starts, so generating keys costs nothing during a
+ * measured iteration.
+ *
+ * Every distribution picks indices in 0...range - 1 and maps index i to
+ * key(i), so a dictionary filled with key(0)...key(range - 1) contains every
+ * key the sequence asks for.
+ */
+
+public class Keys {
+
+  /**
+   * Distribution names the supported key distributions.
+   * UNIFORM picks every index with equal probability.
+   * ZIPFIAN picks index i with probability proportional to 1 / (i + 1), so a
+   *   few hot keys dominate.
+   * COLLIDING picks indices uniformly, but maps them to keys whose hash codes
+   *   collide in groups of COLLISION_GROUP, as poor hashCode() methods or
+   *   hostile input do.
+   */
+  public enum Distribution { UNIFORM, ZIPFIAN, COLLIDING }
+
+  static final int COLLISION_GROUP = 64;
+
+  /**
+   * A CollidingKey is a key whose hash code is shared by COLLISION_GROUP
+   * consecutive ids.
+   */
+  static class CollidingKey {
+    final int id;
+
+    CollidingKey(int id) {
+      this.id = id;
+    }
+
+    public int hashCode() {
+      return id / COLLISION_GROUP;
+    }
+
+    public boolean equals(Object o) {
+      return o instanceof CollidingKey && ((CollidingKey) o).id == id;
+    }
+  }
+
+  /**
+   * Returns the keys key(0)...key(range - 1) for the specified distribution.
+   */
+  public static Object[] universe(Distribution d, int range) {
+    Object[] keys = new Object[range];
+    for (int i = 0; i < range; i++) {
+      keys[i] = d == Distribution.COLLIDING ? (Object) new CollidingKey(i)
+                                            : (Object) Integer.valueOf(i);
+    }
+    return keys;
+  }
+
+  /**
+   * Returns n keys drawn from universe (whose length is the range) according
+   * to the specified distribution.
+   */
+  public static Object[] sequence(Distribution d, Object[] universe, int n,
+                                  long seed) {
+    Random random = new Random(seed);
+    int range = universe.length;
+    double[] cdf = d == Distribution.ZIPFIAN ? zipfCdf(range) : null;
+    Object[] keys = new Object[n];
+    for (int i = 0; i < n; i++) {
+      int index;
+      if (cdf != null) {
+        index = search(cdf, random.nextDouble());
+      } else {
+        index = random.nextInt(range);
+      }
+      keys[i] = universe[index];
+    }
+    return keys;
+  }
+
+  /**
+   * Returns the cumulative distribution of a Zipf distribution with exponent
+   * one over the specified number of indices.
+   */
+  private static double[] zipfCdf(int range) {
+    double[] cdf = new double[range];
+    double sum = 0;
+    for (int i = 0; i < range; i++) {
+      sum += 1.0 / (i + 1);
+      cdf[i] = sum;
+    }
+    for (int i = 0; i < range; i++) {
+      cdf[i] /= sum;
+    }
+    return cdf;
+  }
+
+  /**
+   * Returns the first index whose cumulative probability is at least p.
+   */
+  private static int search(double[] cdf, double p) {
+    int lo = 0;
+    int hi = cdf.length - 1;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (cdf[mid] < p) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+}
@@ -0,0 +1,45 @@
+/* LockedDictionary.java */
+
+package bench;
+
+import dict.*;
+
+/**
+ * LockedDictionary makes any Dictionary thread-safe by synchronizing every
+ * method on one lock.  The benchmarks use it as the baseline for
+ * ConcurrentHashTable.
+ */
+
+class LockedDictionary<K, V> implements Dictionary<K, V> {
+
+  private final Dictionary<K, V> d;
+
+  LockedDictionary(Dictionary<K, V> d) {
+    this.d = d;
+  }
+
+  public synchronized int size() {
+    return d.size();
+  }
+
+  public synchronized boolean isEmpty() {
+    return d.isEmpty();
+  }
+
+  public synchronized Entry<K, V> insert(K key, V value) {
+    return d.insert(key, value);
+  }
+
+  public synchronized Entry<K, V> find(K key) {
+    return d.find(key);
+  }
+
+  public synchronized Entry<K, V> remove(K key) {
+    return d.remove(key);
+  }
+
+  public synchronized void makeEmpty() {
+    d.makeEmpty();
+  }
+
+}
@@ -0,0 +1,256 @@
+/* BoundedCache.java */
+
+package cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import dict.*;
+
+/**
+ * A BoundedCache maps keys to values, holding at most a fixed number of
+ * entries.  Unlike a Dictionary, it holds at most one entry per key: put()
+ * replaces the value of an existing key.  Entries are located through a
+ * HashTableChained; when the cache is full, its EvictionPolicy (LruPolicy or
+ * TinyLfuPolicy) picks the entry to drop.
+ *
+ * If an expiry time is given, an entry expires that long after its value was
+ * last set.  Expired entries are dropped when they are next looked up, or
+ * evicted by the policy like any other entry.
+ *
+ * A BoundedCache is not thread-safe.
+ */
+
+public class BoundedCache<K, V> {
+
+  /**
+   * @param  table maps each key to its node
+   * @param  policy chooses the entries to evict
+   * @param  expireAfterWriteNanos how long a value lives after it was set,
+   *         in nanoseconds; 0 if values never expire
+   */
+  private final HashTableChained<K, CacheNode<K, V>> table;
+  private final EvictionPolicy<K, V> policy;
+  private final long expireAfterWriteNanos;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+
+  /**
+   * Constructs an empty cache whose entries expire the specified time after
+   * their value was last set.
+   * @param policy chooses the entries to evict; its capacity bounds the cache.
+   * @param expireAfterWrite how long a value lives, or 0 if values never
+   *        expire.
+   * @param unit the unit of expireAfterWrite.
+   * @exception IllegalArgumentException if expireAfterWrite is negative.
+   */
+  public BoundedCache(EvictionPolicy<K, V> policy, long expireAfterWrite,
+                      TimeUnit unit) {
+    if (expireAfterWrite < 0) {
+      throw new IllegalArgumentException("Illegal expiry time: "
+                                         + expireAfterWrite);
+    }
+    this.policy = policy;
+    this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+    table = new HashTableChained<K, CacheNode<K, V>>(policy.capacity());
+  }
+
+  /**
+   * Constructs an empty cache whose entries never expire.
+   * @param policy chooses the entries to evict; its capacity bounds the cache.
+   */
+  public BoundedCache(EvictionPolicy<K, V> policy) {
+    this(policy, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns how long a value lives after it was set, in nanoseconds, or 0 if
+   * values never expire.
+   */
+  long expireAfterWriteNanos() {
+    return expireAfterWriteNanos;
+  }
+
+  /**
+   * Returns the current time in nanoseconds.  Can be overridden to supply
+   * another clock.
+   */
+  protected long now() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Returns true if the node's value has expired.
+   */
+  boolean isExpired(CacheNode<K, V> node, long now) {
+    return expireAfterWriteNanos > 0
+      && now - node.writeTime >= expireAfterWriteNanos;
+  }
+
+  /**
+   * Removes a node from the table and the policy.
+   */
+  private void removeNode(CacheNode<K, V> node) {
+    table.remove(node.key);
+    policy.onRemove(node);
+  }
+
+  /**
+   * Returns the number of entries in the cache, including expired entries
+   * that haven't been dropped yet.
+   */
+  public int size() {
+    return table.size();
+  }
+
+  /**
+   * Returns the largest number of entries the cache may hold.
+   */
+  public int capacity() {
+    return policy.capacity();
+  }
+
+  /**
+   * Returns the value associated with a key, or null if the cache has no
+   * live entry for it.
+   * @param key the search key.
+   * @return the key's value, or null.
+   */
+  public V get(K key) {
+    CacheNode<K, V> node = getNode(key);
+    return node == null ? null : node.value;
+  }
+
+  /**
+   * Returns the live node for a key, or null, recording a hit or miss like
+   * get().  A LoadingCache uses the node's write time to refresh it.
+   */
+  CacheNode<K, V> getNode(K key) {
+    Entry<K, CacheNode<K, V>> entry = table.find(key);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    CacheNode<K, V> node = entry.value();
+    if (isExpired(node, now())) {
+      removeNode(node);
+      expirations.increment();
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    policy.onAccess(node);
+    return node;
+  }
+
+  /**
+   * Returns the node for a key, or null, without recording a hit or miss,
+   * telling the policy, or checking expiry.
+   */
+  CacheNode<K, V> peekNode(K key) {
+    Entry<K, CacheNode<K, V>> entry = table.find(key);
+    return entry == null ? null : entry.value();
+  }
+
+  /**
+   * Records a hit that a LoadingCache served without calling getNode().  The
+   * policy is told later, through recordAccess().
+   */
+  void recordHit() {
+    hits.increment();
+  }
+
+  /**
+   * Records a miss that a LoadingCache detected without calling getNode().
+   */
+  void recordMiss() {
+    misses.increment();
+  }
+
+  /**
+   * Tells the policy about an earlier hit on a node, unless the node has
+   * left the cache since.
+   */
+  void recordAccess(CacheNode<K, V> node) {
+    if (peekNode(node.key) == node) {
+      policy.onAccess(node);
+    }
+  }
+
+  /**
+   * Associates a value with a key, replacing any previous value, and evicts
+   * an entry if the cache is over capacity.  The new entry itself may be the
+   * one evicted if the policy judges it less valuable than the others.
+   * @param key the key.
+   * @param value the value.
+   * @exception IllegalArgumentException if key is null.
+   */
+  public void put(K key, V value) {
+    putNode(key, value);
+  }
+
+  /**
+   * Does the work of put(), and returns the node evicted to make room
+   * (possibly the new one), or null if none was.
+   */
+  CacheNode<K, V> putNode(K key, V value) {
+    if (key == null) {
+      throw new IllegalArgumentException("Illegal key: null");
+    }
+    long now = now();
+    Entry<K, CacheNode<K, V>> entry = table.find(key);
+    if (entry != null) {
+      CacheNode<K, V> node = entry.value();
+      node.value = value;
+      node.writeTime = now;
+      policy.onAccess(node);
+      return null;
+    }
+    CacheNode<K, V> node = new CacheNode<K, V>(key, value, now);
+    table.insert(key, node);
+    CacheNode<K, V> victim = policy.onInsert(node);
+    if (victim != null) {
+      removeNode(victim);
+      if (isExpired(victim, now)) {
+        expirations.increment();
+      } else {
+        evictions.increment();
+      }
+    }
+    return victim;
+  }
+
+  /**
+   * Removes the entry for a key, if there is one.
+   * @param key the key.
+   * @return the removed value, or null if the cache had no entry for the key.
+   */
+  public V remove(K key) {
+    Entry<K, CacheNode<K, V>> entry = table.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    policy.onRemove(entry.value());
+    return entry.value().value;
+  }
+
+  /**
+   * Removes every entry from the cache.  Statistics are kept.
+   */
+  public void makeEmpty() {
+    table.makeEmpty();
+    policy.clear();
+  }
+
+  /**
+   * Returns a snapshot of the cache's hit, miss, eviction and expiration
+   * counts.
+   */
+  public CacheStats stats() {
+    return new CacheStats(hits.sum(), misses.sum(), evictions.sum(),
+                          expirations.sum());
+  }
+
+}
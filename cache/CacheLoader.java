@@ -0,0 +1,42 @@
+/* CacheLoader.java */
+
+package cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A CacheLoader computes the values a LoadingCache is missing, usually by
+ * asking a slower backend.  Subclasses implement load(); those whose backend
+ * can answer many keys in one call should also override loadAll(), which a
+ * LoadingCache that batches its loads calls instead.
+ */
+
+public abstract class CacheLoader<K, V> {
+
+  /**
+   * Computes the value of a key.
+   * @param key the key to load.
+   * @return the key's value, or null if it has none.
+   * @exception Exception if the value cannot be computed.
+   */
+  public abstract V load(K key) throws Exception;
+
+  /**
+   * Computes the values of several keys at once.  Keys missing from the
+   * result have no value.  The default implementation calls load() once for
+   * each key.
+   * @param keys the keys to load; no key appears twice.
+   * @return a map from keys to their values.
+   * @exception Exception if the values cannot be computed.
+   */
+  public Map<K, V> loadAll(List<K> keys) throws Exception {
+    Map<K, V> values = new HashMap<K, V>();
+    for (K key : keys) {
+      values.put(key, load(key));
+    }
+    return values;
+  }
+
+}
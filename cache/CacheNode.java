@@ -0,0 +1,43 @@
+/* CacheNode.java */
+
+package cache;
+
+import list.*;
+
+/**
+ * A CacheNode holds one key and value of a BoundedCache, together with the
+ * bookkeeping its EvictionPolicy needs.
+ */
+
+public class CacheNode<K, V> {
+
+  /**
+   * key is the node's key.
+   * value is the node's current value.
+   * writeTime is the time (in the cache's clock) the value was last set.
+   * position is the node's place in the policy's access-order list.
+   * queue identifies which of the policy's lists holds position.
+   * value and writeTime are volatile so that a LoadingCache can read them
+   * without holding its lock.
+   */
+  K key;
+  volatile V value;
+  volatile long writeTime;
+  ListNode<CacheNode<K, V>> position;
+  int queue;
+
+  CacheNode(K key, V value, long writeTime) {
+    this.key = key;
+    this.value = value;
+    this.writeTime = writeTime;
+  }
+
+  public K key() {
+    return key;
+  }
+
+  public V value() {
+    return value;
+  }
+
+}
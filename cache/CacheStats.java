@@ -0,0 +1,59 @@
+/* CacheStats.java */
+
+package cache;
+
+/**
+ * A CacheStats is an immutable snapshot of a BoundedCache's counters.
+ */
+
+public class CacheStats {
+
+  /**
+   * @param  hits number of get() calls that found a live entry
+   * @param  misses number of get() calls that didn't
+   * @param  evictions number of entries dropped to respect the capacity
+   * @param  expirations number of entries dropped because they expired
+   */
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+  private final long expirations;
+
+  CacheStats(long hits, long misses, long evictions, long expirations) {
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.expirations = expirations;
+  }
+
+  public long hits() {
+    return hits;
+  }
+
+  public long misses() {
+    return misses;
+  }
+
+  /**
+   * Returns the fraction of get() calls that found a live entry, or NaN if
+   * there have been none.
+   */
+  public double hitRate() {
+    long requests = hits + misses;
+    return requests == 0 ? Double.NaN : (double) hits / requests;
+  }
+
+  public long evictions() {
+    return evictions;
+  }
+
+  public long expirations() {
+    return expirations;
+  }
+
+  public String toString() {
+    return "CacheStats[hits=" + hits + ", misses=" + misses
+      + ", evictions=" + evictions + ", expirations=" + expirations + "]";
+  }
+
+}
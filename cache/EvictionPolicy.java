@@ -0,0 +1,71 @@
+/* EvictionPolicy.java */
+
+package cache;
+
+/**
+ * An EvictionPolicy decides which entry a BoundedCache drops when it is full.
+ * The cache reports every access, insertion and removal through the hooks
+ * below; LruPolicy and TinyLfuPolicy keep their entries in access-order
+ * DLists, so each report costs O(1).
+ *
+ * A subclass may define its own policy by overriding the hooks.  They are
+ * called only by the cache that owns the policy, one at a time (a
+ * BoundedCache is not thread-safe, and a LoadingCache calls them under its
+ * lock), and must not call back into the cache.  A node is tracked from the
+ * onInsert() that reports it until the onRemove() or clear() that drops it;
+ * onAccess() and onRemove() are called only for tracked nodes, and each
+ * tracked node gets at most one onRemove().  A policy in another package
+ * can't use a node's bookkeeping fields, so it must keep its own record of
+ * where each node is.
+ */
+
+public abstract class EvictionPolicy<K, V> {
+
+  /**
+   * capacity is the largest number of entries the cache may hold.
+   */
+  protected final int capacity;
+
+  /**
+   * @param capacity the largest number of entries the cache may hold.
+   * @exception IllegalArgumentException if capacity is not positive.
+   */
+  protected EvictionPolicy(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Illegal capacity: " + capacity);
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns the largest number of entries the cache may hold.
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Records a hit on, or an update of, a node already in the cache.
+   */
+  protected abstract void onAccess(CacheNode<K, V> node);
+
+  /**
+   * Records that a node has been added to the cache.  If the cache now holds
+   * more than capacity entries, returns the node to evict (possibly the new
+   * one); otherwise returns null.  The returned node is still tracked; the
+   * cache removes it by calling onRemove().
+   */
+  protected abstract CacheNode<K, V> onInsert(CacheNode<K, V> node);
+
+  /**
+   * Records that a node has left the cache, whether removed, expired or
+   * evicted.
+   */
+  protected abstract void onRemove(CacheNode<K, V> node);
+
+  /**
+   * Forgets every node.  No onRemove() calls follow for the nodes dropped.
+   */
+  protected abstract void clear();
+
+}
@@ -0,0 +1,103 @@
+/* FrequencySketch.java */
+
+package cache;
+
+/**
+ * A FrequencySketch estimates how often each key has been seen recently.  It
+ * is a count-min sketch of four rows of 4-bit counters packed sixteen to a
+ * long.  Once the number of recorded events reaches ten times the cache's
+ * capacity, every counter is halved, so old popularity fades.
+ */
+
+class FrequencySketch {
+
+  /**
+   * RESET_MASK clears the bit each counter receives from its neighbour when
+   * a word is shifted right by one.
+   * SEEDS select the counter of a key in each of the four rows.
+   */
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+    0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+
+  /**
+   * @param  table the counters, sixteen per word
+   * @param  counterMask the number of counters minus one
+   * @param  sampleSize the number of events after which counters are halved
+   * @param  additions the number of events since counters were last halved
+   */
+  private final long[] table;
+  private final int counterMask;
+  private final int sampleSize;
+  private int additions;
+
+  /**
+   * Constructs a sketch for a cache of the specified capacity.
+   */
+  FrequencySketch(int capacity) {
+    int words = 1;
+    while (words < (1 << 26) && words * 4 < capacity) {
+      words <<= 1;
+    }
+    table = new long[words];
+    counterMask = words * 16 - 1;
+    sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the index of the counter for a hash code in the specified row.
+   */
+  private int counterIndex(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[row];
+    h ^= h >>> 32;
+    return (int) h & counterMask;
+  }
+
+  /**
+   * Returns the value of the counter with the specified index.
+   */
+  private int counter(int index) {
+    return (int) (table[index >>> 4] >>> ((index & 15) << 2)) & 0xF;
+  }
+
+  /**
+   * Returns the estimated number of recent events for a hash code (at most
+   * 15).
+   */
+  int frequency(int hash) {
+    int min = 15;
+    for (int row = 0; row < 4; row++) {
+      min = Math.min(min, counter(counterIndex(hash, row)));
+    }
+    return min;
+  }
+
+  /**
+   * Records an event for a hash code.
+   */
+  void increment(int hash) {
+    for (int row = 0; row < 4; row++) {
+      int index = counterIndex(hash, row);
+      if (counter(index) < 15) {
+        table[index >>> 4] += 1L << ((index & 15) << 2);
+      }
+    }
+    if (++additions >= sampleSize) {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions /= 2;
+    }
+  }
+
+  /**
+   * Sets every counter to zero.
+   */
+  void clear() {
+    java.util.Arrays.fill(table, 0);
+    additions = 0;
+  }
+
+}
@@ -0,0 +1,18 @@
+/* LoadException.java */
+
+package cache;
+
+/**
+ * A LoadException signals that a LoadingCache could not load a value.  Its
+ * cause is the exception thrown by the loader.
+ */
+
+public class LoadException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  LoadException(Object key, Throwable cause) {
+    super("Failed to load " + key, cause);
+  }
+
+}
@@ -0,0 +1,506 @@
+/* LoadingCache.java */
+
+package cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import dict.*;
+
+/**
+ * A LoadingCache wraps a BoundedCache and fills its misses from a
+ * CacheLoader, so that callers never see a miss.  It is thread-safe.
+ *
+ * Loads are single-flight:  while a key is being loaded, every other thread
+ * that misses on it waits for that load instead of starting its own, so a
+ * hot key that drops out of the cache costs the backend one call, not one
+ * per waiting thread.  Loads in flight are kept in a HashTableChained beside
+ * the cache.
+ *
+ * If batchLoads is set, concurrent misses on different keys are coalesced
+ * into calls to CacheLoader.loadAll().  The first thread to miss loads its
+ * key at once; keys that miss while that call is under way are gathered and
+ * loaded together by the next call, which one of the threads waiting for
+ * them makes, and so on until no misses are waiting.  Each thread makes at
+ * most one call, the one that loads its own key, so no thread waits on
+ * loads of other threads' keys beyond the call under way when it missed.
+ * Batches therefore grow with the load on the backend, and no miss is ever
+ * delayed to wait for company.
+ *
+ * If a refresh time is given, a hit on an entry whose value is older than
+ * that returns the value at once and reloads it on the executor, so that
+ * popular entries are renewed before they expire.  On Java 21 and later, an
+ * executor that starts a virtual thread per task suits loaders that block.
+ *
+ * Hits don't take the cache's lock.  Every node in the cache is also kept in
+ * a ConcurrentHashTable index, whose lookups never block, and a hit is
+ * recorded in a buffer of READ_BUFFER_SIZE slots that is replayed to the
+ * eviction policy under the lock, either by the hit that fills it or by the
+ * next miss, put() or load.  So readers of a hot key don't serialize:  a hit
+ * costs a lock-free lookup, an atomic increment and, once every
+ * READ_BUFFER_SIZE hits, a drain under the lock.  The price is a second
+ * table holding one entry per cached key, and a policy that sees a sample
+ * of the hits:  hits that arrive while the buffer is full are not replayed
+ * (they are still counted in the statistics), and the policy learns of each
+ * hit late.  Misses, loads, put(), invalidate() and makeEmpty() take the
+ * lock as before.
+ *
+ * The wrapped BoundedCache must not be used except through this cache.
+ */
+
+public class LoadingCache<K, V> {
+
+  /**
+   * READ_BUFFER_SIZE is the number of hits recorded before they are
+   * replayed to the eviction policy.
+   */
+  static final int READ_BUFFER_SIZE = 128;
+
+  /**
+   * @param  cache holds the loaded values
+   * @param  loader computes missing values
+   * @param  batchLoads true if concurrent misses are loaded together
+   * @param  refreshAfterWriteNanos how long after it was set a value is
+   *         reloaded, in nanoseconds; 0 if values are never refreshed
+   * @param  executor runs refreshes
+   * @param  loads maps each key being loaded or refreshed to its result
+   * @param  pending the misses waiting for the next batch
+   * @param  batching true while some thread is loading a batch
+   * @param  index maps each key in the cache to its node, for hits that
+   *         don't take the lock
+   * @param  reads the hits not yet replayed to the policy
+   * @param  readCount number of slots of reads claimed since the last drain
+   */
+  private final BoundedCache<K, V> cache;
+  private final CacheLoader<K, V> loader;
+  private final boolean batchLoads;
+  private final long refreshAfterWriteNanos;
+  private final Executor executor;
+  private final HashTableChained<K, CompletableFuture<V>> loads;
+  private ArrayList<Entry<K, CompletableFuture<V>>> pending =
+    new ArrayList<Entry<K, CompletableFuture<V>>>();
+  private boolean batching;
+  private final ConcurrentHashTable<K, CacheNode<K, V>> index =
+    new ConcurrentHashTable<K, CacheNode<K, V>>();
+  private final AtomicReferenceArray<CacheNode<K, V>> reads =
+    new AtomicReferenceArray<CacheNode<K, V>>(READ_BUFFER_SIZE);
+  private final AtomicInteger readCount = new AtomicInteger();
+
+  /**
+   * Constructs a loading cache that refreshes values the specified time
+   * after they were set.
+   * @param cache holds the loaded values.
+   * @param loader computes missing values.
+   * @param batchLoads true if concurrent misses should be coalesced into
+   *        calls to loader.loadAll().
+   * @param refreshAfterWrite how long after it was set a value is reloaded,
+   *        or 0 if values are never refreshed.  If the cache's values
+   *        expire, it must be less than their expiry time.
+   * @param unit the unit of refreshAfterWrite.
+   * @param executor runs refreshes.
+   * @exception IllegalArgumentException if refreshAfterWrite is negative, or
+   *            positive with no executor, or not less than the cache's
+   *            expiry time.
+   */
+  public LoadingCache(BoundedCache<K, V> cache, CacheLoader<K, V> loader,
+                      boolean batchLoads, long refreshAfterWrite,
+                      TimeUnit unit, Executor executor) {
+    if (refreshAfterWrite < 0) {
+      throw new IllegalArgumentException("Illegal refresh time: "
+                                         + refreshAfterWrite);
+    }
+    if (refreshAfterWrite > 0 && executor == null) {
+      throw new IllegalArgumentException("Illegal executor: null");
+    }
+    long refreshNanos = unit.toNanos(refreshAfterWrite);
+    long expireNanos = cache.expireAfterWriteNanos();
+    if (refreshNanos > 0 && expireNanos > 0 && refreshNanos >= expireNanos) {
+      throw new IllegalArgumentException("Illegal refresh time: "
+                                         + refreshAfterWrite
+                                         + " is not less than expiry time");
+    }
+    this.cache = cache;
+    this.loader = loader;
+    this.batchLoads = batchLoads;
+    this.refreshAfterWriteNanos = refreshNanos;
+    this.executor = executor;
+    loads = new HashTableChained<K, CompletableFuture<V>>();
+  }
+
+  /**
+   * Constructs a loading cache that never refreshes values.
+   * @param cache holds the loaded values.
+   * @param loader computes missing values.
+   * @param batchLoads true if concurrent misses should be coalesced into
+   *        calls to loader.loadAll().
+   */
+  public LoadingCache(BoundedCache<K, V> cache, CacheLoader<K, V> loader,
+                      boolean batchLoads) {
+    this(cache, loader, batchLoads, 0, TimeUnit.NANOSECONDS, null);
+  }
+
+  /**
+   * Returns the value of a key, loading it with the cache's loader if the
+   * cache has no live entry for it.
+   * @param key the search key.
+   * @return the key's value, or null if the loader found none.
+   * @exception LoadException if the loader failed.
+   * @exception IllegalArgumentException if key is null.
+   */
+  public V get(K key) {
+    return get(key, null);
+  }
+
+  /**
+   * Returns the value of a key, computing it with the specified function if
+   * the cache has no live entry for it.  If the key is already being
+   * loaded, waits for that load instead.  A null result is returned but not
+   * cached.
+   * @param key the search key.
+   * @param function computes the key's value.
+   * @return the key's value.
+   * @exception LoadException if the function failed.
+   */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+    if (function == null) {
+      throw new IllegalArgumentException("Illegal function: null");
+    }
+    return get(key, function);
+  }
+
+  /**
+   * Returns the value of a key if the cache has a live entry for it, without
+   * loading it.
+   * @param key the search key.
+   * @return the key's value, or null.
+   * @exception IllegalArgumentException if key is null.
+   */
+  public V getIfPresent(K key) {
+    CacheNode<K, V> node = lookup(key);
+    if (node == null) {
+      synchronized (this) {
+        node = getNode(key);
+      }
+    }
+    return node == null ? null : node.value;
+  }
+
+  /**
+   * Associates a value with a key, replacing any previous value.  A load of
+   * the key already under way still returns its result to its callers, but
+   * no longer caches it.
+   * @param key the key.
+   * @param value the value.
+   */
+  public synchronized void put(K key, V value) {
+    loads.remove(key);
+    store(key, value);
+  }
+
+  /**
+   * Removes the entry for a key, if there is one.  A load of the key already
+   * under way no longer caches its result.
+   * @param key the key.
+   * @return the removed value, or null if the cache had no entry for the key.
+   */
+  public synchronized V invalidate(K key) {
+    loads.remove(key);
+    index.remove(key);
+    return cache.remove(key);
+  }
+
+  /**
+   * Removes every entry from the cache.  Loads already under way no longer
+   * cache their results.
+   */
+  public synchronized void makeEmpty() {
+    loads.makeEmpty();
+    index.makeEmpty();
+    cache.makeEmpty();
+  }
+
+  /**
+   * Returns the number of entries in the cache.
+   */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  /**
+   * Returns a snapshot of the cache's statistics.  Every miss counted
+   * started or joined a load.
+   */
+  public synchronized CacheStats stats() {
+    return cache.stats();
+  }
+
+  /**
+   * Looks a key up without taking the lock.  If the cache holds a live
+   * value for it, records a hit and returns its node; otherwise returns
+   * null, and the caller must look again under the lock.
+   */
+  private CacheNode<K, V> lookup(K key) {
+    Entry<K, CacheNode<K, V>> entry = index.find(key);
+    if (entry == null) {
+      return null;
+    }
+    CacheNode<K, V> node = entry.value();
+    if (cache.isExpired(node, cache.now())) {
+      return null;
+    }
+    cache.recordHit();
+    int slot = readCount.getAndIncrement();
+    if (slot < READ_BUFFER_SIZE) {
+      reads.lazySet(slot, node);
+    }
+    if (slot == READ_BUFFER_SIZE - 1) {
+      synchronized (this) {
+        drainReads();
+      }
+    }
+    return node;
+  }
+
+  /**
+   * Replays the buffered hits to the policy and empties the buffer.  Must
+   * be called with the cache locked.  Slots claimed but not yet filled are
+   * skipped, and may be overwritten before the next drain.
+   */
+  private void drainReads() {
+    int n = Math.min(readCount.get(), READ_BUFFER_SIZE);
+    for (int i = 0; i < n; i++) {
+      CacheNode<K, V> node = reads.getAndSet(i, null);
+      if (node != null) {
+        cache.recordAccess(node);
+      }
+    }
+    readCount.set(0);
+  }
+
+  /**
+   * Looks a key up in the cache, recording a hit or miss, and brings the
+   * index up to date with the result.  Must be called with the cache locked.
+   */
+  private CacheNode<K, V> getNode(K key) {
+    drainReads();
+    CacheNode<K, V> node = cache.getNode(key);
+    if (node == null) {
+      index.remove(key);
+    } else if (index.find(key) == null) {
+      index.insert(key, node);
+    }
+    return node;
+  }
+
+  /**
+   * Puts a value in the cache and brings the index up to date, dropping the
+   * node evicted, if any.  Must be called with the cache locked.
+   */
+  private void store(K key, V value) {
+    drainReads();
+    CacheNode<K, V> victim = cache.putNode(key, value);
+    if (victim != null) {
+      index.remove(victim.key);
+    }
+    CacheNode<K, V> node = cache.peekNode(key);
+    if (node != null && index.find(key) == null) {
+      index.insert(key, node);
+    }
+  }
+
+  /**
+   * Returns the value of a hit node, first starting a refresh if the value
+   * is older than the refresh time.
+   */
+  private V hit(K key, CacheNode<K, V> node) {
+    V value = node.value;
+    if (refreshAfterWriteNanos > 0
+        && cache.now() - node.writeTime >= refreshAfterWriteNanos) {
+      synchronized (this) {
+        refresh(key);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Returns the value of a key, loading it with the specified function, or
+   * with the loader if function is null.
+   */
+  private V get(K key, Function<? super K, ? extends V> function) {
+    CacheNode<K, V> node = lookup(key);
+    if (node != null) {
+      return hit(key, node);
+    }
+    CompletableFuture<V> load;
+    Entry<K, CompletableFuture<V>> mine = null;
+    boolean batched = false;
+    boolean leader = false;
+    synchronized (this) {
+      node = getNode(key);
+      if (node != null) {
+        return hit(key, node);
+      }
+      Entry<K, CompletableFuture<V>> entry = loads.find(key);
+      if (entry != null) {
+        load = entry.value();
+      } else {
+        load = new CompletableFuture<V>();
+        entry = loads.insert(key, load);
+        if (function == null && batchLoads) {
+          pending.add(entry);
+          batched = true;
+          leader = !batching;
+          batching = true;
+        } else {
+          mine = entry;
+        }
+      }
+    }
+    if (mine != null) {
+      V value = null;
+      Throwable failure = null;
+      try {
+        value = function == null ? loader.load(key) : function.apply(key);
+      } catch (Throwable t) {
+        failure = t;
+      }
+      complete(mine, value, failure);
+    } else if (batched && (leader || awaitLeadership(load))) {
+      loadBatch();
+    }
+    try {
+      return load.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new LoadException(key, cause);
+    }
+  }
+
+  /**
+   * Starts reloading a key on the executor, unless it is already being
+   * loaded.  Must be called with the cache locked.
+   */
+  private void refresh(final K key) {
+    if (loads.find(key) != null) {
+      return;
+    }
+    final Entry<K, CompletableFuture<V>> entry =
+      loads.insert(key, new CompletableFuture<V>());
+    try {
+      executor.execute(new Runnable() {
+          public void run() {
+            V value = null;
+            Throwable failure = null;
+            try {
+              value = loader.load(key);
+            } catch (Throwable t) {
+              failure = t;
+            }
+            complete(entry, value, failure);
+          }
+        });
+    } catch (RejectedExecutionException e) {
+      loads.remove(key);
+      entry.value().completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Waits until either a load is done or no thread is loading a batch, and
+   * in the second case makes the caller the thread that loads the next
+   * batch, which holds the caller's key.
+   * @return true if the caller must load the next batch.
+   */
+  private synchronized boolean awaitLeadership(CompletableFuture<V> load) {
+    boolean interrupted = false;
+    while (batching && !load.isDone()) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (load.isDone()) {
+      return false;
+    }
+    batching = true;
+    return true;
+  }
+
+  /**
+   * Loads the pending misses in one batch, then lets another waiting thread
+   * load the misses that arrived meanwhile.  Only one thread at a time loads
+   * a batch.
+   */
+  private void loadBatch() {
+    ArrayList<Entry<K, CompletableFuture<V>>> batch;
+    synchronized (this) {
+      batch = pending;
+      pending = new ArrayList<Entry<K, CompletableFuture<V>>>();
+    }
+    try {
+      List<K> keys = new ArrayList<K>(batch.size());
+      for (Entry<K, CompletableFuture<V>> entry : batch) {
+        keys.add(entry.key());
+      }
+      Map<K, V> values = null;
+      Throwable failure = null;
+      try {
+        values = loader.loadAll(Collections.unmodifiableList(keys));
+      } catch (Throwable t) {
+        failure = t;
+      }
+      for (Entry<K, CompletableFuture<V>> entry : batch) {
+        V value = values == null ? null : values.get(entry.key());
+        complete(entry, value, failure);
+      }
+    } finally {
+      synchronized (this) {
+        batching = false;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Caches the result of a load, unless the load was superseded by put(),
+   * invalidate() or makeEmpty(), and hands it to the waiting threads.
+   * Failures and null values are not cached.
+   */
+  private void complete(Entry<K, CompletableFuture<V>> entry, V value,
+                        Throwable failure) {
+    K key = entry.key();
+    synchronized (this) {
+      Entry<K, CompletableFuture<V>> current = loads.find(key);
+      if (current != null && current.value() == entry.value()) {
+        loads.remove(key);
+        if (failure == null && value != null) {
+          store(key, value);
+        }
+      }
+    }
+    if (failure == null) {
+      entry.value().complete(value);
+    } else {
+      entry.value().completeExceptionally(failure);
+    }
+  }
+
+}
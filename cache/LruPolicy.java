@@ -0,0 +1,53 @@
+/* LruPolicy.java */
+
+package cache;
+
+import list.*;
+
+/**
+ * LruPolicy evicts the least recently used entry.  Entries are kept in one
+ * DList, most recently used at the front.
+ */
+
+public class LruPolicy<K, V> extends EvictionPolicy<K, V> {
+
+  private DList<CacheNode<K, V>> order = new DList<CacheNode<K, V>>();
+
+  /**
+   * @param capacity the largest number of entries the cache may hold.
+   */
+  public LruPolicy(int capacity) {
+    super(capacity);
+  }
+
+  protected void onAccess(CacheNode<K, V> node) {
+    try {
+      order.moveToFront(node.position);
+    } catch (InvalidNodeException e) {}
+  }
+
+  protected CacheNode<K, V> onInsert(CacheNode<K, V> node) {
+    order.insertFront(node);
+    node.position = order.front();
+    if (order.length() <= capacity) {
+      return null;
+    }
+    try {
+      return order.back().getItem();
+    } catch (InvalidNodeException e) {
+      return null;
+    }
+  }
+
+  protected void onRemove(CacheNode<K, V> node) {
+    try {
+      node.position.remove();
+    } catch (InvalidNodeException e) {}
+    node.position = null;
+  }
+
+  protected void clear() {
+    order = new DList<CacheNode<K, V>>();
+  }
+
+}
@@ -0,0 +1,129 @@
+/* TinyLfuPolicy.java */
+
+package cache;
+
+import list.*;
+
+/**
+ * TinyLfuPolicy implements W-TinyLFU.  New entries enter a small LRU window
+ * (1% of the capacity).  An entry pushed out of the window joins the main
+ * area only if the FrequencySketch says it has been used more often than the
+ * entry the main area would otherwise evict, so a one-off scan can't flush
+ * out popular entries.
+ *
+ * The main area is a segmented LRU: entries arrive on probation and move to
+ * the protected segment (80% of the main area) when they are hit again;
+ * entries overflowing the protected segment drop back to probation.
+ */
+
+public class TinyLfuPolicy<K, V> extends EvictionPolicy<K, V> {
+
+  /**
+   * WINDOW, PROBATION and PROTECTED identify the list holding a node.
+   */
+  static final int WINDOW = 0;
+  static final int PROBATION = 1;
+  static final int PROTECTED = 2;
+
+  /**
+   * @param  windowMax the largest number of entries in the window
+   * @param  mainMax the largest number of entries in the main area
+   * @param  protectedMax the largest number of entries in the protected
+   *         segment
+   * @param  window the window, most recently used first
+   * @param  probation the probation segment, most recently used first
+   * @param  hot the protected segment, most recently used first
+   * @param  sketch the recent frequency of every key
+   */
+  private final int windowMax;
+  private final int mainMax;
+  private final int protectedMax;
+  private DList<CacheNode<K, V>> window = new DList<CacheNode<K, V>>();
+  private DList<CacheNode<K, V>> probation = new DList<CacheNode<K, V>>();
+  private DList<CacheNode<K, V>> hot = new DList<CacheNode<K, V>>();
+  private final FrequencySketch sketch;
+
+  /**
+   * @param capacity the largest number of entries the cache may hold.
+   */
+  public TinyLfuPolicy(int capacity) {
+    super(capacity);
+    windowMax = Math.max(1, capacity / 100);
+    mainMax = capacity - windowMax;
+    protectedMax = mainMax * 8 / 10;
+    sketch = new FrequencySketch(capacity);
+  }
+
+  /**
+   * Moves a node to the front of the specified list.
+   */
+  private void move(CacheNode<K, V> node, DList<CacheNode<K, V>> to,
+                    int queue) throws InvalidNodeException {
+    node.position.remove();
+    to.insertFront(node);
+    node.position = to.front();
+    node.queue = queue;
+  }
+
+  protected void onAccess(CacheNode<K, V> node) {
+    sketch.increment(node.key.hashCode());
+    try {
+      if (node.queue == WINDOW) {
+        window.moveToFront(node.position);
+      } else if (node.queue == PROBATION) {
+        move(node, hot, PROTECTED);
+        if (hot.length() > protectedMax) {
+          move(hot.back().getItem(), probation, PROBATION);
+        }
+      } else {
+        hot.moveToFront(node.position);
+      }
+    } catch (InvalidNodeException e) {}
+  }
+
+  protected CacheNode<K, V> onInsert(CacheNode<K, V> node) {
+    sketch.increment(node.key.hashCode());
+    window.insertFront(node);
+    node.position = window.front();
+    node.queue = WINDOW;
+    if (window.length() <= windowMax) {
+      return null;
+    }
+    try {
+      CacheNode<K, V> candidate = window.back().getItem();
+      move(candidate, probation, PROBATION);
+      if (probation.length() + hot.length() <= mainMax) {
+        return null;
+      }
+      CacheNode<K, V> victim = probation.back().getItem();
+      if (victim == candidate && !hot.isEmpty()) {
+        victim = hot.back().getItem();
+      }
+      if (victim == candidate) {
+        return candidate;
+      }
+      if (sketch.frequency(candidate.key.hashCode())
+          > sketch.frequency(victim.key.hashCode())) {
+        return victim;
+      }
+      return candidate;
+    } catch (InvalidNodeException e) {
+      return null;
+    }
+  }
+
+  protected void onRemove(CacheNode<K, V> node) {
+    try {
+      node.position.remove();
+    } catch (InvalidNodeException e) {}
+    node.position = null;
+  }
+
+  protected void clear() {
+    window = new DList<CacheNode<K, V>>();
+    probation = new DList<CacheNode<K, V>>();
+    hot = new DList<CacheNode<K, V>>();
+    sketch.clear();
+  }
+
+}
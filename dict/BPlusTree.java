@@ -0,0 +1,625 @@
+/* BPlusTree.java */
+
+package dict;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * BPlusTree implements a SortedDictionary as a B+-tree.  Every entry lives
+ * in a leaf; the leaves are linked in key order, so a range scan finds its
+ * first entry in O(log n) time and then walks the leaves, touching only the
+ * entries it returns.  Each node keeps its keys in one array of up to ORDER
+ * keys, so a search reads a few contiguous arrays instead of chasing one
+ * pointer per comparison.
+ *
+ * Keys are ordered by a Comparator, or by their compareTo() method if none
+ * is given.  Entries with equal keys are kept in insertion order, and may
+ * span several leaves; find() and remove() use the earliest.
+ *
+ * Leaves and internal nodes other than the root hold at least ORDER / 2
+ * keys.  A node that grows past ORDER keys is split in two, and a node that
+ * falls below ORDER / 2 borrows a key from a sibling or merges with one.
+ *
+ * Keys may not be null.  The tree is not safe for use by several threads at
+ * once.
+ */
+
+public class BPlusTree<K, V> implements SortedDictionary<K, V> {
+
+  /**
+   * ORDER is the largest number of keys in a node.
+   * MIN is the smallest number of keys in a node other than the root.
+   */
+  private static final int ORDER = 64;
+  private static final int MIN = ORDER / 2;
+
+  /**
+   * A Node is a node of the tree.  keys holds size keys in sorted order.
+   */
+  abstract static class Node<K, V> {
+    final Object[] keys = new Object[ORDER + 1];
+    int size;
+  }
+
+  /**
+   * A Leaf holds size entries, entries[i] having key keys[i].  prev and
+   * next link the leaves in key order.
+   */
+  static final class Leaf<K, V> extends Node<K, V> {
+    @SuppressWarnings("unchecked")
+    final Entry<K, V>[] entries = (Entry<K, V>[]) new Entry<?, ?>[ORDER + 1];
+    Leaf<K, V> prev;
+    Leaf<K, V> next;
+  }
+
+  /**
+   * An Inner node has size + 1 children.  Every key in children[i] is at
+   * least keys[i - 1] and at most keys[i].
+   */
+  static final class Inner<K, V> extends Node<K, V> {
+    @SuppressWarnings("unchecked")
+    final Node<K, V>[] children = (Node<K, V>[]) new Node<?, ?>[ORDER + 2];
+  }
+
+  /**
+   * @param  comparator orders the keys, or null for their natural order
+   * @param  root the root node
+   * @param  size number of entries in the tree
+   * @param  splitKey the separator produced by the last split
+   */
+  private final Comparator<? super K> comparator;
+  private Node<K, V> root;
+  private int size;
+  private Object splitKey;
+
+  /**
+   * Constructs an empty tree whose keys are ordered by a Comparator.
+   * @param comparator orders the keys.
+   */
+  public BPlusTree(Comparator<? super K> comparator) {
+    this.comparator = comparator;
+    root = new Leaf<K, V>();
+  }
+
+  /**
+   * Constructs an empty tree whose keys are ordered by their compareTo()
+   * method.
+   */
+  public BPlusTree() {
+    this(null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private int compare(Object a, Object b) {
+    if (comparator != null) {
+      return comparator.compare((K) a, (K) b);
+    }
+    return ((Comparable<Object>) a).compareTo(b);
+  }
+
+  /**
+   * Returns the index of the first of the n keys that is at least key.
+   */
+  private int lowerBound(Object[] keys, int n, Object key) {
+    int lo = 0;
+    int hi = n;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (compare(keys[mid], key) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Returns the index of the first of the n keys that is greater than key.
+   */
+  private int upperBound(Object[] keys, int n, Object key) {
+    int lo = 0;
+    int hi = n;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (compare(keys[mid], key) <= 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Creates a new Entry object referencing the input key and associated
+   * value, and inserts the entry after any entries with an equal key.
+   * Returns a reference to the new entry.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    if (key == null) {
+      throw new IllegalArgumentException("Illegal key: null");
+    }
+    Entry<K, V> entry = new Entry<K, V>();
+    entry.key = key;
+    entry.value = value;
+    Node<K, V> right = insert(root, key, entry);
+    if (right != null) {
+      Inner<K, V> newRoot = new Inner<K, V>();
+      newRoot.keys[0] = splitKey;
+      newRoot.children[0] = root;
+      newRoot.children[1] = right;
+      newRoot.size = 1;
+      root = newRoot;
+    }
+    splitKey = null;
+    size++;
+    return entry;
+  }
+
+  /**
+   * Inserts an entry into the subtree rooted at node.  If node splits,
+   * returns the new right half and sets splitKey; otherwise returns null.
+   */
+  private Node<K, V> insert(Node<K, V> node, K key, Entry<K, V> entry) {
+    int i = upperBound(node.keys, node.size, key);
+    if (node instanceof Leaf) {
+      Leaf<K, V> leaf = (Leaf<K, V>) node;
+      System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.size - i);
+      System.arraycopy(leaf.entries, i, leaf.entries, i + 1, leaf.size - i);
+      leaf.keys[i] = key;
+      leaf.entries[i] = entry;
+      leaf.size++;
+      return leaf.size > ORDER ? splitLeaf(leaf) : null;
+    }
+    Inner<K, V> inner = (Inner<K, V>) node;
+    Node<K, V> right = insert(inner.children[i], key, entry);
+    if (right == null) {
+      return null;
+    }
+    System.arraycopy(inner.keys, i, inner.keys, i + 1, inner.size - i);
+    System.arraycopy(inner.children, i + 1, inner.children, i + 2,
+                     inner.size - i);
+    inner.keys[i] = splitKey;
+    inner.children[i + 1] = right;
+    inner.size++;
+    return inner.size > ORDER ? splitInner(inner) : null;
+  }
+
+  private Leaf<K, V> splitLeaf(Leaf<K, V> leaf) {
+    Leaf<K, V> right = new Leaf<K, V>();
+    int mid = leaf.size / 2;
+    right.size = leaf.size - mid;
+    System.arraycopy(leaf.keys, mid, right.keys, 0, right.size);
+    System.arraycopy(leaf.entries, mid, right.entries, 0, right.size);
+    clear(leaf.keys, mid, leaf.size);
+    clear(leaf.entries, mid, leaf.size);
+    leaf.size = mid;
+    right.next = leaf.next;
+    right.prev = leaf;
+    if (leaf.next != null) {
+      leaf.next.prev = right;
+    }
+    leaf.next = right;
+    splitKey = right.keys[0];
+    return right;
+  }
+
+  private Inner<K, V> splitInner(Inner<K, V> inner) {
+    Inner<K, V> right = new Inner<K, V>();
+    int mid = inner.size / 2;
+    splitKey = inner.keys[mid];
+    right.size = inner.size - mid - 1;
+    System.arraycopy(inner.keys, mid + 1, right.keys, 0, right.size);
+    System.arraycopy(inner.children, mid + 1, right.children, 0,
+                     right.size + 1);
+    clear(inner.keys, mid, inner.size);
+    clear(inner.children, mid + 1, inner.size + 1);
+    inner.size = mid;
+    return right;
+  }
+
+  private static void clear(Object[] a, int from, int to) {
+    for (int i = from; i < to; i++) {
+      a[i] = null;
+    }
+  }
+
+  /**
+   * Returns the leaf holding the first entry whose key is at least key (or
+   * greater than key, if strict), and sets index to its position.  If there
+   * is no such entry, returns null.
+   */
+  private Leaf<K, V> seek(Object key, boolean strict, int[] index) {
+    Node<K, V> node = root;
+    while (node instanceof Inner) {
+      int i = strict ? upperBound(node.keys, node.size, key)
+                     : lowerBound(node.keys, node.size, key);
+      node = ((Inner<K, V>) node).children[i];
+    }
+    Leaf<K, V> leaf = (Leaf<K, V>) node;
+    int i = strict ? upperBound(leaf.keys, leaf.size, key)
+                   : lowerBound(leaf.keys, leaf.size, key);
+    while (leaf != null && i == leaf.size) {
+      leaf = leaf.next;
+      i = 0;
+    }
+    index[0] = i;
+    return leaf;
+  }
+
+  /**
+   * Returns the entry before the one at index i of a leaf (or the last
+   * entry, if leaf is null), or null if there is none.
+   */
+  private Entry<K, V> before(Leaf<K, V> leaf, int i) {
+    if (leaf == null) {
+      return last();
+    }
+    if (i > 0) {
+      return leaf.entries[i - 1];
+    }
+    Leaf<K, V> prev = leaf.prev;
+    return prev == null ? null : prev.entries[prev.size - 1];
+  }
+
+  /**
+   * Searches for an entry with the specified key.  If several entries have
+   * the specified key, returns the earliest inserted.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   */
+  public Entry<K, V> find(K key) {
+    Entry<K, V> entry = ceiling(key);
+    return entry != null && compare(entry.key, key) == 0 ? entry : null;
+  }
+
+  /**
+   * Removes an entry with the specified key.  If several entries have the
+   * specified key, removes the earliest inserted.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *          no entry contains the specified key.
+   */
+  public Entry<K, V> remove(K key) {
+    Entry<K, V> entry = remove(root, key);
+    if (entry != null) {
+      size--;
+      if (root instanceof Inner && root.size == 0) {
+        root = ((Inner<K, V>) root).children[0];
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Removes the earliest entry with the specified key from the subtree
+   * rooted at node, and restores the size of any child it leaves too small.
+   */
+  private Entry<K, V> remove(Node<K, V> node, K key) {
+    int start = lowerBound(node.keys, node.size, key);
+    if (node instanceof Leaf) {
+      Leaf<K, V> leaf = (Leaf<K, V>) node;
+      if (start == leaf.size || compare(leaf.keys[start], key) != 0) {
+        return null;
+      }
+      Entry<K, V> entry = leaf.entries[start];
+      System.arraycopy(leaf.keys, start + 1, leaf.keys, start,
+                       leaf.size - start - 1);
+      System.arraycopy(leaf.entries, start + 1, leaf.entries, start,
+                       leaf.size - start - 1);
+      leaf.size--;
+      leaf.keys[leaf.size] = null;
+      leaf.entries[leaf.size] = null;
+      return entry;
+    }
+    Inner<K, V> inner = (Inner<K, V>) node;
+    // A later child can hold the key only if its lower separator equals it.
+    for (int i = start; i <= inner.size; i++) {
+      if (i > start && compare(inner.keys[i - 1], key) != 0) {
+        break;
+      }
+      Entry<K, V> entry = remove(inner.children[i], key);
+      if (entry != null) {
+        if (inner.children[i].size < MIN) {
+          rebalance(inner, i);
+        }
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Brings children[i] of parent back up to MIN keys by borrowing from or
+   * merging with a sibling.
+   */
+  private void rebalance(Inner<K, V> parent, int i) {
+    if (i > 0 && parent.children[i - 1].size > MIN) {
+      borrowFromLeft(parent, i);
+    } else if (i < parent.size && parent.children[i + 1].size > MIN) {
+      borrowFromRight(parent, i);
+    } else if (i > 0) {
+      merge(parent, i - 1);
+    } else if (i < parent.size) {
+      merge(parent, i);
+    }
+  }
+
+  private void borrowFromLeft(Inner<K, V> parent, int i) {
+    Node<K, V> child = parent.children[i];
+    Node<K, V> left = parent.children[i - 1];
+    System.arraycopy(child.keys, 0, child.keys, 1, child.size);
+    if (child instanceof Leaf) {
+      Leaf<K, V> c = (Leaf<K, V>) child;
+      Leaf<K, V> l = (Leaf<K, V>) left;
+      System.arraycopy(c.entries, 0, c.entries, 1, c.size);
+      c.keys[0] = l.keys[l.size - 1];
+      c.entries[0] = l.entries[l.size - 1];
+      l.entries[l.size - 1] = null;
+      parent.keys[i - 1] = c.keys[0];
+    } else {
+      Inner<K, V> c = (Inner<K, V>) child;
+      Inner<K, V> l = (Inner<K, V>) left;
+      System.arraycopy(c.children, 0, c.children, 1, c.size + 1);
+      c.keys[0] = parent.keys[i - 1];
+      c.children[0] = l.children[l.size];
+      l.children[l.size] = null;
+      parent.keys[i - 1] = l.keys[l.size - 1];
+    }
+    left.keys[left.size - 1] = null;
+    left.size--;
+    child.size++;
+  }
+
+  private void borrowFromRight(Inner<K, V> parent, int i) {
+    Node<K, V> child = parent.children[i];
+    Node<K, V> right = parent.children[i + 1];
+    if (child instanceof Leaf) {
+      Leaf<K, V> c = (Leaf<K, V>) child;
+      Leaf<K, V> r = (Leaf<K, V>) right;
+      c.keys[c.size] = r.keys[0];
+      c.entries[c.size] = r.entries[0];
+      System.arraycopy(r.entries, 1, r.entries, 0, r.size - 1);
+      r.entries[r.size - 1] = null;
+      System.arraycopy(r.keys, 1, r.keys, 0, r.size - 1);
+      parent.keys[i] = r.keys[0];
+    } else {
+      Inner<K, V> c = (Inner<K, V>) child;
+      Inner<K, V> r = (Inner<K, V>) right;
+      c.keys[c.size] = parent.keys[i];
+      c.children[c.size + 1] = r.children[0];
+      parent.keys[i] = r.keys[0];
+      System.arraycopy(r.keys, 1, r.keys, 0, r.size - 1);
+      System.arraycopy(r.children, 1, r.children, 0, r.size);
+      r.children[r.size] = null;
+    }
+    right.keys[right.size - 1] = null;
+    right.size--;
+    child.size++;
+  }
+
+  /**
+   * Merges children[j + 1] of parent into children[j].
+   */
+  private void merge(Inner<K, V> parent, int j) {
+    Node<K, V> left = parent.children[j];
+    Node<K, V> right = parent.children[j + 1];
+    if (left instanceof Leaf) {
+      Leaf<K, V> l = (Leaf<K, V>) left;
+      Leaf<K, V> r = (Leaf<K, V>) right;
+      System.arraycopy(r.keys, 0, l.keys, l.size, r.size);
+      System.arraycopy(r.entries, 0, l.entries, l.size, r.size);
+      l.size += r.size;
+      l.next = r.next;
+      if (r.next != null) {
+        r.next.prev = l;
+      }
+    } else {
+      Inner<K, V> l = (Inner<K, V>) left;
+      Inner<K, V> r = (Inner<K, V>) right;
+      l.keys[l.size] = parent.keys[j];
+      System.arraycopy(r.keys, 0, l.keys, l.size + 1, r.size);
+      System.arraycopy(r.children, 0, l.children, l.size + 1, r.size + 1);
+      l.size += r.size + 1;
+    }
+    System.arraycopy(parent.keys, j + 1, parent.keys, j, parent.size - j - 1);
+    System.arraycopy(parent.children, j + 2, parent.children, j + 1,
+                     parent.size - j - 1);
+    parent.size--;
+    parent.keys[parent.size] = null;
+    parent.children[parent.size + 1] = null;
+  }
+
+  /**
+   * Removes all entries from the dictionary.
+   */
+  public void makeEmpty() {
+    root = new Leaf<K, V>();
+    size = 0;
+  }
+
+  private Leaf<K, V> firstLeaf() {
+    Node<K, V> node = root;
+    while (node instanceof Inner) {
+      node = ((Inner<K, V>) node).children[0];
+    }
+    return (Leaf<K, V>) node;
+  }
+
+  /**
+   * Returns an entry with the least key, or null if the dictionary is empty.
+   */
+  public Entry<K, V> first() {
+    Leaf<K, V> leaf = firstLeaf();
+    return leaf.size == 0 ? null : leaf.entries[0];
+  }
+
+  /**
+   * Returns an entry with the greatest key, or null if the dictionary is
+   * empty.
+   */
+  public Entry<K, V> last() {
+    Node<K, V> node = root;
+    while (node instanceof Inner) {
+      node = ((Inner<K, V>) node).children[node.size];
+    }
+    Leaf<K, V> leaf = (Leaf<K, V>) node;
+    return leaf.size == 0 ? null : leaf.entries[leaf.size - 1];
+  }
+
+  /**
+   * Returns the latest inserted of the entries with the greatest key less
+   * than or equal to the specified key, or null if there is none.
+   */
+  public Entry<K, V> floor(K key) {
+    int[] index = new int[1];
+    return before(seek(key, true, index), index[0]);
+  }
+
+  /**
+   * Returns the earliest inserted of the entries with the least key greater
+   * than or equal to the specified key, or null if there is none.
+   */
+  public Entry<K, V> ceiling(K key) {
+    int[] index = new int[1];
+    Leaf<K, V> leaf = seek(key, false, index);
+    return leaf == null ? null : leaf.entries[index[0]];
+  }
+
+  /**
+   * Returns the latest inserted of the entries with the greatest key
+   * strictly less than the specified key, or null if there is none.
+   */
+  public Entry<K, V> lower(K key) {
+    int[] index = new int[1];
+    return before(seek(key, false, index), index[0]);
+  }
+
+  /**
+   * Returns the earliest inserted of the entries with the least key strictly
+   * greater than the specified key, or null if there is none.
+   */
+  public Entry<K, V> higher(K key) {
+    int[] index = new int[1];
+    Leaf<K, V> leaf = seek(key, true, index);
+    return leaf == null ? null : leaf.entries[index[0]];
+  }
+
+  /**
+   * Returns the entries whose keys lie between from and to, in key order.
+   * Finding the first entry takes O(log n) time; each further entry takes
+   * O(1).
+   * @param from the low end of the range, or null for no low end.
+   * @param fromInclusive true if entries with key from are included.
+   * @param to the high end of the range, or null for no high end.
+   * @param toInclusive true if entries with key to are included.
+   * @return the entries in the range.
+   */
+  public Iterable<Entry<K, V>> range(final K from, final boolean fromInclusive,
+                                     final K to, final boolean toInclusive) {
+    return new Iterable<Entry<K, V>>() {
+      public Iterator<Entry<K, V>> iterator() {
+        int[] index = new int[1];
+        Leaf<K, V> leaf = from == null ? firstLeaf()
+          : seek(from, !fromInclusive, index);
+        return new RangeIterator(leaf, index[0], to, toInclusive);
+      }
+    };
+  }
+
+  /**
+   * Returns an Iterator over every entry, in key order.
+   * @return an Iterator over the entries of the tree.
+   */
+  public Iterator<Entry<K, V>> iterator() {
+    return new RangeIterator(firstLeaf(), 0, null, false);
+  }
+
+  /**
+   * Performs an action on each entry, in key order, without allocating.
+   * The tree must not be modified by the action.
+   * @param action the action to perform on each entry.
+   */
+  public void forEach(Consumer<? super Entry<K, V>> action) {
+    for (Leaf<K, V> leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+      for (int i = 0; i < leaf.size; i++) {
+        action.accept(leaf.entries[i]);
+      }
+    }
+  }
+
+  /**
+   * A RangeIterator walks the leaves from a starting position until it
+   * passes its high end.
+   */
+  private class RangeIterator implements Iterator<Entry<K, V>> {
+    private Leaf<K, V> leaf;
+    private int index;
+    private final K to;
+    private final boolean toInclusive;
+
+    RangeIterator(Leaf<K, V> leaf, int index, K to, boolean toInclusive) {
+      this.to = to;
+      this.toInclusive = toInclusive;
+      this.leaf = leaf;
+      this.index = index;
+      skipEmpty();
+      checkEnd();
+    }
+
+    private void skipEmpty() {
+      while (leaf != null && index == leaf.size) {
+        leaf = leaf.next;
+        index = 0;
+      }
+    }
+
+    private void checkEnd() {
+      if (leaf != null && to != null) {
+        int c = compare(leaf.keys[index], to);
+        if (c > 0 || (c == 0 && !toInclusive)) {
+          leaf = null;
+        }
+      }
+    }
+
+    public boolean hasNext() {
+      return leaf != null;
+    }
+
+    public Entry<K, V> next() {
+      if (leaf == null) {
+        throw new NoSuchElementException();
+      }
+      Entry<K, V> entry = leaf.entries[index++];
+      skipEmpty();
+      checkEnd();
+      return entry;
+    }
+  }
+
+}
@@ -0,0 +1,406 @@
+/* ConcurrentHashTable.java */
+
+package dict;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ConcurrentHashTable implements a Dictionary as a thread-safe hash table with
+ * chaining.  All objects used as keys must have a valid hashCode() method.
+ *
+ * find() never locks: it reads the bucket array and walks the chain through
+ * volatile links.  insert() and remove() lock only the bucket they modify (by
+ * synchronizing on its first node), and an empty bucket is filled with a
+ * compare-and-set, so writers to different buckets never contend.
+ *
+ * When the table grows, buckets are migrated into a table twice the size a
+ * few at a time by every thread that runs into the resize.  A migrated bucket
+ * is replaced by a forwarding node, which sends later readers and writers to
+ * the new table, so operations on other buckets continue during the resize.
+ * Summing the entry count means reading every cell of a LongAdder, so an
+ * insert checks whether to grow only when it lands in a bucket already
+ * holding two or more entries, or at random once in SIZE_CHECK_INTERVAL
+ * inserts.
+ *
+ * size() and makeEmpty() are not atomic with respect to concurrent updates.
+ **/
+
+public class ConcurrentHashTable<K, V> implements Dictionary<K, V> {
+
+  /**
+   * MAXIMUM_CAPACITY is the largest number of buckets the table can have.
+   * MIGRATE_STRIDE is the number of buckets a thread claims at a time while
+   * helping a resize.
+   * SIZE_CHECK_INTERVAL is the mean number of inserts into short buckets
+   * between checks of the load factor; a power of two.
+   */
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+  private static final int MIGRATE_STRIDE = 16;
+  private static final int SIZE_CHECK_INTERVAL = 64;
+
+  /**
+   * A Node is a link in a bucket's chain.  The entry is fixed when the node is
+   * created; only the link to the next node changes.
+   */
+  static class Node<K, V> {
+    final int hash;
+    final Entry<K, V> entry;
+    volatile Node<K, V> next;
+
+    Node(int hash, Entry<K, V> entry, Node<K, V> next) {
+      this.hash = hash;
+      this.entry = entry;
+      this.next = next;
+    }
+  }
+
+  /**
+   * A ForwardingNode replaces a bucket that has been migrated to nextTable.
+   */
+  static class ForwardingNode<K, V> extends Node<K, V> {
+    final AtomicReferenceArray<Node<K, V>> nextTable;
+
+    ForwardingNode(AtomicReferenceArray<Node<K, V>> nextTable) {
+      super(-1, null, null);
+      this.nextTable = nextTable;
+    }
+  }
+
+  /**
+   * A Resize records the progress of migrating table into a table twice its
+   * size.  forward, which refers to the new table, is null until the thread
+   * that started the resize has allocated it, so threads that lose the race
+   * to start a resize allocate nothing.  claimed is the first bucket no
+   * thread has claimed yet; migrated is the number of buckets whose
+   * migration is complete.
+   */
+  static class Resize<K, V> {
+    final AtomicReferenceArray<Node<K, V>> table;
+    volatile ForwardingNode<K, V> forward;
+    final AtomicInteger claimed = new AtomicInteger();
+    final AtomicInteger migrated = new AtomicInteger();
+
+    Resize(AtomicReferenceArray<Node<K, V>> table) {
+      this.table = table;
+    }
+  }
+
+  /**
+   * @param  table the buckets of the hash table; the number of buckets is a
+   *         power of two
+   * @param  resize the resize in progress, or null if there is none
+   * @param  count number of entries in the table
+   */
+  private volatile AtomicReferenceArray<Node<K, V>> table;
+  private final AtomicReference<Resize<K, V>> resize =
+    new AtomicReference<Resize<K, V>>();
+  private final LongAdder count = new LongAdder();
+
+  /**
+   * Constructs a new empty hash table intended to hold roughly sizeEstimate
+   * entries.
+   */
+  public ConcurrentHashTable(int sizeEstimate) {
+    int buckets = 2;
+    while (buckets < MAXIMUM_CAPACITY && buckets * 3 / 4 < sizeEstimate) {
+      buckets <<= 1;
+    }
+    table = new AtomicReferenceArray<Node<K, V>>(buckets);
+  }
+
+  /**
+   * Constructs a new empty hash table with a default size (128 buckets).
+   */
+  public ConcurrentHashTable() {
+    this(96);
+  }
+
+  /**
+   * Spreads the high bits of a hash code into the low bits, which select the
+   * bucket.
+   */
+  static int spread(int code) {
+    return code ^ (code >>> 16);
+  }
+
+  /**
+   * Returns the spread hash code of a key.
+   * @exception IllegalArgumentException if the key is null or its
+   *            hashCode() throws.
+   */
+  private static int hash(Object key) {
+    try {
+      return spread(key.hashCode());
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Unhashable key: " + key, e);
+    }
+  }
+
+  /**
+   * Returns the table to use after running into a forwarding node in tab,
+   * helping the resize that placed it first.
+   */
+  private AtomicReferenceArray<Node<K, V>> forwarded(
+      AtomicReferenceArray<Node<K, V>> tab, ForwardingNode<K, V> f) {
+    Resize<K, V> r = resize.get();
+    if (r != null && r.table == tab) {
+      helpResize(r);
+    }
+    return f.nextTable;
+  }
+
+  /**
+   * Starts a resize if the load factor exceeds 3/4 and no resize is in
+   * progress, then helps it along.  The new table is allocated only by the
+   * thread whose resize is installed.
+   */
+  private void growIfNeeded() {
+    AtomicReferenceArray<Node<K, V>> tab = table;
+    int n = tab.length();
+    if (resize.get() != null || n >= MAXIMUM_CAPACITY
+        || count.sum() <= (long) n * 3 / 4) {
+      return;
+    }
+    Resize<K, V> r = new Resize<K, V>(tab);
+    if (resize.compareAndSet(null, r)) {
+      if (table != tab) {
+        // Another resize finished between reading table and starting ours.
+        resize.compareAndSet(r, null);
+        return;
+      }
+      r.forward = new ForwardingNode<K, V>(
+        new AtomicReferenceArray<Node<K, V>>(n << 1));
+      helpResize(r);
+    }
+  }
+
+  /**
+   * Claims and migrates strides of buckets until none are left.  The thread
+   * that completes the last stride installs the new table.  Does nothing if
+   * the new table has not been allocated yet.
+   */
+  private void helpResize(Resize<K, V> r) {
+    ForwardingNode<K, V> forward = r.forward;
+    if (forward == null) {
+      return;
+    }
+    int n = r.table.length();
+    int start;
+    while ((start = r.claimed.getAndAdd(MIGRATE_STRIDE)) < n) {
+      int end = Math.min(start + MIGRATE_STRIDE, n);
+      for (int i = start; i < end; i++) {
+        migrate(r.table, forward, i);
+      }
+      if (r.migrated.addAndGet(end - start) == n) {
+        table = forward.nextTable;
+        resize.compareAndSet(r, null);
+      }
+    }
+  }
+
+  /**
+   * Copies bucket i of tab into buckets i and i + n of forward.nextTable,
+   * then replaces it by forward.  The old chain is left intact, so readers
+   * already walking it still see every entry.
+   */
+  private void migrate(AtomicReferenceArray<Node<K, V>> tab,
+                       ForwardingNode<K, V> forward, int i) {
+    int n = tab.length();
+    while (true) {
+      Node<K, V> f = tab.get(i);
+      if (f == null) {
+        if (tab.compareAndSet(i, null, forward)) {
+          return;
+        }
+        continue;
+      }
+      synchronized (f) {
+        if (tab.get(i) == f) {
+          Node<K, V> lo = null;
+          Node<K, V> hi = null;
+          for (Node<K, V> p = f; p != null; p = p.next) {
+            if ((p.hash & n) == 0) {
+              lo = new Node<K, V>(p.hash, p.entry, lo);
+            } else {
+              hi = new Node<K, V>(p.hash, p.entry, hi);
+            }
+          }
+          forward.nextTable.set(i, lo);
+          forward.nextTable.set(i + n, hi);
+          tab.set(i, forward);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.  Entries with
+   * the same key (or even the same key and value) each still count as
+   * a separate entry.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    long n = count.sum();
+    return n < 0 ? 0 : n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   **/
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Creates a new Entry object referencing the input key and associated value,
+   * and inserts the entry into the dictionary.  Returns a reference to the new
+   * entry.  Multiple entries with the same key (or even the same key and
+   * value) can coexist in the dictionary.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   * @exception IllegalArgumentException if the key can't be hashed.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    int hash = hash(key);
+    Entry<K, V> entry = new Entry<K, V>();
+    entry.key = key;
+    entry.value = value;
+    Node<K, V> node = new Node<K, V>(hash, entry, null);
+    AtomicReferenceArray<Node<K, V>> tab = table;
+    boolean inserted = false;
+    boolean crowded = false;
+    while (!inserted) {
+      int i = hash & (tab.length() - 1);
+      Node<K, V> f = tab.get(i);
+      if (f == null) {
+        inserted = tab.compareAndSet(i, null, node);
+      } else if (f instanceof ForwardingNode) {
+        tab = forwarded(tab, (ForwardingNode<K, V>) f);
+      } else {
+        synchronized (f) {
+          if (tab.get(i) == f) {
+            // Link after the first node so the lock object stays in place.
+            crowded = f.next != null;
+            node.next = f.next;
+            f.next = node;
+            inserted = true;
+          }
+        }
+      }
+    }
+    count.increment();
+    if (crowded || (ThreadLocalRandom.current().nextInt()
+                    & (SIZE_CHECK_INTERVAL - 1)) == 0) {
+      growIfNeeded();
+    }
+    return entry;
+  }
+
+  /**
+   * Searches for an entry with the specified key.  If such an entry is found,
+   * returns it; otherwise returns null.  If several entries have the specified
+   * key, chooses one arbitrarily and return it.  Never blocks.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   * @exception IllegalArgumentException if the key can't be hashed.
+   */
+  public Entry<K, V> find(K key) {
+    int hash = hash(key);
+    AtomicReferenceArray<Node<K, V>> tab = table;
+    while (true) {
+      Node<K, V> p = tab.get(hash & (tab.length() - 1));
+      if (p instanceof ForwardingNode) {
+        tab = ((ForwardingNode<K, V>) p).nextTable;
+        continue;
+      }
+      for (; p != null; p = p.next) {
+        if (p.hash == hash && key.equals(p.entry.key)) {
+          return p.entry;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Removes an entry with the specified key.  If such an entry is found,
+   * removes it from the table and return it; otherwise returns null.
+   * If several entries have the specified key, chooses one arbitrarily, then
+   * removes and returns it.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *          no entry contains the specified key.
+   * @exception IllegalArgumentException if the key can't be hashed.
+   */
+  public Entry<K, V> remove(K key) {
+    int hash = hash(key);
+    AtomicReferenceArray<Node<K, V>> tab = table;
+    while (true) {
+      int i = hash & (tab.length() - 1);
+      Node<K, V> f = tab.get(i);
+      if (f == null) {
+        return null;
+      } else if (f instanceof ForwardingNode) {
+        tab = forwarded(tab, (ForwardingNode<K, V>) f);
+        continue;
+      }
+      synchronized (f) {
+        if (tab.get(i) != f) {
+          continue;
+        }
+        Node<K, V> prev = null;
+        for (Node<K, V> p = f; p != null; prev = p, p = p.next) {
+          if (p.hash == hash && key.equals(p.entry.key)) {
+            if (prev == null) {
+              tab.set(i, p.next);
+            } else {
+              prev.next = p.next;
+            }
+            count.decrement();
+            return p.entry;
+          }
+        }
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Removes all entries from the dictionary.  Entries inserted concurrently
+   * may or may not be removed.
+   */
+  public void makeEmpty() {
+    AtomicReferenceArray<Node<K, V>> tab = table;
+    int i = 0;
+    while (i < tab.length()) {
+      Node<K, V> f = tab.get(i);
+      if (f == null) {
+        i++;
+      } else if (f instanceof ForwardingNode) {
+        tab = forwarded(tab, (ForwardingNode<K, V>) f);
+        i = 0;
+      } else {
+        synchronized (f) {
+          if (tab.get(i) == f) {
+            int removed = 0;
+            for (Node<K, V> p = f; p != null; p = p.next) {
+              removed++;
+            }
+            tab.set(i, null);
+            count.add(-removed);
+            i++;
+          }
+        }
+      }
+    }
+  }
+
+}
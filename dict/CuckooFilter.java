@@ -0,0 +1,344 @@
+/* CuckooFilter.java */
+
+package dict;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A CuckooFilter is a compact set that answers membership queries with no
+ * false negatives and a small, configurable rate of false positives.  It
+ * stores a short fingerprint of each item rather than the item itself, in a
+ * table of buckets of four fingerprints each, and unlike a Bloom filter it
+ * supports remove().
+ *
+ * An item's fingerprint may live in one of two buckets:  one chosen by the
+ * item's hash code, and the other found by XORing the first with a hash of
+ * the fingerprint, so either bucket can be computed from the other without
+ * the item.  When both are full, add() evicts a random fingerprint to its
+ * alternate bucket, and so on, as in cuckoo hashing.  A lookup reads just
+ * the two buckets, each a few bytes of one long.
+ *
+ * Fingerprints are 8, 16 or 32 bits long, the least that meets the false
+ * positive rate requested at construction:  a query for an absent item
+ * matches one of the eight fingerprints it is compared against with
+ * probability about 8 / 2^bits.  The table holds at least the expected
+ * number of items at a load of 95%.
+ *
+ * An item added k times occupies k slots, and must be removed k times.  At
+ * most eight copies of a fingerprint fit in an item's two buckets.  Removing
+ * an item that was never added may remove another item's fingerprint and
+ * cause a false negative.  A CuckooFilter is not thread-safe.
+ */
+
+public class CuckooFilter<T> {
+
+  /**
+   * SLOTS is the number of fingerprints in a bucket.
+   */
+  private static final int SLOTS = 4;
+
+  /**
+   * MAX_KICKS bounds the number of fingerprints add() evicts before it
+   * declares the filter full.
+   */
+  private static final int MAX_KICKS = 500;
+
+  /**
+   * LOAD_FACTOR is the fraction of slots the table is sized to fill with the
+   * expected number of items.
+   */
+  private static final double LOAD_FACTOR = 0.95;
+
+  /**
+   * MAXIMUM_BUCKETS bounds the table so that its slots can be indexed by an
+   * int.
+   */
+  private static final int MAXIMUM_BUCKETS = 1 << 28;
+
+  /**
+   * @param  strategy hashes items
+   * @param  seed mixed into every hash code
+   * @param  bits number of bits in a fingerprint
+   * @param  fingerprintMask selects a fingerprint's bits
+   * @param  bucketMask selects a bucket index from a hash code
+   * @param  data the slots, packed bits bits each into longs; 0 marks an
+   *         empty slot
+   * @param  size number of fingerprints stored, counting the victim
+   * @param  victim a fingerprint evicted by an add() that ran out of kicks,
+   *         or 0; while there is one the filter is full
+   * @param  victimBucket one of the victim's two buckets
+   * @param  random state of the generator that picks fingerprints to evict
+   */
+  private final HashStrategy<? super T> strategy;
+  private final long seed;
+  private final int bits;
+  private final long fingerprintMask;
+  private final int bucketMask;
+  private final long[] data;
+  private long size;
+  private long victim;
+  private int victimBucket;
+  private long random;
+
+  /**
+   * Constructs an empty filter for about expectedItems items that hashes
+   * them with the specified strategy.
+   * @param expectedItems the number of items the filter should hold.
+   * @param falsePositiveRate the largest acceptable probability that
+   *        mightContain() returns true for an absent item.
+   * @param strategy hashes items; items that are equal under it must have
+   *        equal hash codes.
+   * @exception IllegalArgumentException if expectedItems is not positive or
+   *            falsePositiveRate is not between 0 and 1.
+   */
+  public CuckooFilter(long expectedItems, double falsePositiveRate,
+                      HashStrategy<? super T> strategy) {
+    if (expectedItems <= 0) {
+      throw new IllegalArgumentException("Illegal expected items: "
+                                         + expectedItems);
+    }
+    if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+      throw new IllegalArgumentException("Illegal false positive rate: "
+                                         + falsePositiveRate);
+    }
+    this.strategy = strategy;
+    seed = ThreadLocalRandom.current().nextLong();
+    random = seed | 1;
+    if (falsePositiveRate >= 2.0 * SLOTS / (1 << 8)) {
+      bits = 8;
+    } else if (falsePositiveRate >= 2.0 * SLOTS / (1 << 16)) {
+      bits = 16;
+    } else {
+      bits = 32;
+    }
+    fingerprintMask = (1L << bits) - 1;
+    long wanted = (long) Math.ceil(expectedItems / (SLOTS * LOAD_FACTOR));
+    int buckets = 2;
+    while (buckets < wanted && buckets < MAXIMUM_BUCKETS) {
+      buckets <<= 1;
+    }
+    bucketMask = buckets - 1;
+    data = new long[(int) ((long) buckets * SLOTS * bits / 64)];
+  }
+
+  /**
+   * Constructs an empty filter for about expectedItems items that hashes
+   * them with their own hashCode() methods.
+   * @param expectedItems the number of items the filter should hold.
+   * @param falsePositiveRate the largest acceptable probability that
+   *        mightContain() returns true for an absent item.
+   * @exception IllegalArgumentException if expectedItems is not positive or
+   *            falsePositiveRate is not between 0 and 1.
+   */
+  public CuckooFilter(long expectedItems, double falsePositiveRate) {
+    this(expectedItems, falsePositiveRate, HashStrategy.NATURAL);
+  }
+
+  /**
+   * Returns the number of fingerprints in the filter.
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Tests if the filter is empty.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the number of fingerprint slots in the filter.  add() may fail
+   * before they are all used.
+   */
+  public long capacity() {
+    return (long) (bucketMask + 1) * SLOTS;
+  }
+
+  /**
+   * Returns the number of bits in a fingerprint.
+   */
+  public int fingerprintBits() {
+    return bits;
+  }
+
+  /**
+   * Returns the item's hash code, mixed with the seed to 64 bits by the
+   * MurmurHash3 finalizer.  The low bits pick the first bucket and the high
+   * bits form the fingerprint.
+   */
+  private long hash(T item) {
+    long h = strategy.hash(item) ^ seed;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private long fingerprint(long hash) {
+    long f = (hash >>> 32) & fingerprintMask;
+    return f == 0 ? 1 : f;
+  }
+
+  private int alternate(int bucket, long fingerprint) {
+    return (bucket ^ (int) (fingerprint * 0x5bd1e995L)) & bucketMask;
+  }
+
+  private long slot(int bucket, int i) {
+    long bit = ((long) bucket * SLOTS + i) * bits;
+    return (data[(int) (bit >>> 6)] >>> bit) & fingerprintMask;
+  }
+
+  private void setSlot(int bucket, int i, long fingerprint) {
+    long bit = ((long) bucket * SLOTS + i) * bits;
+    int word = (int) (bit >>> 6);
+    data[word] = (data[word] & ~(fingerprintMask << bit))
+      | (fingerprint << bit);
+  }
+
+  private boolean bucketContains(int bucket, long fingerprint) {
+    for (int i = 0; i < SLOTS; i++) {
+      if (slot(bucket, i) == fingerprint) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Stores a fingerprint in an empty slot of the bucket, if it has one.
+   */
+  private boolean bucketInsert(int bucket, long fingerprint) {
+    for (int i = 0; i < SLOTS; i++) {
+      if (slot(bucket, i) == 0) {
+        setSlot(bucket, i, fingerprint);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Clears one slot of the bucket holding the fingerprint, if there is one.
+   */
+  private boolean bucketDelete(int bucket, long fingerprint) {
+    for (int i = 0; i < SLOTS; i++) {
+      if (slot(bucket, i) == fingerprint) {
+        setSlot(bucket, i, 0);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int nextRandom() {
+    random ^= random << 13;
+    random ^= random >>> 7;
+    random ^= random << 17;
+    return (int) random;
+  }
+
+  /**
+   * Adds an item to the filter.
+   * @param item the item to add.
+   * @return true if the item was added; false if the filter was too full.
+   */
+  public boolean add(T item) {
+    if (victim != 0) {
+      return false;
+    }
+    long h = hash(item);
+    long fingerprint = fingerprint(h);
+    int bucket = (int) h & bucketMask;
+    if (!bucketInsert(bucket, fingerprint)) {
+      place(alternate(bucket, fingerprint), fingerprint);
+    }
+    size++;
+    return true;
+  }
+
+  /**
+   * Tests if an item may be in the filter.
+   * @param item the item to look for.
+   * @return false if the item is certainly absent; true if it was probably
+   *         added.
+   */
+  public boolean mightContain(T item) {
+    long h = hash(item);
+    long fingerprint = fingerprint(h);
+    int bucket = (int) h & bucketMask;
+    if (bucketContains(bucket, fingerprint)) {
+      return true;
+    }
+    int other = alternate(bucket, fingerprint);
+    if (bucketContains(other, fingerprint)) {
+      return true;
+    }
+    return victim == fingerprint
+      && (victimBucket == bucket || victimBucket == other);
+  }
+
+  /**
+   * Removes one copy of an item from the filter.  The item must have been
+   * added.
+   * @param item the item to remove.
+   * @return true if a fingerprint matching the item was removed.
+   */
+  public boolean remove(T item) {
+    long h = hash(item);
+    long fingerprint = fingerprint(h);
+    int bucket = (int) h & bucketMask;
+    int other = alternate(bucket, fingerprint);
+    if (bucketDelete(bucket, fingerprint)
+        || bucketDelete(other, fingerprint)) {
+      size--;
+      if (victim != 0) {
+        long displaced = victim;
+        victim = 0;
+        place(victimBucket, displaced);
+      }
+      return true;
+    }
+    if (victim == fingerprint
+        && (victimBucket == bucket || victimBucket == other)) {
+      victim = 0;
+      size--;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Stores a fingerprint in the bucket, evicting fingerprints to their
+   * alternate buckets if it is full.  If MAX_KICKS evictions don't free a
+   * slot, the last fingerprint evicted becomes the victim.
+   */
+  private void place(int bucket, long fingerprint) {
+    for (int kick = 0; !bucketInsert(bucket, fingerprint); kick++) {
+      if (kick == MAX_KICKS) {
+        victim = fingerprint;
+        victimBucket = bucket;
+        break;
+      }
+      int i = nextRandom() & (SLOTS - 1);
+      long evicted = slot(bucket, i);
+      setSlot(bucket, i, fingerprint);
+      fingerprint = evicted;
+      bucket = alternate(bucket, fingerprint);
+    }
+  }
+
+  /**
+   * Removes every item from the filter.
+   */
+  public void clear() {
+    Arrays.fill(data, 0);
+    victim = 0;
+    size = 0;
+  }
+
+}
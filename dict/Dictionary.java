@@ -59,4 +59,67 @@ public interface Dictionary<K, V> {
    */
   public void makeEmpty();
 
+  /**
+   * Inserts one entry for each pair keys[i], values[i], as insert() would.
+   * Implementations may reorder the work to insert faster than a loop of
+   * insert() calls.
+   * @param keys the keys of the new entries.
+   * @param values the values of the new entries.
+   * @exception IllegalArgumentException if keys and values differ in length.
+   */
+  public default void insertAll(K[] keys, V[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("Got " + keys.length + " keys but "
+                                         + values.length + " values");
+    }
+    for (int i = 0; i < keys.length; i++) {
+      insert(keys[i], values[i]);
+    }
+  }
+
+  /**
+   * Inserts an entry with the key and value of each of the specified
+   * entries, as insert() would.
+   * @param entries the entries to copy.
+   */
+  public default void insertAll(
+      Iterable<? extends Entry<? extends K, ? extends V>> entries) {
+    for (Entry<? extends K, ? extends V> entry : entries) {
+      insert(entry.key(), entry.value());
+    }
+  }
+
+  /**
+   * Searches for an entry with each of the specified keys, as find() would.
+   * Implementations may reorder the lookups to run faster than a loop of
+   * find() calls.
+   * @param keys the search keys.
+   * @return an array whose element i is an entry with key keys[i], or null
+   *         if no entry contains that key.
+   */
+  public default Entry<K, V>[] findAll(K[] keys) {
+    @SuppressWarnings("unchecked")
+    Entry<K, V>[] entries = (Entry<K, V>[]) new Entry<?, ?>[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      entries[i] = find(keys[i]);
+    }
+    return entries;
+  }
+
+  /**
+   * Removes an entry with each of the specified keys, as remove() would.  A
+   * key that appears several times in keys removes several entries.
+   * @param keys the search keys.
+   * @return an array whose element i is the entry removed for keys[i], or
+   *         null if no entry was removed for it.
+   */
+  public default Entry<K, V>[] removeAll(K[] keys) {
+    @SuppressWarnings("unchecked")
+    Entry<K, V>[] entries = (Entry<K, V>[]) new Entry<?, ?>[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      entries[i] = remove(keys[i]);
+    }
+    return entries;
+  }
+
 }
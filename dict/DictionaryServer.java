@@ -0,0 +1,206 @@
+/* DictionaryServer.java */
+
+package dict;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A DictionaryServer answers the requests of RemoteDictionary clients
+ * against a local table.  A transport delivers each request to exchange()
+ * and returns the response; since a DictionaryServer is itself a Transport,
+ * a RemoteDictionary can also be pointed straight at one to run in-process.
+ *
+ * A request is an operation code followed by a count and that many keys (or
+ * keys and values, for INSERT).  Each key and value is written as its length
+ * and then its bytes.  Multi-key requests let a client look up, insert or
+ * remove a whole batch of keys in one exchange.  A request is decoded in
+ * full before the table is touched, so a malformed one changes nothing.
+ * Requests are served one at a time.
+ *
+ * SCAN returns the table's entries a page at a time.  Its count is the
+ * number of entries to return, and it is followed by a cursor:  0 to start
+ * a scan, or the cursor returned with the previous page.  The cursor is the
+ * table's own scan cursor, so the server keeps no state between pages, and
+ * any requests may come between them:  every entry present for the whole
+ * scan is returned at least once, as Scannable describes.
+ */
+
+public class DictionaryServer<K, V> implements Transport {
+
+  /**
+   * Operation codes.  SIZE returns the table's size; INSERT inserts
+   * key-value pairs; FIND and REMOVE return, for each key, a flag and the
+   * entry found or removed; CLEAR empties the table; SCAN returns the next
+   * cursor (0 after the last page), the number of entries in the page, and
+   * the entries.
+   */
+  static final byte SIZE = 1;
+  static final byte INSERT = 2;
+  static final byte FIND = 3;
+  static final byte REMOVE = 4;
+  static final byte CLEAR = 5;
+  static final byte SCAN = 6;
+
+  /**
+   * @param  table holds the entries
+   * @param  entries the entries of table, for SCAN
+   * @param  keySerializer converts keys to and from bytes
+   * @param  valueSerializer converts values to and from bytes
+   */
+  private final Dictionary<K, V> table;
+  private final Scannable<K, V> entries;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+
+  /**
+   * Constructs a server for a table.
+   * @param table the dictionary to serve, such as a HashTableChained.
+   * @param keySerializer converts keys to and from bytes.
+   * @param valueSerializer converts values to and from bytes.
+   */
+  public <T extends Dictionary<K, V> & Scannable<K, V>>
+    DictionaryServer(T table, Serializer<K> keySerializer,
+                     Serializer<V> valueSerializer) {
+    this.table = table;
+    this.entries = table;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+  }
+
+  /**
+   * Reads an object written by write() from the buffer.
+   * @exception BufferUnderflowException if the buffer ends too soon.
+   */
+  static <T> T read(ByteBuffer buf, Serializer<T> serializer) {
+    int length = buf.getInt();
+    if (length < 0 || length > buf.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    ByteBuffer bytes = buf.slice();
+    bytes.limit(length);
+    buf.position(buf.position() + length);
+    return serializer.fromBytes(bytes);
+  }
+
+  /**
+   * Writes an object as its length and its bytes.
+   */
+  static <T> void write(DataOutputStream out, T obj,
+                        Serializer<? super T> serializer)
+    throws IOException {
+    byte[] bytes = serializer.toBytes(obj);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Serves one request.
+   * @param request the encoded request.
+   * @return the encoded response.
+   * @exception IOException if the request is malformed.
+   */
+  public synchronized byte[] exchange(byte[] request) throws IOException {
+    ByteBuffer in = ByteBuffer.wrap(request);
+    byte op;
+    int count;
+    int cursor = 0;
+    K[] keys = null;
+    V[] values = null;
+    try {
+      op = in.get();
+      if (op < SIZE || op > SCAN) {
+        throw new IOException("Unknown operation: " + op);
+      }
+      count = in.getInt();
+      int minimum = op == INSERT ? 8 : op == FIND || op == REMOVE ? 4 : 0;
+      if (count < 0 || (long) count * minimum > in.remaining()) {
+        throw new IOException("Illegal count: " + count);
+      }
+      if (op == INSERT || op == FIND || op == REMOVE) {
+        keys = newArray(count);
+        if (op == INSERT) {
+          values = newArray(count);
+        }
+        for (int i = 0; i < count; i++) {
+          keys[i] = read(in, keySerializer);
+          if (values != null) {
+            values[i] = read(in, valueSerializer);
+          }
+        }
+      } else if (op == SCAN) {
+        cursor = in.getInt();
+        if (count == 0) {
+          throw new IOException("Illegal count: " + count);
+        }
+      }
+      if (in.hasRemaining()) {
+        throw new IOException("Request has " + in.remaining()
+                              + " extra bytes");
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated request", e);
+    } catch (RuntimeException e) {
+      throw new IOException("Malformed request", e);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    switch (op) {
+    case SIZE:
+      out.writeInt(table.size());
+      break;
+    case INSERT:
+      table.insertAll(keys, values);
+      break;
+    case FIND:
+    case REMOVE:
+      Entry<K, V>[] found = op == FIND ? table.findAll(keys)
+        : table.removeAll(keys);
+      for (Entry<K, V> entry : found) {
+        out.writeBoolean(entry != null);
+        if (entry != null) {
+          write(out, entry.key(), keySerializer);
+          write(out, entry.value(), valueSerializer);
+        }
+      }
+      break;
+    case CLEAR:
+      table.makeEmpty();
+      break;
+    default:
+      scan(count, cursor, out);
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T[] newArray(int count) {
+    return (T[]) new Object[count];
+  }
+
+  /**
+   * Writes the next cursor and the page of about count entries that the
+   * table's scan visits from cursor.
+   */
+  private void scan(int count, int cursor, DataOutputStream out)
+    throws IOException {
+    final ArrayList<Entry<K, V>> page = new ArrayList<Entry<K, V>>();
+    out.writeInt(entries.scan(cursor, count, new Consumer<Entry<K, V>>() {
+        public void accept(Entry<K, V> entry) {
+          page.add(entry);
+        }
+      }));
+    out.writeInt(page.size());
+    for (Entry<K, V> entry : page) {
+      write(out, entry.key(), keySerializer);
+      write(out, entry.value(), valueSerializer);
+    }
+  }
+
+}
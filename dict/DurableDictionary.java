@@ -0,0 +1,605 @@
+/* DurableDictionary.java */
+
+package dict;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * A DurableDictionary makes the insertions and removals on an in-memory
+ * Dictionary survive a crash.  Every mutation is applied to the table and
+ * appended to a write-ahead log, and insert(), remove() and makeEmpty()
+ * return only once the log has been forced to disk.
+ *
+ * The log uses group commit.  Mutations are appended to an in-memory batch;
+ * the first writer to find no flush in progress becomes the leader, writes
+ * the whole batch and forces it with one fsync, while the writers that
+ * arrive meanwhile queue up for the next batch.  The cost of an fsync is
+ * thus shared by every writer waiting on it, and throughput grows with the
+ * number of concurrent writers.
+ *
+ * Once the log grows past compactThreshold bytes, the writer that notices
+ * compacts it, unless another compaction is already under way.  Snapshots
+ * and logs are numbered by generation:  log-g holds the mutations made
+ * after snapshot-g was taken.  Compaction starts log-(g+1) and copies the
+ * table's entry references while holding the dictionary's lock, which
+ * stalls other callers for the length of the copy, and then writes the
+ * copy to snapshot-(g+1) with no lock held.  Only once the snapshot is
+ * completely on disk are the older generations deleted.  On opening, the
+ * newest snapshot is loaded and its log replayed, followed by the logs of
+ * any later generations whose snapshots were never finished.  The logs are
+ * read one record at a time, so they may be of any length.  A torn record
+ * at the end of a log (from a crash during a write) is detected by its
+ * checksum and discarded.
+ *
+ * Each log record is the length of its payload, a CRC32C of the payload,
+ * and the payload:  an operation code, the key length and key bytes, and
+ * (for an insertion) the value bytes.  A removal is logged by key, so with
+ * duplicate keys, replay removes whichever entry the table chooses.
+ *
+ * All methods are synchronized on the dictionary, so the table need not be
+ * thread-safe, but its entries must not change once they are created.  A
+ * mutation is visible to find() before it is durable.  If writing the log
+ * fails, the dictionary stops accepting mutations:  later calls to insert(),
+ * remove() and makeEmpty() throw without changing the table.  Mutations
+ * that were already in the failed batch stay in the table, and their
+ * callers see the exception.
+ */
+
+public class DurableDictionary<K, V> implements Dictionary<K, V>, Closeable {
+
+  /**
+   * DEFAULT_COMPACT_THRESHOLD is the log size that triggers compaction if
+   * none is given.
+   * INSERT, REMOVE and CLEAR are the operation codes of log records.
+   */
+  public static final long DEFAULT_COMPACT_THRESHOLD = 64L << 20;
+  private static final byte INSERT = 1;
+  private static final byte REMOVE = 2;
+  private static final byte CLEAR = 3;
+
+  /**
+   * @param  table the in-memory dictionary
+   * @param  entries the entries of table, for writing snapshots
+   * @param  directory the directory holding snapshots and logs
+   * @param  keySerializer converts keys to and from bytes
+   * @param  valueSerializer converts values to and from bytes
+   * @param  compactThreshold the log size that triggers compaction
+   * @param  generation the generation of the current log
+   * @param  log the current log file, open for appending
+   * @param  logBytes number of bytes written to the current log
+   * @param  pending the records not yet handed to a leader
+   * @param  appended number of records appended to pending so far
+   * @param  syncLock guards durable, flushing and failure
+   * @param  durable number of records forced to disk so far
+   * @param  flushing true while a leader is writing a batch, or while a
+   *         compaction starts a new log
+   * @param  compacting true while a compaction is in progress
+   * @param  failure the error that stopped the log, or null
+   */
+  private final Dictionary<K, V> table;
+  private final Iterable<Entry<K, V>> entries;
+  private final Path directory;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+  private final long compactThreshold;
+  private long generation;
+  private FileChannel log;
+  private volatile long logBytes;
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private long appended;
+  private final Object syncLock = new Object();
+  private long durable;
+  private boolean flushing;
+  private boolean compacting;
+  private IOException failure;
+
+  /**
+   * Opens a durable dictionary in a directory, creating the directory if
+   * needed, and loads the newest snapshot and log into an empty table.
+   * @param directory the directory holding snapshots and logs.
+   * @param table an empty in-memory dictionary, such as a HashTableChained.
+   * @param keySerializer converts keys to and from bytes; must be canonical.
+   * @param valueSerializer converts values to and from bytes.
+   * @param compactThreshold the log size, in bytes, that triggers
+   *        compaction.
+   * @exception IOException if the directory cannot be read or written.
+   */
+  public <T extends Dictionary<K, V> & Iterable<Entry<K, V>>>
+    DurableDictionary(Path directory, T table, Serializer<K> keySerializer,
+                      Serializer<V> valueSerializer, long compactThreshold)
+    throws IOException {
+    this.table = table;
+    this.entries = table;
+    this.directory = directory;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.compactThreshold = compactThreshold;
+    Files.createDirectories(directory);
+    recover();
+  }
+
+  /**
+   * Opens a durable dictionary that compacts its log at
+   * DEFAULT_COMPACT_THRESHOLD bytes.
+   */
+  public <T extends Dictionary<K, V> & Iterable<Entry<K, V>>>
+    DurableDictionary(Path directory, T table, Serializer<K> keySerializer,
+                      Serializer<V> valueSerializer) throws IOException {
+    this(directory, table, keySerializer, valueSerializer,
+         DEFAULT_COMPACT_THRESHOLD);
+  }
+
+  private Path snapshotFile(long g) {
+    return directory.resolve("snapshot-" + g);
+  }
+
+  private Path logFile(long g) {
+    return directory.resolve("log-" + g);
+  }
+
+  /**
+   * Loads the newest snapshot, replays its log and those of any later
+   * generations, truncates any torn record at the end of the last log, and
+   * deletes the files of older generations.
+   */
+  private void recover() throws IOException {
+    long newest = 0;
+    DirectoryStream<Path> files = Files.newDirectoryStream(directory);
+    try {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.startsWith("snapshot-") && !name.endsWith(".tmp")) {
+          newest = Math.max(newest, Long.parseLong(name.substring(9)));
+        }
+      }
+    } finally {
+      files.close();
+    }
+    if (Files.exists(snapshotFile(newest))) {
+      MappedDictionary<K, V> snapshot =
+        new MappedDictionary<K, V>(snapshotFile(newest), keySerializer,
+                                   valueSerializer);
+      try {
+        snapshot.forEach(new BiConsumer<K, V>() {
+          public void accept(K key, V value) {
+            table.insert(key, value);
+          }
+        });
+      } finally {
+        snapshot.close();
+      }
+    }
+    generation = newest;
+    while (Files.exists(logFile(generation + 1))) {
+      FileChannel older = FileChannel.open(logFile(generation),
+                                           StandardOpenOption.READ);
+      try {
+        replay(older);
+      } finally {
+        older.close();
+      }
+      generation++;
+    }
+    log = openLog(logFile(generation));
+    logBytes = replay(log);
+    log.truncate(logBytes);
+    log.position(logBytes);
+    deleteOtherGenerations(newest, generation);
+  }
+
+  /**
+   * Opens a log file for reading and appending, creating it if needed.
+   */
+  FileChannel openLog(Path file) throws IOException {
+    return FileChannel.open(file, StandardOpenOption.CREATE,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Applies the valid records of a log to the table, and returns the number
+   * of bytes they occupy.  The log is read one record at a time.
+   */
+  private long replay(FileChannel channel) throws IOException {
+    long size = channel.size();
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+      Channels.newInputStream(channel.position(0)), 1 << 16));
+    CRC32C crc = new CRC32C();
+    long position = 0;
+    while (size - position >= 8) {
+      int length = in.readInt();
+      int checksum = in.readInt();
+      if (length < 1 || length > size - position - 8) {
+        return position;
+      }
+      byte[] payload = new byte[length];
+      in.readFully(payload);
+      crc.reset();
+      crc.update(payload);
+      if ((int) crc.getValue() != checksum) {
+        return position;
+      }
+      apply(ByteBuffer.wrap(payload));
+      position += 8 + length;
+    }
+    return position;
+  }
+
+  /**
+   * Applies one log record payload to the table.
+   */
+  private void apply(ByteBuffer payload) {
+    byte op = payload.get();
+    if (op == CLEAR) {
+      table.makeEmpty();
+      return;
+    }
+    int keyLength = payload.getInt();
+    ByteBuffer keyBytes = payload.slice(payload.position(), keyLength);
+    K key = keySerializer.fromBytes(keyBytes);
+    if (op == INSERT) {
+      payload.position(payload.position() + keyLength);
+      table.insert(key, valueSerializer.fromBytes(payload.slice()));
+    } else {
+      table.remove(key);
+    }
+  }
+
+  /**
+   * Deletes every snapshot but snapshot-first, and every log but those from
+   * log-first to log-last.
+   */
+  private void deleteOtherGenerations(long first, long last)
+    throws IOException {
+    DirectoryStream<Path> files = Files.newDirectoryStream(directory);
+    try {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        boolean keep = file.equals(snapshotFile(first));
+        for (long g = first; g <= last && !keep; g++) {
+          keep = file.equals(logFile(g));
+        }
+        if (!keep
+            && (name.startsWith("snapshot-") || name.startsWith("log-"))) {
+          Files.delete(file);
+        }
+      }
+    } finally {
+      files.close();
+    }
+  }
+
+  /**
+   * Appends a record to the pending batch and returns its sequence number.
+   * The caller must hold the dictionary's lock.
+   */
+  private long append(byte op, byte[] key, byte[] value) {
+    int length = 1 + (key == null ? 0 : 4 + key.length)
+      + (value == null ? 0 : value.length);
+    ByteBuffer payload = ByteBuffer.allocate(length);
+    payload.put(op);
+    if (key != null) {
+      payload.putInt(key.length).put(key);
+    }
+    if (value != null) {
+      payload.put(value);
+    }
+    CRC32C crc = new CRC32C();
+    crc.update(payload.array());
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putInt(length).putInt((int) crc.getValue());
+    pending.write(header.array(), 0, 8);
+    pending.write(payload.array(), 0, length);
+    return ++appended;
+  }
+
+  /**
+   * Returns once the record with the specified sequence number is on disk,
+   * writing and forcing the pending batch if no other writer is doing so.
+   */
+  private void awaitDurable(long sequence) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        synchronized (syncLock) {
+          while (durable < sequence && flushing && failure == null) {
+            try {
+              syncLock.wait();
+            } catch (InterruptedException e) {
+              interrupted = true;
+            }
+          }
+          if (failure != null) {
+            throw new UncheckedIOException(failure);
+          }
+          if (durable >= sequence) {
+            return;
+          }
+          flushing = true;
+        }
+        flush();
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Writes and forces the pending batch.  The caller must have set
+   * flushing.
+   */
+  private void flush() {
+    try {
+      byte[] batch;
+      long last;
+      synchronized (this) {
+        batch = pending.toByteArray();
+        pending.reset();
+        last = appended;
+      }
+      ByteBuffer buf = ByteBuffer.wrap(batch);
+      while (buf.hasRemaining()) {
+        log.write(buf);
+      }
+      log.force(false);
+      logBytes += batch.length;
+      synchronized (syncLock) {
+        durable = last;
+      }
+    } catch (IOException e) {
+      synchronized (syncLock) {
+        failure = e;
+      }
+    } finally {
+      synchronized (syncLock) {
+        flushing = false;
+        syncLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Compacts the log if it has grown past compactThreshold and no other
+   * compaction is in progress.
+   */
+  private void compactIfNeeded() {
+    if (logBytes >= compactThreshold) {
+      try {
+        compact(false);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Writes the table to a new snapshot and starts a new, empty log, first
+   * waiting for any compaction in progress to finish.  Other callers are
+   * stalled only while the log is switched and the table's entries are
+   * copied, not while the snapshot is written.
+   * @exception IOException if the snapshot or log cannot be written.
+   */
+  public void compact() throws IOException {
+    compact(true);
+  }
+
+  /**
+   * Compacts the log.  Unless force is true, does nothing if another
+   * compaction is in progress or the log has shrunk below compactThreshold
+   * by the time the log is free.
+   */
+  private void compact(boolean force) throws IOException {
+    synchronized (syncLock) {
+      while (flushing || (force && compacting)) {
+        try {
+          syncLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      if (compacting || (!force && logBytes < compactThreshold)) {
+        return;
+      }
+      flushing = true;
+      compacting = true;
+    }
+    try {
+      long next;
+      ArrayList<Entry<K, V>> snapshot;
+      try {
+        synchronized (this) {
+          ByteBuffer buf = ByteBuffer.wrap(pending.toByteArray());
+          pending.reset();
+          while (buf.hasRemaining()) {
+            log.write(buf);
+          }
+          log.force(false);
+          next = generation + 1;
+          FileChannel nextLog = openLog(logFile(next));
+          nextLog.truncate(0);
+          log.close();
+          log = nextLog;
+          logBytes = 0;
+          generation = next;
+          synchronized (syncLock) {
+            durable = appended;
+          }
+          snapshot = new ArrayList<Entry<K, V>>(table.size());
+          for (Entry<K, V> entry : entries) {
+            snapshot.add(entry);
+          }
+        }
+      } catch (IOException e) {
+        synchronized (syncLock) {
+          failure = e;
+        }
+        throw e;
+      } finally {
+        synchronized (syncLock) {
+          flushing = false;
+          syncLock.notifyAll();
+        }
+      }
+      MappedDictionary.write(snapshotFile(next), snapshot, keySerializer,
+                             valueSerializer);
+      long last;
+      synchronized (this) {
+        last = generation;
+      }
+      deleteOtherGenerations(next, last);
+    } finally {
+      synchronized (syncLock) {
+        compacting = false;
+        syncLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.
+   * @return number of entries in the dictionary.
+   */
+  public synchronized int size() {
+    return table.size();
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public synchronized boolean isEmpty() {
+    return table.isEmpty();
+  }
+
+  /**
+   * Inserts an entry into the table and logs it, returning once the log
+   * record is on disk.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   * @exception UncheckedIOException if the log cannot be written.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    byte[] keyBytes = keySerializer.toBytes(key);
+    byte[] valueBytes = valueSerializer.toBytes(value);
+    Entry<K, V> entry;
+    long sequence;
+    synchronized (this) {
+      checkOpen();
+      entry = table.insert(key, value);
+      sequence = append(INSERT, keyBytes, valueBytes);
+    }
+    awaitDurable(sequence);
+    compactIfNeeded();
+    return entry;
+  }
+
+  /**
+   * Searches for an entry with the specified key.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   */
+  public synchronized Entry<K, V> find(K key) {
+    return table.find(key);
+  }
+
+  /**
+   * Removes an entry with the specified key and logs the removal, returning
+   * once the log record is on disk.  Nothing is logged if there is no such
+   * entry.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *          no entry contains the specified key.
+   * @exception UncheckedIOException if the log cannot be written.
+   */
+  public Entry<K, V> remove(K key) {
+    byte[] keyBytes = keySerializer.toBytes(key);
+    Entry<K, V> entry;
+    long sequence;
+    synchronized (this) {
+      checkOpen();
+      entry = table.remove(key);
+      if (entry == null) {
+        return null;
+      }
+      sequence = append(REMOVE, keyBytes, null);
+    }
+    awaitDurable(sequence);
+    compactIfNeeded();
+    return entry;
+  }
+
+  /**
+   * Removes all entries from the dictionary and logs it, returning once the
+   * log record is on disk.
+   * @exception UncheckedIOException if the log cannot be written.
+   */
+  public void makeEmpty() {
+    long sequence;
+    synchronized (this) {
+      checkOpen();
+      table.makeEmpty();
+      sequence = append(CLEAR, null, null);
+    }
+    awaitDurable(sequence);
+    compactIfNeeded();
+  }
+
+  /**
+   * Throws if the dictionary is closed or its log has failed.  The caller
+   * must hold the dictionary's lock, and must call this before changing the
+   * table.
+   */
+  private void checkOpen() {
+    if (!log.isOpen()) {
+      throw new IllegalStateException("DurableDictionary is closed");
+    }
+    synchronized (syncLock) {
+      if (failure != null) {
+        throw new UncheckedIOException(failure);
+      }
+    }
+  }
+
+  /**
+   * Forces any pending records to disk and closes the log.
+   * @exception IOException if the log cannot be written.
+   */
+  public void close() throws IOException {
+    long sequence;
+    synchronized (this) {
+      sequence = appended;
+    }
+    try {
+      awaitDurable(sequence);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      synchronized (this) {
+        log.close();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,182 @@
+/* FilteredDictionary.java */
+
+package dict;
+
+/**
+ * FilteredDictionary wraps a Dictionary with a CuckooFilter holding a
+ * fingerprint of each distinct key, so that find() and remove() of a key
+ * that isn't there usually return at once after reading two buckets of the
+ * filter, without touching the table.  It pays off when most lookups miss.
+ *
+ * The filter holds one fingerprint per distinct key, however many entries
+ * the key has:  insert() adds a fingerprint only if the table didn't have
+ * the key, and remove() deletes it only once the key's last entry is gone.
+ * When the filter fills up, it is rebuilt twice as large from the table's
+ * entries.  The filter never reports a key present in the table as absent,
+ * so results are those of the table alone.
+ *
+ * The filter must hash keys consistently with the table's notion of key
+ * equality; pass the table's HashStrategy if it has one.
+ */
+
+public class FilteredDictionary<K, V> implements Dictionary<K, V> {
+
+  /**
+   * DEFAULT_CAPACITY is the smallest number of keys a filter is sized for.
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * @param  table holds the entries
+   * @param  entries the entries of table, for rebuilding the filter
+   * @param  strategy hashes keys for the filter
+   * @param  falsePositiveRate the filter's target false positive rate
+   * @param  filter holds a fingerprint of each distinct key in table
+   * @param  filterCapacity the number of keys filter was sized for
+   */
+  private final Dictionary<K, V> table;
+  private final Iterable<Entry<K, V>> entries;
+  private final HashStrategy<? super K> strategy;
+  private final double falsePositiveRate;
+  private CuckooFilter<K> filter;
+  private long filterCapacity;
+
+  /**
+   * Wraps a table with a filter that hashes keys with the specified
+   * strategy.  Entries already in the table are added to the filter.
+   * @param table the dictionary to filter, such as a HashTableChained.
+   * @param falsePositiveRate the fraction of misses that should still reach
+   *        the table.
+   * @param strategy hashes keys; must agree with the table's key equality.
+   * @exception IllegalArgumentException if falsePositiveRate is not between
+   *            0 and 1.
+   */
+  public <T extends Dictionary<K, V> & Iterable<Entry<K, V>>>
+    FilteredDictionary(T table, double falsePositiveRate,
+                       HashStrategy<? super K> strategy) {
+    this.table = table;
+    this.entries = table;
+    this.strategy = strategy;
+    this.falsePositiveRate = falsePositiveRate;
+    rebuild(Math.max(2L * table.size(), DEFAULT_CAPACITY));
+  }
+
+  /**
+   * Wraps a table with a filter that hashes keys with their own hashCode()
+   * methods.
+   */
+  public <T extends Dictionary<K, V> & Iterable<Entry<K, V>>>
+    FilteredDictionary(T table, double falsePositiveRate) {
+    this(table, falsePositiveRate, HashStrategy.NATURAL);
+  }
+
+  /**
+   * Replaces the filter with one sized for capacity keys, holding a
+   * fingerprint of each distinct key in the table.  Keys are deduplicated
+   * with a HashTableChained, since the new filter itself cannot tell a
+   * repeated key from a false positive.
+   */
+  private void rebuild(long capacity) {
+    while (true) {
+      CuckooFilter<K> rebuilt =
+        new CuckooFilter<K>(capacity, falsePositiveRate, strategy);
+      HashTableChained<K, Boolean> seen =
+        new HashTableChained<K, Boolean>(strategy);
+      boolean full = false;
+      for (Entry<K, V> entry : entries) {
+        if (seen.find(entry.key()) == null) {
+          seen.insert(entry.key(), Boolean.TRUE);
+          if (!rebuilt.add(entry.key())) {
+            full = true;
+            break;
+          }
+        }
+      }
+      if (!full) {
+        filter = rebuilt;
+        filterCapacity = capacity;
+        return;
+      }
+      capacity *= 2;
+    }
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return table.size();
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return table.isEmpty();
+  }
+
+  /**
+   * Returns the number of distinct keys the filter holds fingerprints for.
+   */
+  public long distinctKeys() {
+    return filter.size();
+  }
+
+  /**
+   * Creates a new Entry object referencing the input key and associated
+   * value, inserts it into the table, and records the key in the filter if
+   * the table didn't have it.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    boolean added = !filter.mightContain(key) || table.find(key) == null;
+    Entry<K, V> entry = table.insert(key, value);
+    if (added && !filter.add(key)) {
+      rebuild(filterCapacity * 2);
+    }
+    return entry;
+  }
+
+  /**
+   * Searches for an entry with the specified key, consulting the table only
+   * if the filter might hold the key.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   */
+  public Entry<K, V> find(K key) {
+    return filter.mightContain(key) ? table.find(key) : null;
+  }
+
+  /**
+   * Removes an entry with the specified key, consulting the table only if
+   * the filter might hold the key.  The key leaves the filter with its last
+   * entry.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *          no entry contains the specified key.
+   */
+  public Entry<K, V> remove(K key) {
+    if (!filter.mightContain(key)) {
+      return null;
+    }
+    Entry<K, V> entry = table.remove(key);
+    if (entry != null && table.find(key) == null) {
+      filter.remove(key);
+    }
+    return entry;
+  }
+
+  /**
+   * Removes all entries from the dictionary and the filter.
+   */
+  public void makeEmpty() {
+    table.makeEmpty();
+    filter.clear();
+  }
+
+}
@@ -0,0 +1,213 @@
+/* HashMultimap.java */
+
+package dict;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import list.*;
+
+/**
+ * HashMultimap implements a Dictionary whose entries with equal keys are
+ * grouped together, for use as an index where one key has many values.  A
+ * HashTableChained maps each distinct key to a DList of its entries, in
+ * insertion order.  Finding, counting or removing the entries of a key thus
+ * costs one hash table probe however many entries the key has, where a
+ * HashTableChained would examine every duplicate in its chain.
+ *
+ * find() returns the earliest inserted entry with a key, and remove()
+ * removes it.  values() returns all of a key's entries, removeKey() removes
+ * them at once, and count() counts them in O(1) time.
+ */
+
+public class HashMultimap<K, V> implements Dictionary<K, V> {
+
+  /**
+   * @param  groups maps each distinct key to the list of its entries
+   * @param  size number of entries in the multimap
+   */
+  private final HashTableChained<K, DList<Entry<K, V>>> groups;
+  private int size;
+
+  /**
+   * Constructs an empty multimap intended to hold roughly sizeEstimate
+   * distinct keys.
+   * @param sizeEstimate the number of distinct keys expected.
+   */
+  public HashMultimap(int sizeEstimate) {
+    groups = new HashTableChained<K, DList<Entry<K, V>>>(sizeEstimate);
+  }
+
+  /**
+   * Constructs an empty multimap that hashes and compares keys with the
+   * specified strategy.
+   * @param strategy hashes and compares keys.
+   */
+  public HashMultimap(HashStrategy<? super K> strategy) {
+    groups = new HashTableChained<K, DList<Entry<K, V>>>(strategy);
+  }
+
+  /**
+   * Constructs an empty multimap with a default size.
+   */
+  public HashMultimap() {
+    groups = new HashTableChained<K, DList<Entry<K, V>>>();
+  }
+
+  /**
+   * Returns the list of a key's entries, or null if it has none.
+   */
+  private DList<Entry<K, V>> group(K key) {
+    Entry<K, DList<Entry<K, V>>> entry = groups.find(key);
+    return entry == null ? null : entry.value;
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.  Entries with
+   * the same key each count as a separate entry.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the number of distinct keys in the dictionary.
+   * @return the number of distinct keys.
+   */
+  public int keyCount() {
+    return groups.size();
+  }
+
+  /**
+   * Creates a new Entry object referencing the input key and associated
+   * value, and adds it after any other entries with the same key.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   * @exception IllegalArgumentException if the key can't be hashed (for
+   *            instance, a null key with the natural strategy).
+   */
+  public Entry<K, V> insert(K key, V value) {
+    DList<Entry<K, V>> group = group(key);
+    if (group == null) {
+      group = new DList<Entry<K, V>>();
+      if (groups.insert(key, group) == null) {
+        throw new IllegalArgumentException("Unhashable key: " + key);
+      }
+    }
+    Entry<K, V> entry = new Entry<K, V>();
+    entry.key = key;
+    entry.value = value;
+    group.insertBack(entry);
+    size++;
+    return entry;
+  }
+
+  /**
+   * Searches for an entry with the specified key.  If several entries have
+   * the key, returns the earliest inserted.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   */
+  public Entry<K, V> find(K key) {
+    DList<Entry<K, V>> group = group(key);
+    if (group == null) {
+      return null;
+    }
+    try {
+      return group.front().getItem();
+    } catch (InvalidNodeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Removes an entry with the specified key.  If several entries have the
+   * key, removes the earliest inserted.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *          no entry contains the specified key.
+   */
+  public Entry<K, V> remove(K key) {
+    DList<Entry<K, V>> group = group(key);
+    if (group == null) {
+      return null;
+    }
+    try {
+      ListNode<Entry<K, V>> node = group.front();
+      Entry<K, V> entry = node.getItem();
+      node.remove();
+      size--;
+      if (group.isEmpty()) {
+        groups.remove(key);
+      }
+      return entry;
+    } catch (InvalidNodeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns every entry with the specified key, in insertion order.  The
+   * result is a view:  nothing is copied, and each iteration sees the
+   * key's entries as they are when it starts.  The multimap must not be
+   * modified during an iteration.
+   * @param key the search key.
+   * @return the entries with the key.
+   */
+  public Iterable<Entry<K, V>> values(final K key) {
+    return new Iterable<Entry<K, V>>() {
+      public Iterator<Entry<K, V>> iterator() {
+        DList<Entry<K, V>> group = group(key);
+        if (group == null) {
+          return Collections.<Entry<K, V>>emptyIterator();
+        }
+        return group.iterator();
+      }
+    };
+  }
+
+  /**
+   * Removes every entry with the specified key, in O(1) time.
+   * @param key the search key.
+   * @return the number of entries removed.
+   */
+  public int removeKey(K key) {
+    Entry<K, DList<Entry<K, V>>> entry = groups.remove(key);
+    if (entry == null) {
+      return 0;
+    }
+    int removed = entry.value.length();
+    size -= removed;
+    return removed;
+  }
+
+  /**
+   * Returns the number of entries with the specified key, in O(1) time.
+   * @param key the search key.
+   * @return the number of entries with the key.
+   */
+  public int count(K key) {
+    DList<Entry<K, V>> group = group(key);
+    return group == null ? 0 : group.length();
+  }
+
+  /**
+   * Removes all entries from the dictionary.
+   */
+  public void makeEmpty() {
+    groups.makeEmpty();
+    size = 0;
+  }
+
+}
@@ -0,0 +1,79 @@
+/* HashStrategy.java */
+
+package dict;
+
+import java.util.Arrays;
+
+/**
+ * A HashStrategy defines how a hash table hashes and compares its keys, in
+ * place of the keys' own hashCode() and equals() methods.  It lets a table
+ * hold keys whose methods are unsuitable (arrays, which compare by identity)
+ * or don't match the equality needed (strings compared without case).
+ *
+ * hash() need not spread its bits well; the table mixes every hash code with
+ * a seed of its own before using it.  The seed cannot separate keys whose
+ * hash codes are equal, so a strategy that maps many keys to one hash code
+ * still makes them collide.  Keys that are equal according to equals() must
+ * have equal hash codes.
+ */
+
+public interface HashStrategy<K> {
+
+  /**
+   * Returns a hash code for a key.
+   */
+  public int hash(K key);
+
+  /**
+   * Tests if two keys are equal.
+   */
+  public boolean equals(K a, K b);
+
+  /**
+   * NATURAL uses the keys' own hashCode() and equals() methods.
+   */
+  public static final HashStrategy<Object> NATURAL =
+    new HashStrategy<Object>() {
+      public int hash(Object key) {
+        return key.hashCode();
+      }
+
+      public boolean equals(Object a, Object b) {
+        return a == b || a.equals(b);
+      }
+    };
+
+  /**
+   * BYTE_ARRAY compares byte arrays by content.
+   */
+  public static final HashStrategy<byte[]> BYTE_ARRAY =
+    new HashStrategy<byte[]>() {
+      public int hash(byte[] key) {
+        return Arrays.hashCode(key);
+      }
+
+      public boolean equals(byte[] a, byte[] b) {
+        return Arrays.equals(a, b);
+      }
+    };
+
+  /**
+   * CASE_INSENSITIVE compares strings without regard to case.
+   */
+  public static final HashStrategy<String> CASE_INSENSITIVE =
+    new HashStrategy<String>() {
+      public int hash(String key) {
+        int h = 0;
+        for (int i = 0; i < key.length(); i++) {
+          h = 31 * h + Character.toLowerCase(Character.toUpperCase(
+                                               key.charAt(i)));
+        }
+        return h;
+      }
+
+      public boolean equals(String a, String b) {
+        return a.equalsIgnoreCase(b);
+      }
+    };
+
+}
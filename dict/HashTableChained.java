@@ -2,6 +2,22 @@
 
 package dict;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import list.*;
 
 /**
@@ -9,74 +25,539 @@ import list.*;
  * All objects used as keys must have a valid hashCode() method, which is
  * used to determine which bucket of the hash table an entry is stored in.
  * Each object's hashCode() is presumed to return an int between
- * Integer.MIN_VALUE and Integer.MAX_VALUE. 
+ * Integer.MIN_VALUE and Integer.MAX_VALUE.  Alternatively, a HashStrategy
+ * can be supplied to hash and compare keys in place of their own methods.
+ *
+ * Every hash code is mixed with a random seed chosen when the table is
+ * constructed, which spreads the bits of poorly distributed hash codes
+ * across the buckets and varies the bucket layout from table to table.  The
+ * seed is applied after hashCode(), so keys with equal hash codes (such as
+ * "Aa" and "BB") still collide under every seed; what limits the damage of
+ * many colliding keys is the tree buckets described below.  The number of
+ * buckets is a power of two, so a bucket is selected by masking the mixed
+ * hash code.
+ * A bucket's DList is created when the first entry is added to it, so
+ * constructing even a very large table allocates only the bucket array.
+ *
+ * The table grows when the number of entries exceeds maxLoadFactor times the
+ * number of buckets, and (if minLoadFactor is positive) shrinks when it falls
+ * below minLoadFactor times the number of buckets.  Resizing is incremental:
+ * a second table is allocated and every subsequent operation migrates a few
+ * buckets into it, so no single operation pays for rehashing the whole table.
+ *
+ * A bucket whose chain grows beyond TREEIFY_THRESHOLD entries is converted
+ * into a TreeBucket, a balanced tree ordered by hash code (and by key, for
+ * Comparable keys), and converted back once it shrinks below
+ * UNTREEIFY_THRESHOLD.  Lookups therefore take O(log n) time even when a
+ * poor hashCode() or hostile input sends many keys to one bucket.
+ *
+ * insertAll(), findAll() and removeAll() hash a whole batch of keys first,
+ * grow the table at most once for the batch, and then visit the keys in
+ * bucket order, so that consecutive operations touch nearby memory.
+ *
+ * The entries can be visited with a for-each loop, a Spliterator or
+ * forEach().  forEach() allocates nothing per entry.  The Spliterator splits
+ * by ranges of buckets, so parallel streams over the table divide the work
+ * evenly.  The bulk operations forEach(), reduce() and search() that take
+ * a parallelism threshold split the buckets the same way and run on the
+ * common ForkJoinPool once the table holds at least that many entries.
+ * The table must not be modified while its entries are being visited, with
+ * one exception:  scan() visits them a few buckets at a time, and the table
+ * may change, and even resize, between its calls.
+ *
+ * The table keeps running counts of hits, misses, probe lengths, chain
+ * lengths and resizes.  stats() returns a snapshot of them without scanning
+ * the buckets, and registerMBean() publishes them through JMX.  To keep the
+ * clock off the hot path, only one rehash step in RESIZE_TIMING_SAMPLE is
+ * timed, so the reported resize time is an estimate.  setMetricsEnabled()
+ * turns the counters off altogether.
  **/
 
-public class HashTableChained<K, V> implements Dictionary<K, V> {
+public class HashTableChained<K, V>
+  implements Dictionary<K, V>, Iterable<Entry<K, V>>, Scannable<K, V> {
+
+  /**
+   * DEFAULT_MAX_LOAD_FACTOR is the load factor above which the table grows.
+   * DEFAULT_MIN_LOAD_FACTOR is the load factor below which the table shrinks;
+   * zero means the table never shrinks.
+   * REHASH_STEPS is the number of non-empty buckets migrated per operation
+   * while a rehash is in progress.  At most REHASH_STEPS * 10 empty buckets
+   * are skipped per operation, so a sparse table can't stall one operation.
+   * TREEIFY_THRESHOLD is the chain length above which a bucket becomes a tree.
+   * UNTREEIFY_THRESHOLD is the size below which a tree becomes a chain again.
+   * RESIZE_TIMING_SAMPLE is the number of rehash steps per timed step; a
+   * power of two.
+   */
+  public static final double DEFAULT_MAX_LOAD_FACTOR = 0.75;
+  public static final double DEFAULT_MIN_LOAD_FACTOR = 0.0;
+  private static final int REHASH_STEPS = 1;
+  private static final int MAX_EMPTY_VISITS = REHASH_STEPS * 10;
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+  static final int TREEIFY_THRESHOLD = 8;
+  static final int UNTREEIFY_THRESHOLD = 6;
+  private static final int RESIZE_TIMING_SAMPLE = 16;
 
   /**
    * @param  table the hash table built with a Linked List implementation
    * @param  tableSize number of buckets in the table
-   * @param  size number of entries in the table
+   * @param  size number of entries in the table (in both tables while
+   *         rehashing)
+   * @param  nextTable the table entries are migrated into during a rehash;
+   *         null if no rehash is in progress
+   * @param  nextTableSize number of buckets in nextTable
+   * @param  trees the tree buckets of table; a bucket is a tree if its entry
+   *         here is not null, and its chain in table is then empty.  null
+   *         until some bucket of table becomes a tree
+   * @param  nextTrees the tree buckets of nextTable, likewise
+   * @param  rehashIndex the next bucket of table to migrate; -1 if no rehash
+   *         is in progress
+   * @param  minTableSize the table never shrinks below this many buckets
+   * @param  maxLoadFactor the load factor above which the table grows
+   * @param  minLoadFactor the load factor below which the table shrinks
+   * @param  strategy hashes and compares keys
+   * @param  seed mixed into every hash code
+   * @param  metrics the counters reported by stats()
+   * @param  recording true if metrics are being updated
+   * @param  rehashSteps number of rehash steps taken, for sampling their time
+   * @param  probes number of entries examined by the current lookup
    */
   private List<Entry <K, V>>[] table;
   private int tableSize;
   private int size;
+  private List<Entry <K, V>>[] nextTable;
+  private int nextTableSize;
+  private TreeBucket<K, V>[] trees;
+  private TreeBucket<K, V>[] nextTrees;
+  private int rehashIndex;
+  private int minTableSize;
+  private double maxLoadFactor;
+  private double minLoadFactor;
+  private final HashStrategy<? super K> strategy;
+  private final int seed = ThreadLocalRandom.current().nextInt();
+  private final TableMetrics metrics = new TableMetrics();
+  private boolean recording = true;
+  private int rehashSteps;
+  private int probes;
 
-  /** 
+  /**
    * Constructs a new empty hash table intended to hold roughly sizeEstimate
-   * entries.
+   * entries, which grows when its load factor exceeds maxLoadFactor and
+   * shrinks when its load factor falls below minLoadFactor, and hashes and
+   * compares keys with the specified strategy.
+   * @param sizeEstimate the number of entries the table is expected to hold.
+   * @param maxLoadFactor the load factor above which the table grows.
+   * @param minLoadFactor the load factor below which the table shrinks, or
+   *        zero if the table should never shrink.
+   * @param strategy hashes and compares keys.
+   * @exception IllegalArgumentException if maxLoadFactor is not positive, or
+   *            minLoadFactor is negative or not less than half of
+   *            maxLoadFactor.
    */
-  public HashTableChained(int sizeEstimate) {
-    tableSize = sizeEstimate * 5 / 3;
-    while (!isPrime(tableSize)) {
-      tableSize ++;
+  public HashTableChained(int sizeEstimate, double maxLoadFactor,
+                          double minLoadFactor,
+                          HashStrategy<? super K> strategy) {
+    if (!(maxLoadFactor > 0)) {
+      throw new IllegalArgumentException("Illegal max load factor: "
+                                         + maxLoadFactor);
     }
-    table = new DList[tableSize];
-    for (int i = 0; i < tableSize; i++) {
-      table[i] = new DList<Entry<K, V>>();
+    if (!(minLoadFactor >= 0 && minLoadFactor < maxLoadFactor / 2)) {
+      throw new IllegalArgumentException("Illegal min load factor: "
+                                         + minLoadFactor);
     }
-    size = 0;
+    this.maxLoadFactor = maxLoadFactor;
+    this.minLoadFactor = minLoadFactor;
+    this.strategy = strategy;
+    init(tableSizeFor(sizeEstimate * 5 / 3));
+  }
+
+  /**
+   * Constructs a new empty hash table intended to hold roughly sizeEstimate
+   * entries, which grows when its load factor exceeds maxLoadFactor and
+   * shrinks when its load factor falls below minLoadFactor.
+   * @param sizeEstimate the number of entries the table is expected to hold.
+   * @param maxLoadFactor the load factor above which the table grows.
+   * @param minLoadFactor the load factor below which the table shrinks, or
+   *        zero if the table should never shrink.
+   * @exception IllegalArgumentException if maxLoadFactor is not positive, or
+   *            minLoadFactor is negative or not less than half of
+   *            maxLoadFactor.
+   */
+  public HashTableChained(int sizeEstimate, double maxLoadFactor,
+                          double minLoadFactor) {
+    this(sizeEstimate, maxLoadFactor, minLoadFactor, HashStrategy.NATURAL);
   }
 
-  /** 
-   * Constructs a new empty hash table with a default size (101)
+  /**
+   * Constructs a new empty hash table intended to hold roughly sizeEstimate
+   * entries.
+   */
+  public HashTableChained(int sizeEstimate) {
+    this(sizeEstimate, DEFAULT_MAX_LOAD_FACTOR, DEFAULT_MIN_LOAD_FACTOR);
+  }
+
+  /**
+   * Constructs a new empty hash table with a default size (128) that hashes
+   * and compares keys with the specified strategy.
+   * @param strategy hashes and compares keys.
+   */
+  public HashTableChained(HashStrategy<? super K> strategy) {
+    maxLoadFactor = DEFAULT_MAX_LOAD_FACTOR;
+    minLoadFactor = DEFAULT_MIN_LOAD_FACTOR;
+    this.strategy = strategy;
+    init(128);
+  }
+
+  /**
+   * Constructs a new empty hash table with a default size (128)
    */
   public HashTableChained() {
-    tableSize = 101;
-    table = new DList[tableSize];
-    for (int i = 0; i < tableSize; i++) {
-      table[i] = new DList<Entry<K, V>>();
-    }
+    this(HashStrategy.NATURAL);
+  }
+
+  /**
+   * Allocates an empty table with the specified number of buckets.
+   */
+  private void init(int buckets) {
+    minTableSize = buckets;
+    tableSize = buckets;
+    table = newTable(buckets);
+    trees = null;
+    nextTable = null;
+    nextTableSize = 0;
+    nextTrees = null;
+    rehashIndex = -1;
     size = 0;
   }
 
   /**
-   * Converts a hash code in the range Integer.MIN_VALUE...Integer.MAX_VALUE
-   * to a value in the range 0...(size of hash table) - 1.
+   * Allocates an array of the specified number of empty buckets.  Buckets
+   * are null until an entry is added to them.
+   */
+  private List<Entry<K, V>>[] newTable(int buckets) {
+    @SuppressWarnings("unchecked")
+    List<Entry<K, V>>[] t = (List<Entry<K, V>>[]) new List<?>[buckets];
+    return t;
+  }
+
+  /**
+   * Returns true if a bucket's chain is empty or has not been created.
+   */
+  private static boolean isEmptyBucket(List<?> bucket) {
+    return bucket == null || bucket.isEmpty();
+  }
+
+  /**
+   * Returns the key's hash code under the table's strategy, mixed with the
+   * table's seed by the MurmurHash3 finalizer.
+   */
+  int hash(K key) {
+    int h = strategy.hash(key) ^ seed;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * Converts a mixed hash code in the range
+   * Integer.MIN_VALUE...Integer.MAX_VALUE to a value in the range
+   * 0...(size of hash table) - 1.
    */
   int compFunction(int code) {
-    int value = code % tableSize;
-    if (value < 0) {
-      return value + tableSize;
+    return compFunction(code, tableSize);
+  }
+
+  /**
+   * Converts a mixed hash code in the range
+   * Integer.MIN_VALUE...Integer.MAX_VALUE to a value in the range
+   * 0...buckets - 1, where buckets is a power of two.
+   */
+  private static int compFunction(int code, int buckets) {
+    return code & (buckets - 1);
+  }
+
+  /**
+   * Returns the smallest power of two that is at least n (and at least 2).
+   */
+  private static int tableSizeFor(int n) {
+    if (n >= MAXIMUM_CAPACITY) {
+      return MAXIMUM_CAPACITY;
     }
-    return value;
+    return n <= 2 ? 2 : Integer.highestOneBit(n - 1) << 1;
+  }
+
+  /**
+   * Returns true if an incremental rehash is in progress.
+   */
+  private boolean isRehashing() {
+    return rehashIndex >= 0;
   }
 
   /**
-   * Tests if the integer parameter is prime.
-   * @return true if the parameter is a prime number.
+   * Starts an incremental rehash into a new table with the specified number
+   * of buckets.
    */
-  private boolean isPrime(int n) {
-    for (int divisor = 2; divisor < n; divisor++) {
-      if (n % divisor == 0) {
-        return false;
+  private void startRehash(int buckets) {
+    nextTableSize = buckets;
+    nextTable = newTable(buckets);
+    nextTrees = null;
+    rehashIndex = 0;
+    metrics.maxChainLength.reset();
+  }
+
+  /**
+   * Migrates up to REHASH_STEPS non-empty buckets from table to nextTable,
+   * skipping at most MAX_EMPTY_VISITS empty buckets.  When every bucket has
+   * been migrated, nextTable replaces table.
+   */
+  private void rehashStep() {
+    boolean timed = recording
+      && (++rehashSteps & (RESIZE_TIMING_SAMPLE - 1)) == 0;
+    long start = timed ? System.nanoTime() : 0;
+    int steps = REHASH_STEPS;
+    int emptyVisits = MAX_EMPTY_VISITS;
+    while (steps > 0 && rehashIndex < tableSize) {
+      List<Entry<K, V>> bucket = table[rehashIndex];
+      TreeBucket<K, V> tree = trees == null ? null : trees[rehashIndex];
+      if (tree != null) {
+        for (Entry<K, V> entry : tree.entries()) {
+          addEntry(entry, hash(entry.key), true);
+        }
+        trees[rehashIndex] = null;
+      } else if (isEmptyBucket(bucket)) {
+        rehashIndex++;
+        if (--emptyVisits == 0) {
+          break;
+        }
+        continue;
+      } else {
+        try {
+          ListNode<Entry<K, V>> node = bucket.front();
+          while (node.isValidNode()) {
+            Entry<K, V> entry = node.getItem();
+            addEntry(entry, hash(entry.key), true);
+            node = node.next();
+          }
+        } catch (ListEmptyException e) {
+        } catch (InvalidNodeException e) {}
+        table[rehashIndex] = null;
+      }
+      rehashIndex++;
+      steps--;
+    }
+    if (rehashIndex == tableSize) {
+      table = nextTable;
+      tableSize = nextTableSize;
+      trees = nextTrees;
+      nextTable = null;
+      nextTableSize = 0;
+      nextTrees = null;
+      rehashIndex = -1;
+      if (recording) {
+        metrics.resizes.increment();
       }
     }
-    return true;
+    if (timed) {
+      metrics.resizeNanos.add((System.nanoTime() - start)
+                              * RESIZE_TIMING_SAMPLE);
+    }
   }
 
-  /** 
+  /**
+   * Completes any incremental rehash in progress.
+   */
+  private void finishRehash() {
+    while (isRehashing()) {
+      rehashStep();
+    }
+  }
+
+  /**
+   * Starts a rehash into a larger table if the load factor exceeds
+   * maxLoadFactor.
+   */
+  private void growIfNeeded() {
+    if (!isRehashing() && tableSize < MAXIMUM_CAPACITY
+        && size > maxLoadFactor * tableSize) {
+      startRehash(tableSize * 2);
+    }
+  }
+
+  /**
+   * Starts a rehash into a smaller table if the load factor has fallen below
+   * minLoadFactor.
+   */
+  private void shrinkIfNeeded() {
+    if (!isRehashing() && tableSize > minTableSize
+        && size < minLoadFactor * tableSize) {
+      startRehash(Math.max(minTableSize, tableSize / 2));
+    }
+  }
+
+  /**
+   * Returns the node holding an entry with the specified key in the
+   * specified bucket, or null if there is no such node.  Adds the number of
+   * entries examined to probes.
+   */
+  private ListNode<Entry<K, V>> findNode(List<Entry<K, V>> bucket, K key) {
+    try {
+      ListNode<Entry<K, V>> node = bucket.front();
+      while (node.isValidNode()) {
+        probes++;
+        if (strategy.equals(key, node.getItem().key)) {
+          return node;
+        }
+        node = node.next();
+      }
+    } catch (ListEmptyException e) {
+    } catch (InvalidNodeException e) {}
+    return null;
+  }
+
+  /**
+   * Adds an entry to its bucket in table (or in nextTable, if next is true),
+   * converting the bucket into a tree if its chain becomes too long.
+   */
+  private void addEntry(Entry<K, V> entry, int hash, boolean next) {
+    int i = next ? compFunction(hash, nextTableSize) : compFunction(hash);
+    TreeBucket<K, V>[] tr = next ? nextTrees : trees;
+    if (tr != null && tr[i] != null) {
+      tr[i].insert(hash, entry);
+      if (recording) {
+        metrics.recordChainLength(tr[i].size());
+      }
+      return;
+    }
+    List<Entry<K, V>>[] t = next ? nextTable : table;
+    List<Entry<K, V>> bucket = t[i];
+    if (bucket == null) {
+      bucket = new DList<Entry<K, V>>();
+      t[i] = bucket;
+    }
+    bucket.insertFront(entry);
+    if (recording) {
+      metrics.recordChainLength(bucket.length());
+    }
+    if (bucket.length() > TREEIFY_THRESHOLD) {
+      treeify(i, next);
+    }
+  }
+
+  /**
+   * Converts bucket i of table (or of nextTable, if next is true) from a
+   * chain into a tree.
+   */
+  private void treeify(int i, boolean next) {
+    List<Entry<K, V>>[] t = next ? nextTable : table;
+    TreeBucket<K, V>[] tr = next ? nextTrees : trees;
+    if (tr == null) {
+      @SuppressWarnings("unchecked")
+      TreeBucket<K, V>[] created = (TreeBucket<K, V>[])
+        new TreeBucket<?, ?>[next ? nextTableSize : tableSize];
+      tr = created;
+      if (next) {
+        nextTrees = tr;
+      } else {
+        trees = tr;
+      }
+    }
+    TreeBucket<K, V> tree =
+      new TreeBucket<K, V>(strategy, strategy == HashStrategy.NATURAL);
+    try {
+      ListNode<Entry<K, V>> node = t[i].front();
+      while (node.isValidNode()) {
+        Entry<K, V> entry = node.getItem();
+        tree.insert(hash(entry.key), entry);
+        node = node.next();
+      }
+    } catch (ListEmptyException e) {
+    } catch (InvalidNodeException e) {}
+    t[i] = null;
+    tr[i] = tree;
+  }
+
+  /**
+   * Converts bucket i of table (or of nextTable, if next is true) from a
+   * tree back into a chain.
+   */
+  private void untreeify(int i, boolean next) {
+    List<Entry<K, V>>[] t = next ? nextTable : table;
+    TreeBucket<K, V>[] tr = next ? nextTrees : trees;
+    if (t[i] == null) {
+      t[i] = new DList<Entry<K, V>>();
+    }
+    for (Entry<K, V> entry : tr[i].entries()) {
+      t[i].insertFront(entry);
+    }
+    tr[i] = null;
+  }
+
+  /**
+   * Searches the bucket of table (or of nextTable, if next is true) for an
+   * entry with the specified key and hash code, and returns it, or null if
+   * there is none.  If remove is true, the entry is also removed from the
+   * bucket.  Adds the number of entries examined to probes.
+   */
+  private Entry<K, V> lookup(K key, int hash, boolean next, boolean remove)
+    throws InvalidNodeException {
+    int i = next ? compFunction(hash, nextTableSize) : compFunction(hash);
+    List<Entry<K, V>> bucket = next ? nextTable[i] : table[i];
+    if (isEmptyBucket(bucket)) {
+      TreeBucket<K, V>[] tr = next ? nextTrees : trees;
+      if (tr == null || tr[i] == null) {
+        return null;
+      }
+      TreeBucket<K, V> tree = tr[i];
+      Entry<K, V> entry = remove ? tree.remove(hash, key)
+                                 : tree.find(hash, key);
+      probes += tree.probes;
+      if (remove && entry != null && tree.size() < UNTREEIFY_THRESHOLD) {
+        untreeify(i, next);
+      }
+      return entry;
+    }
+    ListNode<Entry<K, V>> node = findNode(bucket, key);
+    if (node == null) {
+      return null;
+    }
+    Entry<K, V> entry = node.getItem();
+    if (remove) {
+      node.remove();
+    }
+    return entry;
+  }
+
+  /**
+   * Searches both tables for an entry with the specified key, removing it if
+   * remove is true, and records the lookup.  Returns the entry, or null if
+   * there is none.
+   */
+  private Entry<K, V> lookup(K key, boolean remove)
+    throws InvalidNodeException {
+    return lookup(key, hash(key), remove);
+  }
+
+  /**
+   * Searches both tables for an entry with the specified key and hash code,
+   * removing it if remove is true, and records the lookup.  Returns the
+   * entry, or null if there is none.
+   */
+  private Entry<K, V> lookup(K key, int hash, boolean remove)
+    throws InvalidNodeException {
+    probes = 0;
+    Entry<K, V> entry = lookup(key, hash, false, remove);
+    if (entry == null && isRehashing()) {
+      entry = lookup(key, hash, true, remove);
+    }
+    if (recording) {
+      metrics.recordLookup(entry != null, probes);
+    }
+    return entry;
+  }
+
+  /**
    * Returns the number of entries stored in the dictionary.  Entries with
    * the same key (or even the same key and value) each still count as
    * a separate entry.
@@ -86,7 +567,7 @@ public class HashTableChained<K, V> implements Dictionary<K, V> {
     return size;
   }
 
-  /** 
+  /**
    * Tests if the dictionary is empty.
    * @return true if the dictionary has no entries; false otherwise.
    **/
@@ -105,11 +586,19 @@ public class HashTableChained<K, V> implements Dictionary<K, V> {
    */
   public Entry<K, V> insert(K key, V value) {
     try {
-      int hash = key.hashCode();
+      int hash = hash(key);
       Entry<K, V> entry = new Entry<K, V>();
       entry.key = key;
       entry.value = value;
-      table[compFunction(hash)].insertFront(entry);
+      if (isRehashing()) {
+        rehashStep();
+      }
+      addEntry(entry, hash, isRehashing());
+      size++;
+      if (recording) {
+        metrics.inserts.increment();
+      }
+      growIfNeeded();
       return entry;
     } catch (Exception e) {
       System.out.println("Unhashable key: " + e);
@@ -117,7 +606,7 @@ public class HashTableChained<K, V> implements Dictionary<K, V> {
     }
   }
 
-  /** 
+  /**
    * Searches for an entry with the specified key.  If such an entry is found,
    * returns it; otherwise returns null.  If several entries have the specified
    * key, chooses one arbitrarily and return it.
@@ -127,18 +616,17 @@ public class HashTableChained<K, V> implements Dictionary<K, V> {
    */
   public Entry<K, V> find(K key) {
     try {
-      int hash = key.hashCode();
-      ListNode<Entry<K, V>> node = table[compFunction(hash)].front();
-      if (node.isValidNode()) {
-        return (Entry<K, V>) node.getItem();
+      if (isRehashing()) {
+        rehashStep();
       }
+      return lookup(key, false);
     } catch (Exception e) {
       System.out.println("Unhashable key: " + e);
     }
     return null;
   }
 
-  /** 
+  /**
    * Removes an entry with the specified key.  If such an entry is found,
    * removes it from the table and return it; otherwise returns null.
    * If several entries have the specified key, chooses one arbitrarily, then
@@ -149,11 +637,16 @@ public class HashTableChained<K, V> implements Dictionary<K, V> {
    */
   public Entry<K, V> remove(K key) {
     try {
-      int hash = key.hashCode();
-      ListNode<Entry<K, V>> node = table[compFunction(hash)].front();
-      if (node.isValidNode()) {
-        Entry<K, V> entry = (Entry<K, V>) node.getItem();
-        node.remove();
+      if (isRehashing()) {
+        rehashStep();
+      }
+      Entry<K, V> entry = lookup(key, true);
+      if (entry != null) {
+        size--;
+        if (recording) {
+          metrics.removes.increment();
+        }
+        shrinkIfNeeded();
         return entry;
       }
     } catch (Exception e) {
@@ -163,34 +656,700 @@ public class HashTableChained<K, V> implements Dictionary<K, V> {
   }
 
   /**
-   * Remove all entries from the dictionary.
+   * Hashes each of the specified keys.  Returns the keys' indices sorted by
+   * the bucket their hash codes select in table (or in nextTable, if next is
+   * true), each packed with its bucket into a long.  Keys that can't be
+   * hashed are reported and left out.  Stores the hash codes in hashes.
+   */
+  private long[] bucketOrder(K[] keys, int[] hashes, boolean next) {
+    long[] order = new long[keys.length];
+    int n = 0;
+    for (int i = 0; i < keys.length; i++) {
+      try {
+        hashes[i] = hash(keys[i]);
+      } catch (Exception e) {
+        System.out.println("Unhashable key: " + e);
+        continue;
+      }
+      int bucket = next ? compFunction(hashes[i], nextTableSize)
+                        : compFunction(hashes[i]);
+      order[n++] = ((long) bucket << 32) | i;
+    }
+    order = Arrays.copyOf(order, n);
+    Arrays.sort(order);
+    return order;
+  }
+
+  /**
+   * Inserts one entry for each pair keys[i], values[i], as insert() would.
+   * The table is grown at most once, straight to a size that holds the whole
+   * batch, and entries are added in bucket order.  If a rehash is under way
+   * and its table is too small for the batch, it is completed first.
+   * @param keys the keys of the new entries.
+   * @param values the values of the new entries.
+   * @exception IllegalArgumentException if keys and values differ in length.
+   */
+  public void insertAll(K[] keys, V[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("Got " + keys.length + " keys but "
+                                         + values.length + " values");
+    }
+    long target = (long) size + keys.length;
+    int buckets = isRehashing() ? nextTableSize : tableSize;
+    if (target > maxLoadFactor * buckets && buckets < MAXIMUM_CAPACITY) {
+      finishRehash();
+      startRehash(tableSizeFor((int) Math.min(MAXIMUM_CAPACITY,
+                                              target / maxLoadFactor + 1)));
+    }
+    boolean next = isRehashing();
+    int[] hashes = new int[keys.length];
+    long[] order = bucketOrder(keys, hashes, next);
+    for (long packed : order) {
+      int i = (int) packed;
+      if (isRehashing()) {
+        rehashStep();
+      }
+      Entry<K, V> entry = new Entry<K, V>();
+      entry.key = keys[i];
+      entry.value = values[i];
+      addEntry(entry, hashes[i], next && isRehashing());
+      size++;
+    }
+    if (recording) {
+      metrics.inserts.add(order.length);
+    }
+    growIfNeeded();
+  }
+
+  /**
+   * Searches for an entry with each of the specified keys, as find() would,
+   * visiting the keys in bucket order.
+   * @param keys the search keys.
+   * @return an array whose element i is an entry with key keys[i], or null
+   *         if no entry contains that key.
+   */
+  public Entry<K, V>[] findAll(K[] keys) {
+    @SuppressWarnings("unchecked")
+    Entry<K, V>[] entries = (Entry<K, V>[]) new Entry<?, ?>[keys.length];
+    int[] hashes = new int[keys.length];
+    for (long packed : bucketOrder(keys, hashes, false)) {
+      int i = (int) packed;
+      if (isRehashing()) {
+        rehashStep();
+      }
+      try {
+        entries[i] = lookup(keys[i], hashes[i], false);
+      } catch (InvalidNodeException e) {}
+    }
+    return entries;
+  }
+
+  /**
+   * Removes an entry with each of the specified keys, as remove() would,
+   * visiting the keys in bucket order.  The table is shrunk, if need be,
+   * only once the whole batch has been removed.
+   * @param keys the search keys.
+   * @return an array whose element i is the entry removed for keys[i], or
+   *         null if no entry was removed for it.
+   */
+  public Entry<K, V>[] removeAll(K[] keys) {
+    @SuppressWarnings("unchecked")
+    Entry<K, V>[] entries = (Entry<K, V>[]) new Entry<?, ?>[keys.length];
+    int[] hashes = new int[keys.length];
+    for (long packed : bucketOrder(keys, hashes, false)) {
+      int i = (int) packed;
+      if (isRehashing()) {
+        rehashStep();
+      }
+      try {
+        entries[i] = lookup(keys[i], hashes[i], true);
+      } catch (InvalidNodeException e) {}
+      if (entries[i] != null) {
+        size--;
+        if (recording) {
+          metrics.removes.increment();
+        }
+      }
+    }
+    shrinkIfNeeded();
+    return entries;
+  }
+
+  /**
+   * Performs an action on every entry of the table.  Nothing is allocated per
+   * entry.
+   * @param action the action to perform on each entry.
+   */
+  public void forEach(Consumer<? super Entry<K, V>> action) {
+    forEach(table, trees, tableSize, action);
+    if (isRehashing()) {
+      forEach(nextTable, nextTrees, nextTableSize, action);
+    }
+  }
+
+  /**
+   * Performs an action on the entries of the next buckets of a scan, and
+   * returns the cursor for the next call.  The cursor counts through the
+   * buckets in bit-reversed order, so that when the table doubles or halves
+   * between calls, the buckets already visited map to buckets the cursor
+   * has passed, and no entry present for the whole scan is missed.  While
+   * the table is rehashing, each bucket of the smaller table is visited
+   * together with the buckets of the larger one its entries spread to.
+   * @param cursor 0 to start a scan, or the cursor returned by the previous
+   *        call.
+   * @param count the number of entries to visit.  Fewer are visited only
+   *        if the scan completes; more may be.
+   * @param action the action to perform on each entry.  It must not change
+   *        the table.
+   * @return the cursor for the next call, or 0 if the scan is complete.
+   */
+  public int scan(int cursor, int count,
+                  Consumer<? super Entry<K, V>> action) {
+    int visited = 0;
+    do {
+      if (!isRehashing()) {
+        visited += visitBucket(table, trees, cursor & (tableSize - 1),
+                               action);
+        cursor = nextCursor(cursor, tableSize - 1);
+        continue;
+      }
+      boolean growing = nextTableSize > tableSize;
+      List<Entry<K, V>>[] small = growing ? table : nextTable;
+      TreeBucket<K, V>[] smallTrees = growing ? trees : nextTrees;
+      List<Entry<K, V>>[] large = growing ? nextTable : table;
+      TreeBucket<K, V>[] largeTrees = growing ? nextTrees : trees;
+      int smallMask = Math.min(tableSize, nextTableSize) - 1;
+      int largeMask = Math.max(tableSize, nextTableSize) - 1;
+      visited += visitBucket(small, smallTrees, cursor & smallMask, action);
+      do {
+        visited += visitBucket(large, largeTrees, cursor & largeMask, action);
+        cursor = nextCursor(cursor, largeMask);
+      } while ((cursor & (smallMask ^ largeMask)) != 0);
+    } while (cursor != 0 && visited < count);
+    return cursor;
+  }
+
+  /**
+   * Returns the cursor that follows the specified one in a table whose
+   * bucket indexes are masked by mask:  the masked bits, read in reverse,
+   * are incremented.
+   */
+  private static int nextCursor(int cursor, int mask) {
+    return Integer.reverse(Integer.reverse(cursor | ~mask) + 1);
+  }
+
+  /**
+   * Performs an action on every entry of bucket i of the specified table,
+   * and returns the number of entries.
+   */
+  private static <K, V> int visitBucket(List<Entry<K, V>>[] t,
+                                        TreeBucket<K, V>[] tr, int i,
+                                        Consumer<? super Entry<K, V>> action) {
+    if (tr != null && tr[i] != null) {
+      tr[i].forEach(action);
+      return tr[i].size();
+    }
+    if (isEmptyBucket(t[i])) {
+      return 0;
+    }
+    t[i].forEach(action);
+    return t[i].length();
+  }
+
+  /**
+   * Performs an action on the key and value of every entry of the table.
+   * Nothing is allocated per entry.
+   * @param action the action to perform on each key and value.
+   */
+  public void forEach(final BiConsumer<? super K, ? super V> action) {
+    forEach(new Consumer<Entry<K, V>>() {
+      public void accept(Entry<K, V> entry) {
+        action.accept(entry.key, entry.value);
+      }
+    });
+  }
+
+  /**
+   * Performs an action on every entry of the specified table.
+   */
+  private static <K, V> void forEach(List<Entry<K, V>>[] t,
+                                     TreeBucket<K, V>[] tr, int buckets,
+                                     Consumer<? super Entry<K, V>> action) {
+    for (int i = 0; i < buckets; i++) {
+      if (tr != null && tr[i] != null) {
+        tr[i].forEach(action);
+      } else if (!isEmptyBucket(t[i])) {
+        t[i].forEach(action);
+      }
+    }
+  }
+
+  /**
+   * Returns an Iterator over the entries of the table.
+   * @return an Iterator over the entries of the table.
+   */
+  public Iterator<Entry<K, V>> iterator() {
+    return new EntryIterator();
+  }
+
+  /**
+   * Returns a Spliterator over the entries of the table.  It splits by
+   * halving its range of buckets, so it suits parallel streams.
+   * @return a Spliterator over the entries of the table.
+   */
+  public Spliterator<Entry<K, V>> spliterator() {
+    return new BucketSpliterator<K, V>(table, trees, tableSize,
+                                       isRehashing() ? nextTable : null,
+                                       nextTrees, nextTableSize, size);
+  }
+
+  /**
+   * Returns the number of entries a bulk task should visit without
+   * splitting its work further:  all of them if the table holds fewer than
+   * parallelismThreshold entries, and otherwise enough to give each thread
+   * of the common pool about four batches.
+   */
+  private long batchSize(long parallelismThreshold) {
+    if (size < parallelismThreshold) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(1, size / (ForkJoinPool.getCommonPoolParallelism() << 2));
+  }
+
+  /**
+   * Performs an action on the key and value of every entry, in parallel if
+   * the table holds at least parallelismThreshold entries.  The action may
+   * be run on several threads at once, in no particular order.
+   * @param parallelismThreshold the number of entries needed to go parallel.
+   * @param action the action to perform on each key and value.
+   */
+  public void forEach(long parallelismThreshold,
+                      final BiConsumer<? super K, ? super V> action) {
+    new BulkTask<K, V, Object>(spliterator(), batchSize(parallelismThreshold),
+                               new BiFunction<K, V, Object>() {
+                                 public Object apply(K key, V value) {
+                                   action.accept(key, value);
+                                   return null;
+                                 }
+                               }, null, null).invoke();
+  }
+
+  /**
+   * Returns the result of combining transformer(key, value) over every
+   * entry with reducer, or null if the table is empty or every result is
+   * null (null results are skipped).  Runs in parallel if the table holds at
+   * least parallelismThreshold entries; reducer must then be associative.
+   * @param parallelismThreshold the number of entries needed to go parallel.
+   * @param transformer computes the value to reduce for an entry.
+   * @param reducer combines two values.
+   * @return the combined value, or null.
+   */
+  public <U> U reduce(long parallelismThreshold,
+                      BiFunction<? super K, ? super V, ? extends U> transformer,
+                      BiFunction<? super U, ? super U, ? extends U> reducer) {
+    if (reducer == null) {
+      throw new NullPointerException();
+    }
+    return new BulkTask<K, V, U>(spliterator(),
+                                 batchSize(parallelismThreshold),
+                                 transformer, reducer, null).invoke();
+  }
+
+  /**
+   * Returns a non-null result of searchFunction(key, value) for some entry,
+   * or null if there is none.  Once a result is found, the remaining entries
+   * are skipped.  Runs in parallel if the table holds at least
+   * parallelismThreshold entries, in which case the result may come from
+   * any matching entry.
+   * @param parallelismThreshold the number of entries needed to go parallel.
+   * @param searchFunction returns a result for a matching entry, or null.
+   * @return a non-null result of searchFunction, or null.
+   */
+  public <U> U search(long parallelismThreshold,
+                      BiFunction<? super K, ? super V, ? extends U>
+                        searchFunction) {
+    return new BulkTask<K, V, U>(spliterator(),
+                                 batchSize(parallelismThreshold),
+                                 searchFunction, null,
+                                 new AtomicReference<U>()).invoke();
+  }
+
+  /**
+   * A BulkTask applies a transformer to the entries of a Spliterator and
+   * combines the non-null results with a reducer.  While its Spliterator
+   * holds more than batch entries, it splits off half and forks a task for
+   * it.  A search task has a null reducer; it sets the shared result found
+   * to the first non-null result, and every task of the search stops once
+   * found is set.
+   */
+  static class BulkTask<K, V, U> extends RecursiveTask<U>
+    implements Consumer<Entry<K, V>> {
+    private static final long serialVersionUID = 1L;
+
+    private final Spliterator<Entry<K, V>> spliterator;
+    private final long batch;
+    private final BiFunction<? super K, ? super V, ? extends U> transformer;
+    private final BiFunction<? super U, ? super U, ? extends U> reducer;
+    private final AtomicReference<U> found;
+    private U result;
+    private BulkTask<K, V, U> nextForked;
+
+    BulkTask(Spliterator<Entry<K, V>> spliterator, long batch,
+             BiFunction<? super K, ? super V, ? extends U> transformer,
+             BiFunction<? super U, ? super U, ? extends U> reducer,
+             AtomicReference<U> found) {
+      this.spliterator = spliterator;
+      this.batch = batch;
+      this.transformer = transformer;
+      this.reducer = reducer;
+      this.found = found;
+    }
+
+    private boolean stopped() {
+      return found != null && found.get() != null;
+    }
+
+    /**
+     * Combines two partial results, either of which may be null.
+     */
+    private U combine(U a, U b) {
+      if (a == null) {
+        return b;
+      }
+      return b == null ? a : reducer.apply(a, b);
+    }
+
+    public void accept(Entry<K, V> entry) {
+      U u = transformer.apply(entry.key, entry.value);
+      if (u == null) {
+        return;
+      }
+      if (found != null) {
+        found.compareAndSet(null, u);
+      } else {
+        result = combine(result, u);
+      }
+    }
+
+    protected U compute() {
+      BulkTask<K, V, U> forked = null;
+      Spliterator<Entry<K, V>> split;
+      while (spliterator.estimateSize() > batch && !stopped()
+             && (split = spliterator.trySplit()) != null) {
+        BulkTask<K, V, U> task =
+          new BulkTask<K, V, U>(split, batch, transformer, reducer, found);
+        task.nextForked = forked;
+        forked = task;
+        task.fork();
+      }
+      if (found == null) {
+        spliterator.forEachRemaining(this);
+      } else {
+        while (!stopped() && spliterator.tryAdvance(this)) {}
+      }
+      for (; forked != null; forked = forked.nextForked) {
+        U u = forked.join();
+        if (found == null) {
+          result = combine(result, u);
+        }
+      }
+      return found == null ? result : found.get();
+    }
+  }
+
+  /**
+   * A BucketSpliterator visits the entries in a range of buckets.  Bucket
+   * indices below the table's size refer to table; the rest refer to
+   * nextTable, so that one range covers both tables during a rehash.
+   */
+  static class BucketSpliterator<K, V> implements Spliterator<Entry<K, V>> {
+    private final List<Entry<K, V>>[] table;
+    private final TreeBucket<K, V>[] trees;
+    private final int tableSize;
+    private final List<Entry<K, V>>[] nextTable;
+    private final TreeBucket<K, V>[] nextTrees;
+    private int index;
+    private int fence;
+    private long estimate;
+    private Iterator<Entry<K, V>> current;
+
+    BucketSpliterator(List<Entry<K, V>>[] table, TreeBucket<K, V>[] trees,
+                      int tableSize, List<Entry<K, V>>[] nextTable,
+                      TreeBucket<K, V>[] nextTrees, int nextTableSize,
+                      long estimate) {
+      this(table, trees, tableSize, nextTable, nextTrees, 0,
+           tableSize + (nextTable == null ? 0 : nextTableSize), estimate);
+    }
+
+    private BucketSpliterator(List<Entry<K, V>>[] table,
+                              TreeBucket<K, V>[] trees, int tableSize,
+                              List<Entry<K, V>>[] nextTable,
+                              TreeBucket<K, V>[] nextTrees, int index,
+                              int fence, long estimate) {
+      this.table = table;
+      this.trees = trees;
+      this.tableSize = tableSize;
+      this.nextTable = nextTable;
+      this.nextTrees = nextTrees;
+      this.index = index;
+      this.fence = fence;
+      this.estimate = estimate;
+    }
+
+    /**
+     * Performs an action on every entry of bucket i.
+     */
+    private void forEachInBucket(int i, Consumer<? super Entry<K, V>> action) {
+      List<Entry<K, V>>[] t = table;
+      TreeBucket<K, V>[] tr = trees;
+      if (i >= tableSize) {
+        t = nextTable;
+        tr = nextTrees;
+        i -= tableSize;
+      }
+      if (tr != null && tr[i] != null) {
+        tr[i].forEach(action);
+      } else if (!isEmptyBucket(t[i])) {
+        t[i].forEach(action);
+      }
+    }
+
+    /**
+     * Returns an iterator over the entries of bucket i, or null if the
+     * bucket is empty.
+     */
+    private Iterator<Entry<K, V>> bucketIterator(int i) {
+      List<Entry<K, V>>[] t = table;
+      TreeBucket<K, V>[] tr = trees;
+      if (i >= tableSize) {
+        t = nextTable;
+        tr = nextTrees;
+        i -= tableSize;
+      }
+      if (tr != null && tr[i] != null) {
+        return tr[i].entries().iterator();
+      }
+      return isEmptyBucket(t[i]) ? null : t[i].iterator();
+    }
+
+    public boolean tryAdvance(Consumer<? super Entry<K, V>> action) {
+      while (current == null || !current.hasNext()) {
+        if (index >= fence) {
+          return false;
+        }
+        current = bucketIterator(index++);
+      }
+      action.accept(current.next());
+      return true;
+    }
+
+    public void forEachRemaining(Consumer<? super Entry<K, V>> action) {
+      if (current != null) {
+        while (current.hasNext()) {
+          action.accept(current.next());
+        }
+        current = null;
+      }
+      for (; index < fence; index++) {
+        forEachInBucket(index, action);
+      }
+    }
+
+    public Spliterator<Entry<K, V>> trySplit() {
+      int mid = (index + fence) >>> 1;
+      if (mid <= index) {
+        return null;
+      }
+      estimate >>>= 1;
+      BucketSpliterator<K, V> split =
+        new BucketSpliterator<K, V>(table, trees, tableSize, nextTable,
+                                    nextTrees, mid, fence, estimate);
+      fence = mid;
+      return split;
+    }
+
+    public long estimateSize() {
+      return estimate;
+    }
+
+    public int characteristics() {
+      return Spliterator.DISTINCT | Spliterator.NONNULL;
+    }
+  }
+
+  /**
+   * An EntryIterator visits the buckets of table, then those of nextTable,
+   * taking one bucket's iterator at a time.
+   */
+  private class EntryIterator implements Iterator<Entry<K, V>> {
+    private boolean inNext;
+    private int bucket = -1;
+    private Iterator<Entry<K, V>> current =
+      Collections.<Entry<K, V>>emptyIterator();
+
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        bucket++;
+        if (bucket == (inNext ? nextTableSize : tableSize)) {
+          if (inNext || !isRehashing()) {
+            bucket--;
+            return false;
+          }
+          inNext = true;
+          bucket = 0;
+        }
+        List<Entry<K, V>>[] t = inNext ? nextTable : table;
+        TreeBucket<K, V>[] tr = inNext ? nextTrees : trees;
+        if (tr != null && tr[bucket] != null) {
+          current = tr[bucket].entries().iterator();
+        } else if (!isEmptyBucket(t[bucket])) {
+          current = t[bucket].iterator();
+        }
+      }
+      return true;
+    }
+
+    public Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+  }
+
+  /**
+   * Remove all entries from the dictionary.  The bucket array is kept and
+   * cleared in place; no buckets are allocated.
    */
   public void makeEmpty() {
-    for (int i = 0; i < tableSize; i++) {
-      table[i] = new DList<Entry<K, V>>();
+    Arrays.fill(table, null);
+    trees = null;
+    nextTable = null;
+    nextTableSize = 0;
+    nextTrees = null;
+    rehashIndex = -1;
+    size = 0;
+    metrics.maxChainLength.reset();
+  }
+
+  /**
+   * Returns a snapshot of the table's statistics.  Counters are maintained
+   * as the table runs, so this takes time independent of the table's size.
+   * @return the current statistics.
+   */
+  public TableStats stats() {
+    return metrics.snapshot(size, isRehashing() ? nextTableSize : tableSize);
+  }
+
+  /**
+   * Resets the hit, miss, insert, remove, probe and resize counters to zero.
+   */
+  public void resetStats() {
+    metrics.reset();
+  }
+
+  /**
+   * Turns the counters reported by stats() on or off.  They start on.  While
+   * they are off, no operation updates them, and stats() reports them as
+   * they stood when they were turned off.
+   * @param enabled true to update the counters; false to stop.
+   */
+  public void setMetricsEnabled(boolean enabled) {
+    recording = enabled;
+  }
+
+  /**
+   * Registers a TableStatsMXBean for this table with the platform MBean
+   * server, under the name "dict:type=HashTableChained,name=" + name.
+   * @param name distinguishes this table from others.
+   * @exception JMException if the name is malformed or already registered.
+   */
+  public void registerMBean(String name) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().registerMBean(
+      new StatsBean(),
+      new ObjectName("dict:type=HashTableChained,name=" + name));
+  }
+
+  /**
+   * A StatsBean reads this table's statistics on behalf of JMX.
+   */
+  private class StatsBean implements TableStatsMXBean {
+    public int getSize() {
+      return stats().size();
+    }
+
+    public int getBuckets() {
+      return stats().buckets();
+    }
+
+    public double getLoadFactor() {
+      return stats().loadFactor();
+    }
+
+    public long getHits() {
+      return stats().hits();
+    }
+
+    public long getMisses() {
+      return stats().misses();
+    }
+
+    public double getHitRate() {
+      return stats().hitRate();
+    }
+
+    public double getMeanProbeLength() {
+      return stats().meanProbeLength();
+    }
+
+    public long[] getProbeHistogram() {
+      return stats().probeHistogram();
+    }
+
+    public long getMaxChainLength() {
+      return stats().maxChainLength();
+    }
+
+    public long getResizes() {
+      return stats().resizes();
+    }
+
+    public long getResizeNanos() {
+      return stats().resizeNanos();
     }
   }
 
   /**
    * Returns a histograph of number of entries in each bucket of the hash table.
+   * While a rehash is in progress, the buckets of the new table follow those
+   * of the old one.
    * @return String the representation of the histograph
    */
   public String histograph() {
-    int collisions = 0;
-    String hist = "[START] Size: " + tableSize + "\n";
-    for (int i = 0; i < tableSize; i++) {
-      int length = table[i].length();
-      hist += i + ": ";
+    StringBuilder hist = new StringBuilder();
+    hist.append("[START] Size: ").append(tableSize).append("\n");
+    histograph(hist, table, trees, tableSize);
+    if (isRehashing()) {
+      hist.append("[REHASH] Size: ").append(nextTableSize).append("\n");
+      histograph(hist, nextTable, nextTrees, nextTableSize);
+    }
+    hist.append("[END] Collisions: ").append(numCollisions());
+    return hist.toString();
+  }
+
+  /**
+   * Appends the lines of the histograph for the specified table to hist.
+   */
+  private static void histograph(StringBuilder hist, List<?>[] t,
+                                 TreeBucket<?, ?>[] tr, int buckets) {
+    for (int i = 0; i < buckets; i++) {
+      int length = bucketLength(t, tr, i);
+      hist.append(i).append(": ");
       for (int j = 0; j < length; j++) {
-        hist += "*";
-      }
-      hist += "\n";
-      if (length > 1) {
-        collisions += (length - 1);
+        hist.append('*');
       }
+      hist.append('\n');
     }
-    hist += "[END] Collisions: " + collisions;
-    return hist;
   }
 
   /**
@@ -198,13 +1357,36 @@ public class HashTableChained<K, V> implements Dictionary<K, V> {
    * @return the number of collisions
    */
   public int numCollisions() {
+    int collisions = numCollisions(table, trees, tableSize);
+    if (isRehashing()) {
+      collisions += numCollisions(nextTable, nextTrees, nextTableSize);
+    }
+    return collisions;
+  }
+
+  /**
+   * Returns the number of collisions in the specified table.
+   */
+  private static int numCollisions(List<?>[] t, TreeBucket<?, ?>[] tr,
+                                   int buckets) {
     int collisions = 0;
-    for (int i = 0; i < tableSize; i++) {
-      if (table[i].length() > 1) {
-        collisions += table[i].length() - 1;
+    for (int i = 0; i < buckets; i++) {
+      int length = bucketLength(t, tr, i);
+      if (length > 1) {
+        collisions += length - 1;
       }
     }
     return collisions;
   }
 
+  /**
+   * Returns the number of entries in bucket i, whether a chain or a tree.
+   */
+  private static int bucketLength(List<?>[] t, TreeBucket<?, ?>[] tr, int i) {
+    if (tr != null && tr[i] != null) {
+      return tr[i].size();
+    }
+    return t[i] == null ? 0 : t[i].length();
+  }
+
 }
@@ -0,0 +1,294 @@
+/* HashTableOpen.java */
+
+package dict;
+
+import java.util.Arrays;
+
+/**
+ * HashTableOpen implements a Dictionary as a hash table with open addressing
+ * and linear probing.  Instead of a list of Entry objects per bucket, keys,
+ * values and hash codes are stored in three parallel arrays, so a lookup
+ * usually touches one or two adjacent slots and the table holds no per-entry
+ * objects.  All objects used as keys must have a valid hashCode() method.
+ *
+ * Removal uses backward-shift deletion rather than tombstones: the entries
+ * following a removed slot are moved back into it as long as that brings them
+ * closer to their home slot, so probe sequences never pass over dead slots.
+ *
+ * Since entries are not stored as objects, the Entry returned by insert(),
+ * find() and remove() is a copy of the stored key and value.
+ **/
+
+public class HashTableOpen<K, V> implements Dictionary<K, V> {
+
+  /**
+   * DEFAULT_MAX_LOAD_FACTOR is the load factor above which the table grows.
+   * MAXIMUM_CAPACITY is the largest number of slots the table can have.
+   */
+  public static final double DEFAULT_MAX_LOAD_FACTOR = 0.5;
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  /**
+   * @param  keys the key stored in each slot; null if the slot is empty
+   * @param  values the value stored in each slot
+   * @param  hashes the mixed hash code of the key stored in each slot
+   * @param  mask number of slots minus one (the number of slots is a power
+   *         of two)
+   * @param  size number of entries in the table
+   * @param  threshold the table grows when size exceeds this
+   * @param  maxLoadFactor the load factor above which the table grows
+   */
+  private Object[] keys;
+  private Object[] values;
+  private int[] hashes;
+  private int mask;
+  private int size;
+  private int threshold;
+  private double maxLoadFactor;
+
+  /**
+   * Constructs a new empty hash table intended to hold roughly sizeEstimate
+   * entries, which grows when its load factor exceeds maxLoadFactor.
+   * @param sizeEstimate the number of entries the table is expected to hold.
+   * @param maxLoadFactor the load factor above which the table grows.
+   * @exception IllegalArgumentException if maxLoadFactor is not between 0
+   *            and 1 (exclusive).
+   */
+  public HashTableOpen(int sizeEstimate, double maxLoadFactor) {
+    if (!(maxLoadFactor > 0 && maxLoadFactor < 1)) {
+      throw new IllegalArgumentException("Illegal max load factor: "
+                                         + maxLoadFactor);
+    }
+    this.maxLoadFactor = maxLoadFactor;
+    allocate(capacityFor(sizeEstimate, maxLoadFactor));
+  }
+
+  /**
+   * Constructs a new empty hash table intended to hold roughly sizeEstimate
+   * entries.
+   */
+  public HashTableOpen(int sizeEstimate) {
+    this(sizeEstimate, DEFAULT_MAX_LOAD_FACTOR);
+  }
+
+  /**
+   * Constructs a new empty hash table with a default size (128 slots).
+   */
+  public HashTableOpen() {
+    this(64, DEFAULT_MAX_LOAD_FACTOR);
+  }
+
+  /**
+   * Returns the smallest power of two number of slots that holds n entries
+   * without exceeding the specified load factor.
+   */
+  private static int capacityFor(int n, double loadFactor) {
+    int capacity = 2;
+    while (capacity < MAXIMUM_CAPACITY && n > capacity * loadFactor) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Allocates empty slot arrays with the specified (power of two) capacity.
+   */
+  private void allocate(int capacity) {
+    keys = new Object[capacity];
+    values = new Object[capacity];
+    hashes = new int[capacity];
+    mask = capacity - 1;
+    threshold = (int) Math.min(capacity * maxLoadFactor, capacity - 1);
+  }
+
+  /**
+   * Spreads the bits of a hash code so that keys whose hash codes differ only
+   * in their high bits still land in different slots.
+   */
+  static int mix(int code) {
+    int h = code * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Returns the mixed hash code of a key.
+   * @exception IllegalArgumentException if the key is null or its
+   *            hashCode() throws.
+   */
+  private static int hash(Object key) {
+    try {
+      return mix(key.hashCode());
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Unhashable key: " + key, e);
+    }
+  }
+
+  /**
+   * Returns the slot holding an entry with the specified key and mixed hash
+   * code, or -1 if there is no such slot.
+   */
+  private int findSlot(Object key, int hash) {
+    int i = hash & mask;
+    Object k;
+    while ((k = keys[i]) != null) {
+      if (hashes[i] == hash && (k == key || key.equals(k))) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Stores a key, value and hash code in the first empty slot of its probe
+   * sequence.
+   */
+  private void place(Object key, Object value, int hash) {
+    int i = hash & mask;
+    while (keys[i] != null) {
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    hashes[i] = hash;
+  }
+
+  /**
+   * Doubles the number of slots and reinserts every entry.  The stored hash
+   * codes are reused, so no key's hashCode() is called again.
+   */
+  private void grow() {
+    Object[] oldKeys = keys;
+    Object[] oldValues = values;
+    int[] oldHashes = hashes;
+    allocate(oldKeys.length << 1);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        place(oldKeys[i], oldValues[i], oldHashes[i]);
+      }
+    }
+  }
+
+  /**
+   * Empties slot i, then shifts back any following entries whose probe
+   * sequence passes through the emptied slot, so that no lookup ever stops
+   * early at a hole.
+   */
+  private void deleteSlot(int i) {
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (keys[j] == null) {
+        break;
+      }
+      int home = hashes[j] & mask;
+      if (((j - home) & mask) >= ((j - i) & mask)) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        hashes[i] = hashes[j];
+        i = j;
+      }
+    }
+    keys[i] = null;
+    values[i] = null;
+  }
+
+  /**
+   * Returns a new Entry holding the specified key and value.
+   */
+  @SuppressWarnings("unchecked")
+  private Entry<K, V> newEntry(Object key, Object value) {
+    Entry<K, V> entry = new Entry<K, V>();
+    entry.key = (K) key;
+    entry.value = (V) value;
+    return entry;
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.  Entries with
+   * the same key (or even the same key and value) each still count as
+   * a separate entry.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   **/
+  public boolean isEmpty() {
+    return (size == 0);
+  }
+
+  /**
+   * Creates a new Entry object referencing the input key and associated value,
+   * and inserts the entry into the dictionary.  Returns a reference to the new
+   * entry.  Multiple entries with the same key (or even the same key and
+   * value) can coexist in the dictionary.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   * @exception IllegalArgumentException if the key can't be hashed.
+   * @exception IllegalStateException if the table is at its largest size
+   *            and full.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    int hash = hash(key);
+    if (size >= threshold) {
+      if (keys.length == MAXIMUM_CAPACITY) {
+        throw new IllegalStateException("Hash table is full");
+      }
+      grow();
+    }
+    place(key, value, hash);
+    size++;
+    return newEntry(key, value);
+  }
+
+  /**
+   * Searches for an entry with the specified key.  If such an entry is found,
+   * returns it; otherwise returns null.  If several entries have the specified
+   * key, chooses one arbitrarily and return it.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   * @exception IllegalArgumentException if the key can't be hashed.
+   */
+  public Entry<K, V> find(K key) {
+    int i = findSlot(key, hash(key));
+    return i >= 0 ? newEntry(keys[i], values[i]) : null;
+  }
+
+  /**
+   * Removes an entry with the specified key.  If such an entry is found,
+   * removes it from the table and return it; otherwise returns null.
+   * If several entries have the specified key, chooses one arbitrarily, then
+   * removes and returns it.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *          no entry contains the specified key.
+   * @exception IllegalArgumentException if the key can't be hashed.
+   */
+  public Entry<K, V> remove(K key) {
+    int i = findSlot(key, hash(key));
+    if (i < 0) {
+      return null;
+    }
+    Entry<K, V> entry = newEntry(keys[i], values[i]);
+    deleteSlot(i);
+    size--;
+    return entry;
+  }
+
+  /**
+   * Removes all entries from the dictionary.
+   */
+  public void makeEmpty() {
+    Arrays.fill(keys, null);
+    Arrays.fill(values, null);
+    size = 0;
+  }
+
+}
@@ -0,0 +1,244 @@
+/* IntObjectDictionary.java */
+
+package dict;
+
+import java.util.Arrays;
+
+/**
+ * IntObjectDictionary is a dictionary from int keys to object values.  It
+ * follows the Dictionary contract (multiple entries may share a key), but
+ * keys are stored unboxed in an int array, hashed in open-addressed slots with
+ * linear probing, and find() and remove() return the value itself, so no
+ * lookup allocates anything.
+ **/
+
+public class IntObjectDictionary<V> {
+
+  /**
+   * DEFAULT_MAX_LOAD_FACTOR is the load factor above which the table grows.
+   * MAXIMUM_CAPACITY is the largest number of slots the table can have.
+   */
+  public static final double DEFAULT_MAX_LOAD_FACTOR = 0.5;
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  /**
+   * @param  keys the key stored in each slot
+   * @param  values the value stored in each slot
+   * @param  used true for each slot that holds an entry
+   * @param  mask number of slots minus one (the number of slots is a power
+   *         of two)
+   * @param  size number of entries in the table
+   * @param  threshold the table grows when size exceeds this
+   * @param  maxLoadFactor the load factor above which the table grows
+   */
+  private int[] keys;
+  private Object[] values;
+  private boolean[] used;
+  private int mask;
+  private int size;
+  private int threshold;
+  private double maxLoadFactor;
+
+  /**
+   * Constructs a new empty dictionary intended to hold roughly sizeEstimate
+   * entries, which grows when its load factor exceeds maxLoadFactor.
+   * @param sizeEstimate the number of entries the table is expected to hold.
+   * @param maxLoadFactor the load factor above which the table grows.
+   * @exception IllegalArgumentException if maxLoadFactor is not between 0
+   *            and 1 (exclusive).
+   */
+  public IntObjectDictionary(int sizeEstimate, double maxLoadFactor) {
+    if (!(maxLoadFactor > 0 && maxLoadFactor < 1)) {
+      throw new IllegalArgumentException("Illegal max load factor: "
+                                         + maxLoadFactor);
+    }
+    this.maxLoadFactor = maxLoadFactor;
+    int capacity = 2;
+    while (capacity < MAXIMUM_CAPACITY
+           && sizeEstimate > capacity * maxLoadFactor) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  /**
+   * Constructs a new empty dictionary intended to hold roughly sizeEstimate
+   * entries.
+   */
+  public IntObjectDictionary(int sizeEstimate) {
+    this(sizeEstimate, DEFAULT_MAX_LOAD_FACTOR);
+  }
+
+  /**
+   * Constructs a new empty dictionary with a default size (128 slots).
+   */
+  public IntObjectDictionary() {
+    this(64, DEFAULT_MAX_LOAD_FACTOR);
+  }
+
+  /**
+   * Allocates empty slot arrays with the specified (power of two) capacity.
+   */
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new Object[capacity];
+    used = new boolean[capacity];
+    mask = capacity - 1;
+    threshold = (int) Math.min(capacity * maxLoadFactor, capacity - 1);
+  }
+
+  /**
+   * Returns the slot holding an entry with the specified key, or -1 if there
+   * is no such slot.
+   */
+  private int findSlot(int key) {
+    int i = HashTableOpen.mix(key) & mask;
+    while (used[i]) {
+      if (keys[i] == key) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Stores a key and value in the first empty slot of its probe sequence.
+   */
+  private void place(int key, Object value) {
+    int i = HashTableOpen.mix(key) & mask;
+    while (used[i]) {
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    used[i] = true;
+  }
+
+  /**
+   * Doubles the number of slots and reinserts every entry.
+   */
+  private void grow() {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    boolean[] oldUsed = used;
+    allocate(oldKeys.length << 1);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        place(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  /**
+   * Empties slot i, shifting back following entries as in HashTableOpen.
+   */
+  private void deleteSlot(int i) {
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (!used[j]) {
+        break;
+      }
+      int home = HashTableOpen.mix(keys[j]) & mask;
+      if (((j - home) & mask) >= ((j - i) & mask)) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    values[i] = null;
+    used[i] = false;
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.  Entries with
+   * the same key (or even the same key and value) each still count as
+   * a separate entry.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return (size == 0);
+  }
+
+  /**
+   * Inserts an entry with the specified key and value into the dictionary.
+   * Multiple entries with the same key (or even the same key and value) can
+   * coexist in the dictionary.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @exception IllegalStateException if the table can't grow any further.
+   */
+  public void insert(int key, V value) {
+    if (size >= threshold) {
+      if (keys.length == MAXIMUM_CAPACITY) {
+        throw new IllegalStateException("Hash table is full");
+      }
+      grow();
+    }
+    place(key, value);
+    size++;
+  }
+
+  /**
+   * Tests if the dictionary has an entry with the specified key.
+   * @param key the search key.
+   * @return true if some entry has the specified key; false otherwise.
+   */
+  public boolean contains(int key) {
+    return findSlot(key) >= 0;
+  }
+
+  /**
+   * Searches for an entry with the specified key.  If such an entry is found,
+   * returns its value; otherwise returns null.  If several entries have the
+   * specified key, chooses one arbitrarily.  Use contains() to distinguish a
+   * missing key from a null value.
+   * @param key the search key.
+   * @return the value of an entry with the specified key, or null if no entry
+   *         contains the specified key.
+   */
+  @SuppressWarnings("unchecked")
+  public V find(int key) {
+    int i = findSlot(key);
+    return i >= 0 ? (V) values[i] : null;
+  }
+
+  /**
+   * Removes an entry with the specified key.  If such an entry is found,
+   * removes it and returns its value; otherwise returns null.  If several
+   * entries have the specified key, chooses one arbitrarily.
+   * @param key the search key.
+   * @return the value of the removed entry, or null if no entry contains the
+   *         specified key.
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    int i = findSlot(key);
+    if (i < 0) {
+      return null;
+    }
+    V value = (V) values[i];
+    deleteSlot(i);
+    size--;
+    return value;
+  }
+
+  /**
+   * Removes all entries from the dictionary.
+   */
+  public void makeEmpty() {
+    Arrays.fill(values, null);
+    Arrays.fill(used, false);
+    size = 0;
+  }
+
+}
@@ -0,0 +1,446 @@
+/* MappedDictionary.java */
+
+package dict;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * A MappedDictionary is a read-only Dictionary backed by a snapshot file that
+ * is mapped into memory, so opening one costs about as much as mapping the
+ * file, however many entries it holds.  Lookups read the key and value bytes
+ * straight from the mapping and deserialize only the value found.  Several
+ * threads may call find() at once.
+ *
+ * A snapshot is written in one streaming pass by write().  It consists of a
+ * header, the packed records, and a bucket directory:
+ *
+ *   header     magic, version, number of entries, offset of the directory,
+ *              number of directory slots (32 bytes in all)
+ *   records    key length, value length, key bytes, value bytes
+ *   directory  an open-addressing table of (record offset, key hash) slots,
+ *              probed linearly; an offset of 0 marks an empty slot
+ *
+ * Keys are hashed and compared by their serialized bytes, so the key
+ * Serializer must be canonical, and a snapshot can be reopened by another
+ * process.  Files larger than 2GB are mapped in 1GB regions; no record
+ * crosses a region boundary.  All numbers are big-endian.
+ *
+ * A mapping otherwise lasts until its buffers are garbage collected, so
+ * close() unmaps the file as soon as the dictionary is no longer needed
+ * (where the JVM allows it).  No thread may be using the dictionary when it
+ * is closed.
+ */
+
+public class MappedDictionary<K, V> implements Dictionary<K, V>, Closeable {
+
+  /**
+   * MAGIC identifies a snapshot file ("DSNP"), and VERSION its layout.
+   * HEADER_SIZE is the number of bytes before the first record, and
+   * SLOT_SIZE the number of bytes in a directory slot.
+   * REGION_SHIFT is log2 of the size of a mapped region.
+   * MAX_ENTRIES is the largest number of entries a snapshot can hold.
+   */
+  private static final int MAGIC = 0x44534E50;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 32;
+  private static final int SLOT_SIZE = 16;
+  private static final int REGION_SHIFT = 30;
+  private static final long REGION_SIZE = 1L << REGION_SHIFT;
+  private static final long REGION_MASK = REGION_SIZE - 1;
+  private static final int MAX_ENTRIES = 1 << 29;
+
+  /**
+   * UNSAFE and INVOKE_CLEANER unmap a buffer at once through
+   * sun.misc.Unsafe.invokeCleaner(), or are null if it isn't available.
+   */
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try {
+      Class<?> c = Class.forName("sun.misc.Unsafe");
+      Field f = c.getDeclaredField("theUnsafe");
+      f.setAccessible(true);
+      unsafe = f.get(null);
+      invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (Exception e) {}
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  /**
+   * @param  regions the file, mapped in regions of REGION_SIZE bytes, or
+   *         null once the dictionary is closed
+   * @param  size number of entries in the snapshot
+   * @param  directory the offset of the bucket directory
+   * @param  mask number of directory slots minus one
+   * @param  keySerializer converts keys to and from bytes
+   * @param  valueSerializer converts values to and from bytes
+   */
+  private MappedByteBuffer[] regions;
+  private final int size;
+  private final long directory;
+  private final int mask;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+
+  /**
+   * Opens a snapshot file written by write().
+   * @param file the snapshot file.
+   * @param keySerializer the key Serializer the snapshot was written with.
+   * @param valueSerializer the value Serializer the snapshot was written
+   *        with.
+   * @exception IOException if the file cannot be mapped or is not a
+   *            snapshot.
+   */
+  public MappedDictionary(Path file, Serializer<K> keySerializer,
+                          Serializer<V> valueSerializer) throws IOException {
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      long length = channel.size();
+      if (length < HEADER_SIZE) {
+        throw new IOException("Not a dictionary snapshot: " + file);
+      }
+      regions = new MappedByteBuffer[(int) ((length + REGION_MASK)
+                                            >>> REGION_SHIFT)];
+      for (int i = 0; i < regions.length; i++) {
+        long start = (long) i << REGION_SHIFT;
+        regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                 Math.min(REGION_SIZE, length - start));
+      }
+    } catch (IOException e) {
+      close();
+      throw e;
+    } finally {
+      channel.close();
+    }
+    if (getInt(0) != MAGIC || getInt(4) != VERSION) {
+      close();
+      throw new IOException("Not a dictionary snapshot: " + file);
+    }
+    size = (int) getLong(8);
+    directory = getLong(16);
+    mask = getInt(24) - 1;
+  }
+
+  /**
+   * Writes the entries of a dictionary to a snapshot file in one pass,
+   * replacing the file if it exists.  The snapshot is written to a temporary
+   * file beside it (named by appending ".tmp") and then moved over the file
+   * atomically, so a crash or error leaves the old snapshot intact.  Keys
+   * and values are streamed to the
+   * file, but the hash code and offset of each record (12 bytes) are held
+   * in memory until the directory is built, and the directory (12 bytes a
+   * slot, two to four slots an entry) until it is written, so write() needs
+   * 36 to 60 bytes of heap per entry.
+   * @param file the snapshot file.
+   * @param entries the entries to write, such as a HashTableChained.
+   * @param keySerializer converts keys to bytes; must be canonical.
+   * @param valueSerializer converts values to bytes.
+   * @exception IOException if the file cannot be written.
+   * @exception IllegalArgumentException if there are more than MAX_ENTRIES
+   *            entries, or one entry takes more than 1GB.
+   */
+  public static <K, V> void write(Path file,
+                                  Iterable<? extends Entry<? extends K,
+                                                           ? extends V>>
+                                    entries,
+                                  Serializer<? super K> keySerializer,
+                                  Serializer<? super V> valueSerializer)
+    throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    FileChannel channel =
+      FileChannel.open(tmp, StandardOpenOption.CREATE,
+                       StandardOpenOption.WRITE,
+                       StandardOpenOption.TRUNCATE_EXISTING);
+    boolean written = false;
+    try {
+      DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+      pad(out, HEADER_SIZE);
+      long position = HEADER_SIZE;
+      int count = 0;
+      int[] hashes = new int[16];
+      long[] offsets = new long[16];
+      for (Entry<? extends K, ? extends V> entry : entries) {
+        byte[] key = keySerializer.toBytes(entry.key);
+        byte[] value = valueSerializer.toBytes(entry.value);
+        long length = 8L + key.length + value.length;
+        if (length > REGION_SIZE) {
+          throw new IllegalArgumentException("Entry too large: " + length
+                                             + " bytes");
+        }
+        if (count == MAX_ENTRIES) {
+          throw new IllegalArgumentException("More than " + MAX_ENTRIES
+                                             + " entries");
+        }
+        if ((position >>> REGION_SHIFT)
+            != ((position + length - 1) >>> REGION_SHIFT)) {
+          long next = (position + REGION_MASK) & ~REGION_MASK;
+          pad(out, next - position);
+          position = next;
+        }
+        if (count == hashes.length) {
+          hashes = Arrays.copyOf(hashes, count * 2);
+          offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        hashes[count] = hash(key, 0, key.length);
+        offsets[count] = position;
+        count++;
+        out.writeInt(key.length);
+        out.writeInt(value.length);
+        out.write(key);
+        out.write(value);
+        position += length;
+      }
+
+      int slots = 2;
+      while (slots < count * 2) {
+        slots <<= 1;
+      }
+      long[] slotOffsets = new long[slots];
+      int[] slotHashes = new int[slots];
+      for (int i = 0; i < count; i++) {
+        int slot = hashes[i] & (slots - 1);
+        while (slotOffsets[slot] != 0) {
+          slot = (slot + 1) & (slots - 1);
+        }
+        slotOffsets[slot] = offsets[i];
+        slotHashes[slot] = hashes[i];
+      }
+      long directory = (position + SLOT_SIZE - 1) & ~(long) (SLOT_SIZE - 1);
+      pad(out, directory - position);
+      for (int i = 0; i < slots; i++) {
+        out.writeLong(slotOffsets[i]);
+        out.writeInt(slotHashes[i]);
+        out.writeInt(0);
+      }
+      out.flush();
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(directory)
+        .putInt(slots).putInt(0).flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+      channel.force(false);
+      written = true;
+    } finally {
+      channel.close();
+      if (!written) {
+        Files.deleteIfExists(tmp);
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Writes n zero bytes.
+   */
+  private static void pad(DataOutputStream out, long n) throws IOException {
+    byte[] zeros = new byte[(int) Math.min(n, 4096)];
+    while (n > 0) {
+      int chunk = (int) Math.min(n, zeros.length);
+      out.write(zeros, 0, chunk);
+      n -= chunk;
+    }
+  }
+
+  /**
+   * Returns the hash code of a serialized key.  It must not change between
+   * runs, so unlike the in-memory tables it uses no random seed.
+   */
+  static int hash(byte[] key, int offset, int length) {
+    int h = 1;
+    for (int i = offset; i < offset + length; i++) {
+      h = 31 * h + key[i];
+    }
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  private int getInt(long position) {
+    return regions[(int) (position >>> REGION_SHIFT)]
+      .getInt((int) (position & REGION_MASK));
+  }
+
+  private long getLong(long position) {
+    return regions[(int) (position >>> REGION_SHIFT)]
+      .getLong((int) (position & REGION_MASK));
+  }
+
+  /**
+   * Tests if the record at the specified offset has the specified key bytes.
+   */
+  private boolean keyEquals(long record, byte[] key) {
+    if (getInt(record) != key.length) {
+      return false;
+    }
+    MappedByteBuffer region = regions[(int) (record >>> REGION_SHIFT)];
+    int start = (int) (record & REGION_MASK) + 8;
+    for (int i = 0; i < key.length; i++) {
+      if (region.get(start + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a buffer over the value bytes of the record at the specified
+   * offset.
+   */
+  private ByteBuffer valueBytes(long record) {
+    ByteBuffer buf = regions[(int) (record >>> REGION_SHIFT)].duplicate();
+    int start = (int) (record & REGION_MASK) + 8 + getInt(record);
+    buf.limit(start + getInt(record + 4));
+    buf.position(start);
+    return buf;
+  }
+
+  /**
+   * Returns a buffer over the key bytes of the record at the specified
+   * offset.
+   */
+  private ByteBuffer keyBytes(long record) {
+    ByteBuffer buf = regions[(int) (record >>> REGION_SHIFT)].duplicate();
+    int start = (int) (record & REGION_MASK) + 8;
+    buf.limit(start + getInt(record));
+    buf.position(start);
+    return buf;
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Always throws UnsupportedOperationException; a snapshot is read-only.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    throw new UnsupportedOperationException("MappedDictionary is read-only");
+  }
+
+  /**
+   * Searches for an entry with the specified key.  If such an entry is
+   * found, returns a new Entry holding the specified key and the stored
+   * value; otherwise returns null.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   */
+  public Entry<K, V> find(K key) {
+    checkOpen();
+    byte[] bytes = keySerializer.toBytes(key);
+    int h = hash(bytes, 0, bytes.length);
+    for (int i = h & mask; ; i = (i + 1) & mask) {
+      long slot = directory + (long) i * SLOT_SIZE;
+      long record = getLong(slot);
+      if (record == 0) {
+        return null;
+      }
+      if (getInt(slot + 8) == h && keyEquals(record, bytes)) {
+        Entry<K, V> entry = new Entry<K, V>();
+        entry.key = key;
+        entry.value = valueSerializer.fromBytes(valueBytes(record));
+        return entry;
+      }
+    }
+  }
+
+  /**
+   * Always throws UnsupportedOperationException; a snapshot is read-only.
+   */
+  public Entry<K, V> remove(K key) {
+    throw new UnsupportedOperationException("MappedDictionary is read-only");
+  }
+
+  /**
+   * Always throws UnsupportedOperationException; a snapshot is read-only.
+   */
+  public void makeEmpty() {
+    throw new UnsupportedOperationException("MappedDictionary is read-only");
+  }
+
+  /**
+   * Performs an action on the key and value of every entry, in directory
+   * order, deserializing each.  Useful for loading a snapshot into a
+   * mutable table.
+   * @param action the action to perform on each key and value.
+   */
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    checkOpen();
+    for (long i = 0; i <= mask; i++) {
+      long record = getLong(directory + i * SLOT_SIZE);
+      if (record != 0) {
+        action.accept(keySerializer.fromBytes(keyBytes(record)),
+                      valueSerializer.fromBytes(valueBytes(record)));
+      }
+    }
+  }
+
+  private void checkOpen() {
+    if (regions == null) {
+      throw new IllegalStateException("MappedDictionary is closed");
+    }
+  }
+
+  /**
+   * Unmaps the snapshot file.  The dictionary can't be used afterward.
+   * Closing a closed dictionary has no effect.  No other thread may be
+   * using the dictionary, since reading an unmapped buffer can crash the
+   * JVM.
+   */
+  public void close() {
+    MappedByteBuffer[] r = regions;
+    regions = null;
+    if (r == null || INVOKE_CLEANER == null) {
+      return;
+    }
+    for (MappedByteBuffer region : r) {
+      if (region != null) {
+        try {
+          INVOKE_CLEANER.invoke(UNSAFE, region);
+        } catch (Exception e) {
+          return;
+        }
+      }
+    }
+  }
+
+}
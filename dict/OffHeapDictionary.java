@@ -0,0 +1,412 @@
+/* OffHeapDictionary.java */
+
+package dict;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * OffHeapDictionary implements a Dictionary as a chained hash table whose
+ * buckets and entries live in direct ByteBuffers outside the Java heap.  Keys
+ * and values are stored in serialized form, so however many entries the
+ * table holds, the heap holds only the table, its slab array and its free
+ * lists, and the garbage collector has nothing to trace.
+ *
+ * The bucket array is one direct buffer of 8-byte record addresses.  Records
+ * are carved from slabs, direct buffers of slabSize bytes each, by a bump
+ * allocator.  A record holds the address of the next record in its chain,
+ * the key's hash code, the key and value lengths, and the key and value
+ * bytes.  Record sizes are rounded up to a size class (multiples of 8 bytes
+ * up to 1KB, powers of two above), and remove() pushes the freed block onto
+ * the free list of its class, where the next insert() of that class finds
+ * it.  Slabs are never returned to the operating system except by dropping
+ * the whole table; makeEmpty() keeps them for reuse.
+ *
+ * Keys are hashed and compared by their serialized bytes, so the key
+ * Serializer must be canonical.  Since entries are not stored as objects,
+ * the Entry returned by insert(), find() and remove() is a copy.
+ */
+
+public class OffHeapDictionary<K, V> implements Dictionary<K, V> {
+
+  /**
+   * DEFAULT_SLAB_SIZE is the number of bytes in a slab if none is given.
+   * MAX_SLAB_SIZE is the largest slab, and thus the largest record.
+   * MAXIMUM_CAPACITY is the largest number of buckets.
+   * RECORD_HEADER is the number of bytes in a record before its key.
+   * SMALL_LIMIT is the largest block size in the 8-byte size classes, and
+   * SMALL_CLASSES the number of those classes.
+   */
+  public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+  private static final int MAX_SLAB_SIZE = 1 << 30;
+  private static final int MAXIMUM_CAPACITY = 1 << 27;
+  private static final int RECORD_HEADER = 20;
+  private static final int SMALL_LIMIT = 1024;
+  private static final int SMALL_CLASSES = SMALL_LIMIT >>> 3;
+
+  /**
+   * @param  buckets the address of the first record of each chain, 0 if
+   *         the chain is empty
+   * @param  capacity number of buckets (a power of two)
+   * @param  size number of entries in the table
+   * @param  slabs the slabs records are carved from; null past
+   *         slabsAllocated
+   * @param  slabCount number of slabs in use since the last makeEmpty()
+   * @param  slabsAllocated number of slabs allocated, including those kept
+   *         for reuse by makeEmpty()
+   * @param  slabShift log2 of the slab size
+   * @param  current index of the slab being bump-allocated
+   * @param  top offset of the first free byte of the current slab
+   * @param  freeLists the address of the first free block of each size
+   *         class, 0 if there is none
+   * @param  keySerializer converts keys to and from bytes
+   * @param  valueSerializer converts values to and from bytes
+   */
+  private ByteBuffer buckets;
+  private int capacity;
+  private int size;
+  private ByteBuffer[] slabs;
+  private int slabCount;
+  private int slabsAllocated;
+  private final int slabShift;
+  private int current;
+  private int top;
+  private final long[] freeLists;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+
+  /**
+   * Constructs a new empty table intended to hold roughly sizeEstimate
+   * entries, whose records are carved from slabs of slabSize bytes.
+   * @param sizeEstimate the number of entries the table is expected to hold.
+   * @param slabSize the size of a slab; a power of two of at least 64 bytes
+   *        and at most 1GB.  No record can be larger.
+   * @param keySerializer converts keys to and from bytes; must be canonical.
+   * @param valueSerializer converts values to and from bytes.
+   * @exception IllegalArgumentException if slabSize is not allowed.
+   */
+  public OffHeapDictionary(int sizeEstimate, int slabSize,
+                           Serializer<K> keySerializer,
+                           Serializer<V> valueSerializer) {
+    if (slabSize < 64 || slabSize > MAX_SLAB_SIZE
+        || (slabSize & (slabSize - 1)) != 0) {
+      throw new IllegalArgumentException("Illegal slab size: " + slabSize);
+    }
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    slabShift = Integer.numberOfTrailingZeros(slabSize);
+    freeLists = new long[sizeClass(slabSize) + 1];
+    slabs = new ByteBuffer[4];
+    newSlab();
+    top = 8;
+    int buckets = 16;
+    while (buckets < MAXIMUM_CAPACITY && buckets * 3L < sizeEstimate * 4L) {
+      buckets <<= 1;
+    }
+    allocateBuckets(buckets);
+  }
+
+  /**
+   * Constructs a new empty table with slabs of DEFAULT_SLAB_SIZE bytes.
+   */
+  public OffHeapDictionary(Serializer<K> keySerializer,
+                           Serializer<V> valueSerializer) {
+    this(16, DEFAULT_SLAB_SIZE, keySerializer, valueSerializer);
+  }
+
+  private void allocateBuckets(int n) {
+    buckets = ByteBuffer.allocateDirect(n * 8).order(ByteOrder.nativeOrder());
+    capacity = n;
+  }
+
+  /**
+   * Makes the next slab current, allocating it if it is not left over from
+   * before a makeEmpty().
+   */
+  private void newSlab() {
+    if (slabCount == slabs.length) {
+      slabs = Arrays.copyOf(slabs, slabCount * 2);
+    }
+    if (slabs[slabCount] == null) {
+      slabs[slabCount] = ByteBuffer.allocateDirect(1 << slabShift)
+        .order(ByteOrder.nativeOrder());
+      slabsAllocated++;
+    }
+    current = slabCount++;
+    top = 0;
+  }
+
+  /**
+   * Returns the size class of a block of the specified size.
+   */
+  private static int sizeClass(int bytes) {
+    if (bytes <= SMALL_LIMIT) {
+      return ((bytes + 7) >>> 3) - 1;
+    }
+    return SMALL_CLASSES + 32 - Integer.numberOfLeadingZeros(bytes - 1) - 11;
+  }
+
+  /**
+   * Returns the block size of a size class.
+   */
+  private static int classSize(int sizeClass) {
+    if (sizeClass < SMALL_CLASSES) {
+      return (sizeClass + 1) << 3;
+    }
+    return 1 << (sizeClass - SMALL_CLASSES + 11);
+  }
+
+  /**
+   * Returns the address of a free block of the specified size class.
+   */
+  private long allocate(int sizeClass) {
+    long address = freeLists[sizeClass];
+    if (address != 0) {
+      freeLists[sizeClass] = slab(address).getLong(offset(address));
+      return address;
+    }
+    int bytes = classSize(sizeClass);
+    if (top + (long) bytes > (1L << slabShift)) {
+      newSlab();
+    }
+    address = ((long) current << slabShift) | top;
+    top += bytes;
+    return address;
+  }
+
+  /**
+   * Returns the block at the specified address to its free list.
+   */
+  private void free(long address, int sizeClass) {
+    slab(address).putLong(offset(address), freeLists[sizeClass]);
+    freeLists[sizeClass] = address;
+  }
+
+  private ByteBuffer slab(long address) {
+    return slabs[(int) (address >>> slabShift)];
+  }
+
+  private int offset(long address) {
+    return (int) address & ((1 << slabShift) - 1);
+  }
+
+  private long bucket(int i) {
+    return buckets.getLong(i << 3);
+  }
+
+  private void setBucket(int i, long address) {
+    buckets.putLong(i << 3, address);
+  }
+
+  private long next(long record) {
+    return slab(record).getLong(offset(record));
+  }
+
+  private void setNext(long record, long next) {
+    slab(record).putLong(offset(record), next);
+  }
+
+  private int hashOf(long record) {
+    return slab(record).getInt(offset(record) + 8);
+  }
+
+  /**
+   * Returns the size class of the block holding a record.
+   */
+  private int sizeClassOf(long record) {
+    ByteBuffer slab = slab(record);
+    int offset = offset(record);
+    return sizeClass(RECORD_HEADER + slab.getInt(offset + 12)
+                     + slab.getInt(offset + 16));
+  }
+
+  /**
+   * Tests if a record has the specified key bytes.
+   */
+  private boolean keyEquals(long record, byte[] key) {
+    ByteBuffer slab = slab(record);
+    int offset = offset(record);
+    if (slab.getInt(offset + 12) != key.length) {
+      return false;
+    }
+    offset += RECORD_HEADER;
+    for (int i = 0; i < key.length; i++) {
+      if (slab.get(offset + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a new Entry holding the deserialized key and value of a record.
+   */
+  private Entry<K, V> entry(long record) {
+    ByteBuffer slab = slab(record);
+    int offset = offset(record);
+    int keyLength = slab.getInt(offset + 12);
+    int valueLength = slab.getInt(offset + 16);
+    ByteBuffer buf = slab.duplicate();
+    Entry<K, V> entry = new Entry<K, V>();
+    buf.limit(offset + RECORD_HEADER + keyLength);
+    buf.position(offset + RECORD_HEADER);
+    entry.key = keySerializer.fromBytes(buf);
+    buf.limit(offset + RECORD_HEADER + keyLength + valueLength);
+    buf.position(offset + RECORD_HEADER + keyLength);
+    entry.value = valueSerializer.fromBytes(buf);
+    return entry;
+  }
+
+  /**
+   * Doubles the number of buckets and relinks every record, using the hash
+   * code stored in it.
+   */
+  private void grow() {
+    ByteBuffer old = buckets;
+    int oldCapacity = capacity;
+    allocateBuckets(capacity * 2);
+    for (int i = 0; i < oldCapacity; i++) {
+      long record = old.getLong(i << 3);
+      while (record != 0) {
+        long next = next(record);
+        int j = hashOf(record) & (capacity - 1);
+        setNext(record, bucket(j));
+        setBucket(j, record);
+        record = next;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the number of bytes of direct memory held by the table: its
+   * bucket array and every slab it has allocated, whether or not the slab
+   * is in use since the last makeEmpty().
+   */
+  public long offHeapBytes() {
+    return (long) capacity * 8 + ((long) slabsAllocated << slabShift);
+  }
+
+  /**
+   * Serializes the key and value, copies them into a new record, and
+   * inserts it into the dictionary.  Returns a copy of the new entry.
+   * Multiple entries with the same key can coexist in the dictionary.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   * @exception IllegalArgumentException if the record would not fit in a
+   *            slab.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    byte[] keyBytes = keySerializer.toBytes(key);
+    byte[] valueBytes = valueSerializer.toBytes(value);
+    long bytes = (long) RECORD_HEADER + keyBytes.length + valueBytes.length;
+    if (bytes > (1L << slabShift)) {
+      throw new IllegalArgumentException("Entry too large: " + bytes
+                                         + " bytes");
+    }
+    if (size >= capacity - (capacity >>> 2) && capacity < MAXIMUM_CAPACITY) {
+      grow();
+    }
+    int h = MappedDictionary.hash(keyBytes, 0, keyBytes.length);
+    long record = allocate(sizeClass((int) bytes));
+    ByteBuffer slab = slab(record);
+    int offset = offset(record);
+    int i = h & (capacity - 1);
+    slab.putLong(offset, bucket(i));
+    slab.putInt(offset + 8, h);
+    slab.putInt(offset + 12, keyBytes.length);
+    slab.putInt(offset + 16, valueBytes.length);
+    slab.put(offset + RECORD_HEADER, keyBytes);
+    slab.put(offset + RECORD_HEADER + keyBytes.length, valueBytes);
+    setBucket(i, record);
+    size++;
+    Entry<K, V> entry = new Entry<K, V>();
+    entry.key = key;
+    entry.value = value;
+    return entry;
+  }
+
+  /**
+   * Searches for an entry with the specified key.  If such an entry is
+   * found, returns a copy of it; otherwise returns null.  If several entries
+   * have the specified key, chooses one arbitrarily and returns it.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   */
+  public Entry<K, V> find(K key) {
+    byte[] keyBytes = keySerializer.toBytes(key);
+    int h = MappedDictionary.hash(keyBytes, 0, keyBytes.length);
+    for (long record = bucket(h & (capacity - 1)); record != 0;
+         record = next(record)) {
+      if (hashOf(record) == h && keyEquals(record, keyBytes)) {
+        return entry(record);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes an entry with the specified key.  If such an entry is found,
+   * frees its record for reuse and returns a copy of it; otherwise returns
+   * null.  If several entries have the specified key, chooses one
+   * arbitrarily, then removes and returns it.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *          no entry contains the specified key.
+   */
+  public Entry<K, V> remove(K key) {
+    byte[] keyBytes = keySerializer.toBytes(key);
+    int h = MappedDictionary.hash(keyBytes, 0, keyBytes.length);
+    int i = h & (capacity - 1);
+    long prev = 0;
+    for (long record = bucket(i); record != 0; record = next(record)) {
+      if (hashOf(record) == h && keyEquals(record, keyBytes)) {
+        Entry<K, V> entry = entry(record);
+        if (prev == 0) {
+          setBucket(i, next(record));
+        } else {
+          setNext(prev, next(record));
+        }
+        free(record, sizeClassOf(record));
+        size--;
+        return entry;
+      }
+      prev = record;
+    }
+    return null;
+  }
+
+  /**
+   * Removes all entries from the dictionary.  The slabs are kept and reused
+   * by later insertions.
+   */
+  public void makeEmpty() {
+    for (int i = 0; i < capacity; i++) {
+      setBucket(i, 0);
+    }
+    Arrays.fill(freeLists, 0);
+    slabCount = 0;
+    newSlab();
+    top = 8;
+    size = 0;
+  }
+
+}
@@ -0,0 +1,644 @@
+/* PersistentDictionary.java */
+
+package dict;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * PersistentDictionary implements a Dictionary as a hash array mapped trie
+ * (HAMT) whose nodes are never modified once shared.  Each level of the trie
+ * consumes five bits of a key's hash code, so a node has up to 32 children,
+ * stored compactly:  a 32-bit bitmap records which children exist and an
+ * array holds just those.  Entries whose hash codes are equal in all 32 bits
+ * (including entries with equal keys) share a collision node.
+ *
+ * insert() and remove() copy the path from the root to the entry, O(log32 n)
+ * nodes, and share the rest of the trie with the previous version.  That
+ * makes snapshot() O(1):  it returns a dictionary holding the current root,
+ * which later updates to either dictionary never disturb.  The current
+ * version is published through a volatile field, so other threads may call
+ * find(), iterate or take snapshots without locking while one thread
+ * writes.  Writers must be serialized by the caller.
+ *
+ * Building a large dictionary one copy-on-write insert() at a time discards
+ * a path of nodes per entry.  toTransient() returns a Transient, a mutable
+ * dictionary sharing the trie that updates in place the nodes it created
+ * itself; persistent() turns it back into a PersistentDictionary in O(1).
+ */
+
+public class PersistentDictionary<K, V>
+  implements Dictionary<K, V>, Iterable<Entry<K, V>> {
+
+  /**
+   * BITS is the number of hash code bits consumed by each level of the trie.
+   * MASK selects them.
+   */
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  /**
+   * The deepest a path of BitmapNodes can be:  the levels at shifts
+   * 0, 5, ..., 30.
+   */
+  private static final int MAX_DEPTH = 7;
+
+  /**
+   * EMPTY is the root of every empty dictionary.
+   */
+  private static final BitmapNode EMPTY =
+    new BitmapNode(0, new Object[0], null);
+
+  /**
+   * @param  strategy hashes and compares keys
+   * @param  seed mixed into every hash code; shared by all snapshots
+   * @param  version the current root and size
+   */
+  private final HashStrategy<? super K> strategy;
+  private final int seed;
+  private volatile Version version;
+
+  /**
+   * Constructs an empty dictionary that hashes and compares keys with the
+   * specified strategy.
+   * @param strategy hashes and compares keys.
+   */
+  public PersistentDictionary(HashStrategy<? super K> strategy) {
+    this(strategy, ThreadLocalRandom.current().nextInt(),
+         new Version(EMPTY, 0));
+  }
+
+  /**
+   * Constructs an empty dictionary that uses the keys' own hashCode() and
+   * equals() methods.
+   */
+  public PersistentDictionary() {
+    this(HashStrategy.NATURAL);
+  }
+
+  private PersistentDictionary(HashStrategy<? super K> strategy, int seed,
+                               Version version) {
+    this.strategy = strategy;
+    this.seed = seed;
+    this.version = version;
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.  Entries with
+   * the same key (or even the same key and value) each still count as
+   * a separate entry.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return version.size;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return version.size == 0;
+  }
+
+  /**
+   * Creates a new Entry object referencing the input key and associated
+   * value, and inserts the entry into the dictionary.  Returns a reference to
+   * the new entry.  Multiple entries with the same key (or even the same key
+   * and value) can coexist in the dictionary.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    HashEntry<K, V> entry =
+      new HashEntry<K, V>(key, value, hash(strategy, seed, key));
+    Version v = version;
+    version = new Version(insert(v.root, 0, entry, null), v.size + 1);
+    return entry;
+  }
+
+  /**
+   * Searches for an entry with the specified key.  If such an entry is found,
+   * returns it; otherwise returns null.  If several entries have the
+   * specified key, returns the earliest inserted.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   */
+  public Entry<K, V> find(K key) {
+    return find(version.root, strategy, hash(strategy, seed, key), key);
+  }
+
+  /**
+   * Removes an entry with the specified key.  If such an entry is found,
+   * removes it from the dictionary and returns it; otherwise returns null.
+   * If several entries have the specified key, removes the earliest
+   * inserted.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *          no entry contains the specified key.
+   */
+  public Entry<K, V> remove(K key) {
+    int hash = hash(strategy, seed, key);
+    Version v = version;
+    Entry<K, V> entry = find(v.root, strategy, hash, key);
+    if (entry != null) {
+      version = new Version(removeRoot(v.root, hash, key, strategy, null),
+                            v.size - 1);
+    }
+    return entry;
+  }
+
+  /**
+   * Removes all entries from the dictionary.  Snapshots keep theirs.
+   */
+  public void makeEmpty() {
+    version = new Version(EMPTY, 0);
+  }
+
+  /**
+   * Returns a dictionary holding the entries this one holds now, in O(1)
+   * time.  Updates to either dictionary are not seen by the other.
+   * @return a snapshot of this dictionary.
+   */
+  public PersistentDictionary<K, V> snapshot() {
+    return new PersistentDictionary<K, V>(strategy, seed, version);
+  }
+
+  /**
+   * Returns a Transient holding the entries this one holds now, in O(1)
+   * time, for building a new version quickly.  This dictionary is not
+   * changed by updates to the Transient.
+   * @return a mutable copy of this dictionary.
+   */
+  public Transient<K, V> toTransient() {
+    Version v = version;
+    return new Transient<K, V>(strategy, seed, v.root, v.size);
+  }
+
+  /**
+   * Returns an iterator over the entries of the dictionary as it is when
+   * iterator() is called.  Later updates are not seen.
+   */
+  public Iterator<Entry<K, V>> iterator() {
+    return new TrieIterator<K, V>(version.root);
+  }
+
+  /**
+   * A Transient is a mutable dictionary for building a PersistentDictionary
+   * with many updates.  Nodes it creates are tagged with an edit token and
+   * updated in place by later updates; nodes shared with a
+   * PersistentDictionary are copied first, as insert() and remove() would
+   * copy them.  persistent() returns the result and retires the token, after
+   * which the Transient may not be used.  A Transient is not thread-safe.
+   */
+  public static final class Transient<K, V> implements Dictionary<K, V> {
+
+    /**
+     * @param  strategy hashes and compares keys
+     * @param  seed mixed into every hash code
+     * @param  root the root of the trie
+     * @param  size number of entries in the trie
+     * @param  edit tags the nodes this Transient may update in place; null
+     *         once persistent() has been called
+     */
+    private final HashStrategy<? super K> strategy;
+    private final int seed;
+    private BitmapNode root;
+    private int size;
+    private Object edit = new Object();
+
+    private Transient(HashStrategy<? super K> strategy, int seed,
+                      BitmapNode root, int size) {
+      this.strategy = strategy;
+      this.seed = seed;
+      this.root = root;
+      this.size = size;
+    }
+
+    /**
+     * Constructs an empty Transient that hashes and compares keys with the
+     * specified strategy.
+     * @param strategy hashes and compares keys.
+     */
+    public Transient(HashStrategy<? super K> strategy) {
+      this(strategy, ThreadLocalRandom.current().nextInt(), EMPTY, 0);
+    }
+
+    /**
+     * Constructs an empty Transient that uses the keys' own hashCode() and
+     * equals() methods.
+     */
+    public Transient() {
+      this(HashStrategy.NATURAL);
+    }
+
+    private void checkEditable() {
+      if (edit == null) {
+        throw new IllegalStateException("Transient used after persistent()");
+      }
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    public Entry<K, V> insert(K key, V value) {
+      checkEditable();
+      HashEntry<K, V> entry =
+        new HashEntry<K, V>(key, value, hash(strategy, seed, key));
+      root = PersistentDictionary.insert(root, 0, entry, edit);
+      size++;
+      return entry;
+    }
+
+    public Entry<K, V> find(K key) {
+      return PersistentDictionary.find(root, strategy,
+                                       hash(strategy, seed, key), key);
+    }
+
+    public Entry<K, V> remove(K key) {
+      checkEditable();
+      int hash = hash(strategy, seed, key);
+      Entry<K, V> entry = PersistentDictionary.find(root, strategy, hash, key);
+      if (entry != null) {
+        root = removeRoot(root, hash, key, strategy, edit);
+        size--;
+      }
+      return entry;
+    }
+
+    public void makeEmpty() {
+      checkEditable();
+      root = EMPTY;
+      size = 0;
+    }
+
+    /**
+     * Returns a PersistentDictionary holding this Transient's entries, in
+     * O(1) time.  The Transient may not be used afterward.
+     * @return the built dictionary.
+     */
+    public PersistentDictionary<K, V> persistent() {
+      checkEditable();
+      edit = null;
+      return new PersistentDictionary<K, V>(strategy, seed,
+                                            new Version(root, size));
+    }
+
+  }
+
+  /**
+   * A Version pairs a root with the size of its trie, so that both are
+   * published together.
+   */
+  private static final class Version {
+    final BitmapNode root;
+    final int size;
+
+    Version(BitmapNode root, int size) {
+      this.root = root;
+      this.size = size;
+    }
+  }
+
+  /**
+   * A HashEntry is an entry that remembers its key's mixed hash code, which
+   * is needed again whenever the entry moves down the trie.
+   */
+  private static final class HashEntry<K, V> extends Entry<K, V> {
+    final int hash;
+
+    HashEntry(K key, V value, int hash) {
+      this.key = key;
+      this.value = value;
+      this.hash = hash;
+    }
+  }
+
+  /**
+   * A BitmapNode is an inner node of the trie.  Bit i of bitmap is set if
+   * the node has a child for hash code bits equal to i at its level; the
+   * children are stored in slots in order of i.  A child is a HashEntry, a
+   * CollisionNode or another BitmapNode.  A node whose edit is not null
+   * belongs to the Transient holding that token, which may update it in
+   * place.
+   */
+  private static final class BitmapNode {
+    int bitmap;
+    Object[] slots;
+    final Object edit;
+
+    BitmapNode(int bitmap, Object[] slots, Object edit) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+      this.edit = edit;
+    }
+  }
+
+  /**
+   * A CollisionNode holds two or more entries with the same mixed hash
+   * code, in insertion order.  It is always copied on update.
+   */
+  private static final class CollisionNode {
+    final int hash;
+    final HashEntry<?, ?>[] entries;
+
+    CollisionNode(int hash, HashEntry<?, ?>[] entries) {
+      this.hash = hash;
+      this.entries = entries;
+    }
+  }
+
+  /**
+   * Returns the key's hash code under the strategy, mixed with the seed by
+   * the MurmurHash3 finalizer.
+   */
+  private static <K> int hash(HashStrategy<? super K> strategy, int seed,
+                              K key) {
+    int h = strategy.hash(key) ^ seed;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * Returns the hash code of a HashEntry or CollisionNode.
+   */
+  private static int hashOf(Object leaf) {
+    if (leaf instanceof CollisionNode) {
+      return ((CollisionNode) leaf).hash;
+    }
+    return ((HashEntry<?, ?>) leaf).hash;
+  }
+
+  private static boolean isEditable(BitmapNode node, Object edit) {
+    return edit != null && node.edit == edit;
+  }
+
+  /**
+   * Returns the earliest inserted entry with the specified key in the trie
+   * under root, or null.
+   */
+  @SuppressWarnings("unchecked")
+  private static <K, V> Entry<K, V> find(BitmapNode root,
+                                         HashStrategy<? super K> strategy,
+                                         int hash, K key) {
+    BitmapNode node = root;
+    for (int shift = 0; ; shift += BITS) {
+      int bit = 1 << ((hash >>> shift) & MASK);
+      if ((node.bitmap & bit) == 0) {
+        return null;
+      }
+      Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+      if (slot instanceof BitmapNode) {
+        node = (BitmapNode) slot;
+      } else if (slot instanceof CollisionNode) {
+        CollisionNode collision = (CollisionNode) slot;
+        if (collision.hash != hash) {
+          return null;
+        }
+        for (HashEntry<?, ?> entry : collision.entries) {
+          if (strategy.equals(key, (K) entry.key)) {
+            return (Entry<K, V>) entry;
+          }
+        }
+        return null;
+      } else {
+        HashEntry<K, V> entry = (HashEntry<K, V>) slot;
+        if (entry.hash == hash && strategy.equals(key, entry.key)) {
+          return entry;
+        }
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Returns node with slot index set to child, updating node in place if
+   * edit owns it and copying it otherwise.
+   */
+  private static BitmapNode setSlot(BitmapNode node, int index, Object child,
+                                    Object edit) {
+    if (node.slots[index] == child) {
+      return node;
+    }
+    if (isEditable(node, edit)) {
+      node.slots[index] = child;
+      return node;
+    }
+    Object[] slots = node.slots.clone();
+    slots[index] = child;
+    return new BitmapNode(node.bitmap, slots, edit);
+  }
+
+  /**
+   * Returns a trie holding the two leaves a and b, whose hash codes ha and
+   * hb differ, rooted at the level of the specified shift.
+   */
+  private static BitmapNode pair(int shift, Object a, int ha, Object b,
+                                 int hb, Object edit) {
+    int ia = (ha >>> shift) & MASK;
+    int ib = (hb >>> shift) & MASK;
+    if (ia == ib) {
+      return new BitmapNode(1 << ia, new Object[] {
+          pair(shift + BITS, a, ha, b, hb, edit) }, edit);
+    }
+    Object[] slots = ia < ib ? new Object[] { a, b } : new Object[] { b, a };
+    return new BitmapNode((1 << ia) | (1 << ib), slots, edit);
+  }
+
+  /**
+   * Returns the trie under node with the entry added.
+   */
+  private static BitmapNode insert(BitmapNode node, int shift,
+                                   HashEntry<?, ?> entry, Object edit) {
+    int bit = 1 << ((entry.hash >>> shift) & MASK);
+    int index = Integer.bitCount(node.bitmap & (bit - 1));
+    if ((node.bitmap & bit) == 0) {
+      int n = node.slots.length;
+      Object[] slots = new Object[n + 1];
+      System.arraycopy(node.slots, 0, slots, 0, index);
+      slots[index] = entry;
+      System.arraycopy(node.slots, index, slots, index + 1, n - index);
+      if (isEditable(node, edit)) {
+        node.bitmap |= bit;
+        node.slots = slots;
+        return node;
+      }
+      return new BitmapNode(node.bitmap | bit, slots, edit);
+    }
+    Object slot = node.slots[index];
+    Object child;
+    if (slot instanceof BitmapNode) {
+      child = insert((BitmapNode) slot, shift + BITS, entry, edit);
+    } else if (hashOf(slot) != entry.hash) {
+      child = pair(shift + BITS, slot, hashOf(slot), entry, entry.hash, edit);
+    } else if (slot instanceof CollisionNode) {
+      HashEntry<?, ?>[] entries = ((CollisionNode) slot).entries;
+      HashEntry<?, ?>[] grown = new HashEntry<?, ?>[entries.length + 1];
+      System.arraycopy(entries, 0, grown, 0, entries.length);
+      grown[entries.length] = entry;
+      child = new CollisionNode(entry.hash, grown);
+    } else {
+      child = new CollisionNode(entry.hash, new HashEntry<?, ?>[] {
+          (HashEntry<?, ?>) slot, entry });
+    }
+    return setSlot(node, index, child, edit);
+  }
+
+  /**
+   * Returns the trie under root with the earliest inserted entry with the
+   * specified key removed.  The trie must hold such an entry.
+   */
+  private static <K> BitmapNode removeRoot(BitmapNode root, int hash, K key,
+                                           HashStrategy<? super K> strategy,
+                                           Object edit) {
+    Object result = remove(root, 0, hash, key, strategy, edit);
+    return result == null ? EMPTY : (BitmapNode) result;
+  }
+
+  /**
+   * Returns the trie under node with the earliest inserted entry with the
+   * specified key removed:  null if the trie is left empty, a lone leaf if
+   * only one is left below a non-root node (so the parent can hold it
+   * directly), or a BitmapNode.  The trie must hold such an entry.
+   */
+  @SuppressWarnings("unchecked")
+  private static <K> Object remove(BitmapNode node, int shift, int hash,
+                                   K key, HashStrategy<? super K> strategy,
+                                   Object edit) {
+    int bit = 1 << ((hash >>> shift) & MASK);
+    int index = Integer.bitCount(node.bitmap & (bit - 1));
+    Object slot = node.slots[index];
+    Object child = null;
+    if (slot instanceof BitmapNode) {
+      child = remove((BitmapNode) slot, shift + BITS, hash, key, strategy,
+                     edit);
+    } else if (slot instanceof CollisionNode) {
+      HashEntry<?, ?>[] entries = ((CollisionNode) slot).entries;
+      int i = 0;
+      while (!strategy.equals(key, (K) entries[i].key)) {
+        i++;
+      }
+      if (entries.length == 2) {
+        child = entries[1 - i];
+      } else {
+        HashEntry<?, ?>[] shrunk = new HashEntry<?, ?>[entries.length - 1];
+        System.arraycopy(entries, 0, shrunk, 0, i);
+        System.arraycopy(entries, i + 1, shrunk, i, shrunk.length - i);
+        child = new CollisionNode(hash, shrunk);
+      }
+    }
+
+    int n = node.slots.length;
+    if (child == null) {
+      if (n == 1) {
+        return null;
+      }
+      Object other = n == 2 ? node.slots[1 - index] : null;
+      if (shift > 0 && other != null && !(other instanceof BitmapNode)) {
+        return other;
+      }
+      Object[] slots = new Object[n - 1];
+      System.arraycopy(node.slots, 0, slots, 0, index);
+      System.arraycopy(node.slots, index + 1, slots, index, n - 1 - index);
+      if (isEditable(node, edit)) {
+        node.bitmap &= ~bit;
+        node.slots = slots;
+        return node;
+      }
+      return new BitmapNode(node.bitmap & ~bit, slots, edit);
+    }
+    if (n == 1 && shift > 0 && !(child instanceof BitmapNode)) {
+      return child;
+    }
+    return setSlot(node, index, child, edit);
+  }
+
+  /**
+   * A TrieIterator walks a trie depth first, keeping the path from the root
+   * on a stack.
+   */
+  private static final class TrieIterator<K, V>
+    implements Iterator<Entry<K, V>> {
+
+    /**
+     * @param  nodes the BitmapNodes on the path from the root
+     * @param  indexes the next slot to visit in each of nodes
+     * @param  depth the index of the deepest node on the path, or -1 once
+     *         the walk is over
+     * @param  collision the entries of the collision node being visited, or
+     *         null
+     * @param  collisionIndex the next entry to visit in collision
+     * @param  next the next entry to return, or null if there is none
+     */
+    private final BitmapNode[] nodes = new BitmapNode[MAX_DEPTH];
+    private final int[] indexes = new int[MAX_DEPTH];
+    private int depth;
+    private HashEntry<?, ?>[] collision;
+    private int collisionIndex;
+    private HashEntry<?, ?> next;
+
+    TrieIterator(BitmapNode root) {
+      nodes[0] = root;
+      advance();
+    }
+
+    private void advance() {
+      next = null;
+      if (collision != null) {
+        if (collisionIndex < collision.length) {
+          next = collision[collisionIndex++];
+          return;
+        }
+        collision = null;
+      }
+      while (depth >= 0) {
+        BitmapNode node = nodes[depth];
+        if (indexes[depth] == node.slots.length) {
+          depth--;
+          continue;
+        }
+        Object slot = node.slots[indexes[depth]++];
+        if (slot instanceof BitmapNode) {
+          depth++;
+          nodes[depth] = (BitmapNode) slot;
+          indexes[depth] = 0;
+        } else if (slot instanceof CollisionNode) {
+          collision = ((CollisionNode) slot).entries;
+          next = collision[0];
+          collisionIndex = 1;
+          return;
+        } else {
+          next = (HashEntry<?, ?>) slot;
+          return;
+        }
+      }
+    }
+
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Entry<K, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Entry<K, V> entry = (Entry<K, V>) next;
+      advance();
+      return entry;
+    }
+  }
+
+}
@@ -0,0 +1,306 @@
+/* RemoteDictionary.java */
+
+package dict;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * RemoteDictionary implements a Dictionary whose entries are held by a
+ * DictionaryServer, reached through a Transport.  Every operation is one
+ * exchange; insertAll(), findAll() and removeAll() send their whole batch
+ * in one exchange, so a batch costs one round trip however many keys it
+ * has.
+ *
+ * Entries returned by find() and remove() are copies decoded from the
+ * server's response.  scan() fetches a page of entries per exchange, and
+ * iterating fetches them SCAN_PAGE at a time, so neither side holds a large
+ * table in one message.  Transport failures are thrown as
+ * UncheckedIOExceptions.
+ */
+
+public class RemoteDictionary<K, V>
+  implements Dictionary<K, V>, Iterable<Entry<K, V>>, Scannable<K, V> {
+
+  /**
+   * SCAN_PAGE is the number of entries an iterator fetches per exchange.
+   */
+  static final int SCAN_PAGE = 1024;
+
+  /**
+   * @param  transport carries requests to the server
+   * @param  keySerializer converts keys to and from bytes
+   * @param  valueSerializer converts values to and from bytes
+   */
+  private final Transport transport;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+
+  /**
+   * Constructs a client for the server at the other end of a transport.
+   * @param transport carries requests to the server.
+   * @param keySerializer converts keys to and from bytes, as the server's
+   *        does.
+   * @param valueSerializer converts values to and from bytes, as the
+   *        server's does.
+   */
+  public RemoteDictionary(Transport transport, Serializer<K> keySerializer,
+                          Serializer<V> valueSerializer) {
+    this.transport = transport;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+  }
+
+  /**
+   * Sends a request and returns the response, wrapped for reading.
+   */
+  private ByteBuffer exchange(ByteArrayOutputStream request) {
+    try {
+      return ByteBuffer.wrap(transport.exchange(request.toByteArray()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns a request holding an operation code and a count.
+   */
+  private static ByteArrayOutputStream request(byte op, int count) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(op);
+    bytes.write(count >>> 24);
+    bytes.write(count >>> 16);
+    bytes.write(count >>> 8);
+    bytes.write(count);
+    return bytes;
+  }
+
+  private Entry<K, V> readEntry(ByteBuffer in) {
+    Entry<K, V> entry = new Entry<K, V>();
+    entry.key = DictionaryServer.read(in, keySerializer);
+    entry.value = DictionaryServer.read(in, valueSerializer);
+    return entry;
+  }
+
+  /**
+   * Sends a FIND or REMOVE request for the keys and decodes the entries.
+   */
+  @SuppressWarnings("unchecked")
+  private Entry<K, V>[] lookup(byte op, K[] keys) {
+    ByteArrayOutputStream request = request(op, keys.length);
+    DataOutputStream out = new DataOutputStream(request);
+    try {
+      for (K key : keys) {
+        DictionaryServer.write(out, key, keySerializer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    ByteBuffer in = exchange(request);
+    Entry<K, V>[] entries = (Entry<K, V>[]) new Entry<?, ?>[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      if (in.get() != 0) {
+        entries[i] = readEntry(in);
+      }
+    }
+    return entries;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K> K[] single(K key) {
+    return (K[]) new Object[] { key };
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return exchange(request(DictionaryServer.SIZE, 0)).getInt();
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Inserts an entry on the server.  Returns a local entry holding the key
+   * and value.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    insertAll(single(key), single(value));
+    Entry<K, V> entry = new Entry<K, V>();
+    entry.key = key;
+    entry.value = value;
+    return entry;
+  }
+
+  /**
+   * Inserts one entry for each pair keys[i], values[i] in one exchange.
+   * @param keys the keys of the new entries.
+   * @param values the values of the new entries.
+   * @exception IllegalArgumentException if keys and values differ in length.
+   */
+  public void insertAll(K[] keys, V[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("Got " + keys.length + " keys but "
+                                         + values.length + " values");
+    }
+    ByteArrayOutputStream request = request(DictionaryServer.INSERT,
+                                            keys.length);
+    DataOutputStream out = new DataOutputStream(request);
+    try {
+      for (int i = 0; i < keys.length; i++) {
+        DictionaryServer.write(out, keys[i], keySerializer);
+        DictionaryServer.write(out, values[i], valueSerializer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    exchange(request);
+  }
+
+  /**
+   * Searches the server for an entry with the specified key.
+   * @param key the search key.
+   * @return a copy of an entry containing the key, or null if no entry
+   *         contains the specified key.
+   */
+  public Entry<K, V> find(K key) {
+    return lookup(DictionaryServer.FIND, single(key))[0];
+  }
+
+  /**
+   * Searches for an entry with each of the specified keys in one exchange.
+   * @param keys the search keys.
+   * @return an array whose element i is a copy of an entry with key
+   *         keys[i], or null if no entry contains that key.
+   */
+  public Entry<K, V>[] findAll(K[] keys) {
+    return lookup(DictionaryServer.FIND, keys);
+  }
+
+  /**
+   * Removes an entry with the specified key from the server.
+   * @param key the search key.
+   * @return a copy of the removed entry, or null if no entry contains the
+   *         specified key.
+   */
+  public Entry<K, V> remove(K key) {
+    return lookup(DictionaryServer.REMOVE, single(key))[0];
+  }
+
+  /**
+   * Removes an entry with each of the specified keys in one exchange.
+   * @param keys the search keys.
+   * @return an array whose element i is a copy of the entry removed for
+   *         keys[i], or null if no entry was removed for it.
+   */
+  public Entry<K, V>[] removeAll(K[] keys) {
+    return lookup(DictionaryServer.REMOVE, keys);
+  }
+
+  /**
+   * Removes all entries from the dictionary.
+   */
+  public void makeEmpty() {
+    exchange(request(DictionaryServer.CLEAR, 0));
+  }
+
+  /**
+   * Performs an action on copies of the next entries of a scan of the
+   * server's table, fetched in one exchange.
+   * @param cursor 0 to start a scan, or the cursor returned by the previous
+   *        call.
+   * @param count the number of entries to fetch.  Fewer are fetched only
+   *        if the scan completes; more may be.
+   * @param action the action to perform on each entry.
+   * @return the cursor for the next call, or 0 if the scan is complete.
+   * @exception IllegalArgumentException if count is not positive.
+   */
+  public int scan(int cursor, int count,
+                  Consumer<? super Entry<K, V>> action) {
+    if (count <= 0) {
+      throw new IllegalArgumentException("Illegal count: " + count);
+    }
+    ByteArrayOutputStream request = request(DictionaryServer.SCAN, count);
+    DataOutputStream out = new DataOutputStream(request);
+    try {
+      out.writeInt(cursor);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    ByteBuffer in = exchange(request);
+    int next = in.getInt();
+    int n = in.getInt();
+    for (int i = 0; i < n; i++) {
+      action.accept(readEntry(in));
+    }
+    return next;
+  }
+
+  /**
+   * Returns an iterator over copies of all the server's entries, fetched a
+   * page at a time as the iteration reaches them.  The server may be
+   * updated between pages:  every entry present for the whole iteration is
+   * returned, one inserted or removed meanwhile may or may not be, and one
+   * may be returned twice if the server's table resizes.
+   */
+  public Iterator<Entry<K, V>> iterator() {
+    return new ScanIterator();
+  }
+
+  /**
+   * A ScanIterator fetches the server's entries with SCAN requests.
+   */
+  private class ScanIterator implements Iterator<Entry<K, V>> {
+
+    /**
+     * @param  cursor the cursor of the next page
+     * @param  done true once the last page has been fetched
+     * @param  page the entries of the current page
+     */
+    private int cursor = 0;
+    private boolean done;
+    private Iterator<Entry<K, V>> page =
+      Collections.<Entry<K, V>>emptyIterator();
+
+    public boolean hasNext() {
+      while (!page.hasNext() && !done) {
+        final ArrayList<Entry<K, V>> entries = new ArrayList<Entry<K, V>>();
+        cursor = scan(cursor, SCAN_PAGE, new Consumer<Entry<K, V>>() {
+            public void accept(Entry<K, V> entry) {
+              entries.add(entry);
+            }
+          });
+        done = cursor == 0;
+        page = entries.iterator();
+      }
+      return page.hasNext();
+    }
+
+    public Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return page.next();
+    }
+
+  }
+
+}
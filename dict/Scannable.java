@@ -0,0 +1,32 @@
+/* Scannable.java */
+
+package dict;
+
+import java.util.function.Consumer;
+
+/**
+ * A Scannable collection of entries can be visited a part at a time, and
+ * changed between the parts.  A scan starts with cursor 0; each call to
+ * scan() visits some entries and returns the cursor for the next call, or
+ * 0 once the scan is complete.  Every entry present for the whole scan is
+ * visited at least once.  An entry inserted or removed during the scan may
+ * or may not be visited, and if the collection is resized during the scan,
+ * an entry may be visited more than once.
+ */
+
+public interface Scannable<K, V> {
+
+  /**
+   * Performs an action on the next entries of a scan.
+   * @param cursor 0 to start a scan, or the cursor returned by the previous
+   *        call.
+   * @param count the number of entries to visit.  Fewer are visited only
+   *        if the scan completes; more may be.
+   * @param action the action to perform on each entry.  It must not change
+   *        the collection.
+   * @return the cursor for the next call, or 0 if the scan is complete.
+   */
+  public int scan(int cursor, int count,
+                  Consumer<? super Entry<K, V>> action);
+
+}
@@ -0,0 +1,82 @@
+/* Serializer.java */
+
+package dict;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Serializer converts keys or values to bytes and back, so they can be
+ * stored in a file such as a MappedDictionary snapshot.  A key Serializer
+ * must be canonical:  keys that are equal must serialize to the same bytes,
+ * because a snapshot compares keys by their bytes.
+ */
+
+public interface Serializer<T> {
+
+  /**
+   * Returns the bytes of an object.
+   */
+  public byte[] toBytes(T obj);
+
+  /**
+   * Returns the object whose bytes lie between the position and the limit
+   * of a buffer.  The buffer may be read but not kept.
+   */
+  public T fromBytes(ByteBuffer buf);
+
+  /**
+   * STRING stores strings as UTF-8.
+   */
+  public static final Serializer<String> STRING = new Serializer<String>() {
+    public byte[] toBytes(String obj) {
+      return obj.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String fromBytes(ByteBuffer buf) {
+      return StandardCharsets.UTF_8.decode(buf).toString();
+    }
+  };
+
+  /**
+   * INTEGER stores integers as four big-endian bytes.
+   */
+  public static final Serializer<Integer> INTEGER = new Serializer<Integer>() {
+    public byte[] toBytes(Integer obj) {
+      return ByteBuffer.allocate(4).putInt(obj).array();
+    }
+
+    public Integer fromBytes(ByteBuffer buf) {
+      return buf.getInt(buf.position());
+    }
+  };
+
+  /**
+   * LONG stores longs as eight big-endian bytes.
+   */
+  public static final Serializer<Long> LONG = new Serializer<Long>() {
+    public byte[] toBytes(Long obj) {
+      return ByteBuffer.allocate(8).putLong(obj).array();
+    }
+
+    public Long fromBytes(ByteBuffer buf) {
+      return buf.getLong(buf.position());
+    }
+  };
+
+  /**
+   * BYTE_ARRAY stores byte arrays as they are.
+   */
+  public static final Serializer<byte[]> BYTE_ARRAY = new Serializer<byte[]>() {
+    public byte[] toBytes(byte[] obj) {
+      return obj;
+    }
+
+    public byte[] fromBytes(ByteBuffer buf) {
+      byte[] bytes = new byte[buf.remaining()];
+      buf.get(bytes);
+      return bytes;
+    }
+  };
+
+}
@@ -0,0 +1,750 @@
+/* ShardedDictionary.java */
+
+package dict;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+/**
+ * ShardedDictionary implements a Dictionary whose entries are partitioned
+ * among named shards, each itself a Dictionary:  a HashTableChained in this
+ * JVM, or a RemoteDictionary whose entries live elsewhere.  All entries with
+ * a key are held by the same shard.
+ *
+ * Keys are assigned to shards by consistent hashing.  Each shard is placed
+ * at virtualNodes points on a ring of 64-bit hash codes, and a key belongs
+ * to the shard at the first point at or after its own hash code.  Adding or
+ * removing a shard thus moves only the keys between its points and their
+ * neighbors, about 1/n of them, and the many points per shard keep the
+ * shards' shares even.  Placement depends only on the shard names and the
+ * keys' hash codes, so every client of a set of remote shards agrees on it.
+ *
+ * insertAll(), findAll() and removeAll() split their keys by shard and send
+ * each shard a single batch.  If an Executor is given, the batches for
+ * different shards are sent concurrently, so their round trips overlap.
+ * Batches to the same shard are not pipelined:  a Transport carries one
+ * exchange at a time, so each shard receives its batches one after another.
+ *
+ * Rebalancing is incremental, like the rehashing of a HashTableChained.
+ * addShard() and removeShard() switch to the new ring at once and work out
+ * which ranges of hash codes change hands, and which old shards lose them,
+ * without reading any entries.  Each later operation then scans the next
+ * MIGRATE_STEPS entries of one of those old shards (see Scannable) and
+ * moves the ones in the ranges it lost; shards that lose nothing are never
+ * scanned.  Since no key in a lost range is inserted into its old shard
+ * again, a shard's move is complete when its scan is.  Until all have
+ * moved, lookups that miss on a key's new shard try its old one.
+ * rebalance() finishes the move at once.  If a shard fails while
+ * a batch of entries is moving, the exception is thrown, and the entries
+ * already removed from their old shards are held here (and counted by
+ * size()) until a later operation, which first resumes the batch, inserts
+ * them into their new shards.  A failing shard thus never loses entries.
+ * A ShardedDictionary is not thread-safe.
+ */
+
+public class ShardedDictionary<K, V> implements Dictionary<K, V> {
+
+  /**
+   * DEFAULT_VIRTUAL_NODES is the number of ring points per shard used by
+   * the no-argument constructor.
+   */
+  public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+  /**
+   * MIGRATE_STEPS is the number of entries of an old shard scanned by each
+   * operation while rebalancing.  MIGRATE_BATCH is the number scanned at a
+   * time by rebalance().
+   */
+  private static final int MIGRATE_STEPS = 16;
+  private static final int MIGRATE_BATCH = 1024;
+
+  /**
+   * Operations dispatch() sends to the shards.
+   */
+  private static final int INSERT = 0;
+  private static final int FIND = 1;
+  private static final int REMOVE = 2;
+
+  /**
+   * UNREMOVED marks the entries of a moving batch whose removal from their
+   * old shards hasn't succeeded yet.
+   */
+  private static final Entry<?, ?> UNREMOVED = new Entry<Object, Object>();
+
+  /**
+   * @param  virtualNodes number of ring points per shard
+   * @param  strategy hashes keys
+   * @param  executor sends batches to different shards concurrently; null
+   *         to send them one after another
+   * @param  ring assigns keys to shards
+   * @param  previous the ring before the last addShard() or removeShard(),
+   *         while keys are still moving; null otherwise
+   * @param  sources the shards of previous that lose ranges under ring,
+   *         while keys are still moving
+   * @param  sourceIndex the index in sources of the shard being scanned
+   * @param  moving the keys of the batch being moved, or null between
+   *         batches
+   * @param  copying for each key of the batch, UNREMOVED until it has been
+   *         removed from its old shard, then the entry removed (or null if
+   *         there was none) until its new shard has inserted it
+   */
+  private final int virtualNodes;
+  private final HashStrategy<? super K> strategy;
+  private final Executor executor;
+  private Ring<K, V> ring;
+  private Ring<K, V> previous;
+  private ArrayList<Source<K, V>> sources;
+  private int sourceIndex;
+  private K[] moving;
+  private Entry<K, V>[] copying;
+
+  /**
+   * Constructs a dictionary with no shards.  Shards must be added before
+   * entries.
+   * @param virtualNodes number of ring points per shard.
+   * @param strategy hashes keys; must agree with the shards' key equality.
+   * @param executor sends batches to different shards concurrently, or
+   *        null to send them one after another.
+   * @exception IllegalArgumentException if virtualNodes is not positive.
+   */
+  public ShardedDictionary(int virtualNodes,
+                           HashStrategy<? super K> strategy,
+                           Executor executor) {
+    if (virtualNodes <= 0) {
+      throw new IllegalArgumentException("Illegal virtual nodes: "
+                                         + virtualNodes);
+    }
+    this.virtualNodes = virtualNodes;
+    this.strategy = strategy;
+    this.executor = executor;
+    ring = new Ring<K, V>(new ArrayList<Shard<K, V>>(), virtualNodes);
+  }
+
+  /**
+   * Constructs a dictionary with no shards, DEFAULT_VIRTUAL_NODES points per
+   * shard, and no executor, that uses the keys' own hashCode() methods.
+   */
+  public ShardedDictionary() {
+    this(DEFAULT_VIRTUAL_NODES, HashStrategy.NATURAL, null);
+  }
+
+  /**
+   * A Shard names one of the dictionaries holding the entries.
+   */
+  private static final class Shard<K, V> {
+    final String name;
+    final Dictionary<K, V> table;
+    final Scannable<K, V> entries;
+
+    Shard(String name, Dictionary<K, V> table, Scannable<K, V> entries) {
+      this.name = name;
+      this.table = table;
+      this.entries = entries;
+    }
+  }
+
+  /**
+   * A Ring is an immutable assignment of hash codes to shards.  points
+   * holds the shards' points in ascending order, and owners[i] is the
+   * index in shards of the shard at points[i].
+   */
+  private static final class Ring<K, V> {
+    final ArrayList<Shard<K, V>> shards;
+    final long[] points;
+    final int[] owners;
+
+    Ring(ArrayList<Shard<K, V>> shards, int virtualNodes) {
+      this.shards = shards;
+      int n = shards.size() * virtualNodes;
+      final long[] unsorted = new long[n];
+      Integer[] order = new Integer[n];
+      for (int s = 0; s < shards.size(); s++) {
+        for (int v = 0; v < virtualNodes; v++) {
+          unsorted[s * virtualNodes + v] = point(shards.get(s).name, v);
+          order[s * virtualNodes + v] = s * virtualNodes + v;
+        }
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+          public int compare(Integer a, Integer b) {
+            return Long.compare(unsorted[a], unsorted[b]);
+          }
+        });
+      points = new long[n];
+      owners = new int[n];
+      for (int i = 0; i < n; i++) {
+        points[i] = unsorted[order[i]];
+        owners[i] = order[i] / virtualNodes;
+      }
+    }
+
+    /**
+     * Returns the index in shards of the shard owning a hash code.
+     */
+    int owner(long hash) {
+      int i = Arrays.binarySearch(points, hash);
+      if (i < 0) {
+        i = -i - 1;
+        if (i == points.length) {
+          i = 0;
+        }
+      }
+      return owners[i];
+    }
+
+    Shard<K, V> shard(long hash) {
+      return shards.get(owner(hash));
+    }
+
+    int indexOf(String name) {
+      for (int i = 0; i < shards.size(); i++) {
+        if (shards.get(i).name.equals(name)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * A Source is a shard that loses ranges of hash codes to other shards
+   * when the ring changes, and the cursor of its scan for the entries to
+   * move.  Its ranges are disjoint and ascending; range i runs from low[i]
+   * to high[i], inclusive.
+   */
+  private static final class Source<K, V> {
+    final Shard<K, V> shard;
+    long[] low = new long[8];
+    long[] high = new long[8];
+    int ranges;
+    int cursor;
+
+    Source(Shard<K, V> shard) {
+      this.shard = shard;
+    }
+
+    /**
+     * Adds a range above all the others, merging it with the last one if
+     * they touch.
+     */
+    void add(long from, long to) {
+      if (ranges > 0 && high[ranges - 1] == from - 1) {
+        high[ranges - 1] = to;
+        return;
+      }
+      if (ranges == low.length) {
+        low = Arrays.copyOf(low, ranges * 2);
+        high = Arrays.copyOf(high, ranges * 2);
+      }
+      low[ranges] = from;
+      high[ranges++] = to;
+    }
+
+    boolean contains(long hash) {
+      int i = Arrays.binarySearch(low, 0, ranges, hash);
+      if (i < 0) {
+        i = -i - 2;
+      }
+      return i >= 0 && hash <= high[i];
+    }
+  }
+
+  /**
+   * Mixes a 64-bit value by the MurmurHash3 finalizer.
+   */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Returns the position on the ring of a shard's virtual node, from an
+   * FNV-1a hash of its name.
+   */
+  private static long point(String name, int virtualNode) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < name.length(); i++) {
+      h = (h ^ name.charAt(i)) * 0x100000001b3L;
+    }
+    return mix(h ^ virtualNode);
+  }
+
+  /**
+   * Returns the position on the ring of a key.
+   */
+  private long hash(K key) {
+    return mix(strategy.hash(key));
+  }
+
+  private void checkShards() {
+    if (ring.shards.isEmpty()) {
+      throw new IllegalStateException("No shards");
+    }
+  }
+
+  /**
+   * Returns the number of shards.
+   */
+  public int shardCount() {
+    return ring.shards.size();
+  }
+
+  /**
+   * Returns true if keys are still moving after the last addShard() or
+   * removeShard().
+   */
+  public boolean isRebalancing() {
+    return previous != null;
+  }
+
+  /**
+   * Adds an empty shard.  The keys it takes over from the other shards move
+   * to it incrementally.
+   * @param name the shard's name, which places it on the ring.
+   * @param shard an empty dictionary, such as a HashTableChained or a
+   *        RemoteDictionary.
+   * @exception IllegalArgumentException if a shard has the same name.
+   */
+  public <T extends Dictionary<K, V> & Scannable<K, V>>
+    void addShard(String name, T shard) {
+    if (ring.indexOf(name) >= 0) {
+      throw new IllegalArgumentException("Duplicate shard: " + name);
+    }
+    rebalance();
+    ArrayList<Shard<K, V>> shards = new ArrayList<Shard<K, V>>(ring.shards);
+    shards.add(new Shard<K, V>(name, shard, shard));
+    startMigration(new Ring<K, V>(shards, virtualNodes));
+  }
+
+  /**
+   * Removes a shard.  Its entries move to the remaining shards
+   * incrementally; the shard is no longer used once rebalancing ends.
+   * @param name the name of the shard to remove.
+   * @exception IllegalArgumentException if there is no such shard.
+   * @exception IllegalStateException if it is the only shard.
+   */
+  public void removeShard(String name) {
+    int index = ring.indexOf(name);
+    if (index < 0) {
+      throw new IllegalArgumentException("No such shard: " + name);
+    }
+    if (ring.shards.size() == 1) {
+      throw new IllegalStateException("Cannot remove the only shard");
+    }
+    rebalance();
+    ArrayList<Shard<K, V>> shards = new ArrayList<Shard<K, V>>(ring.shards);
+    shards.remove(index);
+    startMigration(new Ring<K, V>(shards, virtualNodes));
+  }
+
+  /**
+   * Switches to the next ring, and starts moving the keys in the ranges
+   * that change hands.  Between consecutive points of either ring, every
+   * hash code has one owner under each ring, the shard at the upper point;
+   * where the two differ, the old owner loses the range.
+   */
+  private void startMigration(Ring<K, V> next) {
+    ArrayList<Source<K, V>> changes = new ArrayList<Source<K, V>>();
+    if (!ring.shards.isEmpty()) {
+      long[] points = Arrays.copyOf(ring.points,
+                                    ring.points.length + next.points.length);
+      System.arraycopy(next.points, 0, points, ring.points.length,
+                       next.points.length);
+      Arrays.sort(points);
+      addChange(changes, next, Long.MIN_VALUE, points[0]);
+      for (int i = 1; i < points.length; i++) {
+        if (points[i] != points[i - 1]) {
+          addChange(changes, next, points[i - 1] + 1, points[i]);
+        }
+      }
+      long last = points[points.length - 1];
+      if (last != Long.MAX_VALUE) {
+        addChange(changes, next, last + 1, Long.MAX_VALUE);
+      }
+    }
+    if (!changes.isEmpty()) {
+      previous = ring;
+      sources = changes;
+      sourceIndex = 0;
+    }
+    ring = next;
+  }
+
+  /**
+   * Records that the hash codes from low to high change hands under the
+   * next ring, if their owners differ.
+   */
+  private void addChange(ArrayList<Source<K, V>> changes, Ring<K, V> next,
+                         long low, long high) {
+    Shard<K, V> owner = ring.shard(high);
+    if (next.shard(high) == owner) {
+      return;
+    }
+    for (Source<K, V> source : changes) {
+      if (source.shard == owner) {
+        source.add(low, high);
+        return;
+      }
+    }
+    Source<K, V> source = new Source<K, V>(owner);
+    source.add(low, high);
+    changes.add(source);
+  }
+
+  /**
+   * Moves all remaining keys to their new shards.
+   */
+  public void rebalance() {
+    while (previous != null) {
+      migrate(MIGRATE_BATCH);
+    }
+  }
+
+  /**
+   * Scans about count entries of the next old shard, moves the ones in the
+   * ranges it lost to their new shards, in one batch per pair of old and
+   * new shards, and ends rebalancing once every old shard has been scanned.
+   * Entries are removed from their old shards and then inserted into their
+   * new ones.  If a shard fails, the exception is thrown and the next call
+   * resumes the batch where it stopped, before scanning any further.
+   */
+  @SuppressWarnings("unchecked")
+  private void migrate(int count) {
+    if (previous == null) {
+      return;
+    }
+    if (moving == null) {
+      final Source<K, V> source = sources.get(sourceIndex);
+      final ArrayList<K> keys = new ArrayList<K>();
+      source.cursor = source.shard.entries.scan(
+        source.cursor, count, new Consumer<Entry<K, V>>() {
+          public void accept(Entry<K, V> entry) {
+            if (source.contains(hash(entry.key()))) {
+              keys.add(entry.key());
+            }
+          }
+        });
+      if (source.cursor == 0) {
+        sourceIndex++;
+      }
+      moving = (K[]) keys.toArray();
+      copying = (Entry<K, V>[]) new Entry<?, ?>[moving.length];
+      Arrays.fill(copying, UNREMOVED);
+    }
+    int[] pending = new int[moving.length];
+    int n = 0;
+    for (int i = 0; i < moving.length; i++) {
+      if (copying[i] == UNREMOVED) {
+        pending[n++] = i;
+      }
+    }
+    if (n > 0) {
+      dispatch(previous, REMOVE, moving, null, Arrays.copyOf(pending, n),
+               copying);
+    }
+    V[] values = (V[]) new Object[moving.length];
+    n = 0;
+    for (int i = 0; i < moving.length; i++) {
+      if (copying[i] != null) {
+        values[i] = copying[i].value();
+        pending[n++] = i;
+      }
+    }
+    if (n > 0) {
+      dispatch(ring, INSERT, moving, values, Arrays.copyOf(pending, n),
+               copying);
+    }
+    moving = null;
+    copying = null;
+    if (sourceIndex == sources.size()) {
+      previous = null;
+      sources = null;
+    }
+  }
+
+  /**
+   * Splits the keys (those listed in indexes, or all if indexes is null)
+   * by their shard under the specified ring, and applies an operation to
+   * each shard's keys as one batch.  Results of FIND and REMOVE go to the
+   * corresponding elements of results.  For INSERT, results may be null;
+   * if not, each shard clears its keys' elements once it has inserted
+   * them.
+   */
+  private void dispatch(final Ring<K, V> ring, final int op, K[] keys,
+                        V[] values, int[] indexes,
+                        final Entry<K, V>[] results) {
+    int n = indexes == null ? keys.length : indexes.length;
+    int shardCount = ring.shards.size();
+    int[] owners = new int[n];
+    int[] counts = new int[shardCount];
+    for (int i = 0; i < n; i++) {
+      int k = indexes == null ? i : indexes[i];
+      owners[i] = ring.owner(hash(keys[k]));
+      counts[owners[i]]++;
+    }
+    ArrayList<Runnable> batches = new ArrayList<Runnable>();
+    for (int s = 0; s < shardCount; s++) {
+      if (counts[s] == 0) {
+        continue;
+      }
+      final Dictionary<K, V> table = ring.shards.get(s).table;
+      final K[] batchKeys = Arrays.copyOf(keys, counts[s]);
+      final V[] batchValues =
+        values == null ? null : Arrays.copyOf(values, counts[s]);
+      final int[] slots = new int[counts[s]];
+      for (int i = 0, j = 0; i < n; i++) {
+        if (owners[i] == s) {
+          int k = indexes == null ? i : indexes[i];
+          batchKeys[j] = keys[k];
+          if (values != null) {
+            batchValues[j] = values[k];
+          }
+          slots[j++] = k;
+        }
+      }
+      batches.add(new Runnable() {
+          public void run() {
+            if (op == INSERT) {
+              table.insertAll(batchKeys, batchValues);
+              for (int j = 0; results != null && j < slots.length; j++) {
+                results[slots[j]] = null;
+              }
+              return;
+            }
+            Entry<K, V>[] found = op == FIND ? table.findAll(batchKeys)
+              : table.removeAll(batchKeys);
+            for (int j = 0; j < slots.length; j++) {
+              results[slots[j]] = found[j];
+            }
+          }
+        });
+    }
+    run(batches);
+  }
+
+  /**
+   * Runs the batches, concurrently on the executor if there is one, and
+   * returns when all have finished.  The first failure is rethrown.
+   */
+  private void run(ArrayList<Runnable> batches) {
+    if (executor == null || batches.size() <= 1) {
+      for (Runnable batch : batches) {
+        batch.run();
+      }
+      return;
+    }
+    ArrayList<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+    for (int i = 1; i < batches.size(); i++) {
+      FutureTask<Void> task = new FutureTask<Void>(batches.get(i), null);
+      tasks.add(task);
+      executor.execute(task);
+    }
+    RuntimeException failure = null;
+    try {
+      batches.get(0).run();
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+    boolean interrupted = false;
+    for (FutureTask<Void> task : tasks) {
+      while (true) {
+        try {
+          task.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          if (failure == null) {
+            failure = cause instanceof RuntimeException
+              ? (RuntimeException) cause : new IllegalStateException(cause);
+          }
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary, the sum of the
+   * shards' sizes.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    int size = 0;
+    for (Shard<K, V> shard : ring.shards) {
+      size += shard.table.size();
+    }
+    if (previous != null) {
+      for (Shard<K, V> shard : previous.shards) {
+        if (!ring.shards.contains(shard)) {
+          size += shard.table.size();
+        }
+      }
+    }
+    for (int i = 0; copying != null && i < copying.length; i++) {
+      if (copying[i] != null && copying[i] != UNREMOVED) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Inserts an entry into the key's shard.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @return an entry containing the key and value.
+   */
+  public Entry<K, V> insert(K key, V value) {
+    checkShards();
+    migrate(MIGRATE_STEPS);
+    return ring.shard(hash(key)).table.insert(key, value);
+  }
+
+  /**
+   * Searches the key's shard for an entry with the specified key, and its
+   * old shard too while rebalancing.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *         no entry contains the specified key.
+   */
+  public Entry<K, V> find(K key) {
+    checkShards();
+    migrate(MIGRATE_STEPS);
+    long hash = hash(key);
+    Entry<K, V> entry = ring.shard(hash).table.find(key);
+    if (entry == null && previous != null) {
+      entry = previous.shard(hash).table.find(key);
+    }
+    return entry;
+  }
+
+  /**
+   * Removes an entry with the specified key from the key's shard, or from
+   * its old shard while rebalancing.
+   * @param key the search key.
+   * @return an entry containing the key and an associated value, or null if
+   *          no entry contains the specified key.
+   */
+  public Entry<K, V> remove(K key) {
+    checkShards();
+    migrate(MIGRATE_STEPS);
+    long hash = hash(key);
+    Entry<K, V> entry = ring.shard(hash).table.remove(key);
+    if (entry == null && previous != null) {
+      entry = previous.shard(hash).table.remove(key);
+    }
+    return entry;
+  }
+
+  /**
+   * Removes all entries from every shard and ends any rebalancing.
+   */
+  public void makeEmpty() {
+    for (Shard<K, V> shard : ring.shards) {
+      shard.table.makeEmpty();
+    }
+    if (previous != null) {
+      for (Shard<K, V> shard : previous.shards) {
+        shard.table.makeEmpty();
+      }
+    }
+    previous = null;
+    sources = null;
+    moving = null;
+    copying = null;
+  }
+
+  /**
+   * Inserts one entry for each pair keys[i], values[i], sending each shard
+   * its entries in one batch.
+   * @param keys the keys of the new entries.
+   * @param values the values of the new entries.
+   * @exception IllegalArgumentException if keys and values differ in length.
+   */
+  public void insertAll(K[] keys, V[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("Got " + keys.length + " keys but "
+                                         + values.length + " values");
+    }
+    checkShards();
+    migrate(MIGRATE_STEPS);
+    dispatch(ring, INSERT, keys, values, null, null);
+  }
+
+  /**
+   * Searches for an entry with each of the specified keys, sending each
+   * shard its keys in one batch.
+   * @param keys the search keys.
+   * @return an array whose element i is an entry with key keys[i], or null
+   *         if no entry contains that key.
+   */
+  public Entry<K, V>[] findAll(K[] keys) {
+    return lookupAll(FIND, keys);
+  }
+
+  /**
+   * Removes an entry with each of the specified keys, sending each shard
+   * its keys in one batch.  A key that appears several times in keys
+   * removes several entries.
+   * @param keys the search keys.
+   * @return an array whose element i is the entry removed for keys[i], or
+   *         null if no entry was removed for it.
+   */
+  public Entry<K, V>[] removeAll(K[] keys) {
+    return lookupAll(REMOVE, keys);
+  }
+
+  /**
+   * Applies FIND or REMOVE to the keys under the current ring, then retries
+   * the misses under the previous ring while rebalancing.
+   */
+  @SuppressWarnings("unchecked")
+  private Entry<K, V>[] lookupAll(int op, K[] keys) {
+    checkShards();
+    migrate(MIGRATE_STEPS);
+    Entry<K, V>[] results = (Entry<K, V>[]) new Entry<?, ?>[keys.length];
+    dispatch(ring, op, keys, null, null, results);
+    if (previous != null) {
+      int misses = 0;
+      int[] indexes = new int[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        if (results[i] == null) {
+          indexes[misses++] = i;
+        }
+      }
+      if (misses > 0) {
+        dispatch(previous, op, keys, null, Arrays.copyOf(indexes, misses),
+                 results);
+      }
+    }
+    return results;
+  }
+
+}
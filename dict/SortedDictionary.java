@@ -0,0 +1,63 @@
+/* SortedDictionary.java */
+
+package dict;
+
+/**
+ * An interface for dictionary ADTs that keep their entries ordered by key.
+ * As in any Dictionary, several entries may have the same key; entries with
+ * equal keys are kept in the order they were inserted.  Iterating over a
+ * SortedDictionary visits its entries in key order.
+ */
+
+public interface SortedDictionary<K, V>
+  extends Dictionary<K, V>, Iterable<Entry<K, V>> {
+
+  /**
+   * Returns an entry with the least key, or null if the dictionary is empty.
+   */
+  public Entry<K, V> first();
+
+  /**
+   * Returns an entry with the greatest key, or null if the dictionary is
+   * empty.
+   */
+  public Entry<K, V> last();
+
+  /**
+   * Returns an entry with the greatest key less than or equal to the
+   * specified key, or null if there is none.
+   */
+  public Entry<K, V> floor(K key);
+
+  /**
+   * Returns an entry with the least key greater than or equal to the
+   * specified key, or null if there is none.
+   */
+  public Entry<K, V> ceiling(K key);
+
+  /**
+   * Returns an entry with the greatest key strictly less than the specified
+   * key, or null if there is none.
+   */
+  public Entry<K, V> lower(K key);
+
+  /**
+   * Returns an entry with the least key strictly greater than the specified
+   * key, or null if there is none.
+   */
+  public Entry<K, V> higher(K key);
+
+  /**
+   * Returns the entries whose keys lie between from and to, in key order.
+   * The returned Iterable is a view:  each iteration searches the dictionary
+   * anew, and the dictionary must not be modified during an iteration.
+   * @param from the low end of the range, or null for no low end.
+   * @param fromInclusive true if entries with key from are included.
+   * @param to the high end of the range, or null for no high end.
+   * @param toInclusive true if entries with key to are included.
+   * @return the entries in the range.
+   */
+  public Iterable<Entry<K, V>> range(K from, boolean fromInclusive,
+                                     K to, boolean toInclusive);
+
+}
@@ -0,0 +1,467 @@
+/* StringObjectDictionary.java */
+
+package dict;
+
+import java.util.Arrays;
+
+/**
+ * StringObjectDictionary is a dictionary from string keys to object values.
+ * It follows the Dictionary contract (multiple entries may share a key), but
+ * no String is stored:  each key is encoded as UTF-8 and its bytes appended
+ * to one shared byte array, the arena, and a slot records just the key's
+ * offset and length in the arena, its hash code and its value.  Slots are
+ * open-addressed with linear probing, as in IntObjectDictionary, and the
+ * hash code, offset and length of a slot sit side by side in one int array,
+ * so a probe reads them from a single cache line.
+ *
+ * A lookup compares the cached hash code and length of each slot it probes
+ * before the key bytes, so a mismatch almost never touches the arena.  Keys
+ * may be looked up as any CharSequence or as a slice of a byte array holding
+ * UTF-8, and neither allocates:  a CharSequence is encoded into a scratch
+ * buffer kept by the dictionary.  Unpaired surrogates are encoded as '?', as
+ * String.getBytes() encodes them.
+ *
+ * Removing a key leaves its bytes in the arena as garbage; the arena is
+ * compacted when it must grow and at least half of it is garbage.  A
+ * StringObjectDictionary is not thread-safe.
+ **/
+
+public class StringObjectDictionary<V> {
+
+  /**
+   * DEFAULT_MAX_LOAD_FACTOR is the load factor above which the table grows.
+   * MAXIMUM_CAPACITY is the largest number of slots the table can have.
+   * MAXIMUM_ARENA is the largest number of key bytes the arena can hold.
+   */
+  public static final double DEFAULT_MAX_LOAD_FACTOR = 0.5;
+  private static final int MAXIMUM_CAPACITY = 1 << 29;
+  private static final int MAXIMUM_ARENA = Integer.MAX_VALUE - 8;
+
+  /**
+   * Each slot takes SLOT ints of the slots array:  the key's mixed hash code
+   * at HASH, its offset in the arena at OFFSET, and its length plus one at
+   * LENGTH, which is 0 if the slot is empty.
+   */
+  private static final int SLOT = 3;
+  private static final int HASH = 0;
+  private static final int OFFSET = 1;
+  private static final int LENGTH = 2;
+
+  /**
+   * @param  slots the hash code, offset and length of the key in each slot
+   * @param  values the value stored in each slot
+   * @param  arena the UTF-8 bytes of the keys, back to back
+   * @param  arenaLength number of bytes of arena in use, including garbage
+   * @param  garbage number of bytes of arena belonging to removed keys
+   * @param  scratch holds a CharSequence key encoded as UTF-8
+   * @param  scratchHash the unmixed hash code of the key in scratch
+   * @param  mask number of slots minus one (the number of slots is a power
+   *         of two)
+   * @param  size number of entries in the table
+   * @param  threshold the table grows when size exceeds this
+   * @param  maxLoadFactor the load factor above which the table grows
+   */
+  private int[] slots;
+  private Object[] values;
+  private byte[] arena;
+  private int arenaLength;
+  private int garbage;
+  private byte[] scratch = new byte[64];
+  private int scratchHash;
+  private int mask;
+  private int size;
+  private int threshold;
+  private double maxLoadFactor;
+
+  /**
+   * Constructs a new empty dictionary intended to hold roughly sizeEstimate
+   * entries, which grows when its load factor exceeds maxLoadFactor.
+   * @param sizeEstimate the number of entries the table is expected to hold.
+   * @param maxLoadFactor the load factor above which the table grows.
+   * @exception IllegalArgumentException if maxLoadFactor is not between 0
+   *            and 1 (exclusive).
+   */
+  public StringObjectDictionary(int sizeEstimate, double maxLoadFactor) {
+    if (!(maxLoadFactor > 0 && maxLoadFactor < 1)) {
+      throw new IllegalArgumentException("Illegal max load factor: "
+                                         + maxLoadFactor);
+    }
+    this.maxLoadFactor = maxLoadFactor;
+    int capacity = 2;
+    while (capacity < MAXIMUM_CAPACITY
+           && sizeEstimate > capacity * maxLoadFactor) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+    arena = new byte[Math.max(64, Math.min(sizeEstimate, 1 << 20) * 16)];
+  }
+
+  /**
+   * Constructs a new empty dictionary intended to hold roughly sizeEstimate
+   * entries.
+   */
+  public StringObjectDictionary(int sizeEstimate) {
+    this(sizeEstimate, DEFAULT_MAX_LOAD_FACTOR);
+  }
+
+  /**
+   * Constructs a new empty dictionary with a default size (128 slots).
+   */
+  public StringObjectDictionary() {
+    this(64, DEFAULT_MAX_LOAD_FACTOR);
+  }
+
+  /**
+   * Allocates empty slot arrays with the specified (power of two) capacity.
+   */
+  private void allocate(int capacity) {
+    slots = new int[capacity * SLOT];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    threshold = (int) Math.min(capacity * maxLoadFactor, capacity - 1);
+  }
+
+  /**
+   * Returns the hash code of length bytes of UTF-8 starting at offset, mixed
+   * as in HashTableOpen.  encode() computes the same hash code, unmixed.
+   */
+  private static int hash(byte[] bytes, int offset, int length) {
+    int h = 0;
+    for (int i = offset; i < offset + length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    return HashTableOpen.mix(h);
+  }
+
+  /**
+   * Encodes a CharSequence as UTF-8 into scratch, growing it if needed, and
+   * sets scratchHash to the hash code of the bytes as it goes.
+   * @return the number of bytes written.
+   */
+  private int encode(CharSequence key) {
+    int n = key.length();
+    if (scratch.length < n * 3) {
+      scratch = new byte[Math.max(n * 3, scratch.length * 2)];
+    }
+    byte[] out = scratch;
+    int h = 0;
+    int j = 0;
+    for (int i = 0; i < n; i++) {
+      char c = key.charAt(i);
+      if (c < 0x80) {
+        out[j++] = (byte) c;
+        h = 31 * h + c;
+        continue;
+      }
+      int start = j;
+      if (c < 0x800) {
+        out[j++] = (byte) (0xc0 | (c >> 6));
+        out[j++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < n
+                 && Character.isLowSurrogate(key.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, key.charAt(++i));
+        out[j++] = (byte) (0xf0 | (cp >> 18));
+        out[j++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        out[j++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        out[j++] = (byte) (0x80 | (cp & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        out[j++] = '?';
+      } else {
+        out[j++] = (byte) (0xe0 | (c >> 12));
+        out[j++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        out[j++] = (byte) (0x80 | (c & 0x3f));
+      }
+      while (start < j) {
+        h = 31 * h + out[start++];
+      }
+    }
+    scratchHash = h;
+    return j;
+  }
+
+  /**
+   * Returns the slot holding an entry whose key is the specified bytes, or
+   * -1 if there is no such slot.
+   */
+  private int findSlot(byte[] bytes, int offset, int length, int hash) {
+    int i = hash & mask;
+    int stored;
+    while ((stored = slots[i * SLOT + LENGTH]) != 0) {
+      if (slots[i * SLOT + HASH] == hash && stored == length + 1) {
+        int start = slots[i * SLOT + OFFSET];
+        if (Arrays.equals(arena, start, start + length,
+                          bytes, offset, offset + length)) {
+          return i;
+        }
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Stores a slot's fields in the first empty slot of its probe sequence.
+   */
+  private void place(int hash, int keyOffset, int length, Object value) {
+    int i = hash & mask;
+    while (slots[i * SLOT + LENGTH] != 0) {
+      i = (i + 1) & mask;
+    }
+    slots[i * SLOT + HASH] = hash;
+    slots[i * SLOT + OFFSET] = keyOffset;
+    slots[i * SLOT + LENGTH] = length + 1;
+    values[i] = value;
+  }
+
+  /**
+   * Doubles the number of slots and reinserts every entry, using the cached
+   * hash codes.
+   */
+  private void grow() {
+    int[] oldSlots = slots;
+    Object[] oldValues = values;
+    allocate(oldValues.length << 1);
+    for (int i = 0; i < oldValues.length; i++) {
+      int stored = oldSlots[i * SLOT + LENGTH];
+      if (stored != 0) {
+        place(oldSlots[i * SLOT + HASH], oldSlots[i * SLOT + OFFSET],
+              stored - 1, oldValues[i]);
+      }
+    }
+  }
+
+  /**
+   * Makes room for length more bytes in the arena, compacting it if at
+   * least half of it is garbage and growing it otherwise.
+   */
+  private void reserve(int length) {
+    if (length <= arena.length - arenaLength) {
+      return;
+    }
+    int live = arenaLength - garbage;
+    if ((long) live + length > MAXIMUM_ARENA) {
+      throw new IllegalStateException("Key arena is full");
+    }
+    long needed = (long) live + length;
+    if (garbage >= arenaLength / 2 && needed <= arena.length) {
+      compact(arena.length);
+    } else {
+      compact((int) Math.min(MAXIMUM_ARENA,
+                             Math.max(needed, 2L * arena.length)));
+    }
+  }
+
+  /**
+   * Copies the live keys into a new arena of the specified capacity,
+   * dropping the garbage.
+   */
+  private void compact(int capacity) {
+    byte[] old = arena;
+    arena = new byte[capacity];
+    int j = 0;
+    for (int i = 0; i <= mask; i++) {
+      int length = slots[i * SLOT + LENGTH] - 1;
+      if (length >= 0) {
+        System.arraycopy(old, slots[i * SLOT + OFFSET], arena, j, length);
+        slots[i * SLOT + OFFSET] = j;
+        j += length;
+      }
+    }
+    arenaLength = j;
+    garbage = 0;
+  }
+
+  /**
+   * Empties slot i, shifting back following entries as in HashTableOpen.
+   */
+  private void deleteSlot(int i) {
+    garbage += slots[i * SLOT + LENGTH] - 1;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (slots[j * SLOT + LENGTH] == 0) {
+        break;
+      }
+      int home = slots[j * SLOT + HASH] & mask;
+      if (((j - home) & mask) >= ((j - i) & mask)) {
+        System.arraycopy(slots, j * SLOT, slots, i * SLOT, SLOT);
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    values[i] = null;
+    slots[i * SLOT + LENGTH] = 0;
+  }
+
+  /**
+   * Returns the number of entries stored in the dictionary.  Entries with
+   * the same key (or even the same key and value) each still count as
+   * a separate entry.
+   * @return number of entries in the dictionary.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Tests if the dictionary is empty.
+   * @return true if the dictionary has no entries; false otherwise.
+   */
+  public boolean isEmpty() {
+    return (size == 0);
+  }
+
+  /**
+   * Returns the number of bytes of arena in use, including the garbage
+   * left by removed keys.
+   */
+  public int arenaBytes() {
+    return arenaLength;
+  }
+
+  /**
+   * Inserts an entry with the specified key and value into the dictionary.
+   * Multiple entries with the same key (or even the same key and value) can
+   * coexist in the dictionary.
+   * @param key the key by which the entry can be retrieved.
+   * @param value an arbitrary object.
+   * @exception IllegalStateException if the table can't grow any further.
+   */
+  public void insert(CharSequence key, V value) {
+    int length = encode(key);
+    insert(scratch, 0, length, HashTableOpen.mix(scratchHash), value);
+  }
+
+  /**
+   * Inserts an entry whose key is length bytes of UTF-8 starting at offset.
+   * The bytes are copied.
+   * @param key holds the key's bytes.
+   * @param offset the index of the key's first byte.
+   * @param length the number of bytes in the key.
+   * @param value an arbitrary object.
+   * @exception IllegalStateException if the table can't grow any further.
+   */
+  public void insert(byte[] key, int offset, int length, V value) {
+    insert(key, offset, length, hash(key, offset, length), value);
+  }
+
+  private void insert(byte[] key, int offset, int length, int hash,
+                      V value) {
+    if (size >= threshold) {
+      if (values.length == MAXIMUM_CAPACITY) {
+        throw new IllegalStateException("Hash table is full");
+      }
+      grow();
+    }
+    reserve(length);
+    System.arraycopy(key, offset, arena, arenaLength, length);
+    place(hash, arenaLength, length, value);
+    arenaLength += length;
+    size++;
+  }
+
+  /**
+   * Tests if the dictionary has an entry with the specified key.
+   * @param key the search key.
+   * @return true if some entry has the specified key; false otherwise.
+   */
+  public boolean contains(CharSequence key) {
+    int length = encode(key);
+    return findSlot(scratch, 0, length, HashTableOpen.mix(scratchHash)) >= 0;
+  }
+
+  /**
+   * Tests if the dictionary has an entry whose key is length bytes of UTF-8
+   * starting at offset.
+   * @param key holds the key's bytes.
+   * @param offset the index of the key's first byte.
+   * @param length the number of bytes in the key.
+   * @return true if some entry has the specified key; false otherwise.
+   */
+  public boolean contains(byte[] key, int offset, int length) {
+    return findSlot(key, offset, length, hash(key, offset, length)) >= 0;
+  }
+
+  /**
+   * Searches for an entry with the specified key.  If such an entry is found,
+   * returns its value; otherwise returns null.  If several entries have the
+   * specified key, chooses one arbitrarily.  Use contains() to distinguish a
+   * missing key from a null value.
+   * @param key the search key.
+   * @return the value of an entry with the specified key, or null if no entry
+   *         contains the specified key.
+   */
+  public V find(CharSequence key) {
+    int length = encode(key);
+    return valueAt(findSlot(scratch, 0, length,
+                            HashTableOpen.mix(scratchHash)));
+  }
+
+  /**
+   * Searches for an entry whose key is length bytes of UTF-8 starting at
+   * offset.
+   * @param key holds the key's bytes.
+   * @param offset the index of the key's first byte.
+   * @param length the number of bytes in the key.
+   * @return the value of an entry with the specified key, or null if no entry
+   *         contains the specified key.
+   */
+  public V find(byte[] key, int offset, int length) {
+    return valueAt(findSlot(key, offset, length, hash(key, offset, length)));
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueAt(int i) {
+    return i >= 0 ? (V) values[i] : null;
+  }
+
+  /**
+   * Removes an entry with the specified key.  If such an entry is found,
+   * removes it and returns its value; otherwise returns null.  If several
+   * entries have the specified key, chooses one arbitrarily.
+   * @param key the search key.
+   * @return the value of the removed entry, or null if no entry contains the
+   *         specified key.
+   */
+  public V remove(CharSequence key) {
+    int length = encode(key);
+    return removeSlot(findSlot(scratch, 0, length,
+                               HashTableOpen.mix(scratchHash)));
+  }
+
+  /**
+   * Removes an entry whose key is length bytes of UTF-8 starting at offset.
+   * @param key holds the key's bytes.
+   * @param offset the index of the key's first byte.
+   * @param length the number of bytes in the key.
+   * @return the value of the removed entry, or null if no entry contains the
+   *         specified key.
+   */
+  public V remove(byte[] key, int offset, int length) {
+    return removeSlot(findSlot(key, offset, length,
+                               hash(key, offset, length)));
+  }
+
+  @SuppressWarnings("unchecked")
+  private V removeSlot(int i) {
+    if (i < 0) {
+      return null;
+    }
+    V value = (V) values[i];
+    deleteSlot(i);
+    size--;
+    return value;
+  }
+
+  /**
+   * Removes all entries from the dictionary.  The arena is kept.
+   */
+  public void makeEmpty() {
+    Arrays.fill(values, null);
+    Arrays.fill(slots, 0);
+    arenaLength = 0;
+    garbage = 0;
+    size = 0;
+  }
+
+}
@@ -0,0 +1,97 @@
+/* TableMetrics.java */
+
+package dict;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TableMetrics holds the counters a hash table updates as it runs.  Every
+ * counter is a LongAdder (or LongAccumulator), so recording costs an
+ * uncontended add, and threads reading statistics never contend with the
+ * table's own updates.
+ */
+
+class TableMetrics {
+
+  /**
+   * PROBE_BINS is the number of bins in the probe-length histogram.  Bin 0
+   * counts lookups that examined no entry, bin 1 lookups that examined one,
+   * and bin b > 1 lookups that examined 2^(b-2) + 1 ... 2^(b-1) entries.
+   */
+  static final int PROBE_BINS = 33;
+
+  final LongAdder hits = new LongAdder();
+  final LongAdder misses = new LongAdder();
+  final LongAdder inserts = new LongAdder();
+  final LongAdder removes = new LongAdder();
+  final LongAdder[] probes = new LongAdder[PROBE_BINS];
+  final LongAccumulator maxChainLength =
+    new LongAccumulator(Math::max, 0);
+  final LongAdder resizes = new LongAdder();
+  final LongAdder resizeNanos = new LongAdder();
+
+  TableMetrics() {
+    for (int i = 0; i < PROBE_BINS; i++) {
+      probes[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Returns the histogram bin for a lookup that examined n entries.
+   */
+  static int probeBin(int n) {
+    return n == 0 ? 0 : 33 - Integer.numberOfLeadingZeros(n - 1);
+  }
+
+  /**
+   * Records a find() or remove() that examined n entries.
+   */
+  void recordLookup(boolean hit, int n) {
+    if (hit) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    probes[probeBin(n)].increment();
+  }
+
+  /**
+   * Records that some chain has reached the specified length.
+   */
+  void recordChainLength(int length) {
+    maxChainLength.accumulate(length);
+  }
+
+  /**
+   * Returns a snapshot of the counters for a table with the specified number
+   * of entries and buckets.
+   */
+  TableStats snapshot(int size, int buckets) {
+    long[] histogram = new long[PROBE_BINS];
+    for (int i = 0; i < PROBE_BINS; i++) {
+      histogram[i] = probes[i].sum();
+    }
+    return new TableStats(size, buckets, hits.sum(), misses.sum(),
+                          inserts.sum(), removes.sum(), histogram,
+                          maxChainLength.get(), resizes.sum(),
+                          resizeNanos.sum());
+  }
+
+  /**
+   * Resets every counter to zero.
+   */
+  void reset() {
+    hits.reset();
+    misses.reset();
+    inserts.reset();
+    removes.reset();
+    for (LongAdder bin : probes) {
+      bin.reset();
+    }
+    maxChainLength.reset();
+    resizes.reset();
+    resizeNanos.reset();
+  }
+
+}
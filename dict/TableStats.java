@@ -0,0 +1,135 @@
+/* TableStats.java */
+
+package dict;
+
+import java.util.Arrays;
+
+/**
+ * A TableStats is an immutable snapshot of a hash table's counters, taken
+ * without scanning the table.
+ */
+
+public class TableStats {
+
+  /**
+   * @param  size number of entries in the table
+   * @param  buckets number of buckets in the table
+   * @param  hits number of find() and remove() calls that found their key
+   * @param  misses number of find() and remove() calls that didn't
+   * @param  inserts number of insert() calls
+   * @param  removes number of entries removed by remove()
+   * @param  probeHistogram the probe-length histogram (see probeHistogram())
+   * @param  maxChainLength the longest chain observed in the current table
+   * @param  resizes number of completed resizes
+   * @param  resizeNanos total time spent migrating buckets, in nanoseconds,
+   *         estimated from a sample of the migration steps
+   */
+  private final int size;
+  private final int buckets;
+  private final long hits;
+  private final long misses;
+  private final long inserts;
+  private final long removes;
+  private final long[] probeHistogram;
+  private final long maxChainLength;
+  private final long resizes;
+  private final long resizeNanos;
+
+  TableStats(int size, int buckets, long hits, long misses, long inserts,
+             long removes, long[] probeHistogram, long maxChainLength,
+             long resizes, long resizeNanos) {
+    this.size = size;
+    this.buckets = buckets;
+    this.hits = hits;
+    this.misses = misses;
+    this.inserts = inserts;
+    this.removes = removes;
+    this.probeHistogram = probeHistogram;
+    this.maxChainLength = maxChainLength;
+    this.resizes = resizes;
+    this.resizeNanos = resizeNanos;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int buckets() {
+    return buckets;
+  }
+
+  public double loadFactor() {
+    return buckets == 0 ? 0 : (double) size / buckets;
+  }
+
+  public long hits() {
+    return hits;
+  }
+
+  public long misses() {
+    return misses;
+  }
+
+  /**
+   * Returns the fraction of lookups that found their key, or NaN if there
+   * have been no lookups.
+   */
+  public double hitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? Double.NaN : (double) hits / lookups;
+  }
+
+  public long inserts() {
+    return inserts;
+  }
+
+  public long removes() {
+    return removes;
+  }
+
+  /**
+   * Returns a copy of the probe-length histogram.  Element 0 counts lookups
+   * that examined no entry, element 1 lookups that examined one, and element
+   * b > 1 lookups that examined between 2^(b-2) + 1 and 2^(b-1) entries.
+   */
+  public long[] probeHistogram() {
+    return probeHistogram.clone();
+  }
+
+  /**
+   * Returns the mean number of entries examined per lookup, or NaN if there
+   * have been no lookups.  Lengths within a histogram bin are taken to be
+   * the bin's upper bound.
+   */
+  public double meanProbeLength() {
+    long lookups = 0;
+    double total = 0;
+    for (int b = 0; b < probeHistogram.length; b++) {
+      lookups += probeHistogram[b];
+      total += probeHistogram[b] * (b < 2 ? b : Math.pow(2, b - 1));
+    }
+    return lookups == 0 ? Double.NaN : total / lookups;
+  }
+
+  public long maxChainLength() {
+    return maxChainLength;
+  }
+
+  public long resizes() {
+    return resizes;
+  }
+
+  public long resizeNanos() {
+    return resizeNanos;
+  }
+
+  public String toString() {
+    return "TableStats[size=" + size + ", buckets=" + buckets
+      + ", loadFactor=" + loadFactor() + ", hits=" + hits
+      + ", misses=" + misses + ", inserts=" + inserts
+      + ", removes=" + removes + ", maxChainLength=" + maxChainLength
+      + ", resizes=" + resizes + ", resizeNanos=" + resizeNanos
+      + ", probeHistogram=" + Arrays.toString(probeHistogram) + "]";
+  }
+
+}
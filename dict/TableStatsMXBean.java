@@ -0,0 +1,34 @@
+/* TableStatsMXBean.java */
+
+package dict;
+
+/**
+ * TableStatsMXBean exposes a hash table's statistics through JMX.  Each
+ * attribute reads the table's counters; none scans the table.
+ */
+
+public interface TableStatsMXBean {
+
+  public int getSize();
+
+  public int getBuckets();
+
+  public double getLoadFactor();
+
+  public long getHits();
+
+  public long getMisses();
+
+  public double getHitRate();
+
+  public double getMeanProbeLength();
+
+  public long[] getProbeHistogram();
+
+  public long getMaxChainLength();
+
+  public long getResizes();
+
+  public long getResizeNanos();
+
+}
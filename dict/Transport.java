@@ -0,0 +1,25 @@
+/* Transport.java */
+
+package dict;
+
+import java.io.IOException;
+
+/**
+ * A Transport carries requests from a RemoteDictionary to the
+ * DictionaryServer holding its entries, and carries back the responses.  An
+ * implementation may send them over a socket, a message queue or any other
+ * channel; a DictionaryServer is itself a Transport that answers in-process.
+ */
+
+public interface Transport {
+
+  /**
+   * Sends a request and returns the response to it.
+   * @param request the encoded request.
+   * @return the encoded response.
+   * @exception IOException if the request could not be delivered or
+   *            answered.
+   */
+  public byte[] exchange(byte[] request) throws IOException;
+
+}
@@ -0,0 +1,294 @@
+/* TreeBucket.java */
+
+package dict;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A TreeBucket holds the entries of one overfull hash table bucket in an AVL
+ * tree, so that finding or removing an entry costs O(log n) even when many
+ * keys share a bucket.  Entries are ordered by hash code, then (for keys of
+ * the same Comparable class, if the table compares keys by their own
+ * equals()) by compareTo().  As in java.util.HashMap, entries that tie on
+ * both are inserted in order of their keys' class names and then identity
+ * hash codes, so that every pair of entries is ordered the same way however
+ * the tree is rotated.  A search can't use that tie-break, since an equal
+ * key need not be the same object, so it visits both subtrees of any node
+ * whose key the hash code and compareTo() don't tell apart from its own.
+ */
+
+class TreeBucket<K, V> {
+
+  /**
+   * A Node is a node of the AVL tree.
+   */
+  static class Node<K, V> {
+    final int hash;
+    final Entry<K, V> entry;
+    Node<K, V> left;
+    Node<K, V> right;
+    int height = 1;
+
+    Node(int hash, Entry<K, V> entry) {
+      this.hash = hash;
+      this.entry = entry;
+    }
+  }
+
+  /**
+   * @param  strategy compares keys
+   * @param  comparable true if Comparable keys may be ordered by compareTo()
+   * @param  root the root of the tree
+   * @param  size number of entries in the tree
+   * @param  probes number of nodes examined by the last find() or remove()
+   * @param  removed the entry removed by the current remove() call
+   */
+  private final HashStrategy<? super K> strategy;
+  private final boolean comparable;
+  private Node<K, V> root;
+  private int size;
+  int probes;
+  private Entry<K, V> removed;
+
+  TreeBucket(HashStrategy<? super K> strategy, boolean comparable) {
+    this.strategy = strategy;
+    this.comparable = comparable;
+  }
+
+  /**
+   * Returns the number of entries in the bucket.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Compares a hash code and key with a node's.  Returns 0 if neither the
+   * hash codes nor compareTo() tell them apart.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private int compare(int hash, Object key, Node<?, ?> n) {
+    if (hash != n.hash) {
+      return hash < n.hash ? -1 : 1;
+    }
+    Object k = n.entry.key;
+    if (comparable && key instanceof Comparable && k != null
+        && key.getClass() == k.getClass()) {
+      return ((Comparable) key).compareTo(k);
+    }
+    return 0;
+  }
+
+  /**
+   * Orders two keys that compare() can't tell apart:  by class name, then by
+   * identity hash code.
+   */
+  private static int tieBreakOrder(Object a, Object b) {
+    String aClass = a == null ? "" : a.getClass().getName();
+    String bClass = b == null ? "" : b.getClass().getName();
+    int c = aClass.compareTo(bClass);
+    if (c == 0) {
+      c = System.identityHashCode(a) <= System.identityHashCode(b) ? -1 : 1;
+    }
+    return c;
+  }
+
+  /**
+   * Adds an entry whose key has the specified hash code.
+   */
+  void insert(int hash, Entry<K, V> entry) {
+    root = insert(root, hash, entry);
+    size++;
+  }
+
+  private Node<K, V> insert(Node<K, V> n, int hash, Entry<K, V> entry) {
+    if (n == null) {
+      return new Node<K, V>(hash, entry);
+    }
+    int c = compare(hash, entry.key, n);
+    if (c == 0) {
+      c = tieBreakOrder(entry.key, n.entry.key);
+    }
+    if (c < 0) {
+      n.left = insert(n.left, hash, entry);
+    } else {
+      n.right = insert(n.right, hash, entry);
+    }
+    return balance(n);
+  }
+
+  /**
+   * Returns an entry with the specified key, or null if there is none.
+   */
+  Entry<K, V> find(int hash, K key) {
+    probes = 0;
+    return find(root, hash, key);
+  }
+
+  private Entry<K, V> find(Node<K, V> n, int hash, K key) {
+    while (n != null) {
+      probes++;
+      int c = compare(hash, key, n);
+      if (c < 0) {
+        n = n.left;
+      } else if (c > 0) {
+        n = n.right;
+      } else if (strategy.equals(key, n.entry.key)) {
+        return n.entry;
+      } else {
+        Entry<K, V> entry = find(n.left, hash, key);
+        if (entry != null) {
+          return entry;
+        }
+        n = n.right;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes and returns an entry with the specified key, or returns null if
+   * there is none.
+   */
+  Entry<K, V> remove(int hash, K key) {
+    probes = 0;
+    removed = null;
+    root = remove(root, hash, key);
+    Entry<K, V> entry = removed;
+    removed = null;
+    if (entry != null) {
+      size--;
+    }
+    return entry;
+  }
+
+  private Node<K, V> remove(Node<K, V> n, int hash, K key) {
+    if (n == null) {
+      return null;
+    }
+    probes++;
+    int c = compare(hash, key, n);
+    if (c < 0) {
+      n.left = remove(n.left, hash, key);
+    } else if (c > 0) {
+      n.right = remove(n.right, hash, key);
+    } else if (strategy.equals(key, n.entry.key)) {
+      removed = n.entry;
+      return unlink(n);
+    } else {
+      n.left = remove(n.left, hash, key);
+      if (removed == null) {
+        n.right = remove(n.right, hash, key);
+      }
+    }
+    return balance(n);
+  }
+
+  /**
+   * Returns the subtree that replaces n once n is removed.
+   */
+  private Node<K, V> unlink(Node<K, V> n) {
+    if (n.left == null) {
+      return n.right;
+    }
+    if (n.right == null) {
+      return n.left;
+    }
+    Node<K, V> successor = n.right;
+    while (successor.left != null) {
+      successor = successor.left;
+    }
+    successor.right = removeMin(n.right);
+    successor.left = n.left;
+    return balance(successor);
+  }
+
+  private Node<K, V> removeMin(Node<K, V> n) {
+    if (n.left == null) {
+      return n.right;
+    }
+    n.left = removeMin(n.left);
+    return balance(n);
+  }
+
+  private static int height(Node<?, ?> n) {
+    return n == null ? 0 : n.height;
+  }
+
+  private static <K, V> Node<K, V> rotateRight(Node<K, V> n) {
+    Node<K, V> l = n.left;
+    n.left = l.right;
+    l.right = n;
+    n.height = 1 + Math.max(height(n.left), height(n.right));
+    l.height = 1 + Math.max(height(l.left), height(l.right));
+    return l;
+  }
+
+  private static <K, V> Node<K, V> rotateLeft(Node<K, V> n) {
+    Node<K, V> r = n.right;
+    n.right = r.left;
+    r.left = n;
+    n.height = 1 + Math.max(height(n.left), height(n.right));
+    r.height = 1 + Math.max(height(r.left), height(r.right));
+    return r;
+  }
+
+  /**
+   * Restores the AVL property at n, whose subtrees are balanced, and
+   * returns the new root of the subtree.
+   */
+  private static <K, V> Node<K, V> balance(Node<K, V> n) {
+    int skew = height(n.left) - height(n.right);
+    if (skew > 1) {
+      if (height(n.left.left) < height(n.left.right)) {
+        n.left = rotateLeft(n.left);
+      }
+      return rotateRight(n);
+    }
+    if (skew < -1) {
+      if (height(n.right.right) < height(n.right.left)) {
+        n.right = rotateRight(n.right);
+      }
+      return rotateLeft(n);
+    }
+    n.height = 1 + Math.max(height(n.left), height(n.right));
+    return n;
+  }
+
+  /**
+   * Performs an action on each entry, in tree order, without allocating.
+   */
+  void forEach(Consumer<? super Entry<K, V>> action) {
+    forEach(root, action);
+  }
+
+  private static <K, V> void forEach(Node<K, V> n,
+                                     Consumer<? super Entry<K, V>> action) {
+    while (n != null) {
+      forEach(n.left, action);
+      action.accept(n.entry);
+      n = n.right;
+    }
+  }
+
+  /**
+   * Returns the bucket's entries in tree order.
+   */
+  ArrayList<Entry<K, V>> entries() {
+    ArrayList<Entry<K, V>> entries = new ArrayList<Entry<K, V>>(size);
+    ArrayList<Node<K, V>> stack = new ArrayList<Node<K, V>>();
+    Node<K, V> n = root;
+    while (n != null || !stack.isEmpty()) {
+      while (n != null) {
+        stack.add(n);
+        n = n.left;
+      }
+      n = stack.remove(stack.size() - 1);
+      entries.add(n.entry);
+      n = n.right;
+    }
+    return entries;
+  }
+
+}
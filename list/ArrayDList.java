@@ -0,0 +1,214 @@
+/* ArrayDList.java */
+
+package list;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * An ArrayDList is a mutable doubly-linked list ADT whose links are int
+ * indices into parallel arrays rather than references between node objects.
+ * Like a DList, it is circularly-linked, with a sentinel in slot 0.
+ *
+ * Inserting an item allocates nothing once the arrays are large enough, and
+ * removed slots are kept on a free list for reuse.  Traversal reads three
+ * arrays instead of chasing scattered nodes.  ListNode objects are made only
+ * when asked for by front(), back(), next() or prev(); each names a slot and
+ * is invalidated when that slot is removed.
+ */
+
+public class ArrayDList<T> extends List<T> {
+
+  /**
+   * DEFAULT_CAPACITY is the number of slots allocated if no capacity is
+   * given.
+   */
+  public static final int DEFAULT_CAPACITY = 16;
+
+  /**
+   * size (inherited) is the number of items in the list.
+   * items holds the item of each slot.
+   * prev and next hold the slot indices of each slot's neighbours; for a
+   * free slot, next holds the next free slot.
+   * stamps holds a counter for each slot that changes when it is removed.
+   * free is the first free slot, or 0 if there is none.
+   * top is the first slot never used.
+   */
+  Object[] items;
+  int[] prev;
+  int[] next;
+  int[] stamps;
+  private int free;
+  private int top;
+
+  /**
+   * ArrayDList() constructs an empty ArrayDList with room for capacity items
+   * before its arrays grow.
+   * @param capacity the number of items the list is expected to hold.
+   * @exception IllegalArgumentException if capacity is negative.
+   */
+  public ArrayDList(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Illegal capacity: " + capacity);
+    }
+    items = new Object[capacity + 1];
+    prev = new int[capacity + 1];
+    next = new int[capacity + 1];
+    stamps = new int[capacity + 1];
+    top = 1;
+  }
+
+  /**
+   * ArrayDList() constructs an empty ArrayDList.
+   */
+  public ArrayDList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * node() returns a ListNode naming the specified slot.  The sentinel's
+   * node is invalid.
+   */
+  ArrayDListNode<T> node(int i) {
+    return new ArrayDListNode<T>(i == 0 ? null : this, i, stamps[i]);
+  }
+
+  /**
+   * insertAfter() stores an item in a free slot and links it after slot i.
+   */
+  void insertAfter(int i, T item) {
+    int slot = free;
+    if (slot != 0) {
+      free = next[slot];
+    } else {
+      if (top == items.length) {
+        int n = Math.max(2, items.length * 2);
+        items = Arrays.copyOf(items, n);
+        prev = Arrays.copyOf(prev, n);
+        next = Arrays.copyOf(next, n);
+        stamps = Arrays.copyOf(stamps, n);
+      }
+      slot = top++;
+    }
+    items[slot] = item;
+    prev[slot] = i;
+    next[slot] = next[i];
+    prev[next[i]] = slot;
+    next[i] = slot;
+    size++;
+  }
+
+  /**
+   * free() unlinks slot i, invalidates its nodes, and adds it to the free
+   * list.
+   */
+  void free(int i) {
+    next[prev[i]] = next[i];
+    prev[next[i]] = prev[i];
+    items[i] = null;
+    stamps[i]++;
+    next[i] = free;
+    free = i;
+    size--;
+  }
+
+  /**
+   * insertFront() inserts an item at the front of this ArrayDList.
+   * @param item is the item to be inserted.
+   */
+  public void insertFront(T item) {
+    insertAfter(0, item);
+  }
+
+  /**
+   * insertBack() inserts an item at the back of this ArrayDList.
+   * @param item is the item to be inserted.
+   */
+  public void insertBack(T item) {
+    insertAfter(prev[0], item);
+  }
+
+  /**
+   * front() returns the node at the front of this ArrayDList.  If the list
+   * is empty, returns an "invalid" node--a node with the property that any
+   * attempt to use it will cause an exception.
+   * @return a ListNode at the front of this ArrayDList.
+   */
+  public ListNode<T> front() {
+    return node(next[0]);
+  }
+
+  /**
+   * back() returns the node at the back of this ArrayDList.  If the list is
+   * empty, returns an "invalid" node--a node with the property that any
+   * attempt to use it will cause an exception.
+   * @return a ListNode at the back of this ArrayDList.
+   */
+  public ListNode<T> back() {
+    return node(prev[0]);
+  }
+
+  /**
+   * iterator() returns an Iterator over the items of this ArrayDList, from
+   * front to back.  The list must not be modified while the iterator is in
+   * use.
+   * @return an Iterator over the items of this ArrayDList.
+   */
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int current = 0;
+
+      public boolean hasNext() {
+        return next[current] != 0;
+      }
+
+      @SuppressWarnings("unchecked")
+      public T next() {
+        if (next[current] == 0) {
+          throw new NoSuchElementException();
+        }
+        current = next[current];
+        return (T) items[current];
+      }
+    };
+  }
+
+  /**
+   * forEach() performs an action on each item of this ArrayDList, from front
+   * to back.  Nothing is allocated per item.  The list must not be modified
+   * by the action.
+   * @param action the action to perform on each item.
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(Consumer<? super T> action) {
+    for (int i = next[0]; i != 0; i = next[i]) {
+      action.accept((T) items[i]);
+    }
+  }
+
+  /**
+   * spliterator() returns a Spliterator over the items of this ArrayDList,
+   * from front to back, that knows the list's length.
+   * @return a Spliterator over the items of this ArrayDList.
+   */
+  public Spliterator<T> spliterator() {
+    return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED);
+  }
+
+  /**
+   * toString() returns a String representation of this ArrayDList.
+   * @return a String representation of this ArrayDList.
+   */
+  public String toString() {
+    StringBuilder result = new StringBuilder("[  ");
+    for (int i = next[0]; i != 0; i = next[i]) {
+      result.append(items[i]).append("  ");
+    }
+    return result.append("]").toString();
+  }
+
+}
\ No newline at end of file
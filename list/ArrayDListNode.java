@@ -0,0 +1,126 @@
+/* ArrayDListNode.java */
+
+package list;
+
+/**
+ * An ArrayDListNode is a node of an ArrayDList.  It holds no item or links of
+ * its own; it names a slot of the list's arrays, together with the slot's
+ * stamp at the time the node was made.  Removing the slot changes its stamp,
+ * which invalidates every node that names it, even if the slot is later
+ * reused for another item.
+ */
+
+public class ArrayDListNode<T> extends ListNode<T> {
+
+  /**
+   * (inherited)  list references the ArrayDList this node belongs to, or
+   *              null if the node is invalid.
+   * index is the slot this node names.
+   * stamp is the slot's stamp when this node was made.
+   */
+  protected final int index;
+  protected final int stamp;
+
+  /**
+   * ArrayDListNode() constructor.
+   * @param l the list this node is in, or null for an invalid node.
+   * @param index the slot this node names.
+   * @param stamp the slot's current stamp.
+   */
+  ArrayDListNode(ArrayDList<T> l, int index, int stamp) {
+    list = l;
+    this.index = index;
+    this.stamp = stamp;
+  }
+
+  /**
+   * isValidNode returns true if this node is valid; false otherwise.  A node
+   * is invalid if it names the sentinel or its slot has been removed.
+   * @return true if this node is valid; false otherwise.
+   */
+  public boolean isValidNode() {
+    return list != null && ((ArrayDList<T>) list).stamps[index] == stamp;
+  }
+
+  private ArrayDList<T> validList(String method) throws InvalidNodeException {
+    if (!isValidNode()) {
+      throw new InvalidNodeException(method + " called on invalid node");
+    }
+    return (ArrayDList<T>) list;
+  }
+
+  /**
+   * getItem() returns this node's item.  If this node is invalid, throws an
+   * exception.
+   * @return the item stored in this node.
+   * @exception InvalidNodeException if this node is invalid.
+   */
+  @SuppressWarnings("unchecked")
+  public T getItem() throws InvalidNodeException {
+    return (T) validList("getItem()").items[index];
+  }
+
+  /**
+   * setItem() sets this node's item to "item".  If this node is invalid,
+   * throws an exception.
+   * @param item the item to be stored in this node.
+   * @exception InvalidNodeException if this node is invalid.
+   */
+  public void setItem(T item) throws InvalidNodeException {
+    validList("setItem()").items[index] = item;
+  }
+
+  /**
+   * next() returns the node following this node.  If this node is invalid,
+   * throws an exception.
+   * @return the node following this node.
+   * @exception InvalidNodeException if this node is not valid.
+   */
+  public ListNode<T> next() throws InvalidNodeException {
+    ArrayDList<T> l = validList("next()");
+    return l.node(l.next[index]);
+  }
+
+  /**
+   * prev() returns the node preceding this node.  If this node is invalid,
+   * throws an exception.
+   * @return the node preceding this node.
+   * @exception InvalidNodeException if this node is not valid.
+   */
+  public ListNode<T> prev() throws InvalidNodeException {
+    ArrayDList<T> l = validList("prev()");
+    return l.node(l.prev[index]);
+  }
+
+  /**
+   * insertAfter() inserts an item immediately following this node.  If this
+   * node is invalid, throws an exception.
+   * @param item the item to be inserted.
+   * @exception InvalidNodeException if this node is not valid.
+   */
+  public void insertAfter(T item) throws InvalidNodeException {
+    validList("insertAfter()").insertAfter(index, item);
+  }
+
+  /**
+   * insertBefore() inserts an item immediately preceding this node.  If this
+   * node is invalid, throws an exception.
+   * @param item the item to be inserted.
+   * @exception InvalidNodeException if this node is not valid.
+   */
+  public void insertBefore(T item) throws InvalidNodeException {
+    ArrayDList<T> l = validList("insertBefore()");
+    l.insertAfter(l.prev[index], item);
+  }
+
+  /**
+   * remove() removes this node from its ArrayDList.  If this node is
+   * invalid, throws an exception.
+   * @exception InvalidNodeException if this node is not valid.
+   */
+  public void remove() throws InvalidNodeException {
+    validList("remove()").free(index);
+    list = null;
+  }
+
+}
\ No newline at end of file
@@ -0,0 +1,283 @@
+/* BoundedConcurrentDeque.java */
+
+package list;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A BoundedConcurrentDeque is a ConcurrentDeque that holds at most capacity
+ * items, so that producers who outpace their consumers are held back rather
+ * than filling memory.  Producers choose how to meet a full list:  offer
+ * methods fail at once (or after a timeout), and put methods wait for room.
+ * Consumers likewise poll without waiting or take, waiting for an item.
+ *
+ * Room and items are counted by two semaphores.  A producer acquires a
+ * permit of room before inserting and then releases a permit of items; a
+ * consumer does the reverse.  The list itself stays lock-free; threads block
+ * only when the list is full or empty and they asked to wait.
+ */
+
+public class BoundedConcurrentDeque<T> {
+
+  /**
+   * deque holds the items.
+   * capacity is the largest number of items the list may hold.
+   * room counts the items that may still be inserted.
+   * items counts the items that may be taken.
+   */
+  private final ConcurrentDeque<T> deque = new ConcurrentDeque<T>();
+  private final int capacity;
+  private final Semaphore room;
+  private final Semaphore items = new Semaphore(0);
+
+  /**
+   * BoundedConcurrentDeque() constructs an empty list that holds at most
+   * capacity items.
+   * @param capacity the largest number of items the list may hold.
+   * @exception IllegalArgumentException if capacity is not positive.
+   */
+  public BoundedConcurrentDeque(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Illegal capacity: " + capacity);
+    }
+    this.capacity = capacity;
+    room = new Semaphore(capacity);
+  }
+
+  /**
+   * capacity() returns the largest number of items the list may hold.
+   * @return the capacity of this list.
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * length() returns the number of items that may be taken.  Items whose
+   * insertion is still under way are not counted.
+   * @return the number of items.
+   */
+  public int length() {
+    return items.availablePermits();
+  }
+
+  /**
+   * isEmpty() returns true if no item may be taken.
+   * @return true if this list is empty, false otherwise.
+   */
+  public boolean isEmpty() {
+    return length() == 0;
+  }
+
+  private void insert(T item, boolean front) {
+    if (front) {
+      deque.insertFront(item);
+    } else {
+      deque.insertBack(item);
+    }
+    items.release();
+  }
+
+  /**
+   * Removes an item from one end.  The caller holds a permit of items, and
+   * an item is inserted before its permit is released, so the list holds an
+   * item for the caller.  The poll is retried all the same until it returns
+   * one, so that room is never released (and an item never lost to the
+   * caller) on a poll that came back empty.
+   */
+  private T remove(boolean front) {
+    T item;
+    while ((item = front ? deque.pollFront() : deque.pollBack()) == null) {
+      Thread.onSpinWait();
+    }
+    room.release();
+    return item;
+  }
+
+  private static void checkItem(Object item) {
+    if (item == null) {
+      throw new IllegalArgumentException("Illegal item: null");
+    }
+  }
+
+  /**
+   * offerFront() inserts an item at the front of this list if there is
+   * room.
+   * @param item the item to be inserted; not null.
+   * @return true if the item was inserted, false if the list was full.
+   */
+  public boolean offerFront(T item) {
+    checkItem(item);
+    if (!room.tryAcquire()) {
+      return false;
+    }
+    insert(item, true);
+    return true;
+  }
+
+  /**
+   * offerBack() inserts an item at the back of this list if there is room.
+   * @param item the item to be inserted; not null.
+   * @return true if the item was inserted, false if the list was full.
+   */
+  public boolean offerBack(T item) {
+    checkItem(item);
+    if (!room.tryAcquire()) {
+      return false;
+    }
+    insert(item, false);
+    return true;
+  }
+
+  /**
+   * offerFront() inserts an item at the front of this list, waiting up to
+   * the specified time for room.
+   * @param item the item to be inserted; not null.
+   * @param timeout how long to wait for room.
+   * @param unit the unit of timeout.
+   * @return true if the item was inserted, false if the time ran out.
+   * @exception InterruptedException if interrupted while waiting.
+   */
+  public boolean offerFront(T item, long timeout, TimeUnit unit)
+    throws InterruptedException {
+    checkItem(item);
+    if (!room.tryAcquire(timeout, unit)) {
+      return false;
+    }
+    insert(item, true);
+    return true;
+  }
+
+  /**
+   * offerBack() inserts an item at the back of this list, waiting up to the
+   * specified time for room.
+   * @param item the item to be inserted; not null.
+   * @param timeout how long to wait for room.
+   * @param unit the unit of timeout.
+   * @return true if the item was inserted, false if the time ran out.
+   * @exception InterruptedException if interrupted while waiting.
+   */
+  public boolean offerBack(T item, long timeout, TimeUnit unit)
+    throws InterruptedException {
+    checkItem(item);
+    if (!room.tryAcquire(timeout, unit)) {
+      return false;
+    }
+    insert(item, false);
+    return true;
+  }
+
+  /**
+   * putFront() inserts an item at the front of this list, waiting for room
+   * if the list is full.
+   * @param item the item to be inserted; not null.
+   * @exception InterruptedException if interrupted while waiting.
+   */
+  public void putFront(T item) throws InterruptedException {
+    checkItem(item);
+    room.acquire();
+    insert(item, true);
+  }
+
+  /**
+   * putBack() inserts an item at the back of this list, waiting for room if
+   * the list is full.
+   * @param item the item to be inserted; not null.
+   * @exception InterruptedException if interrupted while waiting.
+   */
+  public void putBack(T item) throws InterruptedException {
+    checkItem(item);
+    room.acquire();
+    insert(item, false);
+  }
+
+  /**
+   * pollFront() removes and returns the item at the front of this list, or
+   * returns null if it is empty.
+   * @return the front item, or null.
+   */
+  public T pollFront() {
+    return items.tryAcquire() ? remove(true) : null;
+  }
+
+  /**
+   * pollBack() removes and returns the item at the back of this list, or
+   * returns null if it is empty.
+   * @return the back item, or null.
+   */
+  public T pollBack() {
+    return items.tryAcquire() ? remove(false) : null;
+  }
+
+  /**
+   * pollFront() removes and returns the item at the front of this list,
+   * waiting up to the specified time for one.
+   * @param timeout how long to wait for an item.
+   * @param unit the unit of timeout.
+   * @return the front item, or null if the time ran out.
+   * @exception InterruptedException if interrupted while waiting.
+   */
+  public T pollFront(long timeout, TimeUnit unit)
+    throws InterruptedException {
+    return items.tryAcquire(timeout, unit) ? remove(true) : null;
+  }
+
+  /**
+   * pollBack() removes and returns the item at the back of this list,
+   * waiting up to the specified time for one.
+   * @param timeout how long to wait for an item.
+   * @param unit the unit of timeout.
+   * @return the back item, or null if the time ran out.
+   * @exception InterruptedException if interrupted while waiting.
+   */
+  public T pollBack(long timeout, TimeUnit unit)
+    throws InterruptedException {
+    return items.tryAcquire(timeout, unit) ? remove(false) : null;
+  }
+
+  /**
+   * peekFront() returns the item at the front of this list without removing
+   * it, or returns null if it is empty.  While other threads insert and
+   * remove items, the item returned may be one whose insertion or removal
+   * is still under way.
+   * @return the front item, or null.
+   */
+  public T peekFront() {
+    return deque.peekFront();
+  }
+
+  /**
+   * peekBack() returns the item at the back of this list without removing
+   * it, or returns null if it is empty.  While other threads insert and
+   * remove items, the item returned may be one whose insertion or removal
+   * is still under way.
+   * @return the back item, or null.
+   */
+  public T peekBack() {
+    return deque.peekBack();
+  }
+
+  /**
+   * takeFront() removes and returns the item at the front of this list,
+   * waiting for one if the list is empty.
+   * @return the front item.
+   * @exception InterruptedException if interrupted while waiting.
+   */
+  public T takeFront() throws InterruptedException {
+    items.acquire();
+    return remove(true);
+  }
+
+  /**
+   * takeBack() removes and returns the item at the back of this list,
+   * waiting for one if the list is empty.
+   * @return the back item.
+   * @exception InterruptedException if interrupted while waiting.
+   */
+  public T takeBack() throws InterruptedException {
+    items.acquire();
+    return remove(false);
+  }
+
+}
\ No newline at end of file
@@ -0,0 +1,621 @@
+/* ConcurrentDeque.java */
+
+package list;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A ConcurrentDeque is a lock-free, doubly-linked list that many threads may
+ * insert at and poll from at either end at once, without locking.  It is
+ * meant for handing work between threads, where a DList behind a lock would
+ * make every producer and consumer wait on the same lock.
+ *
+ * The algorithm is that of java.util.concurrent.ConcurrentLinkedDeque.
+ * Nodes are linked by CAS on their prev and next fields, and an item is
+ * removed by CAS of its node's item to null, which is the moment the removal
+ * takes effect.  Deleted nodes are then unlinked by whichever thread gets to
+ * them, so that live nodes never reach them; a node unlinked at an end is
+ * made to point at itself or at a terminator node, so that a thread still
+ * holding it knows to start again from head or tail.  head and tail are only
+ * hints, at most a couple of nodes away from the true ends.
+ *
+ * A traversal from one end can reach the other end while another thread is
+ * inserting at the end it started from, and so see no item although the
+ * list was never empty.  As in the JDK since JDK-8188900, a poll or peek
+ * that finds no item checks that the node it started from is still the
+ * first (or last) node, and otherwise starts again.
+ *
+ * Items may not be null.  length() walks the list, so it is O(n) and only
+ * an estimate while other threads are modifying the list.
+ */
+
+public class ConcurrentDeque<T> {
+
+  /**
+   * A Node is a node of the list.  A node whose item is null is deleted
+   * (except the initial dummy node).
+   */
+  static final class Node<T> {
+    volatile Node<T> prev;
+    volatile T item;
+    volatile Node<T> next;
+
+    Node(T item) {
+      this.item = item;
+    }
+  }
+
+  /**
+   * HOPS is the number of deleted nodes a removal tolerates between live
+   * nodes at an end before squeezing them out.
+   * PREV_TERMINATOR and NEXT_TERMINATOR stand in for the links of nodes
+   * unlinked at the front and back.
+   */
+  private static final int HOPS = 2;
+  @SuppressWarnings("rawtypes")
+  private static final Node PREV_TERMINATOR = new Node<Object>(null);
+  @SuppressWarnings("rawtypes")
+  private static final Node NEXT_TERMINATOR = new Node<Object>(null);
+
+  @SuppressWarnings("unchecked")
+  private static final void initTerminators() {
+    PREV_TERMINATOR.next = PREV_TERMINATOR;
+    NEXT_TERMINATOR.prev = NEXT_TERMINATOR;
+  }
+
+  static {
+    initTerminators();
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<Node, Node> PREV =
+    AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "prev");
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+    AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<Node, Object> ITEM =
+    AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "item");
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<ConcurrentDeque, Node>
+    HEAD = AtomicReferenceFieldUpdater.newUpdater(ConcurrentDeque.class,
+                                                  Node.class, "head");
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<ConcurrentDeque, Node>
+    TAIL = AtomicReferenceFieldUpdater.newUpdater(ConcurrentDeque.class,
+                                                  Node.class, "tail");
+
+  /**
+   * head is a node near the front; its prev chain leads to the first node.
+   * tail is a node near the back; its next chain leads to the last node.
+   */
+  private volatile Node<T> head;
+  private volatile Node<T> tail;
+
+  /**
+   * ConcurrentDeque() constructs an empty ConcurrentDeque.
+   */
+  public ConcurrentDeque() {
+    head = tail = new Node<T>(null);
+  }
+
+  private boolean casHead(Node<T> expect, Node<T> update) {
+    return HEAD.compareAndSet(this, expect, update);
+  }
+
+  private boolean casTail(Node<T> expect, Node<T> update) {
+    return TAIL.compareAndSet(this, expect, update);
+  }
+
+  private static <T> boolean casPrev(Node<T> n, Node<T> expect,
+                                     Node<T> update) {
+    return PREV.compareAndSet(n, expect, update);
+  }
+
+  private static <T> boolean casNext(Node<T> n, Node<T> expect,
+                                     Node<T> update) {
+    return NEXT.compareAndSet(n, expect, update);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Node<T> prevTerminator() {
+    return (Node<T>) PREV_TERMINATOR;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Node<T> nextTerminator() {
+    return (Node<T>) NEXT_TERMINATOR;
+  }
+
+  private static void checkItem(Object item) {
+    if (item == null) {
+      throw new IllegalArgumentException("Illegal item: null");
+    }
+  }
+
+  /**
+   * insertFront() inserts an item at the front of this ConcurrentDeque.
+   * @param item the item to be inserted; not null.
+   */
+  public void insertFront(T item) {
+    checkItem(item);
+    Node<T> node = new Node<T>(item);
+    restart:
+    while (true) {
+      for (Node<T> h = head, p = h, q;;) {
+        if ((q = p.prev) != null && (q = (p = q).prev) != null) {
+          // Check for head updates every other hop.
+          p = (h != (h = head)) ? h : q;
+        } else if (p.next == p) {
+          continue restart;                         // p is PREV_TERMINATOR
+        } else {
+          NEXT.lazySet(node, p);
+          if (casPrev(p, null, node)) {
+            if (p != h) {
+              casHead(h, node);
+            }
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * insertBack() inserts an item at the back of this ConcurrentDeque.
+   * @param item the item to be inserted; not null.
+   */
+  public void insertBack(T item) {
+    checkItem(item);
+    Node<T> node = new Node<T>(item);
+    restart:
+    while (true) {
+      for (Node<T> t = tail, p = t, q;;) {
+        if ((q = p.next) != null && (q = (p = q).next) != null) {
+          // Check for tail updates every other hop.
+          p = (t != (t = tail)) ? t : q;
+        } else if (p.prev == p) {
+          continue restart;                         // p is NEXT_TERMINATOR
+        } else {
+          PREV.lazySet(node, p);
+          if (casNext(p, null, node)) {
+            if (p != t) {
+              casTail(t, node);
+            }
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the first node (live or not), and moves head to it.
+   */
+  private Node<T> first() {
+    restart:
+    while (true) {
+      for (Node<T> h = head, p = h, q;;) {
+        if ((q = p.prev) != null && (q = (p = q).prev) != null) {
+          p = (h != (h = head)) ? h : q;
+        } else if (p == h || casHead(h, p)) {
+          return p;
+        } else {
+          continue restart;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the last node (live or not), and moves tail to it.
+   */
+  private Node<T> last() {
+    restart:
+    while (true) {
+      for (Node<T> t = tail, p = t, q;;) {
+        if ((q = p.next) != null && (q = (p = q).next) != null) {
+          p = (t != (t = tail)) ? t : q;
+        } else if (p == t || casTail(t, p)) {
+          return p;
+        } else {
+          continue restart;
+        }
+      }
+    }
+  }
+
+  /**
+   * pollFront() removes and returns the item at the front of this
+   * ConcurrentDeque, or returns null if it is empty.
+   * @return the front item, or null.
+   */
+  public T pollFront() {
+    restart:
+    while (true) {
+      Node<T> first = first();
+      Node<T> p = first;
+      while (true) {
+        T item = p.item;
+        if (item != null) {
+          if (first.prev != null) {
+            continue restart;                       // an item went in front
+          }
+          if (ITEM.compareAndSet(p, item, null)) {
+            unlink(p);
+            return item;
+          }
+        }
+        if (p == (p = p.next)) {
+          continue restart;                         // p was unlinked
+        }
+        if (p == null) {
+          if (first.prev != null) {
+            continue restart;
+          }
+          return null;
+        }
+      }
+    }
+  }
+
+  /**
+   * pollBack() removes and returns the item at the back of this
+   * ConcurrentDeque, or returns null if it is empty.
+   * @return the back item, or null.
+   */
+  public T pollBack() {
+    restart:
+    while (true) {
+      Node<T> last = last();
+      Node<T> p = last;
+      while (true) {
+        T item = p.item;
+        if (item != null) {
+          if (last.next != null) {
+            continue restart;                       // an item went behind
+          }
+          if (ITEM.compareAndSet(p, item, null)) {
+            unlink(p);
+            return item;
+          }
+        }
+        if (p == (p = p.prev)) {
+          continue restart;                         // p was unlinked
+        }
+        if (p == null) {
+          if (last.next != null) {
+            continue restart;
+          }
+          return null;
+        }
+      }
+    }
+  }
+
+  /**
+   * peekFront() returns the item at the front of this ConcurrentDeque
+   * without removing it, or returns null if it is empty.
+   * @return the front item, or null.
+   */
+  public T peekFront() {
+    restart:
+    while (true) {
+      Node<T> first = first();
+      Node<T> p = first;
+      T item;
+      while ((item = p.item) == null) {
+        if (p == (p = p.next)) {
+          continue restart;
+        }
+        if (p == null) {
+          break;
+        }
+      }
+      if (first.prev != null) {
+        continue restart;
+      }
+      return item;
+    }
+  }
+
+  /**
+   * peekBack() returns the item at the back of this ConcurrentDeque without
+   * removing it, or returns null if it is empty.
+   * @return the back item, or null.
+   */
+  public T peekBack() {
+    restart:
+    while (true) {
+      Node<T> last = last();
+      Node<T> p = last;
+      T item;
+      while ((item = p.item) == null) {
+        if (p == (p = p.prev)) {
+          continue restart;
+        }
+        if (p == null) {
+          break;
+        }
+      }
+      if (last.next != null) {
+        continue restart;
+      }
+      return item;
+    }
+  }
+
+  /**
+   * isEmpty() returns true if this ConcurrentDeque holds no items.
+   * @return true if this ConcurrentDeque is empty, false otherwise.
+   */
+  public boolean isEmpty() {
+    return peekFront() == null;
+  }
+
+  /**
+   * length() counts the items of this ConcurrentDeque.  If other threads are
+   * modifying the list, the count may be out of date by the time it is
+   * returned.
+   * @return the number of items.
+   */
+  public int length() {
+    restart:
+    while (true) {
+      int count = 0;
+      for (Node<T> p = first(); p != null;) {
+        if (p.item != null && ++count == Integer.MAX_VALUE) {
+          break;
+        }
+        if (p == (p = p.next)) {
+          continue restart;
+        }
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Unlinks deleted node x.
+   */
+  private void unlink(Node<T> x) {
+    Node<T> prev = x.prev;
+    Node<T> next = x.next;
+    if (prev == null) {
+      unlinkFirst(x, next);
+    } else if (next == null) {
+      unlinkLast(x, prev);
+    } else {
+      // Find x's live (or end) neighbours, link them to each other, and if
+      // x was next to an end, make x point at itself or a terminator.
+      Node<T> activePred;
+      Node<T> activeSucc;
+      boolean isFirst;
+      boolean isLast;
+      int hops = 1;
+
+      for (Node<T> p = prev; ; ++hops) {
+        if (p.item != null) {
+          activePred = p;
+          isFirst = false;
+          break;
+        }
+        Node<T> q = p.prev;
+        if (q == null) {
+          if (p.next == p) {
+            return;
+          }
+          activePred = p;
+          isFirst = true;
+          break;
+        } else if (p == q) {
+          return;
+        } else {
+          p = q;
+        }
+      }
+
+      for (Node<T> p = next; ; ++hops) {
+        if (p.item != null) {
+          activeSucc = p;
+          isLast = false;
+          break;
+        }
+        Node<T> q = p.next;
+        if (q == null) {
+          if (p.prev == p) {
+            return;
+          }
+          activeSucc = p;
+          isLast = true;
+          break;
+        } else if (p == q) {
+          return;
+        } else {
+          p = q;
+        }
+      }
+
+      if (hops < HOPS && (isFirst | isLast)) {
+        return;
+      }
+
+      skipDeletedSuccessors(activePred);
+      skipDeletedPredecessors(activeSucc);
+
+      if ((isFirst | isLast)
+          && activePred.next == activeSucc
+          && activeSucc.prev == activePred
+          && (isFirst ? activePred.prev == null : activePred.item != null)
+          && (isLast ? activeSucc.next == null : activeSucc.item != null)) {
+        updateHead();
+        updateTail();
+        PREV.lazySet(x, isFirst ? prevTerminator() : x);
+        NEXT.lazySet(x, isLast ? nextTerminator() : x);
+      }
+    }
+  }
+
+  /**
+   * Unlinks the deleted nodes following deleted first node first.
+   */
+  private void unlinkFirst(Node<T> first, Node<T> next) {
+    for (Node<T> o = null, p = next, q;;) {
+      if (p.item != null || (q = p.next) == null) {
+        if (o != null && p.prev != p && casNext(first, next, p)) {
+          skipDeletedPredecessors(p);
+          if (first.prev == null
+              && (p.next == null || p.item != null)
+              && p.prev == first) {
+            updateHead();
+            updateTail();
+            NEXT.lazySet(o, o);
+            PREV.lazySet(o, prevTerminator());
+          }
+        }
+        return;
+      } else if (p == q) {
+        return;
+      } else {
+        o = p;
+        p = q;
+      }
+    }
+  }
+
+  /**
+   * Unlinks the deleted nodes preceding deleted last node last.
+   */
+  private void unlinkLast(Node<T> last, Node<T> prev) {
+    for (Node<T> o = null, p = prev, q;;) {
+      if (p.item != null || (q = p.prev) == null) {
+        if (o != null && p.next != p && casPrev(last, prev, p)) {
+          skipDeletedSuccessors(p);
+          if (last.next == null
+              && (p.prev == null || p.item != null)
+              && p.next == last) {
+            updateHead();
+            updateTail();
+            PREV.lazySet(o, o);
+            NEXT.lazySet(o, nextTerminator());
+          }
+        }
+        return;
+      } else if (p == q) {
+        return;
+      } else {
+        o = p;
+        p = q;
+      }
+    }
+  }
+
+  /**
+   * Moves head back until it reaches a live node or the first node.
+   */
+  private void updateHead() {
+    Node<T> h;
+    Node<T> p;
+    Node<T> q;
+    restart:
+    while ((h = head).item == null && (p = h.prev) != null) {
+      while (true) {
+        if ((q = p.prev) == null || (q = (p = q).prev) == null) {
+          if (casHead(h, p)) {
+            return;
+          }
+          continue restart;
+        } else if (h != head) {
+          continue restart;
+        } else {
+          p = q;
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves tail forward until it reaches a live node or the last node.
+   */
+  private void updateTail() {
+    Node<T> t;
+    Node<T> p;
+    Node<T> q;
+    restart:
+    while ((t = tail).item == null && (p = t.next) != null) {
+      while (true) {
+        if ((q = p.next) == null || (q = (p = q).next) == null) {
+          if (casTail(t, p)) {
+            return;
+          }
+          continue restart;
+        } else if (t != tail) {
+          continue restart;
+        } else {
+          p = q;
+        }
+      }
+    }
+  }
+
+  /**
+   * Links live node x back to its nearest live predecessor.
+   */
+  private void skipDeletedPredecessors(Node<T> x) {
+    whileActive:
+    do {
+      Node<T> prev = x.prev;
+      Node<T> p = prev;
+      while (true) {
+        if (p.item != null) {
+          break;
+        }
+        Node<T> q = p.prev;
+        if (q == null) {
+          if (p.next == p) {
+            continue whileActive;
+          }
+          break;
+        } else if (p == q) {
+          continue whileActive;
+        } else {
+          p = q;
+        }
+      }
+      if (prev == p || casPrev(x, prev, p)) {
+        return;
+      }
+    } while (x.item != null || x.next == null);
+  }
+
+  /**
+   * Links live node x forward to its nearest live successor.
+   */
+  private void skipDeletedSuccessors(Node<T> x) {
+    whileActive:
+    do {
+      Node<T> next = x.next;
+      Node<T> p = next;
+      while (true) {
+        if (p.item != null) {
+          break;
+        }
+        Node<T> q = p.next;
+        if (q == null) {
+          if (p.prev == p) {
+            continue whileActive;
+          }
+          break;
+        } else if (p == q) {
+          continue whileActive;
+        } else {
+          p = q;
+        }
+      }
+      if (next == p || casNext(x, next, p)) {
+        return;
+      }
+    } while (x.item != null || x.prev == null);
+  }
+
+}
\ No newline at end of file
@@ -2,6 +2,12 @@
 
 package list;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
 /**
  * A DList is a mutable doubly-linked list ADT. Its implementation is
  * circularly-linked and emplysa  sentinel node at the head of the list.
@@ -28,6 +34,15 @@ public class DList<T> extends List<T> {
     return new DListNode<T>(item, list, prev, next);
   }
 
+  /**
+   * recycle() is called with each node removed from this DList, once the
+   * node has been unlinked and invalidated.  It does nothing, but can be
+   * overridden to keep the node for reuse by newNode(), as PooledDList does.
+   * @param node the node just removed.
+   */
+  protected void recycle(DListNode<T> node) {
+  }
+
   /**
    * DList() constructs for an empty DList.
    */
@@ -53,6 +68,7 @@ public class DList<T> extends List<T> {
   public void insertBack(T item) {
     head.prev = newNode(item, this, head.prev, head);
     head.prev.prev.next = head.prev;
+    size++;
   }
 
   /**
@@ -75,20 +91,86 @@ public class DList<T> extends List<T> {
     return head.prev;
   }
 
+  /**
+   * moveToFront() moves a node of this DList to the front of the list.  No
+   * node is allocated, so the node stays valid and keeps its item.
+   * @param node a node of this DList.
+   * @exception InvalidNodeException if node is invalid or belongs to another
+   *  list.
+   */
+  public void moveToFront(ListNode<T> node) throws InvalidNodeException {
+    if (!node.isValidNode() || node.list != this) {
+      throw new InvalidNodeException("moveToFront() called on a node not in "
+                                     + "this list");
+    }
+    DListNode<T> n = (DListNode<T>) node;
+    if (head.next == n) {
+      return;
+    }
+    n.prev.next = n.next;
+    n.next.prev = n.prev;
+    n.prev = head;
+    n.next = head.next;
+    head.next.prev = n;
+    head.next = n;
+  }
+
+  /**
+   * iterator() returns an Iterator over the items of this DList, from front
+   * to back.  It follows the links between nodes directly, so it never
+   * throws InvalidNodeException.  The list must not be modified while the
+   * iterator is in use.
+   * @return an Iterator over the items of this DList.
+   */
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private DListNode<T> current = head;
+
+      public boolean hasNext() {
+        return current.next != head;
+      }
+
+      public T next() {
+        if (current.next == head) {
+          throw new NoSuchElementException();
+        }
+        current = current.next;
+        return current.item;
+      }
+    };
+  }
+
+  /**
+   * forEach() performs an action on each item of this DList, from front to
+   * back.  Nothing is allocated per item.  The list must not be modified by
+   * the action.
+   * @param action the action to perform on each item.
+   */
+  public void forEach(Consumer<? super T> action) {
+    for (DListNode<T> node = head.next; node != head; node = node.next) {
+      action.accept(node.item);
+    }
+  }
+
+  /**
+   * spliterator() returns a Spliterator over the items of this DList, from
+   * front to back, that knows the list's length.
+   * @return a Spliterator over the items of this DList.
+   */
+  public Spliterator<T> spliterator() {
+    return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED);
+  }
+
   /**
    * toString() returns a String representation of this DList.
    * @return a String representation of this DList.
    */
   public String toString() {
-    String result = "[  ";
-    try {
-    	ListNode<T> current = head.next();
-	    while (current != head) {
-	      result = result + current.item + "  ";
-	      current = current.next();
-	    }
-    } catch (InvalidNodeException e) {}
-    return result + "]";
+    StringBuilder result = new StringBuilder("[  ");
+    for (DListNode<T> node = head.next; node != head; node = node.next) {
+      result.append(node.item).append("  ");
+    }
+    return result.append("]").toString();
   }
 
 }
\ No newline at end of file
@@ -108,12 +108,14 @@ public class DListNode<T> extends ListNode<T> {
     if (!isValidNode()) {
       throw new InvalidNodeException("remove() called on invalid node");
     }
+    DList<T> owner = (DList<T>) list;
     prev.next = next;
     next.prev = prev;
     list.size --;
     list = null;
     next = null;
     prev = null;
+    owner.recycle(this);
   }
 
 }
\ No newline at end of file
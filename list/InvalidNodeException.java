@@ -7,6 +7,8 @@ package list;
  */
 public class InvalidNodeException extends Exception {
 
+  private static final long serialVersionUID = 1L;
+
   protected InvalidNodeException() {
     super();
   }
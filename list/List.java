@@ -4,9 +4,10 @@ package list;
 
 /**
  * A List is a generic mutable list ADT which stores objects of only one type.
+ * Its items can be visited with a for-each loop or forEach().
  */
 
-public abstract class List<T> {
+public abstract class List<T> implements Iterable<T> {
 
 	/**
 	 * size is the number of items in the list.
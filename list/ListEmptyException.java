@@ -7,6 +7,8 @@ package list;
  */
 public class ListEmptyException extends Exception {
 
+  private static final long serialVersionUID = 1L;
+
   protected ListEmptyException() {
     super();
   }
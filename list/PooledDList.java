@@ -0,0 +1,92 @@
+/* PooledDList.java */
+
+package list;
+
+/**
+ * A PooledDList is a DList that keeps the nodes removed from it in a free
+ * list and reuses them for later insertions, so a list whose length stays
+ * about the same allocates no nodes once it is warm.
+ *
+ * A removed node may come back to life holding another item.  Callers must
+ * therefore drop every reference to a node once they remove it; a stale
+ * reference would not be invalid, as it is with a plain DList.
+ */
+
+public class PooledDList<T> extends DList<T> {
+
+  /**
+   * DEFAULT_MAX_POOLED is the largest number of free nodes kept if no limit
+   * is given.
+   */
+  public static final int DEFAULT_MAX_POOLED = 1024;
+
+  /**
+   * pool references the first free node; free nodes are linked by next.
+   * pooled is the number of free nodes.
+   * maxPooled is the largest number of free nodes kept.
+   */
+  protected DListNode<T> pool;
+  protected int pooled;
+  protected final int maxPooled;
+
+  /**
+   * PooledDList() constructs an empty PooledDList that keeps up to maxPooled
+   * free nodes.
+   * @param maxPooled the largest number of free nodes kept.
+   * @exception IllegalArgumentException if maxPooled is negative.
+   */
+  public PooledDList(int maxPooled) {
+    if (maxPooled < 0) {
+      throw new IllegalArgumentException("Illegal pool size: " + maxPooled);
+    }
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * PooledDList() constructs an empty PooledDList that keeps up to
+   * DEFAULT_MAX_POOLED free nodes.
+   */
+  public PooledDList() {
+    this(DEFAULT_MAX_POOLED);
+  }
+
+  /**
+   * newNode() takes a node from the pool if there is one, and allocates a
+   * new one otherwise.
+   */
+  protected DListNode<T> newNode(T item, DList<T> list,
+                                 DListNode<T> prev, DListNode<T> next) {
+    DListNode<T> node = pool;
+    if (node == null) {
+      return super.newNode(item, list, prev, next);
+    }
+    pool = node.next;
+    pooled--;
+    node.item = item;
+    node.list = list;
+    node.prev = prev;
+    node.next = next;
+    return node;
+  }
+
+  /**
+   * recycle() adds a removed node to the pool, unless the pool is full.
+   */
+  protected void recycle(DListNode<T> node) {
+    if (pooled < maxPooled) {
+      node.item = null;
+      node.next = pool;
+      pool = node;
+      pooled++;
+    }
+  }
+
+  /**
+   * poolSize() returns the number of free nodes in the pool.
+   * @return the number of free nodes.
+   */
+  public int poolSize() {
+    return pooled;
+  }
+
+}
\ No newline at end of file
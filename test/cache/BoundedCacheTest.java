@@ -0,0 +1,199 @@
+/* BoundedCacheTest.java */
+
+package cache;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+  /**
+   * A BoundedCache whose clock is set by the test.
+   */
+  static class ManualCache<K, V> extends BoundedCache<K, V> {
+    long time;
+
+    ManualCache(EvictionPolicy<K, V> policy, long expireAfterWrite) {
+      super(policy, expireAfterWrite, TimeUnit.NANOSECONDS);
+    }
+
+    protected long now() {
+      return time;
+    }
+  }
+
+  @Test
+  public void lruEvictsLeastRecentlyUsed() {
+    BoundedCache<String, Integer> c =
+      new BoundedCache<String, Integer>(new LruPolicy<String, Integer>(3));
+    c.put("a", 1);
+    c.put("b", 2);
+    c.put("c", 3);
+    assertEquals(Integer.valueOf(1), c.get("a"));
+    c.put("d", 4);
+    assertNull(c.get("b"));
+    assertEquals(Integer.valueOf(1), c.get("a"));
+    assertEquals(Integer.valueOf(3), c.get("c"));
+    assertEquals(Integer.valueOf(4), c.get("d"));
+    assertEquals(3, c.size());
+    assertEquals(1, c.stats().evictions());
+  }
+
+  @Test
+  public void putReplacesValueWithoutEvicting() {
+    BoundedCache<String, Integer> c =
+      new BoundedCache<String, Integer>(new LruPolicy<String, Integer>(2));
+    c.put("a", 1);
+    c.put("b", 2);
+    c.put("a", 10);
+    assertEquals(2, c.size());
+    assertEquals(Integer.valueOf(10), c.get("a"));
+    assertEquals(Integer.valueOf(10), c.remove("a"));
+    assertNull(c.remove("a"));
+    assertEquals(0, c.stats().evictions());
+  }
+
+  @Test
+  public void boundAndValuesHoldUnderRandomOperations() {
+    randomOperations(new LruPolicy<Integer, Integer>(50));
+    randomOperations(new TinyLfuPolicy<Integer, Integer>(50));
+  }
+
+  private void randomOperations(EvictionPolicy<Integer, Integer> policy) {
+    BoundedCache<Integer, Integer> c =
+      new BoundedCache<Integer, Integer>(policy);
+    HashMap<Integer, Integer> written = new HashMap<Integer, Integer>();
+    Random random = new Random(5);
+    for (int op = 0; op < 100000; op++) {
+      int key = random.nextInt(200);
+      int r = random.nextInt(10);
+      if (r < 4) {
+        c.put(key, op);
+        written.put(key, op);
+      } else if (r < 5) {
+        c.remove(key);
+        written.remove(key);
+      } else {
+        Integer value = c.get(key);
+        if (value != null) {
+          assertEquals(written.get(key), value);
+        }
+      }
+      assertTrue(c.size() <= c.capacity());
+    }
+  }
+
+  @Test
+  public void tinyLfuKeepsFrequentKeysThroughAScan() {
+    BoundedCache<Integer, Integer> lfu = new BoundedCache<Integer, Integer>(
+      new TinyLfuPolicy<Integer, Integer>(100));
+    BoundedCache<Integer, Integer> lru =
+      new BoundedCache<Integer, Integer>(new LruPolicy<Integer, Integer>(100));
+    for (int round = 0; round < 10; round++) {
+      for (int k = 0; k < 50; k++) {
+        if (lfu.get(k) == null) {
+          lfu.put(k, k);
+        }
+        if (lru.get(k) == null) {
+          lru.put(k, k);
+        }
+      }
+    }
+    for (int k = 1000; k < 2000; k++) {
+      lfu.put(k, k);
+      lru.put(k, k);
+    }
+    int lfuKept = 0;
+    int lruKept = 0;
+    for (int k = 0; k < 50; k++) {
+      if (lfu.get(k) != null) {
+        lfuKept++;
+      }
+      if (lru.get(k) != null) {
+        lruKept++;
+      }
+    }
+    assertEquals(0, lruKept);
+    assertTrue("kept " + lfuKept, lfuKept >= 40);
+  }
+
+  @Test
+  public void entriesExpireAfterWrite() {
+    ManualCache<String, Integer> c =
+      new ManualCache<String, Integer>(new LruPolicy<String, Integer>(10), 100);
+    c.put("a", 1);
+    c.time = 50;
+    assertEquals(Integer.valueOf(1), c.get("a"));
+    c.put("a", 2);
+    c.time = 149;
+    assertEquals(Integer.valueOf(2), c.get("a"));
+    c.time = 150;
+    assertNull(c.get("a"));
+    assertEquals(0, c.size());
+    CacheStats stats = c.stats();
+    assertEquals(2, stats.hits());
+    assertEquals(1, stats.misses());
+    assertEquals(1, stats.expirations());
+  }
+
+  @Test
+  public void makeEmptyKeepsStats() {
+    BoundedCache<String, Integer> c =
+      new BoundedCache<String, Integer>(new TinyLfuPolicy<String, Integer>(10));
+    c.put("a", 1);
+    c.get("a");
+    c.makeEmpty();
+    assertEquals(0, c.size());
+    assertNull(c.get("a"));
+    assertEquals(1, c.stats().hits());
+    c.put("a", 3);
+    assertEquals(Integer.valueOf(3), c.get("a"));
+  }
+
+  @Test
+  public void putRejectsNullKeyWithoutTrackingIt() {
+    BoundedCache<String, Integer> c =
+      new BoundedCache<String, Integer>(new LruPolicy<String, Integer>(2));
+    try {
+      c.put(null, 1);
+      fail();
+    } catch (IllegalArgumentException e) {}
+    assertEquals(0, c.size());
+    c.put("a", 1);
+    c.put("b", 2);
+    assertEquals(Integer.valueOf(1), c.get("a"));
+    assertEquals(Integer.valueOf(2), c.get("b"));
+    assertEquals(0, c.stats().evictions());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeExpiry() {
+    new BoundedCache<String, Integer>(new LruPolicy<String, Integer>(10), -1,
+                                      TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void sketchCountsAndAges() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(42);
+    }
+    assertTrue(sketch.frequency(42) >= 5);
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(7);
+    }
+    assertTrue(sketch.frequency(7) <= 15);
+    for (int i = 0; i < 200; i++) {
+      sketch.increment(1000 + i);
+    }
+    assertTrue(sketch.frequency(7) < 15);
+    sketch.clear();
+    assertEquals(0, sketch.frequency(42));
+  }
+
+}
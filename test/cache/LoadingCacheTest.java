@@ -0,0 +1,360 @@
+/* LoadingCacheTest.java */
+
+package cache;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class LoadingCacheTest {
+
+  /**
+   * A loader that maps each key to its upper case, counts its calls and
+   * records its batches.  If a gate is set, each call waits for it.
+   */
+  static class Upper extends CacheLoader<String, String> {
+    final AtomicInteger calls = new AtomicInteger();
+    final List<List<String>> batches =
+      Collections.synchronizedList(new ArrayList<List<String>>());
+    final List<Thread> batchThreads =
+      Collections.synchronizedList(new ArrayList<Thread>());
+    volatile CountDownLatch gate;
+
+    private void pass() throws InterruptedException {
+      CountDownLatch g = gate;
+      if (g != null) {
+        g.await();
+      }
+    }
+
+    public String load(String key) throws Exception {
+      calls.incrementAndGet();
+      pass();
+      return key.toUpperCase();
+    }
+
+    public Map<String, String> loadAll(List<String> keys) throws Exception {
+      batches.add(new ArrayList<String>(keys));
+      batchThreads.add(Thread.currentThread());
+      pass();
+      Map<String, String> values = new HashMap<String, String>();
+      for (String key : keys) {
+        values.put(key, key.toUpperCase());
+      }
+      return values;
+    }
+  }
+
+  /**
+   * A thread that gets one key from a cache.
+   */
+  static class Getter extends Thread {
+    final LoadingCache<String, String> cache;
+    final String key;
+    volatile String value;
+
+    Getter(LoadingCache<String, String> cache, String key) {
+      this.cache = cache;
+      this.key = key;
+      start();
+    }
+
+    public void run() {
+      value = cache.get(key);
+    }
+  }
+
+  private static final Executor DIRECT = new Executor() {
+    public void execute(Runnable task) {
+      task.run();
+    }
+  };
+
+  private static BoundedCache<String, String> bounded() {
+    return new BoundedCache<String, String>(
+      new LruPolicy<String, String>(100));
+  }
+
+  /**
+   * Waits until the cache has counted the specified number of misses.
+   */
+  private static void awaitMisses(LoadingCache<?, ?> cache, long misses)
+    throws InterruptedException {
+    while (cache.stats().misses() < misses) {
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void concurrentMissesOnOneKeyLoadItOnce() throws Exception {
+    Upper loader = new Upper();
+    loader.gate = new CountDownLatch(1);
+    LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(bounded(), loader, false);
+    Getter[] getters = new Getter[8];
+    for (int i = 0; i < getters.length; i++) {
+      getters[i] = new Getter(cache, "hot");
+    }
+    awaitMisses(cache, getters.length);
+    loader.gate.countDown();
+    for (Getter g : getters) {
+      g.join();
+      assertEquals("HOT", g.value);
+    }
+    assertEquals(1, loader.calls.get());
+    assertEquals("HOT", cache.getIfPresent("hot"));
+  }
+
+  @Test
+  public void batchLeaderReturnsOnceItsOwnKeyIsLoaded() throws Exception {
+    Upper loader = new Upper();
+    CountDownLatch first = new CountDownLatch(1);
+    loader.gate = first;
+    LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(bounded(), loader, true);
+    Getter leader = new Getter(cache, "a");
+    awaitMisses(cache, 1);
+    while (loader.batches.isEmpty()) {
+      Thread.sleep(1);
+    }
+    Getter b = new Getter(cache, "b");
+    Getter c = new Getter(cache, "c");
+    awaitMisses(cache, 3);
+    CountDownLatch second = new CountDownLatch(1);
+    loader.gate = second;
+    first.countDown();
+    leader.join(10000);
+    assertFalse(leader.isAlive());
+    assertEquals("A", leader.value);
+    second.countDown();
+    b.join();
+    c.join();
+    assertEquals("B", b.value);
+    assertEquals("C", c.value);
+    assertEquals(2, loader.batches.size());
+    assertEquals(Collections.singletonList("a"), loader.batches.get(0));
+    List<String> rest = new ArrayList<String>(loader.batches.get(1));
+    Collections.sort(rest);
+    assertEquals(Arrays.asList("b", "c"), rest);
+    assertSame(leader, loader.batchThreads.get(0));
+    assertNotSame(leader, loader.batchThreads.get(1));
+  }
+
+  @Test
+  public void batchedMissesAllLoadUnderContention() throws Exception {
+    Upper loader = new Upper();
+    LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(bounded(), loader, true);
+    Getter[] getters = new Getter[16];
+    for (int round = 0; round < 50; round++) {
+      cache.makeEmpty();
+      for (int i = 0; i < getters.length; i++) {
+        getters[i] = new Getter(cache, "k" + (i % 5));
+      }
+      for (int i = 0; i < getters.length; i++) {
+        getters[i].join();
+        assertEquals("K" + (i % 5), getters[i].value);
+      }
+    }
+  }
+
+  @Test
+  public void hitPastRefreshTimeReturnsOldValueAndReloads() {
+    BoundedCacheTest.ManualCache<String, String> bounded =
+      new BoundedCacheTest.ManualCache<String, String>(
+        new LruPolicy<String, String>(10), 100);
+    final int[] version = new int[1];
+    CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+      public String load(String key) {
+        return key + (++version[0]);
+      }
+    };
+    final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+    Executor queue = new Executor() {
+      public void execute(Runnable task) {
+        tasks.add(task);
+      }
+    };
+    LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(bounded, loader, false, 10,
+                                       TimeUnit.NANOSECONDS, queue);
+    assertEquals("k1", cache.get("k"));
+    bounded.time = 9;
+    assertEquals("k1", cache.get("k"));
+    assertTrue(tasks.isEmpty());
+    bounded.time = 10;
+    assertEquals("k1", cache.get("k"));
+    assertEquals("k1", cache.get("k"));
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+    assertEquals("k2", cache.get("k"));
+    assertEquals(2, version[0]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRefreshTimeEqualToExpiry() {
+    BoundedCache<String, String> bounded =
+      new BoundedCache<String, String>(new LruPolicy<String, String>(10), 1,
+                                       TimeUnit.SECONDS);
+    new LoadingCache<String, String>(bounded, new Upper(), false, 1000,
+                                     TimeUnit.MILLISECONDS, DIRECT);
+  }
+
+  @Test
+  public void acceptsRefreshTimeBelowExpiry() {
+    BoundedCache<String, String> bounded =
+      new BoundedCache<String, String>(new LruPolicy<String, String>(10), 1,
+                                       TimeUnit.SECONDS);
+    LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(bounded, new Upper(), false, 999,
+                                       TimeUnit.MILLISECONDS, DIRECT);
+    assertEquals("X", cache.get("x"));
+  }
+
+  @Test
+  public void failedLoadThrowsAndIsNotCached() {
+    final AtomicInteger calls = new AtomicInteger();
+    CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+      public String load(String key) throws Exception {
+        if (calls.incrementAndGet() == 1) {
+          throw new IOException("down");
+        }
+        return "up";
+      }
+    };
+    LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(bounded(), loader, false);
+    try {
+      cache.get("k");
+      fail();
+    } catch (LoadException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    assertNull(cache.getIfPresent("k"));
+    assertEquals("up", cache.get("k"));
+  }
+
+  @Test
+  public void computeIfAbsentCachesOnlyNonNullResults() {
+    Upper loader = new Upper();
+    LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(bounded(), loader, true);
+    assertNull(cache.computeIfAbsent("k", new Function<String, String>() {
+      public String apply(String key) {
+        return null;
+      }
+    }));
+    assertEquals(0, cache.size());
+    assertEquals("v", cache.computeIfAbsent("k",
+                                            new Function<String, String>() {
+      public String apply(String key) {
+        return "v";
+      }
+    }));
+    assertEquals("v", cache.get("k"));
+    assertEquals(0, loader.calls.get());
+    assertTrue(loader.batches.isEmpty());
+  }
+
+  @Test
+  public void putSupersedesLoadInFlight() throws Exception {
+    Upper loader = new Upper();
+    loader.gate = new CountDownLatch(1);
+    LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(bounded(), loader, false);
+    Getter g = new Getter(cache, "k");
+    awaitMisses(cache, 1);
+    cache.put("k", "put");
+    loader.gate.countDown();
+    g.join();
+    assertEquals("K", g.value);
+    assertEquals("put", cache.getIfPresent("k"));
+  }
+
+  @Test
+  public void hitsDoNotWaitForTheLock() throws Exception {
+    LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(bounded(), new Upper(), false);
+    cache.get("hot");
+    Getter g;
+    synchronized (cache) {
+      g = new Getter(cache, "hot");
+      g.join(10000);
+      assertFalse(g.isAlive());
+    }
+    assertEquals("HOT", g.value);
+    assertEquals(1, cache.stats().hits());
+  }
+
+  @Test
+  public void bufferedHitsReachThePolicyBeforeEviction() {
+    Upper loader = new Upper();
+    LoadingCache<String, String> cache = new LoadingCache<String, String>(
+      new BoundedCache<String, String>(new LruPolicy<String, String>(2)),
+      loader, false);
+    cache.get("a");
+    cache.get("b");
+    assertEquals("A", cache.get("a"));
+    cache.get("c");
+    assertEquals(3, loader.calls.get());
+    assertEquals("A", cache.getIfPresent("a"));
+    assertNull(cache.getIfPresent("b"));
+    assertEquals("B", cache.get("b"));
+    assertEquals(4, loader.calls.get());
+    assertNull(cache.getIfPresent("c"));
+  }
+
+  @Test
+  public void concurrentHitsAndEvictionsStayConsistent() throws Exception {
+    final Upper loader = new Upper();
+    final LoadingCache<String, String> cache =
+      new LoadingCache<String, String>(
+        new BoundedCache<String, String>(new TinyLfuPolicy<String, String>(50)),
+        loader, false);
+    final int gets = 20000;
+    final AtomicInteger wrong = new AtomicInteger();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int seed = t;
+      threads[t] = new Thread() {
+        public void run() {
+          Random random = new Random(seed);
+          for (int i = 0; i < gets; i++) {
+            String key = "k" + (random.nextInt(10) < 8 ? random.nextInt(10)
+                                : random.nextInt(500));
+            if (!key.toUpperCase().equals(cache.get(key))) {
+              wrong.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(0, wrong.get());
+    assertTrue(cache.size() <= 50);
+    CacheStats stats = cache.stats();
+    assertEquals(threads.length * gets, stats.hits() + stats.misses());
+    for (int i = 0; i < 500; i++) {
+      String value = cache.getIfPresent("k" + i);
+      assertTrue(value == null || value.equals("K" + i));
+    }
+  }
+
+}
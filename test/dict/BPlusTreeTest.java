@@ -0,0 +1,175 @@
+/* BPlusTreeTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class BPlusTreeTest {
+
+  /**
+   * Checks that e has the specified key and the value that the model holds
+   * first (or last, if latest is true) for the key, or that both are null.
+   */
+  private static void check(Map.Entry<Integer, ArrayDeque<Integer>> expected,
+                            boolean latest, Entry<Integer, Integer> e) {
+    if (expected == null) {
+      assertNull(e);
+    } else {
+      assertEquals(expected.getKey(), e.key());
+      ArrayDeque<Integer> values = expected.getValue();
+      assertEquals(latest ? values.peekLast() : values.peekFirst(),
+                   e.value());
+    }
+  }
+
+  /**
+   * Checks that the tree's iterator visits the model's entries in order.
+   */
+  private static void checkOrder(BPlusTree<Integer, Integer> t,
+                                 TreeMap<Integer, ArrayDeque<Integer>> model) {
+    ArrayList<Integer> values = new ArrayList<Integer>();
+    for (ArrayDeque<Integer> v : model.values()) {
+      values.addAll(v);
+    }
+    int i = 0;
+    for (Entry<Integer, Integer> e : t) {
+      assertEquals(values.get(i++), e.value());
+    }
+    assertEquals(values.size(), i);
+  }
+
+  @Test
+  public void matchesModelUnderRandomOperations() {
+    BPlusTree<Integer, Integer> t = new BPlusTree<Integer, Integer>();
+    TreeMap<Integer, ArrayDeque<Integer>> model =
+      new TreeMap<Integer, ArrayDeque<Integer>>();
+    Random random = new Random(18);
+    int size = 0;
+    for (int op = 0; op < 200000; op++) {
+      int key = random.nextInt(5000);
+      int r = random.nextInt(10);
+      if (r < 4 || (op < 20000 && r < 7)) {
+        t.insert(key, op);
+        ArrayDeque<Integer> values = model.get(key);
+        if (values == null) {
+          values = new ArrayDeque<Integer>();
+          model.put(key, values);
+        }
+        values.add(op);
+        size++;
+      } else if (r < 7) {
+        Entry<Integer, Integer> e = t.remove(key);
+        ArrayDeque<Integer> values = model.get(key);
+        if (values == null) {
+          assertNull(e);
+        } else {
+          assertEquals(values.pollFirst(), e.value());
+          if (values.isEmpty()) {
+            model.remove(key);
+          }
+          size--;
+        }
+      } else {
+        Map.Entry<Integer, ArrayDeque<Integer>> m = model.floorEntry(key);
+        check(m != null && m.getKey() == key ? m : null, false,
+              t.find(key));
+        check(m, true, t.floor(key));
+        check(model.ceilingEntry(key), false, t.ceiling(key));
+        check(model.lowerEntry(key), true, t.lower(key));
+        check(model.higherEntry(key), false, t.higher(key));
+      }
+      assertEquals(size, t.size());
+      if (op % 20000 == 0) {
+        checkOrder(t, model);
+      }
+    }
+    checkOrder(t, model);
+    check(model.firstEntry(), false, t.first());
+    check(model.lastEntry(), true, t.last());
+  }
+
+  @Test
+  public void duplicateKeysSpanLeavesInInsertionOrder() {
+    BPlusTree<String, Integer> t = new BPlusTree<String, Integer>();
+    t.insert("a", -1);
+    t.insert("c", -2);
+    for (int i = 0; i < 500; i++) {
+      t.insert("b", i);
+    }
+    assertEquals(Integer.valueOf(0), t.find("b").value());
+    assertEquals(Integer.valueOf(499), t.floor("b").value());
+    assertEquals(Integer.valueOf(499), t.lower("c").value());
+    assertEquals(Integer.valueOf(0), t.higher("a").value());
+    for (int i = 0; i < 500; i++) {
+      assertEquals(Integer.valueOf(i), t.remove("b").value());
+    }
+    assertNull(t.find("b"));
+    assertEquals(2, t.size());
+  }
+
+  @Test
+  public void rangeHonoursItsBounds() {
+    BPlusTree<Integer, Integer> t = new BPlusTree<Integer, Integer>();
+    for (int i = 0; i < 1000; i += 2) {
+      t.insert(i, i);
+    }
+    assertEquals(range(10, 20), collect(t.range(10, true, 20, true)));
+    assertEquals(range(12, 18), collect(t.range(10, false, 20, false)));
+    assertEquals(range(12, 20), collect(t.range(11, true, 21, false)));
+    assertEquals(range(0, 6), collect(t.range(null, false, 6, true)));
+    assertEquals(range(994, 998), collect(t.range(993, true, null, false)));
+    assertTrue(collect(t.range(11, true, 11, true)).isEmpty());
+    assertTrue(collect(t.range(2000, true, null, true)).isEmpty());
+  }
+
+  /**
+   * Returns every other number from from to to.
+   */
+  private static ArrayList<Integer> range(int from, int to) {
+    ArrayList<Integer> list = new ArrayList<Integer>();
+    for (int i = from; i <= to; i += 2) {
+      list.add(i);
+    }
+    return list;
+  }
+
+  private static ArrayList<Integer> collect(
+      Iterable<Entry<Integer, Integer>> entries) {
+    ArrayList<Integer> list = new ArrayList<Integer>();
+    for (Entry<Integer, Integer> e : entries) {
+      list.add(e.key());
+    }
+    return list;
+  }
+
+  @Test
+  public void comparatorOrdersKeys() {
+    BPlusTree<Integer, Integer> t =
+      new BPlusTree<Integer, Integer>(Collections.<Integer>reverseOrder());
+    for (int i = 0; i < 300; i++) {
+      t.insert(i, i);
+    }
+    assertEquals(Integer.valueOf(299), t.first().key());
+    assertEquals(Integer.valueOf(0), t.last().key());
+    assertEquals(Integer.valueOf(99), t.higher(100).key());
+    int expected = 299;
+    for (Entry<Integer, Integer> e : t) {
+      assertEquals(Integer.valueOf(expected--), e.key());
+    }
+    t.makeEmpty();
+    assertTrue(t.isEmpty());
+    assertNull(t.first());
+    assertNull(t.last());
+    assertFalse(t.iterator().hasNext());
+  }
+
+}
@@ -0,0 +1,141 @@
+/* ConcurrentHashTableTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentHashTableTest {
+
+  static final int THREADS = 8;
+  static final int KEYS_PER_THREAD = 20000;
+
+  /**
+   * Runs body(t) on THREADS threads at once and rethrows the first failure.
+   */
+  interface Body {
+    void run(int thread) throws Exception;
+  }
+
+  static void runThreads(final Body body) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          try {
+            start.await();
+            body.run(thread);
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+  }
+
+  @Test
+  public void concurrentInsertsWhileGrowingLoseNothing() throws Exception {
+    final ConcurrentHashTable<Integer, Integer> t =
+      new ConcurrentHashTable<Integer, Integer>(2);
+    runThreads(new Body() {
+      public void run(int thread) {
+        int base = thread * KEYS_PER_THREAD;
+        for (int i = 0; i < KEYS_PER_THREAD; i++) {
+          t.insert(base + i, base + i);
+          int probe = base + i / 2;
+          Entry<Integer, Integer> e = t.find(probe);
+          if (e == null || e.value().intValue() != probe) {
+            throw new AssertionError("lost key " + probe);
+          }
+        }
+      }
+    });
+    assertEquals(THREADS * KEYS_PER_THREAD, t.size());
+    for (int k = 0; k < THREADS * KEYS_PER_THREAD; k++) {
+      assertEquals(Integer.valueOf(k), t.find(k).value());
+    }
+  }
+
+  @Test
+  public void concurrentRemovesRemoveEachEntryOnce() throws Exception {
+    final ConcurrentHashTable<Integer, Integer> t =
+      new ConcurrentHashTable<Integer, Integer>();
+    final int n = THREADS * KEYS_PER_THREAD;
+    for (int k = 0; k < n; k++) {
+      t.insert(k, k);
+    }
+    final int[] removed = new int[THREADS];
+    runThreads(new Body() {
+      public void run(int thread) {
+        for (int k = 0; k < n; k++) {
+          int key = (k + thread * 7919) % n;
+          if (t.remove(key) != null) {
+            removed[thread]++;
+          }
+        }
+      }
+    });
+    int total = 0;
+    for (int r : removed) {
+      total += r;
+    }
+    assertEquals(n, total);
+    assertTrue(t.isEmpty());
+    assertNull(t.find(0));
+  }
+
+  @Test
+  public void duplicateKeysAndMakeEmpty() {
+    ConcurrentHashTable<String, Integer> t =
+      new ConcurrentHashTable<String, Integer>();
+    for (int i = 0; i < 300; i++) {
+      t.insert("k" + (i % 3), i);
+    }
+    assertEquals(300, t.size());
+    int count = 0;
+    while (t.remove("k1") != null) {
+      count++;
+    }
+    assertEquals(100, count);
+    t.makeEmpty();
+    assertTrue(t.isEmpty());
+    assertNull(t.find("k0"));
+  }
+
+  @Test
+  public void nullKeyIsRejected() {
+    ConcurrentHashTable<String, String> t =
+      new ConcurrentHashTable<String, String>();
+    t.insert("a", "1");
+    try {
+      t.insert(null, "2");
+      fail();
+    } catch (IllegalArgumentException e) {}
+    try {
+      t.find(null);
+      fail();
+    } catch (IllegalArgumentException e) {}
+    try {
+      t.remove(null);
+      fail();
+    } catch (IllegalArgumentException e) {}
+    assertEquals(1, t.size());
+    assertEquals("1", t.find("a").value());
+  }
+
+}
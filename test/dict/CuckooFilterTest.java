@@ -0,0 +1,125 @@
+/* CuckooFilterTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CuckooFilterTest {
+
+  @Test
+  public void addedItemsAreAlwaysFound() {
+    CuckooFilter<Integer> f = new CuckooFilter<Integer>(10000, 0.01);
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(f.add(i));
+    }
+    assertEquals(10000, f.size());
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(f.mightContain(i));
+    }
+  }
+
+  @Test
+  public void falsePositiveRateMeetsTarget() {
+    double[] rates = { 0.05, 0.001, 0.00001 };
+    int[] bits = { 8, 16, 32 };
+    for (int r = 0; r < rates.length; r++) {
+      CuckooFilter<Integer> f = new CuckooFilter<Integer>(20000, rates[r]);
+      assertEquals(bits[r], f.fingerprintBits());
+      assertTrue(f.capacity() * 0.95 >= 20000);
+      for (int i = 0; i < 20000; i++) {
+        assertTrue(f.add(i));
+      }
+      int positives = 0;
+      int queries = 200000;
+      for (int i = 0; i < queries; i++) {
+        if (f.mightContain(-1 - i)) {
+          positives++;
+        }
+      }
+      assertTrue("rate " + rates[r] + ": " + positives,
+                 positives <= queries * rates[r] + 10);
+    }
+  }
+
+  @Test
+  public void removeUndoesAddOneCopyAtATime() {
+    CuckooFilter<String> f = new CuckooFilter<String>(100, 0.001);
+    f.add("a");
+    f.add("a");
+    f.add("a");
+    f.add("b");
+    assertEquals(4, f.size());
+    assertTrue(f.remove("a"));
+    assertTrue(f.remove("a"));
+    assertTrue(f.mightContain("a"));
+    assertTrue(f.remove("a"));
+    assertFalse(f.mightContain("a"));
+    assertFalse(f.remove("a"));
+    assertTrue(f.mightContain("b"));
+    assertTrue(f.remove("b"));
+    assertTrue(f.isEmpty());
+  }
+
+  @Test
+  public void fullFilterKeepsItsItemsAndAcceptsMoreAfterRemove() {
+    CuckooFilter<Integer> f = new CuckooFilter<Integer>(1000, 0.001);
+    int added = 0;
+    while (f.add(added)) {
+      added++;
+    }
+    assertTrue(added >= 0.9 * f.capacity());
+    assertTrue(added <= f.capacity());
+    assertEquals(added, f.size());
+    assertFalse(f.add(-1));
+    for (int i = 0; i < added; i++) {
+      assertTrue(f.mightContain(i));
+    }
+    int removed = added / 4;
+    for (int i = 0; i < removed; i++) {
+      assertTrue(f.remove(i));
+    }
+    assertEquals(added - removed, f.size());
+    for (int i = removed; i < added; i++) {
+      assertTrue(f.mightContain(i));
+    }
+    assertTrue(f.add(-1));
+    assertTrue(f.mightContain(-1));
+  }
+
+  @Test
+  public void clearEmptiesTheFilter() {
+    CuckooFilter<Integer> f = new CuckooFilter<Integer>(16, 0.01);
+    while (f.add((int) f.size())) {
+    }
+    f.clear();
+    assertTrue(f.isEmpty());
+    for (int i = 0; i < 100; i++) {
+      assertFalse(f.mightContain(i));
+    }
+    assertTrue(f.add(7));
+    assertTrue(f.mightContain(7));
+  }
+
+  @Test
+  public void strategyDecidesWhichItemsAreEqual() {
+    CuckooFilter<String> f =
+      new CuckooFilter<String>(100, 0.0001, HashStrategy.CASE_INSENSITIVE);
+    f.add("Hello");
+    assertTrue(f.mightContain("HELLO"));
+    assertTrue(f.remove("hello"));
+    assertFalse(f.mightContain("Hello"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveExpectedItems() {
+    new CuckooFilter<Integer>(0, 0.01);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsFalsePositiveRateOfOne() {
+    new CuckooFilter<Integer>(10, 1.0);
+  }
+
+}
@@ -0,0 +1,162 @@
+/* DictionaryServerTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class DictionaryServerTest {
+
+  /**
+   * A Transport that counts the requests it passes to a server.
+   */
+  static class CountingTransport implements Transport {
+    final Transport server;
+    int exchanges;
+
+    CountingTransport(Transport server) {
+      this.server = server;
+    }
+
+    public byte[] exchange(byte[] request) throws IOException {
+      exchanges++;
+      return server.exchange(request);
+    }
+  }
+
+  private final HashTableChained<Integer, String> table =
+    new HashTableChained<Integer, String>();
+  private final DictionaryServer<Integer, String> server =
+    new DictionaryServer<Integer, String>(table, Serializer.INTEGER,
+                                          Serializer.STRING);
+
+  /**
+   * Asserts that the server rejects a request with an IOException.
+   */
+  private void assertRejected(ByteBuffer request) {
+    byte[] bytes = new byte[request.position()];
+    request.flip();
+    request.get(bytes);
+    try {
+      server.exchange(bytes);
+      fail();
+    } catch (IOException e) {
+    }
+  }
+
+  @Test
+  public void iteratorFetchesOnePageAtATime() {
+    CountingTransport transport = new CountingTransport(server);
+    RemoteDictionary<Integer, String> d =
+      new RemoteDictionary<Integer, String>(transport, Serializer.INTEGER,
+                                            Serializer.STRING);
+    int n = 2 * RemoteDictionary.SCAN_PAGE + 5;
+    for (int i = 0; i < n; i++) {
+      table.insert(i, "v" + i);
+    }
+    HashSet<Integer> seen = new HashSet<Integer>();
+    for (Entry<Integer, String> e : d) {
+      assertEquals("v" + e.key(), e.value());
+      assertTrue(seen.add(e.key()));
+    }
+    assertEquals(n, seen.size());
+    assertEquals(3, transport.exchanges);
+    table.makeEmpty();
+    assertFalse(d.iterator().hasNext());
+  }
+
+  @Test
+  public void scanInterruptedByOtherRequestsResumesAtItsCursor() {
+    RemoteDictionary<Integer, String> d =
+      new RemoteDictionary<Integer, String>(server, Serializer.INTEGER,
+                                            Serializer.STRING);
+    int n = 3 * RemoteDictionary.SCAN_PAGE;
+    for (int i = 0; i < n; i++) {
+      table.insert(i, "v" + i);
+    }
+    HashSet<Integer> seen = new HashSet<Integer>();
+    for (Entry<Integer, String> e : d) {
+      assertTrue(seen.add(e.key()));
+      assertNotNull(d.find(e.key()));
+      assertEquals(n, d.size());
+    }
+    assertEquals(n, seen.size());
+  }
+
+  @Test
+  public void iteratorSeesEveryEntryDespiteInsertsBetweenPages() {
+    RemoteDictionary<Integer, String> d =
+      new RemoteDictionary<Integer, String>(server, Serializer.INTEGER,
+                                            Serializer.STRING);
+    int n = 3 * RemoteDictionary.SCAN_PAGE;
+    for (int i = 0; i < n; i++) {
+      table.insert(i, "v" + i);
+    }
+    HashSet<Integer> seen = new HashSet<Integer>();
+    int next = n;
+    for (Entry<Integer, String> e : d) {
+      seen.add(e.key());
+      if (next < 3 * n) {
+        d.insert(next++, "new");
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      assertTrue(seen.contains(i));
+    }
+  }
+
+  @Test
+  public void truncatedInsertChangesNothing() {
+    ByteBuffer request = ByteBuffer.allocate(64);
+    request.put(DictionaryServer.INSERT).putInt(2);
+    request.putInt(4).putInt(1).putInt(1).put((byte) 'a');
+    request.putInt(4).putInt(2).putInt(5).put((byte) 'b');
+    assertRejected(request);
+    assertTrue(table.isEmpty());
+  }
+
+  @Test
+  public void malformedRequestsThrowIOException() {
+    assertRejected(ByteBuffer.allocate(0));
+    assertRejected(ByteBuffer.allocate(8).put((byte) 99).putInt(0));
+    assertRejected(ByteBuffer.allocate(8).put(DictionaryServer.FIND)
+                   .putInt(1 << 30));
+    assertRejected(ByteBuffer.allocate(16).put(DictionaryServer.FIND)
+                   .putInt(1).putInt(-4));
+    assertRejected(ByteBuffer.allocate(16).put(DictionaryServer.FIND)
+                   .putInt(1).putInt(2).put((byte) 0).put((byte) 1));
+    assertRejected(ByteBuffer.allocate(16).put(DictionaryServer.SIZE)
+                   .putInt(0).put((byte) 0));
+    assertRejected(ByteBuffer.allocate(16).put(DictionaryServer.SCAN)
+                   .putInt(0).putInt(0));
+    assertRejected(ByteBuffer.allocate(16).put(DictionaryServer.SCAN)
+                   .putInt(-10).putInt(0));
+    assertTrue(table.isEmpty());
+  }
+
+  @Test
+  public void wellFormedRequestsStillWork() throws IOException {
+    ByteBuffer request = ByteBuffer.allocate(64);
+    request.put(DictionaryServer.INSERT).putInt(1);
+    request.putInt(4).putInt(7).putInt(1).put((byte) 'x');
+    byte[] bytes = new byte[request.position()];
+    request.flip();
+    request.get(bytes);
+    assertEquals(0, server.exchange(bytes).length);
+    assertEquals("x", table.find(7).value());
+    RemoteDictionary<Integer, String> d =
+      new RemoteDictionary<Integer, String>(server, Serializer.INTEGER,
+                                            Serializer.STRING);
+    Entry<Integer, String>[] found = d.findAll(new Integer[] { 7, 8 });
+    assertEquals("x", found[0].value());
+    assertNull(found[1]);
+    assertEquals("x", d.remove(7).value());
+    assertTrue(d.isEmpty());
+  }
+
+}
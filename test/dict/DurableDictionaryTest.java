@@ -0,0 +1,384 @@
+/* DurableDictionaryTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DurableDictionaryTest {
+
+  private Path dir;
+
+  /**
+   * A log channel that throws on every write and force once broken is set.
+   */
+  static class FailingChannel extends FileChannel {
+    private final FileChannel channel;
+    volatile boolean broken;
+
+    FailingChannel(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    private void check() throws IOException {
+      if (broken) {
+        throw new IOException("Injected failure");
+      }
+    }
+
+    public int read(ByteBuffer dst) throws IOException {
+      return channel.read(dst);
+    }
+
+    public long read(ByteBuffer[] dsts, int offset, int length)
+      throws IOException {
+      return channel.read(dsts, offset, length);
+    }
+
+    public int write(ByteBuffer src) throws IOException {
+      check();
+      return channel.write(src);
+    }
+
+    public long write(ByteBuffer[] srcs, int offset, int length)
+      throws IOException {
+      check();
+      return channel.write(srcs, offset, length);
+    }
+
+    public long position() throws IOException {
+      return channel.position();
+    }
+
+    public FileChannel position(long newPosition) throws IOException {
+      channel.position(newPosition);
+      return this;
+    }
+
+    public long size() throws IOException {
+      return channel.size();
+    }
+
+    public FileChannel truncate(long size) throws IOException {
+      check();
+      channel.truncate(size);
+      return this;
+    }
+
+    public void force(boolean metaData) throws IOException {
+      check();
+      channel.force(metaData);
+    }
+
+    public long transferTo(long position, long count,
+                           WritableByteChannel target) throws IOException {
+      return channel.transferTo(position, count, target);
+    }
+
+    public long transferFrom(ReadableByteChannel src, long position,
+                             long count) throws IOException {
+      check();
+      return channel.transferFrom(src, position, count);
+    }
+
+    public int read(ByteBuffer dst, long position) throws IOException {
+      return channel.read(dst, position);
+    }
+
+    public int write(ByteBuffer src, long position) throws IOException {
+      check();
+      return channel.write(src, position);
+    }
+
+    public MappedByteBuffer map(MapMode mode, long position, long size)
+      throws IOException {
+      return channel.map(mode, position, size);
+    }
+
+    public FileLock lock(long position, long size, boolean shared)
+      throws IOException {
+      return channel.lock(position, size, shared);
+    }
+
+    public FileLock tryLock(long position, long size, boolean shared)
+      throws IOException {
+      return channel.tryLock(position, size, shared);
+    }
+
+    protected void implCloseChannel() throws IOException {
+      channel.close();
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("durable");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    for (String name : files()) {
+      Files.delete(dir.resolve(name));
+    }
+    Files.delete(dir);
+  }
+
+  /**
+   * Returns the names of the files in dir.
+   */
+  private TreeSet<String> files() throws IOException {
+    TreeSet<String> names = new TreeSet<String>();
+    DirectoryStream<Path> files = Files.newDirectoryStream(dir);
+    try {
+      for (Path file : files) {
+        names.add(file.getFileName().toString());
+      }
+    } finally {
+      files.close();
+    }
+    return names;
+  }
+
+  private DurableDictionary<String, Integer> open(long threshold)
+    throws IOException {
+    return new DurableDictionary<String, Integer>(
+      dir, new HashTableChained<String, Integer>(), Serializer.STRING,
+      Serializer.INTEGER, threshold);
+  }
+
+  /**
+   * A dictionary whose log is wrapped in a FailingChannel.  The channel is
+   * opened by the superclass constructor, so the field has no initializer.
+   */
+  static class FailingDictionary extends DurableDictionary<String, Integer> {
+    FailingChannel channel;
+
+    FailingDictionary(Path dir) throws IOException {
+      super(dir, new HashTableChained<String, Integer>(), Serializer.STRING,
+            Serializer.INTEGER);
+    }
+
+    FileChannel openLog(Path file) throws IOException {
+      channel = new FailingChannel(super.openLog(file));
+      return channel;
+    }
+  }
+
+  @Test
+  public void reopeningReplaysTheLog() throws IOException {
+    DurableDictionary<String, Integer> d = open(Long.MAX_VALUE);
+    for (int i = 0; i < 5000; i++) {
+      d.insert("key" + i, i);
+    }
+    for (int i = 0; i < 5000; i += 2) {
+      assertEquals(Integer.valueOf(i), d.remove("key" + i).value());
+    }
+    assertNull(d.remove("none"));
+    d.close();
+    d = open(Long.MAX_VALUE);
+    assertEquals(2500, d.size());
+    for (int i = 0; i < 5000; i++) {
+      Entry<String, Integer> e = d.find("key" + i);
+      if (i % 2 == 0) {
+        assertNull(e);
+      } else {
+        assertEquals(Integer.valueOf(i), e.value());
+      }
+    }
+    d.makeEmpty();
+    d.insert("after", 1);
+    d.close();
+    d = open(Long.MAX_VALUE);
+    assertEquals(1, d.size());
+    assertEquals(Integer.valueOf(1), d.find("after").value());
+    d.close();
+  }
+
+  @Test
+  public void tornRecordIsDiscarded() throws IOException {
+    DurableDictionary<String, Integer> d = open(Long.MAX_VALUE);
+    d.insert("a", 1);
+    d.insert("b", 2);
+    d.close();
+    Path log = dir.resolve("log-0");
+    long valid = Files.size(log);
+    FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE,
+                                           StandardOpenOption.APPEND);
+    channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 40, 1, 2, 3, 4,
+                                               1, 0 }));
+    channel.close();
+    d = open(Long.MAX_VALUE);
+    assertEquals(2, d.size());
+    assertEquals(valid, Files.size(log));
+    d.insert("c", 3);
+    d.close();
+    d = open(Long.MAX_VALUE);
+    assertEquals(Integer.valueOf(3), d.find("c").value());
+    d.close();
+  }
+
+  @Test
+  public void compactionReplacesOlderGenerations() throws IOException {
+    DurableDictionary<String, Integer> d = open(4096);
+    for (int i = 0; i < 2000; i++) {
+      d.insert("key" + i, i);
+    }
+    d.close();
+    TreeSet<String> names = files();
+    assertEquals(2, names.size());
+    String log = names.first();
+    String snapshot = names.last();
+    assertTrue(log.startsWith("log-"));
+    assertEquals("snapshot-" + log.substring(4), snapshot);
+    d = open(4096);
+    assertEquals(2000, d.size());
+    for (int i = 0; i < 2000; i++) {
+      assertEquals(Integer.valueOf(i), d.find("key" + i).value());
+    }
+    d.close();
+  }
+
+  @Test
+  public void unfinishedSnapshotLeavesItsLogToReplay() throws IOException {
+    DurableDictionary<String, Integer> d = open(Long.MAX_VALUE);
+    d.insert("a", 1);
+    d.compact();
+    d.insert("b", 2);
+    d.close();
+    Path saved = Files.createTempDirectory("saved");
+    for (String name : files()) {
+      Files.copy(dir.resolve(name), saved.resolve(name));
+    }
+    d = open(Long.MAX_VALUE);
+    d.compact();
+    d.insert("c", 3);
+    d.close();
+    Files.delete(dir.resolve("snapshot-2"));
+    for (String name : new String[] { "snapshot-1", "log-1" }) {
+      Files.move(saved.resolve(name), dir.resolve(name),
+                 StandardCopyOption.REPLACE_EXISTING);
+    }
+    Files.delete(saved);
+    d = open(Long.MAX_VALUE);
+    assertEquals(3, d.size());
+    assertEquals(Integer.valueOf(1), d.find("a").value());
+    assertEquals(Integer.valueOf(2), d.find("b").value());
+    assertEquals(Integer.valueOf(3), d.find("c").value());
+    d.close();
+    TreeSet<String> expected = new TreeSet<String>();
+    expected.add("log-1");
+    expected.add("log-2");
+    expected.add("snapshot-1");
+    assertEquals(expected, files());
+  }
+
+  @Test
+  public void failedLogStopsMutationsWithoutChangingTheTable()
+    throws IOException {
+    FailingDictionary f = new FailingDictionary(dir);
+    DurableDictionary<String, Integer> d = f;
+    d.insert("a", 1);
+    d.insert("b", 2);
+    f.channel.broken = true;
+    try {
+      d.insert("c", 3);
+      fail();
+    } catch (UncheckedIOException e) {
+      assertEquals("Injected failure", e.getCause().getMessage());
+    }
+    assertEquals(3, d.size());
+    try {
+      d.insert("d", 4);
+      fail();
+    } catch (UncheckedIOException e) {}
+    assertNull(d.find("d"));
+    try {
+      d.remove("a");
+      fail();
+    } catch (UncheckedIOException e) {}
+    assertEquals(Integer.valueOf(1), d.find("a").value());
+    try {
+      d.makeEmpty();
+      fail();
+    } catch (UncheckedIOException e) {}
+    assertEquals(3, d.size());
+    try {
+      d.close();
+      fail();
+    } catch (IOException e) {}
+    d = open(Long.MAX_VALUE);
+    assertEquals(2, d.size());
+    assertEquals(Integer.valueOf(2), d.find("b").value());
+    d.close();
+  }
+
+  @Test
+  public void concurrentWritersCompactOnlyWhenNeeded() throws Exception {
+    final DurableDictionary<String, Integer> d = open(16384);
+    final int threads = 8;
+    final int perThread = 500;
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure =
+      new AtomicReference<Throwable>();
+    ArrayList<Thread> workers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      final int id = t;
+      Thread worker = new Thread() {
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < perThread; i++) {
+              d.insert("t" + id + "-" + i, i);
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      };
+      workers.add(worker);
+      worker.start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertNull(failure.get());
+    d.close();
+    String log = files().first();
+    long generation = Long.parseLong(log.substring(4));
+    long recordBytes = 8 + 1 + 4 + "t0-000".length() + 4;
+    long bound = threads * perThread * recordBytes / 16384 + 2;
+    assertTrue("generation " + generation, generation <= bound);
+    DurableDictionary<String, Integer> reopened = open(16384);
+    assertEquals(threads * perThread, reopened.size());
+    for (int t = 0; t < threads; t++) {
+      for (int i = 0; i < perThread; i++) {
+        assertEquals(Integer.valueOf(i),
+                     reopened.find("t" + t + "-" + i).value());
+      }
+    }
+    reopened.close();
+  }
+
+}
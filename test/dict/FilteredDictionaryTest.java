@@ -0,0 +1,129 @@
+/* FilteredDictionaryTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FilteredDictionaryTest {
+
+  @Test
+  public void matchesModelUnderRandomOperations() {
+    FilteredDictionary<Integer, Integer> d =
+      new FilteredDictionary<Integer, Integer>(
+        new HashTableChained<Integer, Integer>(), 0.01);
+    HashMap<Integer, ArrayList<Integer>> model =
+      new HashMap<Integer, ArrayList<Integer>>();
+    Random random = new Random(23);
+    int size = 0;
+    for (int op = 0; op < 200000; op++) {
+      int key = random.nextInt(op < 100000 ? 5000 : 500);
+      ArrayList<Integer> values = model.get(key);
+      int r = random.nextInt(10);
+      if (r < 4) {
+        d.insert(key, op);
+        if (values == null) {
+          values = new ArrayList<Integer>();
+          model.put(key, values);
+        }
+        values.add(op);
+        size++;
+      } else if (r < 7) {
+        Entry<Integer, Integer> e = d.remove(key);
+        if (values == null || values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertTrue(values.remove(e.value()));
+          size--;
+        }
+      } else {
+        Entry<Integer, Integer> e = d.find(key);
+        if (values == null || values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertTrue(values.contains(e.value()));
+        }
+      }
+      assertEquals(size, d.size());
+    }
+    int keys = 0;
+    for (ArrayList<Integer> values : model.values()) {
+      if (!values.isEmpty()) {
+        keys++;
+      }
+    }
+    assertEquals(keys, d.distinctKeys());
+  }
+
+  @Test
+  public void missesRarelyReachTheTable() {
+    HashTableChained<Integer, Integer> table =
+      new HashTableChained<Integer, Integer>();
+    FilteredDictionary<Integer, Integer> d =
+      new FilteredDictionary<Integer, Integer>(table, 0.01);
+    for (int i = 0; i < 5000; i++) {
+      d.insert(i, i);
+    }
+    table.resetStats();
+    for (int i = 0; i < 100000; i++) {
+      assertNull(d.find(-1 - i));
+      assertNull(d.remove(-1 - i));
+    }
+    assertTrue(table.stats().misses() < 2 * 200000 * 0.01);
+    for (int i = 0; i < 5000; i++) {
+      assertEquals(Integer.valueOf(i), d.find(i).value());
+    }
+  }
+
+  @Test
+  public void filterGrowsPastItsInitialCapacity() {
+    FilteredDictionary<Integer, Integer> d =
+      new FilteredDictionary<Integer, Integer>(
+        new HashTableChained<Integer, Integer>(), 0.001);
+    int n = FilteredDictionary.DEFAULT_CAPACITY * 20;
+    for (int i = 0; i < n; i++) {
+      d.insert(i, i);
+      d.insert(i, -i);
+    }
+    assertEquals(n, d.distinctKeys());
+    assertEquals(2 * n, d.size());
+    for (int i = 0; i < n; i++) {
+      int removed = d.remove(i).value();
+      assertEquals(-removed, (int) d.find(i).value());
+    }
+    assertEquals(n, d.distinctKeys());
+    for (int i = 0; i < n; i++) {
+      assertNotNull(d.remove(i));
+      assertNull(d.find(i));
+    }
+    assertEquals(0, d.distinctKeys());
+  }
+
+  @Test
+  public void wrapsATableThatAlreadyHasEntries() {
+    HashTableChained<String, Integer> table =
+      new HashTableChained<String, Integer>(HashStrategy.CASE_INSENSITIVE);
+    for (int i = 0; i < 3000; i++) {
+      table.insert("Key" + i, i);
+    }
+    table.insert("KEY1", -1);
+    FilteredDictionary<String, Integer> d =
+      new FilteredDictionary<String, Integer>(table, 0.01,
+                                              HashStrategy.CASE_INSENSITIVE);
+    assertEquals(3000, d.distinctKeys());
+    assertEquals(3001, d.size());
+    for (int i = 0; i < 3000; i++) {
+      assertNotNull(d.find("kEY" + i));
+    }
+    d.makeEmpty();
+    assertTrue(d.isEmpty());
+    assertEquals(0, d.distinctKeys());
+    assertNull(d.find("key1"));
+  }
+
+}
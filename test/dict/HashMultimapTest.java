@@ -0,0 +1,157 @@
+/* HashMultimapTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HashMultimapTest {
+
+  /**
+   * Returns the values of a key's entries, in iteration order.
+   */
+  private static <K, V> ArrayList<V> values(HashMultimap<K, V> m, K key) {
+    ArrayList<V> list = new ArrayList<V>();
+    for (Entry<K, V> e : m.values(key)) {
+      assertEquals(key, e.key());
+      list.add(e.value());
+    }
+    return list;
+  }
+
+  @Test
+  public void matchesModelUnderRandomOperations() {
+    HashMultimap<Integer, Integer> m = new HashMultimap<Integer, Integer>(4);
+    HashMap<Integer, ArrayList<Integer>> model =
+      new HashMap<Integer, ArrayList<Integer>>();
+    Random random = new Random(20);
+    int size = 0;
+    for (int op = 0; op < 100000; op++) {
+      int key = random.nextInt(300);
+      ArrayList<Integer> expected = model.get(key);
+      if (expected == null) {
+        expected = new ArrayList<Integer>();
+        model.put(key, expected);
+      }
+      int r = random.nextInt(20);
+      if (r < 9) {
+        Entry<Integer, Integer> e = m.insert(key, op);
+        assertEquals(Integer.valueOf(op), e.value());
+        expected.add(op);
+        size++;
+      } else if (r < 14) {
+        Entry<Integer, Integer> e = m.remove(key);
+        if (expected.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertEquals(expected.remove(0), e.value());
+          size--;
+        }
+      } else if (r < 15) {
+        assertEquals(expected.size(), m.removeKey(key));
+        size -= expected.size();
+        expected.clear();
+      } else if (r < 17) {
+        Entry<Integer, Integer> e = m.find(key);
+        if (expected.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertEquals(expected.get(0), e.value());
+        }
+      } else {
+        assertEquals(expected, values(m, key));
+        assertEquals(expected.size(), m.count(key));
+      }
+      assertEquals(size, m.size());
+      assertEquals(size == 0, m.isEmpty());
+    }
+    int keys = 0;
+    for (ArrayList<Integer> list : model.values()) {
+      if (!list.isEmpty()) {
+        keys++;
+      }
+    }
+    assertEquals(keys, m.keyCount());
+  }
+
+  @Test
+  public void emptiedGroupsAreDropped() {
+    HashMultimap<String, Integer> m = new HashMultimap<String, Integer>();
+    m.insert("a", 1);
+    m.insert("a", 2);
+    m.insert("b", 3);
+    assertEquals(2, m.keyCount());
+    assertEquals(Integer.valueOf(1), m.remove("a").value());
+    assertEquals(Integer.valueOf(2), m.remove("a").value());
+    assertNull(m.remove("a"));
+    assertEquals(1, m.keyCount());
+    assertEquals(0, m.count("a"));
+    assertFalse(m.values("a").iterator().hasNext());
+    assertEquals(0, m.removeKey("a"));
+    assertEquals(1, m.size());
+  }
+
+  @Test
+  public void valuesIsALiveView() {
+    HashMultimap<String, Integer> m = new HashMultimap<String, Integer>();
+    Iterable<Entry<String, Integer>> view = m.values("k");
+    assertFalse(view.iterator().hasNext());
+    m.insert("k", 1);
+    m.insert("k", 2);
+    int count = 0;
+    for (Entry<String, Integer> e : view) {
+      count++;
+    }
+    assertEquals(2, count);
+    m.removeKey("k");
+    assertFalse(view.iterator().hasNext());
+  }
+
+  @Test
+  public void strategyGroupsEquivalentKeys() {
+    HashMultimap<String, Integer> m =
+      new HashMultimap<String, Integer>(HashStrategy.CASE_INSENSITIVE);
+    m.insert("Key", 1);
+    m.insert("KEY", 2);
+    m.insert("key", 3);
+    assertEquals(1, m.keyCount());
+    assertEquals(3, m.count("kEy"));
+    assertEquals("Key", m.find("KEY").key());
+    assertEquals(3, m.removeKey("KEY"));
+    assertTrue(m.isEmpty());
+  }
+
+  @Test
+  public void makeEmptyRemovesEveryGroup() {
+    HashMultimap<Integer, Integer> m = new HashMultimap<Integer, Integer>();
+    for (int i = 0; i < 1000; i++) {
+      m.insert(i % 10, i);
+    }
+    assertEquals(100, m.count(3));
+    m.makeEmpty();
+    assertTrue(m.isEmpty());
+    assertEquals(0, m.keyCount());
+    assertNull(m.find(3));
+    m.insert(3, 3);
+    assertEquals(1, m.count(3));
+    assertEquals(1, m.size());
+  }
+
+  @Test
+  public void insertRejectsNullKeyWithoutCountingIt() {
+    HashMultimap<String, Integer> m = new HashMultimap<String, Integer>();
+    try {
+      m.insert(null, 1);
+      fail();
+    } catch (IllegalArgumentException e) {}
+    assertEquals(0, m.size());
+    assertEquals(0, m.keyCount());
+    assertTrue(m.isEmpty());
+  }
+
+}
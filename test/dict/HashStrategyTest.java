@@ -0,0 +1,85 @@
+/* HashStrategyTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HashStrategyTest {
+
+  @Test
+  public void byteArrayKeysCompareByContent() {
+    HashTableChained<byte[], String> t =
+      new HashTableChained<byte[], String>(HashStrategy.BYTE_ARRAY);
+    for (int i = 0; i < 300; i++) {
+      t.insert(new byte[] { (byte) i, (byte) (i >> 8) }, "v" + i);
+    }
+    for (int i = 0; i < 300; i++) {
+      byte[] key = { (byte) i, (byte) (i >> 8) };
+      assertEquals("v" + i, t.find(key).value());
+    }
+    assertNull(t.find(new byte[] { 1 }));
+    assertEquals("v7", t.remove(new byte[] { 7, 0 }).value());
+    assertNull(t.find(new byte[] { 7, 0 }));
+    assertEquals(299, t.size());
+  }
+
+  @Test
+  public void caseInsensitiveKeysIgnoreCase() {
+    HashTableChained<String, Integer> t =
+      new HashTableChained<String, Integer>(HashStrategy.CASE_INSENSITIVE);
+    t.insert("Hello", 1);
+    t.insert("\u0131", 2);
+    assertEquals(Integer.valueOf(1), t.find("hELLO").value());
+    assertEquals(Integer.valueOf(1), t.find("HELLO").value());
+    assertEquals(Integer.valueOf(2), t.find("I").value());
+    assertEquals(Integer.valueOf(2), t.find("i").value());
+    assertNull(t.find("Hell"));
+    assertEquals(Integer.valueOf(1), t.remove("hello").value());
+    assertNull(t.find("Hello"));
+  }
+
+  @Test
+  public void caseInsensitiveHashAgreesWithEquals() {
+    String[][] pairs = { { "abc", "ABC" }, { "\u0131", "I" },
+                         { "\u017f", "S" },
+                         { "\u00e9t\u00e9", "\u00c9T\u00c9" } };
+    for (String[] p : pairs) {
+      assertTrue(HashStrategy.CASE_INSENSITIVE.equals(p[0], p[1]));
+      assertEquals(HashStrategy.CASE_INSENSITIVE.hash(p[0]),
+                   HashStrategy.CASE_INSENSITIVE.hash(p[1]));
+    }
+  }
+
+  @Test
+  public void tablesUseDifferentSeeds() {
+    HashTableChained<Integer, Integer> a =
+      new HashTableChained<Integer, Integer>();
+    HashTableChained<Integer, Integer> b =
+      new HashTableChained<Integer, Integer>();
+    boolean differ = false;
+    for (int i = 0; i < 16; i++) {
+      differ |= a.hash(i) != b.hash(i);
+    }
+    assertTrue(differ);
+  }
+
+  @Test
+  public void mixingSpreadsKeysThatShareLowBits() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>(4096);
+    int buckets = t.stats().buckets();
+    assertEquals(0, buckets & (buckets - 1));
+    for (int i = 0; i < 2000; i++) {
+      t.insert(i << 16, i);
+    }
+    assertTrue(t.stats().maxChainLength() <= 8);
+    for (int i = 0; i < 2000; i++) {
+      int bucket = t.compFunction(t.hash(i << 16));
+      assertTrue(bucket >= 0 && bucket < buckets);
+      assertEquals(Integer.valueOf(i), t.find(i << 16).value());
+    }
+  }
+
+}
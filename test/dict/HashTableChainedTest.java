@@ -0,0 +1,626 @@
+/* HashTableChainedTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class HashTableChainedTest {
+
+  @Test
+  public void growsIncrementallyPastMaxLoadFactor() {
+    HashTableChained<Integer, String> t =
+      new HashTableChained<Integer, String>();
+    for (int i = 0; i < 96; i++) {
+      t.insert(i, "v" + i);
+    }
+    assertEquals(128, t.stats().buckets());
+    t.insert(96, "v96");
+    assertEquals(256, t.stats().buckets());
+    assertEquals(0, t.stats().resizes());
+    for (int i = 0; i <= 96; i++) {
+      assertEquals("v" + i, t.find(i).value());
+    }
+    for (int i = 0; i < 128 && t.stats().resizes() == 0; i++) {
+      t.find(-1);
+    }
+    assertEquals(1, t.stats().resizes());
+    for (int i = 0; i <= 96; i++) {
+      assertEquals("v" + i, t.find(i).value());
+    }
+  }
+
+  @Test
+  public void everyKeyFoundWhileGrowing() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>(4);
+    for (int i = 0; i < 20000; i++) {
+      t.insert(i, i);
+      if (i % 97 == 0) {
+        for (int j = 0; j <= i; j += 31) {
+          assertEquals(Integer.valueOf(j), t.find(j).value());
+        }
+      }
+    }
+    assertEquals(20000, t.size());
+    assertTrue(t.stats().buckets() >= 20000 / 0.75);
+    assertNull(t.find(20000));
+  }
+
+  @Test
+  public void shrinksBelowMinLoadFactor() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>(16, 0.75, 0.25);
+    int minBuckets = t.stats().buckets();
+    for (int i = 0; i < 10000; i++) {
+      t.insert(i, i);
+    }
+    int grown = t.stats().buckets();
+    assertTrue(grown > minBuckets);
+    for (int i = 0; i < 9990; i++) {
+      assertEquals(Integer.valueOf(i), t.remove(i).value());
+    }
+    for (int i = 0; i < 1000; i++) {
+      t.find(-1);
+    }
+    assertTrue(t.stats().buckets() < grown);
+    assertEquals(10, t.size());
+    for (int i = 9990; i < 10000; i++) {
+      assertEquals(Integer.valueOf(i), t.find(i).value());
+    }
+    assertNull(t.find(0));
+  }
+
+  @Test
+  public void duplicateKeysSurviveRehash() {
+    HashTableChained<String, Integer> t =
+      new HashTableChained<String, Integer>();
+    for (int i = 0; i < 1000; i++) {
+      t.insert("k" + (i % 10), i);
+    }
+    assertEquals(1000, t.size());
+    int removed = 0;
+    while (t.remove("k3") != null) {
+      removed++;
+    }
+    assertEquals(100, removed);
+    assertEquals(900, t.size());
+  }
+
+  @Test
+  public void makeEmptyDuringRehash() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>();
+    for (int i = 0; i < 97; i++) {
+      t.insert(i, i);
+    }
+    t.makeEmpty();
+    assertTrue(t.isEmpty());
+    assertNull(t.find(5));
+    for (int i = 0; i < 500; i++) {
+      t.insert(i, i);
+    }
+    for (int i = 0; i < 500; i++) {
+      assertEquals(Integer.valueOf(i), t.find(i).value());
+    }
+  }
+
+  @Test
+  public void largeTableStartsEmptyAndFillsBucketsOnDemand() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>(1 << 20);
+    int buckets = t.stats().buckets();
+    assertTrue(buckets >= 1 << 20);
+    assertNull(t.find(7));
+    assertNull(t.remove(7));
+    assertFalse(t.iterator().hasNext());
+    t.forEach(new BiConsumer<Integer, Integer>() {
+      public void accept(Integer key, Integer value) {
+        fail();
+      }
+    });
+    for (int i = 0; i < 1000; i++) {
+      t.insert(i, i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(Integer.valueOf(i), t.remove(i).value());
+    }
+    assertNull(t.find(3));
+    t.insert(3, 30);
+    assertEquals(Integer.valueOf(30), t.find(3).value());
+    assertEquals(buckets, t.stats().buckets());
+  }
+
+  @Test
+  public void makeEmptyClearsInPlaceIncludingTreeBuckets() {
+    HashTableChained<Object, Integer> t =
+      new HashTableChained<Object, Integer>(1000);
+    int buckets = t.stats().buckets();
+    for (int i = 0; i < 50; i++) {
+      t.insert(new TreeBucketTest.Opaque(i), i);
+      t.insert(Integer.valueOf(i), i);
+    }
+    t.makeEmpty();
+    assertEquals(buckets, t.stats().buckets());
+    assertEquals(0, t.stats().maxChainLength());
+    assertNull(t.find(new TreeBucketTest.Opaque(3)));
+    assertNull(t.find(Integer.valueOf(3)));
+    assertFalse(t.iterator().hasNext());
+    for (int i = 0; i < 20; i++) {
+      t.insert(new TreeBucketTest.Opaque(i), -i);
+    }
+    for (int i = 0; i < 20; i++) {
+      assertEquals(Integer.valueOf(-i),
+                   t.find(new TreeBucketTest.Opaque(i)).value());
+    }
+    assertEquals(20, t.size());
+  }
+
+  @Test
+  public void treeShrinkingBackIntoAChainRecreatesTheBucket() {
+    HashTableChained<Object, Integer> t =
+      new HashTableChained<Object, Integer>();
+    for (int i = 0; i < 20; i++) {
+      t.insert(new TreeBucketTest.Opaque(i), i);
+    }
+    for (int i = 0; i < 17; i++) {
+      assertEquals(Integer.valueOf(i),
+                   t.remove(new TreeBucketTest.Opaque(i)).value());
+    }
+    for (int i = 17; i < 20; i++) {
+      assertEquals(Integer.valueOf(i),
+                   t.find(new TreeBucketTest.Opaque(i)).value());
+    }
+    t.insert(new TreeBucketTest.Opaque(0), 0);
+    assertEquals(4, t.size());
+    int count = 0;
+    for (Entry<Object, Integer> e : t) {
+      count++;
+    }
+    assertEquals(4, count);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMinLoadFactorTooCloseToMax() {
+    new HashTableChained<Integer, Integer>(16, 0.75, 0.5);
+  }
+
+
+  @Test
+  public void statsCountLookupsWithoutScanning() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>();
+    for (int i = 0; i < 10; i++) {
+      t.insert(i, i);
+    }
+    t.find(3);
+    t.find(4);
+    t.find(100);
+    t.remove(5);
+    t.remove(200);
+    TableStats stats = t.stats();
+    assertEquals(9, stats.size());
+    assertEquals(128, stats.buckets());
+    assertEquals(10, stats.inserts());
+    assertEquals(1, stats.removes());
+    assertEquals(3, stats.hits());
+    assertEquals(2, stats.misses());
+    assertEquals(0.6, stats.hitRate(), 1e-9);
+    long lookups = 0;
+    for (long bin : stats.probeHistogram()) {
+      lookups += bin;
+    }
+    assertEquals(5, lookups);
+    assertTrue(stats.maxChainLength() >= 1);
+  }
+
+  @Test
+  public void statsCountResizes() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>(4);
+    for (int i = 0; i < 100000; i++) {
+      t.insert(i, i);
+    }
+    for (int i = 0; i < 100000; i++) {
+      t.find(i);
+    }
+    TableStats stats = t.stats();
+    assertTrue(stats.resizes() >= 10);
+    assertTrue(stats.resizeNanos() > 0);
+    t.resetStats();
+    assertEquals(0, t.stats().resizes());
+    assertEquals(0, t.stats().hits());
+  }
+
+  @Test
+  public void disabledMetricsStopCounting() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>();
+    t.insert(1, 1);
+    t.find(1);
+    t.setMetricsEnabled(false);
+    for (int i = 0; i < 1000; i++) {
+      t.insert(i, i);
+      t.find(i);
+      t.remove(-i - 1);
+    }
+    TableStats stats = t.stats();
+    assertEquals(1, stats.inserts());
+    assertEquals(1, stats.hits());
+    assertEquals(0, stats.misses());
+    assertEquals(0, stats.resizes());
+    assertEquals(1001, stats.size());
+    t.setMetricsEnabled(true);
+    t.find(2);
+    assertEquals(2, t.stats().hits());
+  }
+
+  @Test
+  public void registeredMBeanReadsStats() throws Exception {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>();
+    t.insert(1, 1);
+    t.find(1);
+    t.find(2);
+    t.registerMBean("test-mbean");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name =
+      new ObjectName("dict:type=HashTableChained,name=test-mbean");
+    try {
+      assertEquals(1, server.getAttribute(name, "Size"));
+      assertEquals(1L, server.getAttribute(name, "Hits"));
+      assertEquals(1L, server.getAttribute(name, "Misses"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+
+  @Test
+  public void insertAllGrowsOnceForTheWholeBatch() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>();
+    Integer[] keys = new Integer[10000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+    t.insertAll(keys, keys);
+    assertEquals(10000, t.size());
+    assertEquals(1, t.stats().resizes());
+    assertEquals(16384, t.stats().buckets());
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(keys[i], t.find(i).value());
+    }
+  }
+
+  @Test
+  public void insertAllDuringRehashGrowsStraightToTheBatchSize() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>();
+    for (int i = 0; i < 97; i++) {
+      t.insert(i, i);
+    }
+    assertEquals(256, t.stats().buckets());
+    Integer[] keys = new Integer[10000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = 97 + i;
+    }
+    t.insertAll(keys, keys);
+    assertEquals(10097, t.size());
+    assertEquals(16384, t.stats().buckets());
+    for (int i = 0; i < 10097; i++) {
+      assertEquals(Integer.valueOf(i), t.find(i).value());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void insertAllRejectsMismatchedArrays() {
+    new HashTableChained<Integer, Integer>().insertAll(new Integer[2],
+                                                       new Integer[1]);
+  }
+
+  @Test
+  public void findAllAgreesWithFindWhileRehashing() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>();
+    for (int i = 0; i < 97; i++) {
+      t.insert(i, i);
+    }
+    Integer[] keys = { 5, 500, 96, 5, 0, -1, 42 };
+    Entry<Integer, Integer>[] found = t.findAll(keys);
+    assertEquals(keys.length, found.length);
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] >= 0 && keys[i] < 97) {
+        assertEquals(keys[i], found[i].value());
+      } else {
+        assertNull(found[i]);
+      }
+    }
+  }
+
+  @Test
+  public void removeAllRemovesOneEntryPerKey() {
+    HashTableChained<String, Integer> t =
+      new HashTableChained<String, Integer>(16, 0.75, 0.25);
+    for (int i = 0; i < 1000; i++) {
+      t.insert("k" + (i % 500), i);
+    }
+    String[] keys = new String[1002];
+    for (int i = 0; i < 1000; i++) {
+      keys[i] = "k" + (i % 500);
+    }
+    keys[1000] = "k7";
+    keys[1001] = "none";
+    Entry<String, Integer>[] removed = t.removeAll(keys);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(keys[i], removed[i].key());
+    }
+    assertNull(removed[1000]);
+    assertNull(removed[1001]);
+    assertTrue(t.isEmpty());
+    assertTrue(t.stats().buckets() < 2048);
+  }
+
+  @Test
+  public void defaultBatchMethodsLoopOverSingleOperations() {
+    HashTableOpen<String, Integer> t = new HashTableOpen<String, Integer>();
+    HashTableChained<String, Integer> source =
+      new HashTableChained<String, Integer>();
+    source.insert("a", 1);
+    source.insert("b", 2);
+    t.insertAll(source);
+    Entry<String, Integer>[] found = t.findAll(new String[] { "b", "c" });
+    assertEquals(Integer.valueOf(2), found[0].value());
+    assertNull(found[1]);
+    Entry<String, Integer>[] removed =
+      t.removeAll(new String[] { "a", "a" });
+    assertEquals(Integer.valueOf(1), removed[0].value());
+    assertNull(removed[1]);
+    assertEquals(1, t.size());
+  }
+
+  @Test
+  public void iterationVisitsEveryEntryWhileRehashing() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>();
+    for (int i = 0; i < 97; i++) {
+      t.insert(i, i);
+    }
+    for (int i = 0; i < 20; i++) {
+      t.insert(1000 + i * 128, -i - 1);
+    }
+    final boolean[] seen = new boolean[97];
+    final int[] others = new int[1];
+    int count = 0;
+    for (Entry<Integer, Integer> e : t) {
+      count++;
+      if (e.value() >= 0) {
+        assertFalse(seen[e.value()]);
+        seen[e.value()] = true;
+      }
+    }
+    assertEquals(t.size(), count);
+    for (boolean b : seen) {
+      assertTrue(b);
+    }
+    t.forEach(new BiConsumer<Integer, Integer>() {
+      public void accept(Integer key, Integer value) {
+        if (value < 0) {
+          assertEquals(1000 - (value + 1) * 128, (int) key);
+          others[0]++;
+        }
+      }
+    });
+    assertEquals(20, others[0]);
+  }
+
+  @Test
+  public void forEachVisitsTreeBuckets() {
+    HashTableChained<Object, Integer> t =
+      new HashTableChained<Object, Integer>();
+    for (int i = 0; i < 50; i++) {
+      t.insert(new TreeBucketTest.Opaque(i), i);
+    }
+    t.insert("x", 50);
+    final int[] sum = new int[1];
+    t.forEach(new Consumer<Entry<Object, Integer>>() {
+      public void accept(Entry<Object, Integer> e) {
+        sum[0] += e.value();
+      }
+    });
+    assertEquals(50 * 51 / 2, sum[0]);
+    int count = 0;
+    for (Entry<Object, Integer> e : t) {
+      count++;
+    }
+    assertEquals(51, count);
+  }
+
+  /**
+   * Returns a table of keys 0...n - 1, each mapped to itself.  Unless
+   * rehashing is true, any rehash in progress is finished first.  (For
+   * 5000 and 20000 keys, one is in progress.)
+   */
+  private static HashTableChained<Integer, Integer> filled(int n,
+                                                           boolean rehashing) {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>(4);
+    for (int i = 0; i < n; i++) {
+      t.insert(i, i);
+    }
+    for (int i = 0; !rehashing && i < 2 * n; i++) {
+      t.find(-1);
+    }
+    t.resetStats();
+    return t;
+  }
+
+  @Test
+  public void spliteratorSplitsCoverEveryEntryOnce() {
+    for (boolean rehashing : new boolean[] { false, true }) {
+      HashTableChained<Integer, Integer> t = filled(5000, rehashing);
+      final boolean[] seen = new boolean[5000];
+      ArrayList<Spliterator<Entry<Integer, Integer>>> parts =
+        new ArrayList<Spliterator<Entry<Integer, Integer>>>();
+      parts.add(t.spliterator());
+      for (int round = 0; round < 4; round++) {
+        int n = parts.size();
+        for (int i = 0; i < n; i++) {
+          Spliterator<Entry<Integer, Integer>> split = parts.get(i).trySplit();
+          if (split != null) {
+            parts.add(split);
+          }
+        }
+      }
+      assertTrue(parts.size() > 4);
+      for (Spliterator<Entry<Integer, Integer>> part : parts) {
+        part.forEachRemaining(new Consumer<Entry<Integer, Integer>>() {
+          public void accept(Entry<Integer, Integer> e) {
+            assertFalse(seen[e.key()]);
+            seen[e.key()] = true;
+          }
+        });
+      }
+      for (boolean b : seen) {
+        assertTrue(b);
+      }
+    }
+  }
+
+  @Test
+  public void parallelStreamCountsEveryEntry() {
+    HashTableChained<Integer, Integer> t = filled(20000, true);
+    assertEquals(20000,
+                 StreamSupport.stream(t.spliterator(), true).count());
+  }
+
+  @Test
+  public void parallelForEachVisitsEveryEntry() {
+    HashTableChained<Integer, Integer> t = filled(20000, false);
+    final LongAdder sum = new LongAdder();
+    final LongAdder count = new LongAdder();
+    t.forEach(1, new BiConsumer<Integer, Integer>() {
+      public void accept(Integer key, Integer value) {
+        sum.add(value);
+        count.increment();
+      }
+    });
+    assertEquals(20000, count.sum());
+    assertEquals(19999L * 20000 / 2, sum.sum());
+  }
+
+  @Test
+  public void scanVisitsLastingEntriesAcrossResizes() {
+    HashTableChained<Integer, Integer> t =
+      new HashTableChained<Integer, Integer>(16, 0.75, 0.25);
+    for (int i = 0; i < 500; i++) {
+      t.insert(i, i);
+    }
+    final int[] seen = new int[3000];
+    Consumer<Entry<Integer, Integer>> count =
+      new Consumer<Entry<Integer, Integer>>() {
+        public void accept(Entry<Integer, Integer> e) {
+          seen[e.key()]++;
+        }
+      };
+    int cursor = 0;
+    int calls = 0;
+    int next = 500;
+    do {
+      cursor = t.scan(cursor, 4, count);
+      for (int j = 0; j < 40; j++) {
+        if (calls < 60) {
+          t.insert(next++, 0);
+        } else if (next > 500) {
+          t.remove(--next);
+        }
+      }
+      calls++;
+    } while (cursor != 0);
+    assertTrue(t.stats().resizes() >= 3);
+    for (int i = 0; i < 500; i++) {
+      assertTrue(seen[i] > 0);
+    }
+    Arrays.fill(seen, 0);
+    do {
+      cursor = t.scan(cursor, 1, count);
+    } while (cursor != 0);
+    for (int i = 0; i < seen.length; i++) {
+      assertEquals(i < 500 ? 1 : 0, seen[i]);
+    }
+  }
+
+  @Test
+  public void reduceCombinesNonNullResults() {
+    HashTableChained<Integer, Integer> t = filled(20000, true);
+    BiFunction<Integer, Integer, Long> evens =
+      new BiFunction<Integer, Integer, Long>() {
+        public Long apply(Integer key, Integer value) {
+          return key % 2 == 0 ? Long.valueOf(value) : null;
+        }
+      };
+    BiFunction<Long, Long, Long> plus = new BiFunction<Long, Long, Long>() {
+      public Long apply(Long a, Long b) {
+        return a + b;
+      }
+    };
+    long expected = 0;
+    for (int i = 0; i < 20000; i += 2) {
+      expected += i;
+    }
+    assertEquals(Long.valueOf(expected), t.reduce(1, evens, plus));
+    assertEquals(Long.valueOf(expected),
+                 t.reduce(Long.MAX_VALUE, evens, plus));
+    assertNull(new HashTableChained<Integer, Integer>().reduce(1, evens,
+                                                                plus));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void reduceRejectsNullReducer() {
+    filled(10, false).reduce(1, new BiFunction<Integer, Integer, Integer>() {
+      public Integer apply(Integer key, Integer value) {
+        return value;
+      }
+    }, null);
+  }
+
+  @Test
+  public void searchReturnsAMatchOrNull() {
+    HashTableChained<Integer, Integer> t = filled(20000, false);
+    final AtomicInteger calls = new AtomicInteger();
+    String found = t.search(Long.MAX_VALUE,
+                            new BiFunction<Integer, Integer, String>() {
+      public String apply(Integer key, Integer value) {
+        calls.incrementAndGet();
+        return key == 1234 ? "k" + key : null;
+      }
+    });
+    assertEquals("k1234", found);
+    assertTrue(calls.get() < 20000);
+    String parallel = t.search(1, new BiFunction<Integer, Integer, String>() {
+      public String apply(Integer key, Integer value) {
+        return key % 1000 == 999 ? "k" + key : null;
+      }
+    });
+    assertTrue(Integer.parseInt(parallel.substring(1)) % 1000 == 999);
+    assertNull(t.search(1, new BiFunction<Integer, Integer, String>() {
+      public String apply(Integer key, Integer value) {
+        return null;
+      }
+    }));
+  }
+
+}
@@ -0,0 +1,140 @@
+/* HashTableOpenTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HashTableOpenTest {
+
+  /**
+   * A Key whose hash code is shared by groups of eight ids, so that runs of
+   * occupied slots form and removals must shift entries back.
+   */
+  static class Key {
+    final int id;
+
+    Key(int id) {
+      this.id = id;
+    }
+
+    public int hashCode() {
+      return id / 8;
+    }
+
+    public boolean equals(Object o) {
+      return o instanceof Key && ((Key) o).id == id;
+    }
+  }
+
+  @Test
+  public void matchesModelUnderRandomOperations() {
+    HashTableOpen<Key, Integer> t = new HashTableOpen<Key, Integer>(4);
+    HashMap<Integer, ArrayList<Integer>> model =
+      new HashMap<Integer, ArrayList<Integer>>();
+    Random random = new Random(1);
+    int size = 0;
+    for (int op = 0; op < 200000; op++) {
+      int id = random.nextInt(2000);
+      Key key = new Key(id);
+      ArrayList<Integer> values = model.get(id);
+      int r = random.nextInt(10);
+      if (r < 4) {
+        Entry<Key, Integer> e = t.insert(key, op);
+        assertEquals(Integer.valueOf(op), e.value());
+        if (values == null) {
+          values = new ArrayList<Integer>();
+          model.put(id, values);
+        }
+        values.add(op);
+        size++;
+      } else if (r < 7) {
+        Entry<Key, Integer> e = t.remove(key);
+        if (values == null || values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertEquals(id, e.key().id);
+          assertTrue(values.remove(e.value()));
+          size--;
+        }
+      } else {
+        Entry<Key, Integer> e = t.find(key);
+        if (values == null || values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertTrue(values.contains(e.value()));
+        }
+      }
+      assertEquals(size, t.size());
+    }
+  }
+
+  @Test
+  public void removalShiftsBackAcrossWraparound() {
+    HashTableOpen<Integer, Integer> t = new HashTableOpen<Integer, Integer>();
+    ArrayList<Integer> keys = new ArrayList<Integer>();
+    for (int k = 0; keys.size() < 8; k++) {
+      if ((HashTableOpen.mix(Integer.valueOf(k).hashCode()) & 127) >= 126) {
+        keys.add(k);
+        t.insert(k, k);
+      }
+    }
+    for (int i = 0; i < keys.size(); i += 2) {
+      Integer k = keys.get(i);
+      assertEquals(k, t.remove(k).value());
+    }
+    for (int i = 0; i < keys.size(); i++) {
+      Integer k = keys.get(i);
+      if (i % 2 == 0) {
+        assertNull(t.find(k));
+      } else {
+        assertEquals(k, t.find(k).value());
+      }
+    }
+    assertEquals(4, t.size());
+  }
+
+  @Test
+  public void makeEmptyKeepsTableUsable() {
+    HashTableOpen<String, String> t = new HashTableOpen<String, String>();
+    for (int i = 0; i < 1000; i++) {
+      t.insert("k" + i, "v" + i);
+    }
+    t.makeEmpty();
+    assertTrue(t.isEmpty());
+    assertNull(t.find("k1"));
+    t.insert("k1", "again");
+    assertEquals("again", t.find("k1").value());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsLoadFactorOfOne() {
+    new HashTableOpen<String, String>(10, 1.0);
+  }
+
+  @Test
+  public void nullKeyIsRejected() {
+    HashTableOpen<String, String> t = new HashTableOpen<String, String>();
+    t.insert("a", "1");
+    try {
+      t.insert(null, "2");
+      fail();
+    } catch (IllegalArgumentException e) {}
+    try {
+      t.find(null);
+      fail();
+    } catch (IllegalArgumentException e) {}
+    try {
+      t.remove(null);
+      fail();
+    } catch (IllegalArgumentException e) {}
+    assertEquals(1, t.size());
+    assertEquals("1", t.find("a").value());
+  }
+
+}
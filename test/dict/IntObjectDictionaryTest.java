@@ -0,0 +1,84 @@
+/* IntObjectDictionaryTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntObjectDictionaryTest {
+
+  @Test
+  public void matchesModelUnderRandomOperations() {
+    IntObjectDictionary<String> d = new IntObjectDictionary<String>(2);
+    HashMap<Integer, ArrayList<String>> model =
+      new HashMap<Integer, ArrayList<String>>();
+    Random random = new Random(3);
+    int size = 0;
+    for (int op = 0; op < 200000; op++) {
+      int key = random.nextInt(3000) - 1500;
+      ArrayList<String> values = model.get(key);
+      boolean present = values != null && !values.isEmpty();
+      int r = random.nextInt(10);
+      if (r < 4) {
+        String value = "v" + op;
+        d.insert(key, value);
+        if (values == null) {
+          values = new ArrayList<String>();
+          model.put(key, values);
+        }
+        values.add(value);
+        size++;
+      } else if (r < 7) {
+        String value = d.remove(key);
+        if (present) {
+          assertTrue(values.remove(value));
+          size--;
+        } else {
+          assertNull(value);
+        }
+      } else {
+        assertEquals(present, d.contains(key));
+        String value = d.find(key);
+        if (present) {
+          assertTrue(values.contains(value));
+        } else {
+          assertNull(value);
+        }
+      }
+      assertEquals(size, d.size());
+    }
+  }
+
+  @Test
+  public void containsDistinguishesNullValue() {
+    IntObjectDictionary<String> d = new IntObjectDictionary<String>();
+    d.insert(0, null);
+    d.insert(Integer.MIN_VALUE, "min");
+    assertTrue(d.contains(0));
+    assertNull(d.find(0));
+    assertFalse(d.contains(1));
+    assertEquals("min", d.find(Integer.MIN_VALUE));
+    assertNull(d.remove(0));
+    assertFalse(d.contains(0));
+    assertEquals(1, d.size());
+  }
+
+  @Test
+  public void makeEmptyKeepsTableUsable() {
+    IntObjectDictionary<Integer> d = new IntObjectDictionary<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      d.insert(i, i);
+    }
+    d.makeEmpty();
+    assertTrue(d.isEmpty());
+    assertFalse(d.contains(5));
+    d.insert(5, 50);
+    assertEquals(Integer.valueOf(50), d.find(5));
+  }
+
+}
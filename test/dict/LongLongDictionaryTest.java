@@ -0,0 +1,73 @@
+/* LongLongDictionaryTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongLongDictionaryTest {
+
+  @Test
+  public void matchesModelUnderRandomOperations() {
+    LongLongDictionary d = new LongLongDictionary(2);
+    HashMap<Long, ArrayList<Long>> model = new HashMap<Long, ArrayList<Long>>();
+    Random random = new Random(4);
+    int size = 0;
+    for (long op = 0; op < 200000; op++) {
+      long key = (random.nextInt(3000) - 1500) * 0x100000001L;
+      ArrayList<Long> values = model.get(key);
+      boolean present = values != null && !values.isEmpty();
+      int r = random.nextInt(10);
+      if (r < 4) {
+        d.insert(key, op);
+        if (values == null) {
+          values = new ArrayList<Long>();
+          model.put(key, values);
+        }
+        values.add(op);
+        size++;
+      } else if (r < 7) {
+        long value = d.remove(key, -1);
+        if (present) {
+          assertTrue(values.remove(Long.valueOf(value)));
+          size--;
+        } else {
+          assertEquals(-1, value);
+        }
+      } else {
+        assertEquals(present, d.contains(key));
+        long value = d.find(key, -1);
+        if (present) {
+          assertTrue(values.contains(value));
+        } else {
+          assertEquals(-1, value);
+        }
+      }
+      assertEquals(size, d.size());
+    }
+  }
+
+  @Test
+  public void extremeKeysAndNotFound() {
+    LongLongDictionary d = new LongLongDictionary();
+    d.insert(Long.MIN_VALUE, 1);
+    d.insert(Long.MAX_VALUE, 2);
+    d.insert(0, 3);
+    assertEquals(1, d.find(Long.MIN_VALUE, 0));
+    assertEquals(2, d.find(Long.MAX_VALUE, 0));
+    assertEquals(3, d.find(0, 0));
+    assertEquals(42, d.find(7, 42));
+    assertEquals(3, d.remove(0, 42));
+    assertEquals(42, d.remove(0, 42));
+    assertFalse(d.contains(0));
+    d.makeEmpty();
+    assertTrue(d.isEmpty());
+    assertFalse(d.contains(Long.MIN_VALUE));
+  }
+
+}
@@ -0,0 +1,171 @@
+/* MappedDictionaryTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.function.BiConsumer;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedDictionaryTest {
+
+  private Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("mapped");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    DirectoryStream<Path> files = Files.newDirectoryStream(dir);
+    try {
+      for (Path file : files) {
+        Files.delete(file);
+      }
+    } finally {
+      files.close();
+    }
+    Files.delete(dir);
+  }
+
+  private MappedDictionary<String, Integer> snapshot(int n)
+    throws IOException {
+    HashTableChained<String, Integer> t =
+      new HashTableChained<String, Integer>();
+    for (int i = 0; i < n; i++) {
+      t.insert("key" + i, i);
+    }
+    Path file = dir.resolve("snapshot");
+    MappedDictionary.write(file, t, Serializer.STRING, Serializer.INTEGER);
+    return new MappedDictionary<String, Integer>(file, Serializer.STRING,
+                                                 Serializer.INTEGER);
+  }
+
+  @Test
+  public void findsEveryEntryWritten() throws IOException {
+    MappedDictionary<String, Integer> m = snapshot(10000);
+    try {
+      assertEquals(10000, m.size());
+      assertFalse(m.isEmpty());
+      for (int i = 0; i < 10000; i++) {
+        Entry<String, Integer> e = m.find("key" + i);
+        assertEquals("key" + i, e.key());
+        assertEquals(Integer.valueOf(i), e.value());
+      }
+      assertNull(m.find("key10000"));
+      assertNull(m.find(""));
+    } finally {
+      m.close();
+    }
+  }
+
+  @Test
+  public void forEachVisitsEveryEntryOnce() throws IOException {
+    MappedDictionary<String, Integer> m = snapshot(500);
+    final HashMap<String, Integer> seen = new HashMap<String, Integer>();
+    m.forEach(new BiConsumer<String, Integer>() {
+      public void accept(String key, Integer value) {
+        assertNull(seen.put(key, value));
+      }
+    });
+    m.close();
+    assertEquals(500, seen.size());
+    for (int i = 0; i < 500; i++) {
+      assertEquals(Integer.valueOf(i), seen.get("key" + i));
+    }
+  }
+
+  @Test
+  public void failedWriteLeavesTheOldSnapshot() throws IOException {
+    snapshot(100).close();
+    HashTableChained<String, Integer> t =
+      new HashTableChained<String, Integer>();
+    for (int i = 0; i < 200; i++) {
+      t.insert("new" + i, i);
+    }
+    Serializer<Integer> failing = new Serializer<Integer>() {
+      public byte[] toBytes(Integer obj) {
+        if (obj.intValue() == 150) {
+          throw new IllegalStateException("Injected failure");
+        }
+        return Serializer.INTEGER.toBytes(obj);
+      }
+
+      public Integer fromBytes(ByteBuffer buf) {
+        return Serializer.INTEGER.fromBytes(buf);
+      }
+    };
+    Path file = dir.resolve("snapshot");
+    try {
+      MappedDictionary.write(file, t, Serializer.STRING, failing);
+      fail();
+    } catch (IllegalStateException e) {}
+    assertFalse(Files.exists(dir.resolve("snapshot.tmp")));
+    MappedDictionary<String, Integer> m =
+      new MappedDictionary<String, Integer>(file, Serializer.STRING,
+                                            Serializer.INTEGER);
+    try {
+      assertEquals(100, m.size());
+      assertEquals(Integer.valueOf(99), m.find("key99").value());
+      assertNull(m.find("new0"));
+    } finally {
+      m.close();
+    }
+  }
+
+  @Test
+  public void emptySnapshotFindsNothing() throws IOException {
+    MappedDictionary<String, Integer> m = snapshot(0);
+    assertTrue(m.isEmpty());
+    assertNull(m.find("key0"));
+    m.close();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void rejectsInsert() throws IOException {
+    MappedDictionary<String, Integer> m = snapshot(1);
+    try {
+      m.insert("a", 1);
+    } finally {
+      m.close();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsFileThatIsNotASnapshot() throws IOException {
+    Path file = dir.resolve("junk");
+    Files.write(file, new byte[64]);
+    new MappedDictionary<String, Integer>(file, Serializer.STRING,
+                                          Serializer.INTEGER);
+  }
+
+  @Test
+  public void closeUnmapsTheFile() throws IOException {
+    MappedDictionary<String, Integer> m = snapshot(100);
+    m.close();
+    m.close();
+    try {
+      m.find("key1");
+      fail();
+    } catch (IllegalStateException e) {}
+    Path maps = Paths.get("/proc/self/maps");
+    Assume.assumeTrue(Files.isReadable(maps));
+    String snapshot = dir.resolve("snapshot").toString();
+    for (String line : Files.readAllLines(maps)) {
+      assertFalse(line.endsWith(snapshot));
+    }
+  }
+
+}
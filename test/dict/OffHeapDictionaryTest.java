@@ -0,0 +1,141 @@
+/* OffHeapDictionaryTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OffHeapDictionaryTest {
+
+  private static OffHeapDictionary<String, String> table(int slabSize) {
+    return new OffHeapDictionary<String, String>(16, slabSize,
+                                                 Serializer.STRING,
+                                                 Serializer.STRING);
+  }
+
+  /**
+   * Returns a string of n copies of c.
+   */
+  private static String repeat(char c, int n) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < n; i++) {
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void matchesModelUnderRandomOperations() {
+    OffHeapDictionary<String, String> t = table(4096);
+    HashMap<String, ArrayList<String>> model =
+      new HashMap<String, ArrayList<String>>();
+    Random random = new Random(14);
+    int size = 0;
+    for (int op = 0; op < 100000; op++) {
+      String key = "k" + random.nextInt(3000);
+      ArrayList<String> values = model.get(key);
+      int r = random.nextInt(10);
+      if (r < 4) {
+        String value = repeat('v', random.nextInt(40)) + op;
+        Entry<String, String> e = t.insert(key, value);
+        assertEquals(value, e.value());
+        if (values == null) {
+          values = new ArrayList<String>();
+          model.put(key, values);
+        }
+        values.add(value);
+        size++;
+      } else if (r < 7) {
+        Entry<String, String> e = t.remove(key);
+        if (values == null || values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertEquals(key, e.key());
+          assertTrue(values.remove(e.value()));
+          size--;
+        }
+      } else {
+        Entry<String, String> e = t.find(key);
+        if (values == null || values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertEquals(key, e.key());
+          assertTrue(values.contains(e.value()));
+        }
+      }
+      assertEquals(size, t.size());
+    }
+  }
+
+  @Test
+  public void removedRecordsAreReused() {
+    OffHeapDictionary<String, String> t = table(1024);
+    for (int i = 0; i < 100; i++) {
+      t.insert("key" + i, "value" + i);
+    }
+    long bytes = t.offHeapBytes();
+    for (int round = 0; round < 50; round++) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals("value" + i, t.remove("key" + i).value());
+      }
+      assertTrue(t.isEmpty());
+      for (int i = 0; i < 100; i++) {
+        t.insert("key" + i, "value" + i);
+      }
+    }
+    assertEquals(bytes, t.offHeapBytes());
+  }
+
+  @Test
+  public void largeRecordsUsePowerOfTwoClasses() {
+    OffHeapDictionary<String, String> t = table(1 << 16);
+    String big = repeat('x', 5000);
+    for (int i = 0; i < 20; i++) {
+      t.insert("big" + i, big + i);
+    }
+    for (int i = 0; i < 20; i++) {
+      assertEquals(big + i, t.find("big" + i).value());
+    }
+    long bytes = t.offHeapBytes();
+    assertEquals(big + 3, t.remove("big3").value());
+    t.insert("big3", big + "!");
+    assertEquals(big + "!", t.find("big3").value());
+    assertEquals(bytes, t.offHeapBytes());
+  }
+
+  @Test
+  public void makeEmptyKeepsSlabs() {
+    OffHeapDictionary<String, String> t = table(256);
+    for (int i = 0; i < 1000; i++) {
+      t.insert("key" + i, "value" + i);
+    }
+    long bytes = t.offHeapBytes();
+    t.makeEmpty();
+    assertTrue(t.isEmpty());
+    assertEquals(bytes, t.offHeapBytes());
+    assertNull(t.find("key1"));
+    for (int i = 0; i < 1000; i++) {
+      t.insert("key" + i, "again" + i);
+    }
+    assertEquals(bytes, t.offHeapBytes());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("again" + i, t.find("key" + i).value());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRecordLargerThanASlab() {
+    table(64).insert("key", repeat('x', 64));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSlabSizeThatIsNotAPowerOfTwo() {
+    table(1000);
+  }
+
+}
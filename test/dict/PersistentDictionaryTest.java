@@ -0,0 +1,282 @@
+/* PersistentDictionaryTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentDictionaryTest {
+
+  /**
+   * Checks that a dictionary holds exactly the entries of a model, by
+   * iteration and by find().
+   */
+  private static void assertMatches(HashMap<Object, ArrayList<Integer>> model,
+                                    PersistentDictionary<Object, Integer> d) {
+    HashMap<Object, ArrayList<Integer>> seen =
+      new HashMap<Object, ArrayList<Integer>>();
+    int count = 0;
+    for (Entry<Object, Integer> e : d) {
+      ArrayList<Integer> values = seen.get(e.key());
+      if (values == null) {
+        values = new ArrayList<Integer>();
+        seen.put(e.key(), values);
+      }
+      values.add(e.value());
+      count++;
+    }
+    assertEquals(d.size(), count);
+    int size = 0;
+    for (Object key : model.keySet()) {
+      ArrayList<Integer> values = model.get(key);
+      size += values.size();
+      if (values.isEmpty()) {
+        assertNull(d.find(key));
+        assertNull(seen.get(key));
+      } else {
+        assertEquals(values.get(0), d.find(key).value());
+        ArrayList<Integer> got = seen.get(key);
+        assertNotNull(got);
+        assertTrue(got.containsAll(values) && values.containsAll(got));
+      }
+    }
+    assertEquals(size, d.size());
+  }
+
+  /**
+   * Returns a key for the specified id:  a String, or a key whose hash code
+   * it shares with seven others, or one whose hash code is always 0.
+   */
+  private static Object key(int id) {
+    switch (id % 3) {
+    case 0:
+      return "k" + id;
+    case 1:
+      return new HashTableOpenTest.Key(id);
+    default:
+      return new TreeBucketTest.Opaque(id);
+    }
+  }
+
+  @Test
+  public void matchesModelUnderRandomOperations() {
+    PersistentDictionary<Object, Integer> d =
+      new PersistentDictionary<Object, Integer>();
+    HashMap<Object, ArrayList<Integer>> model =
+      new HashMap<Object, ArrayList<Integer>>();
+    Random random = new Random(22);
+    for (int op = 0; op < 100000; op++) {
+      Object key = key(random.nextInt(3000));
+      ArrayList<Integer> values = model.get(key);
+      if (values == null) {
+        values = new ArrayList<Integer>();
+        model.put(key, values);
+      }
+      int r = random.nextInt(10);
+      if (r < 5) {
+        assertEquals(Integer.valueOf(op), d.insert(key, op).value());
+        values.add(op);
+      } else if (r < 8) {
+        Entry<Object, Integer> e = d.remove(key);
+        if (values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertEquals(values.remove(0), e.value());
+        }
+      } else {
+        Entry<Object, Integer> e = d.find(key);
+        if (values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertEquals(values.get(0), e.value());
+        }
+      }
+    }
+    assertMatches(model, d);
+  }
+
+  @Test
+  public void snapshotsAreUnaffectedByLaterUpdates() {
+    PersistentDictionary<Object, Integer> d =
+      new PersistentDictionary<Object, Integer>();
+    HashMap<Object, ArrayList<Integer>> model =
+      new HashMap<Object, ArrayList<Integer>>();
+    ArrayList<PersistentDictionary<Object, Integer>> snapshots =
+      new ArrayList<PersistentDictionary<Object, Integer>>();
+    ArrayList<HashMap<Object, ArrayList<Integer>>> models =
+      new ArrayList<HashMap<Object, ArrayList<Integer>>>();
+    Random random = new Random(5);
+    for (int op = 0; op < 20000; op++) {
+      Object key = key(random.nextInt(500));
+      ArrayList<Integer> values = model.get(key);
+      if (values == null) {
+        values = new ArrayList<Integer>();
+        model.put(key, values);
+      }
+      if (random.nextInt(3) > 0) {
+        d.insert(key, op);
+        values.add(op);
+      } else if (d.remove(key) != null) {
+        values.remove(0);
+      }
+      if (op % 2000 == 0) {
+        snapshots.add(d.snapshot());
+        HashMap<Object, ArrayList<Integer>> copy =
+          new HashMap<Object, ArrayList<Integer>>();
+        for (Object k : model.keySet()) {
+          copy.put(k, new ArrayList<Integer>(model.get(k)));
+        }
+        models.add(copy);
+      }
+    }
+    for (int i = 0; i < snapshots.size(); i++) {
+      assertMatches(models.get(i), snapshots.get(i));
+    }
+    PersistentDictionary<Object, Integer> s = snapshots.get(3);
+    s.insert("new", -1);
+    s.makeEmpty();
+    assertNull(d.find("new"));
+    assertMatches(model, d);
+    assertMatches(models.get(4), snapshots.get(4));
+  }
+
+  @Test
+  public void iteratorSeesTheVersionItStartedWith() {
+    PersistentDictionary<Integer, Integer> d =
+      new PersistentDictionary<Integer, Integer>();
+    for (int i = 0; i < 1000; i++) {
+      d.insert(i, i);
+    }
+    int count = 0;
+    for (Entry<Integer, Integer> e : d) {
+      d.remove(e.key());
+      d.insert(e.key() + 1000, 0);
+      count++;
+    }
+    assertEquals(1000, count);
+    assertEquals(1000, d.size());
+    assertNull(d.find(5));
+    assertNotNull(d.find(1005));
+  }
+
+  @Test
+  public void collidingEntriesKeepInsertionOrder() {
+    PersistentDictionary<Object, Integer> d =
+      new PersistentDictionary<Object, Integer>();
+    for (int i = 0; i < 5; i++) {
+      d.insert(new TreeBucketTest.Opaque(1), i);
+      d.insert(new TreeBucketTest.Opaque(2), 10 + i);
+    }
+    for (int i = 0; i < 5; i++) {
+      assertEquals(Integer.valueOf(i),
+                   d.find(new TreeBucketTest.Opaque(1)).value());
+      assertEquals(Integer.valueOf(i),
+                   d.remove(new TreeBucketTest.Opaque(1)).value());
+    }
+    assertNull(d.find(new TreeBucketTest.Opaque(1)));
+    assertEquals(Integer.valueOf(10),
+                 d.find(new TreeBucketTest.Opaque(2)).value());
+    assertEquals(5, d.size());
+  }
+
+  @Test
+  public void transientBuildsWithoutChangingItsSource() {
+    PersistentDictionary<Object, Integer> d =
+      new PersistentDictionary<Object, Integer>();
+    for (int i = 0; i < 300; i++) {
+      d.insert(key(i), i);
+    }
+    PersistentDictionary.Transient<Object, Integer> t = d.toTransient();
+    for (int i = 0; i < 300; i += 2) {
+      assertEquals(Integer.valueOf(i), t.remove(key(i)).value());
+    }
+    for (int i = 300; i < 3000; i++) {
+      t.insert(key(i), i);
+    }
+    assertEquals(2850, t.size());
+    assertEquals(300, d.size());
+    for (int i = 0; i < 300; i++) {
+      assertEquals(Integer.valueOf(i), d.find(key(i)).value());
+    }
+    PersistentDictionary<Object, Integer> built = t.persistent();
+    assertEquals(2850, built.size());
+    int count = 0;
+    for (Entry<Object, Integer> e : built) {
+      assertTrue(e.value() % 2 == 1 || e.value() >= 300);
+      count++;
+    }
+    assertEquals(2850, count);
+    built.insert("x", 0);
+    assertEquals(2850, t.size());
+    assertNull(t.find("x"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void transientRejectsUpdatesAfterPersistent() {
+    PersistentDictionary.Transient<String, Integer> t =
+      new PersistentDictionary.Transient<String, Integer>();
+    t.insert("a", 1);
+    t.persistent();
+    t.insert("b", 2);
+  }
+
+  @Test
+  public void strategyDecidesKeyEquality() {
+    PersistentDictionary<String, Integer> d =
+      new PersistentDictionary<String, Integer>(HashStrategy.CASE_INSENSITIVE);
+    d.insert("Key", 1);
+    assertEquals(Integer.valueOf(1), d.find("KEY").value());
+    assertEquals(Integer.valueOf(1), d.snapshot().find("key").value());
+    assertEquals(Integer.valueOf(1), d.remove("kEY").value());
+    assertTrue(d.isEmpty());
+  }
+
+  @Test
+  public void readersNeedNoLockWhileOneThreadWrites() throws Exception {
+    final PersistentDictionary<Integer, Integer> d =
+      new PersistentDictionary<Integer, Integer>();
+    for (int i = 0; i < 1000; i++) {
+      d.insert(i, i);
+    }
+    final boolean[] failed = new boolean[1];
+    Thread writer = new Thread() {
+      public void run() {
+        for (int i = 1000; i < 50000; i++) {
+          d.insert(i, i);
+          d.remove(i - 500);
+        }
+      }
+    };
+    writer.start();
+    Random random = new Random(1);
+    while (writer.isAlive()) {
+      PersistentDictionary<Integer, Integer> s = d.snapshot();
+      int count = 0;
+      for (Entry<Integer, Integer> e : s) {
+        count++;
+      }
+      if (count != s.size()) {
+        failed[0] = true;
+      }
+      int k = random.nextInt(1000);
+      Entry<Integer, Integer> e = s.find(k);
+      if (e != null && e.value() != k) {
+        failed[0] = true;
+      }
+    }
+    writer.join();
+    assertFalse(failed[0]);
+    assertEquals(1000, d.size());
+    for (int i = 0; i < 1000; i++) {
+      int k = i < 500 ? i : 49000 + i;
+      assertEquals(Integer.valueOf(k), d.find(k).value());
+    }
+    assertNull(d.find(500));
+  }
+
+}
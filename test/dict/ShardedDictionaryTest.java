@@ -0,0 +1,349 @@
+/* ShardedDictionaryTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class ShardedDictionaryTest {
+
+  /**
+   * A Transport that fails every request whose operation code is
+   * failing, until failing is reset to 0, and counts SCAN requests.
+   */
+  static class FlakyTransport implements Transport {
+    final Transport server;
+    volatile byte failing;
+    int scans;
+
+    FlakyTransport(Transport server) {
+      this.server = server;
+    }
+
+    public byte[] exchange(byte[] request) throws IOException {
+      if (request[0] == failing) {
+        throw new IOException("Shard down");
+      }
+      if (request[0] == DictionaryServer.SCAN) {
+        scans++;
+      }
+      return server.exchange(request);
+    }
+  }
+
+  private static RemoteDictionary<Integer, Integer> remote(
+    HashTableChained<Integer, Integer> table) {
+    return new RemoteDictionary<Integer, Integer>(
+      new DictionaryServer<Integer, Integer>(table, Serializer.INTEGER,
+                                             Serializer.INTEGER),
+      Serializer.INTEGER, Serializer.INTEGER);
+  }
+
+  private static ShardedDictionary<Integer, Integer> sharded(
+    ExecutorService executor) {
+    return new ShardedDictionary<Integer, Integer>(
+      16, HashStrategy.NATURAL, executor);
+  }
+
+  /**
+   * Checks that d holds exactly the entries of the model.
+   */
+  private static void assertMatches(HashMap<Integer, ArrayList<Integer>> model,
+                                    ShardedDictionary<Integer, Integer> d) {
+    int size = 0;
+    for (Integer key : model.keySet()) {
+      ArrayList<Integer> values = model.get(key);
+      size += values.size();
+      Entry<Integer, Integer> e = d.find(key);
+      if (values.isEmpty()) {
+        assertNull(e);
+      } else {
+        assertTrue(values.contains(e.value()));
+      }
+    }
+    assertEquals(size, d.size());
+  }
+
+  @Test
+  public void matchesModelWhileShardsComeAndGo() {
+    ShardedDictionary<Integer, Integer> d = sharded(null);
+    d.addShard("s0", new HashTableChained<Integer, Integer>());
+    HashMap<Integer, ArrayList<Integer>> model =
+      new HashMap<Integer, ArrayList<Integer>>();
+    Random random = new Random(24);
+    ArrayList<String> names = new ArrayList<String>();
+    names.add("s0");
+    for (int op = 0; op < 60000; op++) {
+      if (op % 5000 == 4999) {
+        if (random.nextBoolean() || names.size() == 1) {
+          String name = "s" + op;
+          d.addShard(name, new HashTableChained<Integer, Integer>());
+          names.add(name);
+        } else {
+          d.removeShard(names.remove(random.nextInt(names.size())));
+        }
+        assertEquals(names.size(), d.shardCount());
+      }
+      int key = random.nextInt(2000);
+      ArrayList<Integer> values = model.get(key);
+      if (values == null) {
+        values = new ArrayList<Integer>();
+        model.put(key, values);
+      }
+      int r = random.nextInt(10);
+      if (r < 5) {
+        d.insert(key, op);
+        values.add(op);
+      } else if (r < 8) {
+        Entry<Integer, Integer> e = d.remove(key);
+        if (values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertTrue(values.remove(e.value()));
+        }
+      } else {
+        Entry<Integer, Integer> e = d.find(key);
+        if (values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertTrue(values.contains(e.value()));
+        }
+      }
+    }
+    assertMatches(model, d);
+    d.rebalance();
+    assertFalse(d.isRebalancing());
+    assertMatches(model, d);
+  }
+
+  @Test
+  public void removeShardOnlyThrowsForUnknownName() {
+    ShardedDictionary<Integer, Integer> d = sharded(null);
+    d.addShard("a", new HashTableChained<Integer, Integer>());
+    try {
+      d.addShard("a", new HashTableChained<Integer, Integer>());
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      d.removeShard("a");
+      fail();
+    } catch (IllegalStateException e) {
+    }
+    try {
+      d.removeShard("b");
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void remoteShardsSpreadKeysEvenly() {
+    ShardedDictionary<Integer, Integer> d =
+      new ShardedDictionary<Integer, Integer>();
+    ArrayList<HashTableChained<Integer, Integer>> tables =
+      new ArrayList<HashTableChained<Integer, Integer>>();
+    for (int s = 0; s < 2; s++) {
+      tables.add(new HashTableChained<Integer, Integer>());
+      d.addShard("shard" + s, remote(tables.get(s)));
+    }
+    int n = 5 * RemoteDictionary.SCAN_PAGE;
+    for (int i = 0; i < n; i++) {
+      d.insert(i, -i);
+    }
+    for (int s = 2; s < 4; s++) {
+      tables.add(new HashTableChained<Integer, Integer>());
+      d.addShard("shard" + s, remote(tables.get(s)));
+    }
+    d.rebalance();
+    int total = 0;
+    for (HashTableChained<Integer, Integer> t : tables) {
+      assertTrue(t.size() > n / 8);
+      total += t.size();
+    }
+    assertEquals(n, total);
+    for (int i = 0; i < n; i++) {
+      assertEquals(Integer.valueOf(-i), d.find(i).value());
+    }
+  }
+
+  @Test
+  public void onlyShardsLosingKeysAreScannedAndOnlyLater() {
+    ShardedDictionary<Integer, Integer> d = sharded(null);
+    ArrayList<HashTableChained<Integer, Integer>> tables =
+      new ArrayList<HashTableChained<Integer, Integer>>();
+    ArrayList<FlakyTransport> transports = new ArrayList<FlakyTransport>();
+    for (int s = 0; s < 3; s++) {
+      tables.add(new HashTableChained<Integer, Integer>());
+      transports.add(new FlakyTransport(
+        new DictionaryServer<Integer, Integer>(tables.get(s),
+                                               Serializer.INTEGER,
+                                               Serializer.INTEGER)));
+      d.addShard("s" + s, new RemoteDictionary<Integer, Integer>(
+                   transports.get(s), Serializer.INTEGER, Serializer.INTEGER));
+    }
+    for (int i = 0; i < 3000; i++) {
+      d.insert(i, i);
+    }
+    d.rebalance();
+    for (FlakyTransport t : transports) {
+      t.scans = 0;
+    }
+    d.addShard("s3", new HashTableChained<Integer, Integer>());
+    assertTrue(d.isRebalancing());
+    int scans = 0;
+    for (FlakyTransport t : transports) {
+      scans += t.scans;
+    }
+    assertEquals(0, scans);
+    d.find(0);
+    for (FlakyTransport t : transports) {
+      scans += t.scans;
+    }
+    assertEquals(1, scans);
+    d.rebalance();
+    for (FlakyTransport t : transports) {
+      assertTrue(t.scans > 0);
+      t.scans = 0;
+    }
+    d.removeShard("s1");
+    d.rebalance();
+    assertEquals(0, transports.get(0).scans);
+    assertTrue(transports.get(1).scans > 0);
+    assertEquals(0, transports.get(2).scans);
+    assertEquals(0, tables.get(1).size());
+    assertEquals(3000, d.size());
+    for (int i = 0; i < 3000; i++) {
+      assertEquals(Integer.valueOf(i), d.find(i).value());
+    }
+  }
+
+  @Test
+  public void failingNewShardLosesNothing() {
+    ShardedDictionary<Integer, Integer> d = sharded(null);
+    d.addShard("a", new HashTableChained<Integer, Integer>());
+    d.addShard("b", new HashTableChained<Integer, Integer>());
+    for (int i = 0; i < 3000; i++) {
+      d.insert(i % 1000, i);
+    }
+    HashTableChained<Integer, Integer> table =
+      new HashTableChained<Integer, Integer>();
+    FlakyTransport transport = new FlakyTransport(
+      new DictionaryServer<Integer, Integer>(table, Serializer.INTEGER,
+                                             Serializer.INTEGER));
+    transport.failing = DictionaryServer.INSERT;
+    d.addShard("c", new RemoteDictionary<Integer, Integer>(
+                 transport, Serializer.INTEGER, Serializer.INTEGER));
+    for (int attempt = 0; attempt < 3; attempt++) {
+      try {
+        d.rebalance();
+        fail();
+      } catch (UncheckedIOException e) {
+      }
+      try {
+        d.find(0);
+        fail();
+      } catch (UncheckedIOException e) {
+      }
+      assertEquals(3000, d.size());
+      assertEquals(0, table.size());
+    }
+    transport.failing = 0;
+    d.rebalance();
+    assertTrue(table.size() > 0);
+    assertEquals(3000, d.size());
+    for (int i = 0; i < 1000; i++) {
+      int count = 0;
+      Entry<Integer, Integer>[] removed;
+      do {
+        removed = d.removeAll(new Integer[] { i });
+        if (removed[0] != null) {
+          assertEquals(i, removed[0].value() % 1000);
+          count++;
+        }
+      } while (removed[0] != null);
+      assertEquals(3, count);
+    }
+    assertTrue(d.isEmpty());
+  }
+
+  @Test
+  public void failingOldShardRemovesEachEntryOnce() {
+    ShardedDictionary<Integer, Integer> d = sharded(null);
+    HashTableChained<Integer, Integer> table =
+      new HashTableChained<Integer, Integer>();
+    FlakyTransport transport = new FlakyTransport(
+      new DictionaryServer<Integer, Integer>(table, Serializer.INTEGER,
+                                             Serializer.INTEGER));
+    d.addShard("a", new RemoteDictionary<Integer, Integer>(
+                 transport, Serializer.INTEGER, Serializer.INTEGER));
+    for (int i = 0; i < 2000; i++) {
+      d.insert(i % 1000, i);
+    }
+    transport.failing = DictionaryServer.REMOVE;
+    d.addShard("b", new HashTableChained<Integer, Integer>());
+    try {
+      d.rebalance();
+      fail();
+    } catch (UncheckedIOException e) {
+    }
+    transport.failing = 0;
+    d.rebalance();
+    assertEquals(2000, d.size());
+    HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+    for (int i = 0; i < 1000; i++) {
+      Entry<Integer, Integer> e;
+      while ((e = d.remove(i)) != null) {
+        Integer c = counts.get(e.value());
+        assertNull(c);
+        counts.put(e.value(), 1);
+      }
+    }
+    assertEquals(2000, counts.size());
+  }
+
+  @Test
+  public void batchesAgreeWithSingleOperationsOnAnExecutor() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      ShardedDictionary<Integer, Integer> d = sharded(executor);
+      for (int s = 0; s < 4; s++) {
+        d.addShard("s" + s, remote(new HashTableChained<Integer, Integer>()));
+      }
+      Integer[] keys = new Integer[5000];
+      Integer[] values = new Integer[5000];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = i;
+        values[i] = i * 2;
+      }
+      d.insertAll(keys, values);
+      d.addShard("s4", new HashTableChained<Integer, Integer>());
+      Entry<Integer, Integer>[] found = d.findAll(keys);
+      for (int i = 0; i < keys.length; i++) {
+        assertEquals(values[i], found[i].value());
+      }
+      Integer[] some = { 1, 1, 7, -1 };
+      Entry<Integer, Integer>[] removed = d.removeAll(some);
+      assertEquals(Integer.valueOf(2), removed[0].value());
+      assertNull(removed[1]);
+      assertEquals(Integer.valueOf(14), removed[2].value());
+      assertNull(removed[3]);
+      d.rebalance();
+      assertEquals(4998, d.size());
+      d.makeEmpty();
+      assertTrue(d.isEmpty());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,205 @@
+/* StringObjectDictionaryTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StringObjectDictionaryTest {
+
+  /**
+   * Keys spanning one-, two-, three- and four-byte UTF-8 sequences.
+   */
+  private static final String[] KEYS = {
+    "", "a", "plain ascii", "\u00e9t\u00e9", "\u20ac100", "\u4e2d\u6587",
+    "\ud83d\ude00", "x\ud801\udc37y", "\u07ff\u0800\uffff"
+  };
+
+  /**
+   * Returns the UTF-8 bytes of a key, placed at offset 3 of a longer array
+   * with junk around them.
+   */
+  private static byte[] padded(String key) {
+    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+    byte[] buf = new byte[bytes.length + 5];
+    buf[0] = 'a';
+    buf[buf.length - 1] = 'a';
+    System.arraycopy(bytes, 0, buf, 3, bytes.length);
+    return buf;
+  }
+
+  private static int length(String key) {
+    return key.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  @Test
+  public void charSequenceAndByteKeysAgree() {
+    StringObjectDictionary<String> d = new StringObjectDictionary<String>();
+    for (int i = 0; i < KEYS.length; i++) {
+      if (i % 2 == 0) {
+        d.insert(KEYS[i], KEYS[i]);
+      } else {
+        d.insert(padded(KEYS[i]), 3, length(KEYS[i]), KEYS[i]);
+      }
+    }
+    for (String key : KEYS) {
+      assertEquals(key, d.find(key));
+      assertEquals(key, d.find(new StringBuilder(key)));
+      assertEquals(key, d.find(padded(key), 3, length(key)));
+      assertTrue(d.contains(padded(key), 3, length(key)));
+    }
+    int bytes = 0;
+    for (String key : KEYS) {
+      bytes += length(key);
+    }
+    assertEquals(bytes, d.arenaBytes());
+    assertNull(d.find("\u00e9t"));
+    assertNull(d.find(padded("ab"), 3, 2));
+    assertFalse(d.contains("\ud83d"));
+  }
+
+  @Test
+  public void unpairedSurrogatesEncodeAsQuestionMarks() {
+    StringObjectDictionary<Integer> d = new StringObjectDictionary<Integer>();
+    String[] keys = { "\ud800", "a\udc00b", "end\ud83d", "\ude00\ud83d" };
+    for (int i = 0; i < keys.length; i++) {
+      d.insert(keys[i], i);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      byte[] bytes = keys[i].getBytes(StandardCharsets.UTF_8);
+      assertEquals(Integer.valueOf(i), d.find(bytes, 0, bytes.length));
+    }
+    assertEquals(Integer.valueOf(0), d.find("?"));
+    assertEquals(Integer.valueOf(1), d.find("a?b"));
+    assertEquals(Integer.valueOf(2), d.remove("end?"));
+    assertEquals(Integer.valueOf(3), d.remove("??"));
+    assertNull(d.find("\ude00\ud83d"));
+  }
+
+  @Test
+  public void matchesModelUnderRandomOperations() {
+    StringObjectDictionary<Integer> d = new StringObjectDictionary<Integer>(2);
+    HashMap<String, ArrayList<Integer>> model =
+      new HashMap<String, ArrayList<Integer>>();
+    Random random = new Random(25);
+    int size = 0;
+    for (int op = 0; op < 200000; op++) {
+      int id = random.nextInt(3000);
+      String key = KEYS[id % KEYS.length] + id;
+      boolean bytes = random.nextBoolean();
+      byte[] buf = padded(key);
+      int length = length(key);
+      ArrayList<Integer> values = model.get(key);
+      boolean present = values != null && !values.isEmpty();
+      int r = random.nextInt(10);
+      if (r < 4) {
+        if (bytes) {
+          d.insert(buf, 3, length, op);
+        } else {
+          d.insert(key, op);
+        }
+        if (values == null) {
+          values = new ArrayList<Integer>();
+          model.put(key, values);
+        }
+        values.add(op);
+        size++;
+      } else if (r < 7) {
+        Integer value = bytes ? d.remove(buf, 3, length) : d.remove(key);
+        if (present) {
+          assertTrue(values.remove(value));
+          size--;
+        } else {
+          assertNull(value);
+        }
+      } else {
+        Integer value = bytes ? d.find(buf, 3, length) : d.find(key);
+        if (present) {
+          assertTrue(values.contains(value));
+        } else {
+          assertNull(value);
+        }
+        assertEquals(present, d.contains(key));
+      }
+      assertEquals(size, d.size());
+    }
+  }
+
+  @Test
+  public void removalShiftsBackAcrossWraparound() {
+    StringObjectDictionary<String> d = new StringObjectDictionary<String>();
+    ArrayList<String> keys = new ArrayList<String>();
+    for (int k = 0; keys.size() < 8; k++) {
+      String key = "k" + k;
+      if ((HashTableOpen.mix(key.hashCode()) & 127) >= 126) {
+        keys.add(key);
+        d.insert(key, key);
+      }
+    }
+    for (int i = 0; i < keys.size(); i += 2) {
+      assertEquals(keys.get(i), d.remove(keys.get(i)));
+    }
+    for (int i = 0; i < keys.size(); i++) {
+      String key = keys.get(i);
+      if (i % 2 == 0) {
+        assertNull(d.find(key));
+      } else {
+        assertEquals(key, d.find(key));
+      }
+    }
+    assertEquals(4, d.size());
+  }
+
+  @Test
+  public void arenaCompactsOnceHalfOfItIsGarbage() {
+    StringObjectDictionary<Integer> d = new StringObjectDictionary<Integer>();
+    for (int i = 0; i < 100; i++) {
+      d.insert("key-" + (1000 + i), i);
+    }
+    assertEquals(100 * 8, d.arenaBytes());
+    for (int i = 0; i < 90; i++) {
+      assertEquals(Integer.valueOf(i), d.remove("key-" + (1000 + i)));
+    }
+    assertEquals(100 * 8, d.arenaBytes());
+    int previous = d.arenaBytes();
+    boolean compacted = false;
+    for (int i = 100; i < 140; i++) {
+      d.insert("key-" + (1000 + i), i);
+      compacted |= d.arenaBytes() < previous;
+      previous = d.arenaBytes();
+    }
+    assertTrue(compacted);
+    assertTrue(d.arenaBytes() < 60 * 8);
+    assertEquals(50, d.size());
+    for (int i = 0; i < 140; i++) {
+      Integer value = d.find("key-" + (1000 + i));
+      assertEquals(i < 90 ? null : Integer.valueOf(i), value);
+    }
+  }
+
+  @Test
+  public void nullValuesAreDistinguishedByContains() {
+    StringObjectDictionary<String> d = new StringObjectDictionary<String>();
+    d.insert("k", null);
+    assertNull(d.find("k"));
+    assertTrue(d.contains("k"));
+    assertFalse(d.contains("j"));
+    d.makeEmpty();
+    assertFalse(d.contains("k"));
+    assertEquals(0, d.arenaBytes());
+    d.insert("k", "v");
+    assertEquals("v", d.find("k"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsLoadFactorOfOne() {
+    new StringObjectDictionary<String>(10, 1.0);
+  }
+
+}
@@ -0,0 +1,153 @@
+/* TreeBucketTest.java */
+
+package dict;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TreeBucketTest {
+
+  /**
+   * A key that is neither Comparable nor equal to any other object.
+   */
+  static class Opaque {
+    final int id;
+
+    Opaque(int id) {
+      this.id = id;
+    }
+
+    public int hashCode() {
+      return 0;
+    }
+
+    public boolean equals(Object o) {
+      return o instanceof Opaque && ((Opaque) o).id == id;
+    }
+  }
+
+  private static Entry<Object, Object> entry(Object key, Object value) {
+    Entry<Object, Object> e = new Entry<Object, Object>();
+    e.key = key;
+    e.value = value;
+    return e;
+  }
+
+  private static TreeBucket<Object, Object> tree() {
+    return new TreeBucket<Object, Object>(HashStrategy.NATURAL, true);
+  }
+
+  @Test
+  public void findsComparableKeysAmongOtherClassesAfterRotations() {
+    TreeBucket<Object, Object> t = tree();
+    Object[] keys = { "5", Integer.valueOf(1), Long.valueOf(1), "1", "6",
+                      "7", "8", Integer.valueOf(2), "0", "9" };
+    for (Object k : keys) {
+      t.insert(0, entry(k, k));
+      for (Object j : keys) {
+        Entry<Object, Object> e = t.find(0, j);
+        if (e != null) {
+          assertEquals(j, e.value());
+        }
+      }
+    }
+    for (Object k : keys) {
+      assertEquals(k, t.find(0, k).value());
+    }
+    for (Object k : keys) {
+      assertEquals(k, t.remove(0, k).value());
+      assertNull(t.find(0, k));
+    }
+    assertEquals(0, t.size());
+  }
+
+  @Test
+  public void matchesModelWithMixedClassesSharingOneHash() {
+    TreeBucket<Object, Object> t = tree();
+    HashMap<Object, ArrayList<Integer>> model =
+      new HashMap<Object, ArrayList<Integer>>();
+    Random random = new Random(8);
+    int size = 0;
+    for (int op = 0; op < 100000; op++) {
+      int id = random.nextInt(200);
+      Object key;
+      switch (id % 4) {
+      case 0:
+        key = "" + id;
+        break;
+      case 1:
+        key = Integer.valueOf(id);
+        break;
+      case 2:
+        key = Long.valueOf(id);
+        break;
+      default:
+        key = new Opaque(id);
+      }
+      ArrayList<Integer> values = model.get(key);
+      int r = random.nextInt(10);
+      if (r < 4) {
+        t.insert(0, entry(key, op));
+        if (values == null) {
+          values = new ArrayList<Integer>();
+          model.put(key, values);
+        }
+        values.add(op);
+        size++;
+      } else if (r < 7) {
+        Entry<Object, Object> e = t.remove(0, key);
+        if (values == null || values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertEquals(key, e.key());
+          assertTrue(values.remove(e.value()));
+          size--;
+        }
+      } else {
+        Entry<Object, Object> e = t.find(0, key);
+        if (values == null || values.isEmpty()) {
+          assertNull(e);
+        } else {
+          assertTrue(values.contains(e.value()));
+        }
+      }
+      assertEquals(size, t.size());
+    }
+  }
+
+  @Test
+  public void collidingKeysOfMixedClassesSurviveTreeification() {
+    HashTableChained<Object, Integer> t =
+      new HashTableChained<Object, Integer>();
+    for (int i = 0; i < 100; i++) {
+      t.insert(new Opaque(i), i);
+    }
+    t.insert(Integer.valueOf(0), -1);
+    t.insert(Long.valueOf(0), -2);
+    t.insert("", -3);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(Integer.valueOf(i), t.find(new Opaque(i)).value());
+    }
+    for (int i = 0; i < 100; i += 2) {
+      assertEquals(Integer.valueOf(i), t.remove(new Opaque(i)).value());
+    }
+    for (int i = 0; i < 100; i++) {
+      Entry<Object, Integer> e = t.find(new Opaque(i));
+      if (i % 2 == 0) {
+        assertNull(e);
+      } else {
+        assertEquals(Integer.valueOf(i), e.value());
+      }
+    }
+    assertEquals(Integer.valueOf(-1), t.find(Integer.valueOf(0)).value());
+    assertEquals(Integer.valueOf(-2), t.find(Long.valueOf(0)).value());
+    assertEquals(Integer.valueOf(-3), t.find("").value());
+    assertEquals(53, t.size());
+  }
+
+}
@@ -0,0 +1,149 @@
+/* ArrayDListTest.java */
+
+package list;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+public class ArrayDListTest {
+
+  /**
+   * Checks that l holds the items of model, in order, walking it by its
+   * nodes both ways and by its iterator.
+   */
+  private static void check(ArrayDList<Integer> l, ArrayList<Integer> model)
+    throws InvalidNodeException {
+    assertEquals(model.size(), l.length());
+    ListNode<Integer> node = l.front();
+    for (int i = 0; i < model.size(); i++) {
+      assertEquals(model.get(i), node.getItem());
+      node = node.next();
+    }
+    assertFalse(node.isValidNode());
+    node = l.back();
+    for (int i = model.size() - 1; i >= 0; i--) {
+      assertEquals(model.get(i), node.getItem());
+      node = node.prev();
+    }
+    assertFalse(node.isValidNode());
+    int i = 0;
+    for (Integer item : l) {
+      assertEquals(model.get(i++), item);
+    }
+  }
+
+  /**
+   * Returns the node at the specified position of l.
+   */
+  private static ListNode<Integer> nodeAt(ArrayDList<Integer> l, int i)
+    throws InvalidNodeException {
+    ListNode<Integer> node = l.front();
+    while (i-- > 0) {
+      node = node.next();
+    }
+    return node;
+  }
+
+  @Test
+  public void matchesModelUnderRandomOperations() throws Exception {
+    ArrayDList<Integer> l = new ArrayDList<Integer>(0);
+    ArrayList<Integer> model = new ArrayList<Integer>();
+    Random random = new Random(16);
+    for (int op = 0; op < 5000; op++) {
+      int r = random.nextInt(6);
+      if (r == 0) {
+        l.insertFront(op);
+        model.add(0, op);
+      } else if (r == 1) {
+        l.insertBack(op);
+        model.add(op);
+      } else if (model.isEmpty()) {
+        continue;
+      } else {
+        int i = random.nextInt(model.size());
+        ListNode<Integer> node = nodeAt(l, i);
+        if (r == 2) {
+          node.insertAfter(op);
+          model.add(i + 1, op);
+        } else if (r == 3) {
+          node.insertBefore(op);
+          model.add(i, op);
+        } else if (r == 4) {
+          node.setItem(-op);
+          model.set(i, -op);
+        } else {
+          node.remove();
+          model.remove(i);
+          assertFalse(node.isValidNode());
+        }
+      }
+      if (op % 100 == 0) {
+        check(l, model);
+      }
+    }
+    check(l, model);
+  }
+
+  @Test
+  public void reusedSlotDoesNotRevalidateOldNode() throws Exception {
+    ArrayDList<String> l = new ArrayDList<String>();
+    l.insertBack("a");
+    ListNode<String> a = l.front();
+    a.remove();
+    l.insertBack("b");
+    ListNode<String> b = l.front();
+    assertFalse(a.isValidNode());
+    assertTrue(b.isValidNode());
+    try {
+      a.getItem();
+      fail();
+    } catch (InvalidNodeException e) {}
+    try {
+      a.remove();
+      fail();
+    } catch (InvalidNodeException e) {}
+    assertEquals("b", b.getItem());
+    assertEquals(1, l.length());
+  }
+
+  @Test
+  public void emptyListHasInvalidEnds() {
+    ArrayDList<String> l = new ArrayDList<String>();
+    assertFalse(l.front().isValidNode());
+    assertFalse(l.back().isValidNode());
+    assertFalse(l.iterator().hasNext());
+    assertEquals("[  ]", l.toString());
+  }
+
+  @Test
+  public void forEachAndSpliteratorVisitItemsInOrder() {
+    ArrayDList<Integer> l = new ArrayDList<Integer>(2);
+    for (int i = 0; i < 50; i++) {
+      l.insertBack(i);
+    }
+    final ArrayList<Integer> seen = new ArrayList<Integer>();
+    Consumer<Integer> add = new Consumer<Integer>() {
+      public void accept(Integer item) {
+        seen.add(item);
+      }
+    };
+    l.forEach(add);
+    assertEquals(50, l.spliterator().getExactSizeIfKnown());
+    l.spliterator().forEachRemaining(add);
+    assertEquals(100, seen.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(Integer.valueOf(i % 50), seen.get(i));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeCapacity() {
+    new ArrayDList<Integer>(-1);
+  }
+
+}
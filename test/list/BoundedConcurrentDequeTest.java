@@ -0,0 +1,102 @@
+/* BoundedConcurrentDequeTest.java */
+
+package list;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class BoundedConcurrentDequeTest {
+
+  @Test
+  public void offersFailWhenFull() throws Exception {
+    BoundedConcurrentDeque<Integer> d = new BoundedConcurrentDeque<Integer>(3);
+    assertEquals(3, d.capacity());
+    assertTrue(d.offerBack(1));
+    assertTrue(d.offerFront(0));
+    assertTrue(d.offerBack(2));
+    assertFalse(d.offerBack(3));
+    assertFalse(d.offerFront(3));
+    assertFalse(d.offerBack(3, 10, TimeUnit.MILLISECONDS));
+    assertEquals(3, d.length());
+    assertEquals(Integer.valueOf(0), d.pollFront());
+    assertEquals(Integer.valueOf(2), d.pollBack());
+    assertEquals(Integer.valueOf(1), d.takeFront());
+    assertTrue(d.isEmpty());
+    assertNull(d.pollFront());
+    assertNull(d.pollFront(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void bothEndsWaitAndPeek() throws Exception {
+    BoundedConcurrentDeque<Integer> d = new BoundedConcurrentDeque<Integer>(2);
+    assertNull(d.peekFront());
+    assertNull(d.peekBack());
+    assertNull(d.pollBack(10, TimeUnit.MILLISECONDS));
+    assertTrue(d.offerFront(1, 10, TimeUnit.MILLISECONDS));
+    assertTrue(d.offerFront(0, 10, TimeUnit.MILLISECONDS));
+    assertFalse(d.offerFront(9, 10, TimeUnit.MILLISECONDS));
+    assertEquals(Integer.valueOf(0), d.peekFront());
+    assertEquals(Integer.valueOf(1), d.peekBack());
+    assertEquals(2, d.length());
+    assertEquals(Integer.valueOf(1), d.pollBack(10, TimeUnit.MILLISECONDS));
+    assertEquals(Integer.valueOf(0), d.peekBack());
+    assertEquals(Integer.valueOf(0), d.pollBack(10, TimeUnit.MILLISECONDS));
+    assertTrue(d.isEmpty());
+    assertTrue(d.offerFront(2, 10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsCapacityOfZero() {
+    new BoundedConcurrentDeque<Integer>(0);
+  }
+
+  /**
+   * Half the threads put items at both ends and the other half take them
+   * from both ends.  Every item must be taken exactly once, no take may
+   * return null, and the full capacity must be free again at the end.
+   */
+  @Test
+  public void producersAndConsumersKeepTheBound() throws Exception {
+    final int capacity = 16;
+    final int perProducer = 50000;
+    final int producers = ConcurrentDequeTest.THREADS / 2;
+    final BoundedConcurrentDeque<Integer> d =
+      new BoundedConcurrentDeque<Integer>(capacity);
+    final AtomicIntegerArray taken =
+      new AtomicIntegerArray(producers * perProducer);
+    ConcurrentDequeTest.runThreads(new ConcurrentDequeTest.Body() {
+      public void run(int thread) throws InterruptedException {
+        if (thread < producers) {
+          for (int i = 0; i < perProducer; i++) {
+            int item = thread * perProducer + i;
+            if ((i & 1) == 0) {
+              d.putFront(item);
+            } else {
+              d.putBack(item);
+            }
+          }
+        } else {
+          for (int i = 0; i < perProducer; i++) {
+            Integer item = (i & 1) == 0 ? d.takeFront() : d.takeBack();
+            assertNotNull(item);
+            assertTrue(d.length() <= capacity);
+            taken.incrementAndGet(item);
+          }
+        }
+      }
+    });
+    for (int i = 0; i < taken.length(); i++) {
+      assertEquals("item " + i, 1, taken.get(i));
+    }
+    assertTrue(d.isEmpty());
+    for (int i = 0; i < capacity; i++) {
+      assertTrue(d.offerBack(i));
+    }
+    assertFalse(d.offerBack(capacity));
+  }
+
+}
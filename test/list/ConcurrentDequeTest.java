@@ -0,0 +1,141 @@
+/* ConcurrentDequeTest.java */
+
+package list;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentDequeTest {
+
+  static final int THREADS = 8;
+
+  /**
+   * Runs body(t) on THREADS threads at once and rethrows the first failure.
+   */
+  interface Body {
+    void run(int thread) throws Exception;
+  }
+
+  static void runThreads(final Body body) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          try {
+            start.await();
+            body.run(thread);
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+  }
+
+  @Test
+  public void behavesAsADequeOnOneThread() {
+    ConcurrentDeque<Integer> d = new ConcurrentDeque<Integer>();
+    assertTrue(d.isEmpty());
+    assertNull(d.pollFront());
+    assertNull(d.peekBack());
+    for (int i = 0; i < 10; i++) {
+      d.insertBack(i);
+      d.insertFront(-i - 1);
+    }
+    assertEquals(20, d.length());
+    assertEquals(Integer.valueOf(-10), d.peekFront());
+    assertEquals(Integer.valueOf(9), d.peekBack());
+    for (int i = 9; i >= 0; i--) {
+      assertEquals(Integer.valueOf(-i - 1), d.pollFront());
+      assertEquals(Integer.valueOf(i), d.pollBack());
+    }
+    assertTrue(d.isEmpty());
+    assertEquals(0, d.length());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNullItem() {
+    new ConcurrentDeque<Integer>().insertFront(null);
+  }
+
+  @Test
+  public void everyItemIsPolledExactlyOnce() throws Exception {
+    final ConcurrentDeque<Integer> d = new ConcurrentDeque<Integer>();
+    final int perThread = 50000;
+    final AtomicIntegerArray polled =
+      new AtomicIntegerArray(THREADS * perThread);
+    runThreads(new Body() {
+      public void run(int thread) {
+        for (int i = 0; i < perThread; i++) {
+          int item = thread * perThread + i;
+          if ((i & 1) == 0) {
+            d.insertFront(item);
+          } else {
+            d.insertBack(item);
+          }
+          Integer got = (thread & 1) == 0 ? d.pollFront() : d.pollBack();
+          if (got != null) {
+            polled.incrementAndGet(got);
+          }
+        }
+      }
+    });
+    for (Integer got = d.pollFront(); got != null; got = d.pollFront()) {
+      polled.incrementAndGet(got);
+    }
+    for (int i = 0; i < polled.length(); i++) {
+      assertEquals("item " + i, 1, polled.get(i));
+    }
+  }
+
+  /**
+   * Every thread inserts at one end before it polls from the other, and the
+   * list starts with an item, so it is never empty:  no poll or peek may
+   * return null.  Before JDK-8188900, a traversal could run off the far end
+   * while items went in behind it, and report an empty list.
+   */
+  @Test
+  public void neverReportsEmptyWhileItemsRemain() throws Exception {
+    final ConcurrentDeque<Integer> d = new ConcurrentDeque<Integer>();
+    d.insertBack(-1);
+    runThreads(new Body() {
+      public void run(int thread) {
+        for (int i = 0; i < 100000; i++) {
+          switch (thread & 3) {
+          case 0:
+            d.insertFront(i);
+            assertNotNull(d.pollBack());
+            break;
+          case 1:
+            d.insertBack(i);
+            assertNotNull(d.pollFront());
+            break;
+          case 2:
+            assertNotNull(d.peekFront());
+            break;
+          default:
+            assertNotNull(d.peekBack());
+          }
+        }
+      }
+    });
+    assertEquals(1, d.length());
+  }
+
+}
@@ -0,0 +1,87 @@
+/* DListTest.java */
+
+package list;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+public class DListTest {
+
+  private static DList<Integer> list(int n) {
+    DList<Integer> l = new DList<Integer>();
+    for (int i = 0; i < n; i++) {
+      l.insertBack(i);
+    }
+    return l;
+  }
+
+  @Test
+  public void insertBackCountsItems() {
+    DList<Integer> l = list(3);
+    l.insertFront(-1);
+    assertEquals(4, l.length());
+    assertEquals("[  -1  0  1  2  ]", l.toString());
+  }
+
+  @Test
+  public void iteratorVisitsItemsInOrder() {
+    DList<Integer> l = list(5);
+    int expected = 0;
+    for (Integer item : l) {
+      assertEquals(Integer.valueOf(expected++), item);
+    }
+    assertEquals(5, expected);
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void iteratorThrowsPastTheEnd() {
+    Iterator<Integer> it = list(1).iterator();
+    it.next();
+    assertFalse(it.hasNext());
+    it.next();
+  }
+
+  @Test
+  public void forEachVisitsItemsInOrder() {
+    final ArrayList<Integer> seen = new ArrayList<Integer>();
+    list(4).forEach(new Consumer<Integer>() {
+      public void accept(Integer item) {
+        seen.add(item);
+      }
+    });
+    assertEquals(4, seen.size());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(Integer.valueOf(i), seen.get(i));
+    }
+  }
+
+  @Test
+  public void emptyListVisitsNothing() {
+    DList<Integer> l = new DList<Integer>();
+    assertFalse(l.iterator().hasNext());
+    assertEquals("[  ]", l.toString());
+    assertEquals(0, l.spliterator().estimateSize());
+  }
+
+  @Test
+  public void spliteratorKnowsTheLength() {
+    Spliterator<Integer> s = list(7).spliterator();
+    assertEquals(7, s.getExactSizeIfKnown());
+    assertTrue(s.hasCharacteristics(Spliterator.ORDERED));
+    final int[] sum = new int[1];
+    s.forEachRemaining(new Consumer<Integer>() {
+      public void accept(Integer item) {
+        sum[0] += item;
+      }
+    });
+    assertEquals(21, sum[0]);
+  }
+
+}
@@ -0,0 +1,73 @@
+/* PooledDListTest.java */
+
+package list;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PooledDListTest {
+
+  @Test
+  public void removedNodesAreReused() throws Exception {
+    PooledDList<String> l = new PooledDList<String>();
+    l.insertBack("a");
+    l.insertBack("b");
+    ListNode<String> a = l.front();
+    a.remove();
+    assertEquals(1, l.poolSize());
+    assertEquals(1, l.length());
+    l.insertBack("c");
+    assertEquals(0, l.poolSize());
+    assertSame(a, l.back());
+    assertEquals("c", l.back().getItem());
+    assertEquals("[  b  c  ]", l.toString());
+  }
+
+  @Test
+  public void poolKeepsAtMostMaxPooledNodes() throws Exception {
+    PooledDList<Integer> l = new PooledDList<Integer>(3);
+    for (int i = 0; i < 10; i++) {
+      l.insertFront(i);
+    }
+    for (int i = 0; i < 10; i++) {
+      l.front().remove();
+      assertEquals(Math.min(i + 1, 3), l.poolSize());
+    }
+    assertTrue(l.isEmpty());
+    for (int i = 0; i < 10; i++) {
+      l.insertBack(i);
+    }
+    assertEquals(0, l.poolSize());
+    int expected = 0;
+    for (Integer item : l) {
+      assertEquals(Integer.valueOf(expected++), item);
+    }
+    assertEquals(10, expected);
+  }
+
+  @Test
+  public void churnAllocatesNoNodesOnceWarm() throws Exception {
+    PooledDList<Integer> l = new PooledDList<Integer>();
+    for (int i = 0; i < 100; i++) {
+      l.insertBack(i);
+    }
+    l.front().remove();
+    ListNode<Integer> reused = null;
+    for (int i = 100; i < 1000; i++) {
+      l.insertBack(i);
+      reused = l.back();
+      l.front().remove();
+    }
+    assertEquals(99, l.length());
+    assertEquals(1, l.poolSize());
+    assertEquals(Integer.valueOf(999), reused.getItem());
+    assertEquals(Integer.valueOf(901), l.front().getItem());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativePoolSize() {
+    new PooledDList<Integer>(-1);
+  }
+
+}